@@ -0,0 +1,185 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Launcher.DummyLauncher;
+import hudson.Launcher.ProcStarter;
+import hudson.Util;
+import hudson.model.Executor;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+
+/**
+ * Benchmarks {@link DefaultProcStarterFactory#create}, which builds the
+ * command line of the client from the environment of the build and writes
+ * the configuration file of the test events. The run is a Mockito mock, so
+ * a small constant part of the time is spent in the mock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcStarterFactoryBenchmark {
+    /** Variables every build of a Windows agent has. */
+    private static final String[][] BUILD_VARIABLES = {
+        {"BUILD_DISPLAY_NAME", "#1234"},
+        {"BUILD_ID", "1234"},
+        {"BUILD_NUMBER", "1234"},
+        {"BUILD_TAG", "jenkins-tosca-regression-1234"},
+        {"BUILD_URL", "https://jenkins.example.com/job/tosca/1234/"},
+        {"EXECUTOR_NUMBER", "0"},
+        {"HUDSON_HOME", "C:\\Jenkins"},
+        {"JENKINS_HOME", "C:\\Jenkins"},
+        {"JENKINS_URL", "https://jenkins.example.com/"},
+        {"JOB_BASE_NAME", "tosca-regression"},
+        {"JOB_NAME", "tosca-regression"},
+        {"JOB_URL", "https://jenkins.example.com/job/tosca/"},
+        {"NODE_LABELS", "windows tosca"},
+        {"NODE_NAME", "tosca-agent-01"},
+        {"WORKSPACE", "C:\\Jenkins\\workspace\\tosca-regression"},
+        {"COMPUTERNAME", "TOSCA-AGENT-01"},
+        {"NUMBER_OF_PROCESSORS", "8"},
+        {"OS", "Windows_NT"},
+        {"PATH", "C:\\Windows\\system32;C:\\Windows;"
+                + "C:\\Windows\\System32\\Wbem;"
+                + "C:\\Program Files\\Java\\jre1.8.0_181\\bin;"
+                + "C:\\Program Files\\Git\\cmd"},
+        {"PATHEXT", ".COM;.EXE;.BAT;.CMD;.VBS;.VBE;.JS;.JSE;.WSF;.WSH;.MSC"},
+        {"PROCESSOR_ARCHITECTURE", "AMD64"},
+        {"ProgramFiles", "C:\\Program Files"},
+        {"SystemRoot", "C:\\Windows"},
+        {"TEMP", "C:\\Windows\\TEMP"},
+        {"TMP", "C:\\Windows\\TEMP"},
+        {"USERNAME", "jenkins"},
+        {"JAVA_HOME", "C:\\Program Files\\Java\\jre1.8.0_181"},
+        {"TRICENTIS_HOME",
+                "C:\\Program Files (x86)\\TRICENTIS\\Tosca Testsuite"},
+        {"TOSCA_ENDPOINT", "http://tosca-server:8732/"
+                + "DistributionServerService/ManagerService.svc"},
+    };
+    /** The number of additional job parameters in the environment. */
+    @Param({"0", "200"})
+    private int parameters;
+    /** The number of test events in the configuration file, 0 for none. */
+    @Param({"0", "10", "1000", "100000"})
+    private int testEvents;
+    /** The factory. */
+    private DefaultProcStarterFactory factory;
+    /** The builder. */
+    private TricentisCiBuilder runner;
+    /** The run. */
+    private Run<?, ?> run;
+    /** The workspace. */
+    private File workspace;
+    /** The launcher. */
+    private Launcher launcher;
+    /** The listener. */
+    private TaskListener listener;
+
+    /**
+     * Sets up the builder and the environment of the run.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        final EnvVars vars = new EnvVars();
+        for (final String[] variable : BUILD_VARIABLES) {
+            vars.put(variable[0], variable[1]);
+        }
+        for (int i = 0; i < parameters; i++) {
+            vars.put("PARAMETER_" + i, "value of parameter " + i);
+        }
+        runner = new TricentisCiBuilder(
+                "$TRICENTIS_HOME\\ToscaCI\\Client\\ToscaCIJavaClient.jar",
+                "$TOSCA_ENDPOINT");
+        runner.setClientJvmOptions("-Xmx512m -Dtosca.build=$BUILD_NUMBER");
+        if (testEvents > 0) {
+            final StringBuilder events = new StringBuilder();
+            for (int i = 0; i < testEvents; i++) {
+                if (i > 0) {
+                    events.append(';');
+                }
+                events.append("Regression TestEvent ").append(i);
+            }
+            runner.setTestEvents(events.toString());
+        }
+        run = mock(Run.class);
+        when(run.getEnvironment(any(TaskListener.class))).thenReturn(vars);
+        when(run.getExecutor()).thenReturn(mock(Executor.class));
+        workspace = Files.createTempDirectory("benchmark").toFile();
+        listener = new StreamBuildListener(new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+            }
+        });
+        launcher = new DummyLauncher(listener);
+        factory = new DefaultProcStarterFactory();
+    }
+    /**
+     * Deletes the configuration files generated in an iteration, which are
+     * unique per call.
+     */
+    @TearDown(Level.Iteration)
+    public void deleteConfigFiles() {
+        final File[] files = workspace.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+    }
+    /**
+     * Deletes the workspace.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Util.deleteRecursive(workspace);
+    }
+    /**
+     * Creates the starter of the client.
+     *
+     * @return the starter
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Benchmark
+    public ProcStarter create() throws IOException, InterruptedException {
+        return factory.create(runner, run, new FilePath(workspace), launcher,
+                listener);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import hudson.Util;
+
+/**
+ * Benchmarks the parsing and publishing of JUnit reports of the client, from
+ * 1 MB to 500 MB. The reports are generated once per trial: mostly passed
+ * test cases, every tenth one failed with a stack trace and every test case
+ * with some output, as the client writes the step logs into the report.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class ResultsBenchmark {
+    /** The Constant MEGABYTE. */
+    private static final long MEGABYTE = 1024 * 1024;
+    /** The output of a test case. */
+    private static final String OUTPUT;
+    /** The stack trace of a failed test case. */
+    private static final String TRACE;
+    /** The size of the report in megabytes. */
+    @Param({"1", "50", "500"})
+    private int size;
+    /** The directory of the report. */
+    private File directory;
+    /** The report. */
+    private File report;
+
+    static {
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            output.append("Step ").append(i)
+                    .append(": verify value &lt;expected&gt; - Passed\n");
+        }
+        OUTPUT = output.toString();
+        final StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            trace.append("    at Tricentis.Automation.Engines.Step")
+                    .append(i).append(".Execute()\n");
+        }
+        TRACE = trace.toString();
+    }
+
+    /**
+     * Generates the report.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("benchmark").toFile();
+        report = new File(directory, "results.xml");
+        final long limit = size * MEGABYTE;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(report), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                    + "<testsuites>\n<testsuite name=\"Regression\">\n");
+            long written = 0;
+            for (int i = 0; written < limit; i++) {
+                final StringBuilder testCase = new StringBuilder();
+                testCase.append("<testcase classname=\"Regression.Folder")
+                        .append(i % 100).append("\" name=\"Test case ")
+                        .append(i).append("\" time=\"1.25\">");
+                if (i % 10 == 0) {
+                    testCase.append("<failure message=\"Verification ")
+                            .append("failed\">").append(TRACE)
+                            .append("</failure>");
+                }
+                testCase.append("<system-out>").append(OUTPUT)
+                        .append("</system-out></testcase>\n");
+                out.append(testCase);
+                written += testCase.length();
+            }
+            out.write("</testsuite>\n</testsuites>\n");
+        }
+    }
+    /**
+     * Deletes the report.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Util.deleteRecursive(directory);
+    }
+    /**
+     * Summarizes the report, as the summary publisher does on the agent.
+     *
+     * @return the summary
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public ResultsSummary summarize() throws IOException {
+        final ResultsSummary summary = new ResultsSummary();
+        try (InputStream in = open()) {
+            new ResultsSummaryParser().parse(in, summary);
+        }
+        return summary;
+    }
+    /**
+     * Indexes the report, as the indexed publisher does on the agent. The
+     * details go nowhere, the controller side is not measured.
+     *
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public ResultsIndex index() throws IOException {
+        final ResultsIndex index = new ResultsIndex();
+        try (ResultsDetails.Writer writer
+                = new ResultsDetails.Writer(new NullOutputStream(), 0);
+                InputStream in = open()) {
+            new ResultsSummaryParser().parse(in, index.handler(writer));
+        }
+        return index;
+    }
+    /**
+     * Parses the report into a delta, as streaming results do while the
+     * client is running.
+     *
+     * @return the number of test cases
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int parseIncrementally() throws IOException {
+        try (InputStream in = open()) {
+            return new IncrementalResultsParser().parse(in,
+                    new File(directory, "delta.xml"));
+        }
+    }
+    /**
+     * Merges the report, as the results of shards are merged.
+     *
+     * @return the number of test cases
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int merge() throws IOException {
+        return ResultsMerger.merge(Collections.singletonList(report),
+                new File(directory, "merged.xml"), false);
+    }
+    /**
+     * Opens the report.
+     *
+     * @return the stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private InputStream open() throws IOException {
+        return new BufferedInputStream(new FileInputStream(report));
+    }
+
+    /**
+     * Discards everything written to it.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        /**
+         * Write.
+         *
+         * @param b the b
+         */
+        @Override
+        public void write(final int b) {
+        }
+        /**
+         * Write.
+         *
+         * @param b   the b
+         * @param off the off
+         * @param len the len
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    }
+}
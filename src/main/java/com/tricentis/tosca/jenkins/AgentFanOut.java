@@ -0,0 +1,943 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.durabletask.Controller;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Launcher.ProcStarter;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Job;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.TopLevelItem;
+import hudson.slaves.WorkspaceList;
+import jenkins.model.Jenkins;
+
+/**
+ * Fans the shards of a {@link TricentisCiStep} out to the agents matching a
+ * label. Every shard is a {@link FanOutTask} in the queue of Jenkins, which
+ * takes an executor of an agent and runs the client process in a workspace
+ * allocated on that agent, with the environment of the agent. An agent runs
+ * one shard of the fan-out at a time, so faster agents execute more shards.
+ * The results files are copied back to the workspace of the step as the
+ * shards finish. The shard of an agent which stays offline longer than
+ * {@link #OFFLINE_GRACE} is reassigned to another agent, and its client is
+ * stopped as soon as the agent is back. A shard running much longer than
+ * expected is stopped and reassigned to another agent once. The state is
+ * serializable, so the fan-out continues after a restart of Jenkins.
+ */
+final class AgentFanOut implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /**
+     * The time in milliseconds an agent may be offline before its shard is
+     * reassigned.
+     */
+    static final long OFFLINE_GRACE = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * The factor of the expected duration after which a running shard is a
+     * straggler.
+     */
+    static final double STRAGGLER_FACTOR = 2;
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(AgentFanOut.class.getName());
+    /** The label. */
+    private final String label;
+    /** The maximum number of agents to use at a time, 0 for all. */
+    private final int agentCount;
+    /** The builder holding the parameters, as XML. */
+    private final String builderXml;
+    /** The shards. */
+    private final List<TestEventShard> shards;
+    /** The expected durations of the shards, UNKNOWN if not known. */
+    private final long[] expected;
+    /** The indexes of the shards waiting to be queued. */
+    private final LinkedList<Integer> pending = new LinkedList<>();
+    /** The queued and running shards by index. */
+    private final Map<Integer, Assignment> running = new LinkedHashMap<>();
+    /** The agents a shard has been reassigned from, by index. */
+    private final Map<Integer, Set<String>> excluded = new HashMap<>();
+    /** The indexes of the shards which have been reassigned as stragglers. */
+    private final Set<Integer> retried = new HashSet<>();
+    /** The agents which have been given up. */
+    private final Set<String> lost = new LinkedHashSet<>();
+    /** The clients left on agents which were offline when given up. */
+    private final List<Assignment> orphans = new ArrayList<>();
+    /** The exit codes, null while a shard has not finished. */
+    private final Integer[] exitCodes;
+    /** The durations of the shards in milliseconds. */
+    private final long[] durations;
+    /** Whether the fan-out has been stopped. */
+    private boolean stopped;
+    /** The builder, restored from XML after a restart. */
+    private transient TricentisCiBuilder builder;
+    /** The run, set by every check. */
+    private transient Run<?, ?> run;
+    /** The listener, set by every check. */
+    private transient TaskListener listener;
+
+    /**
+     * Instantiates a new fan-out.
+     *
+     * @param newLabel      the label
+     * @param newAgentCount the maximum number of agents to use at a time, 0
+     *                      for all
+     * @param newBuilder    the builder holding the parameters
+     * @param newShards     the shards
+     * @param history       the duration history, may be null
+     */
+    AgentFanOut(final String newLabel, final int newAgentCount,
+            final TricentisCiBuilder newBuilder,
+            final List<TestEventShard> newShards,
+            final TestEventDurationIndex history) {
+        this.label = newLabel;
+        this.agentCount = newAgentCount;
+        this.builder = newBuilder;
+        this.builderXml = newBuilder == null ? null
+                : Jenkins.XSTREAM2.toXML(newBuilder);
+        this.shards = new ArrayList<>(newShards);
+        this.expected = new long[shards.size()];
+        this.exitCodes = new Integer[shards.size()];
+        this.durations = new long[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            expected[i] = getExpected(shards.get(i), history);
+            pending.add(i);
+        }
+    }
+    /**
+     * Creates the fan-out of the test events of a build to the agents
+     * matching a label. There is at least one shard per online agent.
+     *
+     * @param builder    the builder holding the parameters
+     * @param testEvents the test events to fan out, separated like the
+     *                   configured ones
+     * @param label      the label
+     * @param agentCount the maximum number of agents, 0 for all
+     * @param history    the duration history, may be null
+     * @return the fan-out
+     * @throws AbortException if no agent is online or the build has no test
+     *                        events
+     */
+    static AgentFanOut create(final TricentisCiBuilder builder,
+            final String testEvents, final String label, final int agentCount,
+            final TestEventDurationIndex history) throws AbortException {
+        if (testEvents.trim().isEmpty()) {
+            throw new AbortException(Messages.fanOutRequiresTestEvents());
+        }
+        int agents = countOnlineAgents(label);
+        if (agents == 0) {
+            throw new AbortException(Messages.fanOutNoAgents(label));
+        }
+        if (agentCount > 0) {
+            agents = Math.min(agents, agentCount);
+        }
+        final List<TestEventShard> shards = new TestEventSharder().shard(
+                testEvents, Math.max(builder.getShardCount(), agents),
+                builder.getResultsFile(), history);
+        return new AgentFanOut(label, agentCount, builder, shards, history);
+    }
+    /**
+     * Counts the online agents matching a label.
+     *
+     * @param label the label
+     * @return the number of agents
+     */
+    private static int countOnlineAgents(final String label) {
+        int count = 0;
+        for (final Node node : getNodes(label)) {
+            final Computer computer = node.toComputer();
+            if (computer != null && computer.isOnline()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    /**
+     * Gets the nodes matching a label.
+     *
+     * @param label the label
+     * @return the nodes
+     */
+    private static Collection<Node> getNodes(final String label) {
+        final Label parsed = getLabel(label);
+        if (parsed == null) {
+            return Collections.emptySet();
+        }
+        return parsed.getNodes();
+    }
+    /**
+     * Parses a label.
+     *
+     * @param label the label
+     * @return the label, or null if Jenkins is not running
+     */
+    private static Label getLabel(final String label) {
+        final Jenkins jenkins = Jenkins.getInstance();
+        return jenkins == null ? null : jenkins.getLabel(label);
+    }
+    /**
+     * Gets the expected duration of a shard from the history.
+     *
+     * @param shard   the shard
+     * @param history the history, may be null
+     * @return the expected duration in milliseconds, or
+     *         {@link TestEventDurationIndex#UNKNOWN}
+     */
+    private static long getExpected(final TestEventShard shard,
+            final TestEventDurationIndex history) {
+        if (history == null) {
+            return TestEventDurationIndex.UNKNOWN;
+        }
+        return history.getExpected(shard.getTestEvents());
+    }
+    /**
+     * Gets the shards.
+     *
+     * @return the shards
+     */
+    List<TestEventShard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+    /**
+     * Gets the expected duration of a shard.
+     *
+     * @param shard the index of the shard
+     * @return the expected duration in milliseconds, or
+     *         {@link TestEventDurationIndex#UNKNOWN}
+     */
+    long getExpected(final int shard) {
+        return expected[shard];
+    }
+    /**
+     * Gets the exit codes.
+     *
+     * @return the exit codes, null while a shard has not finished
+     */
+    Integer[] getExitCodes() {
+        return exitCodes;
+    }
+    /**
+     * Gets the durations.
+     *
+     * @return the durations of the shards in milliseconds
+     */
+    long[] getDurations() {
+        return durations;
+    }
+    /**
+     * Checks whether all shards have finished.
+     *
+     * @return true, if done
+     */
+    synchronized boolean isDone() {
+        return pending.isEmpty() && running.isEmpty();
+    }
+    /**
+     * Takes the next shard to be queued, unless as many shards as agents
+     * may be used are queued or running.
+     *
+     * @return the index of the shard, or null if no shard may be queued
+     */
+    synchronized Integer next() {
+        if (stopped || pending.isEmpty()
+                || agentCount > 0 && running.size() >= agentCount) {
+            return null;
+        }
+        final Integer index = pending.removeFirst();
+        running.put(index, new Assignment(index));
+        return index;
+    }
+    /**
+     * Assigns a queued shard to the agent whose executor took its task.
+     *
+     * @param shard the index of the shard
+     * @param agent the agent
+     * @param now   the current time
+     * @return false, if the shard is no longer queued or the agent already
+     *         runs another shard
+     */
+    synchronized boolean assign(final int shard, final String agent,
+            final long now) {
+        final Assignment assignment = running.get(shard);
+        if (stopped || assignment == null || assignment.agent != null
+                || isBusy(shard, agent)) {
+            return false;
+        }
+        assignment.agent = agent;
+        assignment.started = now;
+        return true;
+    }
+    /**
+     * Records that the shard of an agent has finished.
+     *
+     * @param shard    the index of the shard
+     * @param exitCode the exit code
+     * @param now      the current time
+     */
+    synchronized void finished(final int shard, final int exitCode,
+            final long now) {
+        final Assignment assignment = running.remove(shard);
+        exitCodes[shard] = exitCode;
+        durations[shard] = now - assignment.started;
+    }
+    /**
+     * Puts a shard back, so it is the next one to be queued. It will not be
+     * given to the agent it was assigned to, unless no other agent is left.
+     *
+     * @param shard the index of the shard
+     */
+    synchronized void requeue(final int shard) {
+        final Assignment assignment = running.remove(shard);
+        if (assignment == null) {
+            return;
+        }
+        if (assignment.agent != null) {
+            Set<String> agents = excluded.get(shard);
+            if (agents == null) {
+                agents = new HashSet<>();
+                excluded.put(shard, agents);
+            }
+            agents.add(assignment.agent);
+        }
+        pending.addFirst(shard);
+    }
+    /**
+     * Gives up an agent. It is not given any further shard.
+     *
+     * @param agent the agent
+     */
+    synchronized void giveUp(final String agent) {
+        lost.add(agent);
+    }
+    /**
+     * Records that a straggler is reassigned, which is done once per shard.
+     *
+     * @param shard the index of the shard
+     * @return true, if the shard had not been reassigned as straggler before
+     */
+    synchronized boolean retry(final int shard) {
+        return retried.add(shard);
+    }
+    /**
+     * Checks whether an agent runs a shard other than the given one.
+     *
+     * @param shard the index of the shard
+     * @param agent the agent
+     * @return true, if the agent is busy
+     */
+    private boolean isBusy(final int shard, final String agent) {
+        for (final Assignment assignment : running.values()) {
+            if (assignment.shard != shard && agent.equals(assignment.agent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Gets the reason why an agent may not take a shard: it already runs
+     * another shard, it has been given up, or the shard has been reassigned
+     * from it while other agents are left.
+     *
+     * @param shard  the index of the shard
+     * @param agent  the agent
+     * @param agents all agents matching the label
+     * @return the reason, or null if the agent may take the shard
+     */
+    synchronized String getBlockage(final int shard, final String agent,
+            final Collection<String> agents) {
+        if (isBusy(shard, agent)) {
+            return Messages.fanOutAgentBusy(agent);
+        }
+        if (lost.contains(agent)) {
+            return Messages.fanOutAgentLost(agent);
+        }
+        final Set<String> from = excluded.get(shard);
+        if (from != null && from.contains(agent)) {
+            for (final String other : agents) {
+                if (!from.contains(other) && !lost.contains(other)) {
+                    return Messages.fanOutAgentExcluded(shards.get(shard),
+                            agent);
+                }
+            }
+        }
+        return null;
+    }
+    /**
+     * Checks whether a running shard takes much longer than expected.
+     * Without history, the shard is compared with the median duration of the
+     * finished shards.
+     *
+     * @param shard the index of the shard
+     * @param now   the current time
+     * @return true, if the shard is a straggler
+     */
+    synchronized boolean isStraggler(final int shard, final long now) {
+        final Assignment assignment = running.get(shard);
+        if (assignment == null || assignment.agent == null) {
+            return false;
+        }
+        long base = expected[shard];
+        if (base == TestEventDurationIndex.UNKNOWN) {
+            base = getMedianDuration();
+        }
+        return base > 0
+                && now - assignment.started > STRAGGLER_FACTOR * base;
+    }
+    /**
+     * Gets the median duration of the finished shards.
+     *
+     * @return the median in milliseconds, or
+     *         {@link TestEventDurationIndex#UNKNOWN} if none has finished
+     */
+    private long getMedianDuration() {
+        final long[] finished = new long[durations.length];
+        int count = 0;
+        for (int i = 0; i < exitCodes.length; i++) {
+            if (exitCodes[i] != null) {
+                finished[count++] = durations[i];
+            }
+        }
+        if (count == 0) {
+            return TestEventDurationIndex.UNKNOWN;
+        }
+        Arrays.sort(finished, 0, count);
+        return finished[count / 2];
+    }
+    /**
+     * Copies new output of the running shards to the log, collects finished
+     * shards, reassigns lost shards and stragglers, stops clients left on
+     * agents which are back and queues waiting shards.
+     *
+     * @param newRun      the run
+     * @param workspace   the workspace of the step
+     * @param newListener the listener
+     * @return true, if all shards have finished
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    boolean check(final Run<?, ?> newRun, final FilePath workspace,
+            final TaskListener newListener)
+            throws IOException, InterruptedException {
+        final List<Assignment> launched = new ArrayList<>();
+        synchronized (this) {
+            run = newRun;
+            listener = newListener;
+            for (final Assignment assignment : running.values()) {
+                if (assignment.controller != null) {
+                    launched.add(assignment);
+                }
+            }
+        }
+        final long now = System.currentTimeMillis();
+        for (final Assignment assignment : launched) {
+            check(assignment, workspace, now);
+        }
+        stopOrphans();
+        queue();
+        final boolean abandoned;
+        synchronized (this) {
+            abandoned = !isDone() && !hasAgents();
+        }
+        if (abandoned) {
+            stop(listener);
+            throw new AbortException(Messages.fanOutNoAgents(label));
+        }
+        return isDone();
+    }
+    /**
+     * Checks a launched shard.
+     *
+     * @param assignment the assignment of the shard
+     * @param workspace  the workspace of the step
+     * @param now        the current time
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private void check(final Assignment assignment, final FilePath workspace,
+            final long now) throws IOException, InterruptedException {
+        final PrintStream logger = listener.getLogger();
+        final TestEventShard shard = shards.get(assignment.shard);
+        final String agent = assignment.agent;
+        final Node node = getOnlineNode(agent);
+        if (node == null) {
+            if (assignment.offlineSince == 0) {
+                assignment.offlineSince = now;
+                logger.println(Messages.fanOutOffline(shard, agent));
+            } else if (now - assignment.offlineSince > OFFLINE_GRACE) {
+                giveUp(agent);
+                abandon(assignment, null);
+                logger.println(Messages.fanOutReassigned(shard, agent));
+            }
+            return;
+        }
+        assignment.offlineSince = 0;
+        if (assignment.isInterrupted()) {
+            abandon(assignment, node);
+            logger.println(Messages.fanOutInterrupted(shard, agent));
+            return;
+        }
+        final FilePath agentWorkspace = node.createPath(assignment.workspace);
+        final Controller controller = assignment.controller;
+        controller.writeLog(agentWorkspace, logger);
+        final Integer exitCode = controller.exitStatus(agentWorkspace,
+                node.createLauncher(listener));
+        if (exitCode == null) {
+            if (!assignment.straggler && isStraggler(assignment.shard, now)) {
+                assignment.straggler = true;
+                final long seconds = (now - assignment.started) / 1000;
+                if (retry(assignment.shard)) {
+                    logger.println(Messages.fanOutStraggler(shard, agent,
+                            seconds));
+                    abandon(assignment, node);
+                } else {
+                    logger.println(Messages.fanOutStragglerRetried(shard,
+                            agent, seconds));
+                }
+            }
+            return;
+        }
+        controller.writeLog(agentWorkspace, logger);
+        controller.cleanup(agentWorkspace);
+        gather(shard, assignment.resultsFile, agentWorkspace, workspace);
+        ClientConfigFile.delete(agentWorkspace, assignment.configFiles,
+                listener);
+        release(assignment);
+        finished(assignment.shard, exitCode, System.currentTimeMillis());
+    }
+    /**
+     * Stops the client of a shard, releases its executor and puts the shard
+     * back. If the agent is offline, the client is stopped once the agent is
+     * back.
+     *
+     * @param assignment the assignment of the shard
+     * @param node       the node of the agent, null if it is offline
+     */
+    private void abandon(final Assignment assignment, final Node node) {
+        if (node == null || !stopClient(assignment, node)) {
+            synchronized (this) {
+                orphans.add(assignment);
+            }
+        }
+        release(assignment);
+        requeue(assignment.shard);
+    }
+    /**
+     * Stops a client and deletes its configuration files.
+     *
+     * @param assignment the assignment of the client
+     * @param node       the node of the agent
+     * @return false, if the agent could not be reached
+     */
+    private boolean stopClient(final Assignment assignment, final Node node) {
+        final FilePath agentWorkspace = node.createPath(assignment.workspace);
+        try {
+            assignment.controller.stop(agentWorkspace,
+                    node.createLauncher(listener));
+            assignment.controller.cleanup(agentWorkspace);
+            ClientConfigFile.delete(agentWorkspace, assignment.configFiles,
+                    listener);
+            return true;
+        } catch (final IOException | InterruptedException e) {
+            LOGGER.log(Level.FINE, "Could not stop Tricentis CI client", e);
+            return false;
+        }
+    }
+    /**
+     * Stops the clients left on agents which are online again.
+     */
+    private void stopOrphans() {
+        final List<Assignment> left;
+        synchronized (this) {
+            left = new ArrayList<>(orphans);
+        }
+        for (final Assignment orphan : left) {
+            final Node node = getOnlineNode(orphan.agent);
+            if (node != null && stopClient(orphan, node)) {
+                synchronized (this) {
+                    orphans.remove(orphan);
+                }
+                listener.getLogger().println(Messages.fanOutOrphanStopped(
+                        shards.get(orphan.shard), orphan.agent));
+            }
+        }
+    }
+    /**
+     * Queues a task for every shard which needs an executor: waiting shards,
+     * shards whose task was lost by a restart of Jenkins and running shards
+     * which have to reattach to their agent after a restart.
+     */
+    private void queue() {
+        final List<FanOutTask> tasks = new ArrayList<>();
+        synchronized (this) {
+            final Label parsed = getLabel(label);
+            for (Integer index = next(); index != null; index = next()) {
+                LOGGER.log(Level.FINE, "Queueing shard {0}", index);
+            }
+            for (final Assignment assignment : running.values()) {
+                if (assignment.task != null || assignment.lease != null
+                        || assignment.launching) {
+                    continue;
+                }
+                if (assignment.controller == null) {
+                    assignment.agent = null;
+                    assignment.task = new FanOutTask(this, assignment.shard,
+                            run, parsed, null);
+                } else {
+                    final Node node = getOnlineNode(assignment.agent);
+                    if (node == null) {
+                        continue;
+                    }
+                    assignment.task = new FanOutTask(this, assignment.shard,
+                            run, node.getSelfLabel(), assignment.agent);
+                }
+                tasks.add(assignment.task);
+            }
+        }
+        final Queue queue = Queue.getInstance();
+        for (final FanOutTask task : tasks) {
+            queue.schedule2(task, 0);
+        }
+    }
+    /**
+     * Checks whether an agent matching the label is left.
+     *
+     * @return true, if an agent is left
+     */
+    private boolean hasAgents() {
+        for (final Node node : getNodes(label)) {
+            if (!lost.contains(node.getNodeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Launches the client of a shard on the executor which took its task,
+     * or reattaches to the client after a restart. This runs on the thread
+     * of the executor, so the environment is the one of the agent.
+     *
+     * @param task     the task
+     * @param executor the executor
+     * @return the execution holding the executor, or null if the executor is
+     *         not needed
+     */
+    FanOutTask.Execution start(final FanOutTask task,
+            final Executor executor) {
+        final Computer computer = executor.getOwner();
+        final Node node = computer.getNode();
+        final Assignment assignment;
+        synchronized (this) {
+            assignment = running.get(task.getShard());
+            if (node == null || assignment == null
+                    || assignment.task != task) {
+                return null;
+            }
+            assignment.task = null;
+            if (!task.isReattach() && !assign(task.getShard(),
+                    node.getNodeName(), System.currentTimeMillis())) {
+                return null;
+            }
+            assignment.launching = true;
+        }
+        if (task.isReattach()) {
+            return reattach(task, assignment, computer, node);
+        }
+        final TestEventShard shard = shards.get(assignment.shard);
+        final String agent = node.getNodeName();
+        final PrintStream logger = listener.getLogger();
+        WorkspaceList.Lease lease = null;
+        try {
+            final Job<?, ?> job = run.getParent();
+            final FilePath path = job instanceof TopLevelItem
+                    ? node.getWorkspaceFor((TopLevelItem) job) : null;
+            if (path == null) {
+                throw new IOException(Messages.fanOutNoWorkspace(agent));
+            }
+            lease = computer.getWorkspaceList().allocate(path);
+            final FilePath agentWorkspace = lease.path;
+            agentWorkspace.mkdirs();
+            final EnvVars envVars = run.getEnvironment(listener);
+            envVars.put("WORKSPACE", agentWorkspace.getRemote());
+            envVars.put("NODE_NAME",
+                    node instanceof Jenkins ? "master" : agent);
+            envVars.put("EXECUTOR_NUMBER",
+                    String.valueOf(executor.getNumber()));
+            final Launcher launcher = node.createLauncher(listener);
+            final TricentisCiBuilder parameters = getBuilder();
+            final ProcStarter starter = parameters.getProcStarterFactory()
+                    .create(parameters, shard, run, agentWorkspace, launcher,
+                            listener);
+            final Controller controller = TricentisCiStepExecution
+                    .createTask(starter.cmds(), launcher.isUnix())
+                    .launch(envVars, agentWorkspace, launcher, listener);
+            logger.println(Messages.fanOutLaunched(shard, agent,
+                    agentWorkspace.getRemote()));
+            final FanOutTask.Execution execution
+                    = new FanOutTask.Execution(task);
+            synchronized (this) {
+                assignment.launching = false;
+                assignment.workspace = agentWorkspace.getRemote();
+                assignment.controller = controller;
+                assignment.configFiles = new ArrayList<>(
+                        ClientConfigFile.getFiles(starter));
+                assignment.resultsFile
+                        = envVars.expand(shard.getResultsFile());
+                if (!stopped) {
+                    assignment.lease = lease;
+                    assignment.execution = execution;
+                    return execution;
+                }
+            }
+            stopClient(assignment, node);
+        } catch (final Exception e) {
+            synchronized (this) {
+                assignment.launching = false;
+            }
+            giveUp(agent);
+            requeue(assignment.shard);
+            logger.println(Messages.fanOutLaunchFailed(shard, agent,
+                    e.getMessage()));
+        }
+        if (lease != null) {
+            lease.release();
+        }
+        return null;
+    }
+    /**
+     * Takes the workspace of a client which is still running after a restart
+     * of Jenkins, so the executor is held until the client has finished.
+     *
+     * @param task       the task
+     * @param assignment the assignment of the shard
+     * @param computer   the computer of the executor
+     * @param node       the node of the agent
+     * @return the execution holding the executor, or null if the shard has
+     *         been given up meanwhile
+     */
+    private FanOutTask.Execution reattach(final FanOutTask task,
+            final Assignment assignment, final Computer computer,
+            final Node node) {
+        final WorkspaceList.Lease lease;
+        try {
+            lease = computer.getWorkspaceList().acquire(
+                    node.createPath(assignment.workspace));
+        } catch (final InterruptedException e) {
+            return null;
+        }
+        final FanOutTask.Execution execution
+                = new FanOutTask.Execution(task);
+        synchronized (this) {
+            if (!stopped && running.get(assignment.shard) == assignment) {
+                assignment.lease = lease;
+                assignment.execution = execution;
+                return execution;
+            }
+        }
+        lease.release();
+        return null;
+    }
+    /**
+     * Records that the executor of a shard has been interrupted.
+     *
+     * @param task the task of the shard
+     */
+    synchronized void interrupted(final FanOutTask task) {
+        final Assignment assignment = running.get(task.getShard());
+        if (assignment != null && assignment.execution != null) {
+            assignment.interrupted = true;
+        }
+    }
+    /**
+     * Releases the executor and the workspace of a shard and withdraws its
+     * task from the queue.
+     *
+     * @param assignment the assignment of the shard
+     */
+    private void release(final Assignment assignment) {
+        final FanOutTask task;
+        final WorkspaceList.Lease lease;
+        final FanOutTask.Execution execution;
+        synchronized (this) {
+            task = assignment.task;
+            lease = assignment.lease;
+            execution = assignment.execution;
+            assignment.task = null;
+            assignment.lease = null;
+            assignment.execution = null;
+        }
+        if (task != null) {
+            Queue.getInstance().cancel(task);
+        }
+        if (lease != null) {
+            lease.release();
+        }
+        if (execution != null) {
+            execution.completed(null);
+        }
+    }
+    /**
+     * Copies the results file of a finished shard to the workspace of the
+     * step.
+     *
+     * @param shard          the shard
+     * @param resultsFile    the results file as expanded on the agent
+     * @param agentWorkspace the workspace of the shard on the agent
+     * @param workspace      the workspace of the step
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private void gather(final TestEventShard shard, final String resultsFile,
+            final FilePath agentWorkspace, final FilePath workspace)
+            throws IOException, InterruptedException {
+        final FilePath source = agentWorkspace.child(resultsFile);
+        if (source.exists()) {
+            source.copyTo(workspace.child(run.getEnvironment(listener)
+                    .expand(shard.getResultsFile())));
+        }
+    }
+    /**
+     * Stops the fan-out: withdraws the queued tasks, stops the running
+     * clients and releases their executors.
+     *
+     * @param newListener the listener
+     */
+    void stop(final TaskListener newListener) {
+        final List<Assignment> assignments;
+        synchronized (this) {
+            stopped = true;
+            listener = newListener;
+            assignments = new ArrayList<>(running.values());
+        }
+        for (final Assignment assignment : assignments) {
+            final Node node = getOnlineNode(assignment.agent);
+            if (node != null && assignment.controller != null) {
+                stopClient(assignment, node);
+            }
+            release(assignment);
+        }
+    }
+    /**
+     * Stops the clients left on agents which were offline, if they are back
+     * by now. Clients on agents which are still offline are logged.
+     */
+    void cleanup() {
+        stopOrphans();
+        synchronized (this) {
+            for (final Assignment orphan : orphans) {
+                LOGGER.log(Level.WARNING, "Tricentis CI client of {0} may"
+                        + " still be running in {1} on {2}", new Object[] {
+                                run, orphan.workspace, orphan.agent });
+            }
+        }
+    }
+    /**
+     * Gets the builder, restoring it after a restart.
+     *
+     * @return the builder
+     */
+    private TricentisCiBuilder getBuilder() {
+        if (builder == null) {
+            builder = (TricentisCiBuilder) Jenkins.XSTREAM2
+                    .fromXML(builderXml);
+        }
+        return builder;
+    }
+    /**
+     * Gets the node of an agent if it is online.
+     *
+     * @param agent the agent, null if none
+     * @return the node, or null if it is offline or has been removed
+     */
+    private static Node getOnlineNode(final String agent) {
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null || agent == null) {
+            return null;
+        }
+        final Node node = agent.isEmpty() ? jenkins : jenkins.getNode(agent);
+        if (node == null) {
+            return null;
+        }
+        final Computer computer = node.toComputer();
+        return computer != null && computer.isOnline() ? node : null;
+    }
+
+    /**
+     * A shard which is queued or running on an agent.
+     */
+    private static final class Assignment implements Serializable {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The index of the shard. */
+        private final int shard;
+        /** The agent, null while the shard is queued. */
+        private String agent;
+        /** The time the shard was assigned to the agent. */
+        private long started;
+        /** The workspace of the shard on the agent. */
+        private String workspace;
+        /** The controller of the client process. */
+        private Controller controller;
+        /** The configuration files generated for the client. */
+        private List<String> configFiles = Collections.emptyList();
+        /** The results file, as expanded on the agent. */
+        private String resultsFile;
+        /** The time the agent went offline, 0 if online. */
+        private long offlineSince;
+        /** Whether the shard has been reported as straggler. */
+        private boolean straggler;
+        /** Whether the executor of the shard has been interrupted. */
+        private boolean interrupted;
+        /** The queued task, null if none. */
+        private transient FanOutTask task;
+        /** Whether the client is being launched. */
+        private transient boolean launching;
+        /** The workspace lease, null if not held. */
+        private transient WorkspaceList.Lease lease;
+        /** The execution holding the executor, null if not held. */
+        private transient FanOutTask.Execution execution;
+
+        /**
+         * Instantiates a new assignment.
+         *
+         * @param newShard the index of the shard
+         */
+        private Assignment(final int newShard) {
+            this.shard = newShard;
+        }
+        /**
+         * Checks whether the executor of the shard has been interrupted.
+         *
+         * @return true, if interrupted
+         */
+        private boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+}
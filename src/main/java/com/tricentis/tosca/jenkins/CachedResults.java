@@ -0,0 +1,431 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import com.tricentis.tosca.jenkins.ResultsSummaryParser.Status;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * The test events of a build whose results are taken from the
+ * {@link ResultCache} instead of executing them. The cached results are
+ * copied into the workspace and published with the results of the executed
+ * test events, and deleted with {@link #delete} once they are published.
+ * After the build, the results of the executed test events which passed are
+ * put into the cache. A configuration file is cached as a
+ * whole, like a single test event.
+ */
+final class CachedResults {
+    /** The Constant RESULTS_FILE_PREFIX. */
+    private static final String RESULTS_FILE_PREFIX = "results-cached-";
+    /** The Constant RESULTS_FILE_EXTENSION. */
+    private static final String RESULTS_FILE_EXTENSION = ".xml";
+    /** The number of characters of a key shown in the log. */
+    private static final int KEY_PREFIX = 12;
+    /** The cache. */
+    private final ResultCache cache;
+    /** The keys of the test events which were not cached. */
+    private final Map<String, String> keys = new LinkedHashMap<>();
+    /** The results files in the workspace of the cached test events. */
+    private final Map<String, String> hits = new LinkedHashMap<>();
+    /** The configuration file, if it is cached instead of test events. */
+    private final String configurationFile;
+
+    /**
+     * Instantiates new cached results.
+     *
+     * @param newCache             the cache
+     * @param newConfigurationFile the configuration file, null for test
+     *                             events
+     */
+    private CachedResults(final ResultCache newCache,
+            final String newConfigurationFile) {
+        this.cache = newCache;
+        this.configurationFile = newConfigurationFile;
+    }
+    /**
+     * Looks up the results of test events, or of the configuration file if
+     * there are no test events, in the cache of the controller and copies
+     * the cached ones into the workspace.
+     *
+     * @param builder    the builder holding the parameters
+     * @param testEvents the test events to execute
+     * @param run        the run
+     * @param workspace  the workspace
+     * @param listener   the listener
+     * @return the cached results, or null if the cache does not apply
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    static CachedResults lookup(final TricentisCiBuilder builder,
+            final List<String> testEvents, final Run<?, ?> run,
+            final FilePath workspace, final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        final EnvVars vars = run.getEnvironment(listener);
+        final String sutVersion = vars.expand(builder.getSutVersion()).trim();
+        if (sutVersion.isEmpty()) {
+            logger.println(Messages.resultCacheNoSutVersion());
+            return null;
+        }
+        final ResultCache cache = ResultCache.forController();
+        if (cache == null) {
+            return null;
+        }
+        final String endpoint = vars.expand(builder.getEndpoint());
+        final List<String> units;
+        final String config;
+        final CachedResults cached;
+        if (testEvents.isEmpty()) {
+            final String path = vars.expand(builder.getConfigurationFilePath());
+            if (path.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                config = workspace.child(path).readToString();
+            } catch (final IOException e) {
+                logger.println(Messages.resultCacheUnreadable(path,
+                        e.getMessage()));
+                return null;
+            }
+            units = Collections.singletonList("");
+            cached = new CachedResults(cache, path);
+        } else {
+            config = "";
+            units = testEvents;
+            cached = new CachedResults(cache, null);
+        }
+        for (final String unit : units) {
+            final String key = ResultCache.key(endpoint, unit, config,
+                    sutVersion);
+            final File entry = cache.get(key);
+            if (entry == null) {
+                cached.keys.put(unit, key);
+                continue;
+            }
+            final String resultsFile = RESULTS_FILE_PREFIX
+                    + (cached.hits.size() + 1) + RESULTS_FILE_EXTENSION;
+            workspace.child(resultsFile).copyFrom(new FilePath(entry));
+            cached.hits.put(unit, resultsFile);
+            logger.println(Messages.resultCacheHit(cached.getName(unit),
+                    key.substring(0, KEY_PREFIX)));
+        }
+        logger.println(Messages.resultCacheLog(cached.hits.size(),
+                units.size(), sutVersion));
+        if (!cached.hits.isEmpty()) {
+            final List<String> names = new ArrayList<>();
+            for (final String unit : cached.hits.keySet()) {
+                names.add(cached.getName(unit));
+            }
+            run.addAction(new CachedResultsAction(names, sutVersion));
+        }
+        return cached;
+    }
+    /**
+     * Checks whether results were taken from the cache.
+     *
+     * @return true, if there are cached results
+     */
+    boolean hasHits() {
+        return !hits.isEmpty();
+    }
+    /**
+     * Checks whether all results were taken from the cache, so nothing is
+     * executed.
+     *
+     * @return true, if complete
+     */
+    boolean isComplete() {
+        return keys.isEmpty();
+    }
+    /**
+     * Gets the test events which are executed.
+     *
+     * @return the test events which were not cached
+     */
+    List<String> getMissed() {
+        final List<String> missed = new ArrayList<>();
+        if (configurationFile == null) {
+            missed.addAll(keys.keySet());
+        }
+        return missed;
+    }
+    /**
+     * Gets the results files of the cached test events in the workspace.
+     *
+     * @return the results files
+     */
+    List<String> getResultsFiles() {
+        return new ArrayList<>(hits.values());
+    }
+    /**
+     * Gets the cached test events as shards, one per results file, which
+     * are considered passed.
+     *
+     * @return the shards
+     */
+    List<TestEventShard> getShards() {
+        final List<TestEventShard> shards = new ArrayList<>();
+        for (final Map.Entry<String, String> hit : hits.entrySet()) {
+            final List<String> events = hit.getKey().isEmpty()
+                    ? Collections.<String>emptyList()
+                    : Collections.singletonList(hit.getKey());
+            shards.add(new TestEventShard(shards.size(), hits.size(), events,
+                    hit.getValue()));
+        }
+        return shards;
+    }
+    /**
+     * Puts the results of the executed test events which passed into the
+     * cache. Failures are logged, they do not fail the build.
+     *
+     * @param shards    the executed shards
+     * @param results   the results of the client processes of the shards
+     * @param workspace the workspace
+     * @param logger    the logger
+     * @throws InterruptedException the interrupted exception
+     */
+    void store(final List<TestEventShard> shards,
+            final List<ProcessResult> results, final FilePath workspace,
+            final PrintStream logger) throws InterruptedException {
+        int stored = 0;
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                if (results.get(i).getExitCode() != 0) {
+                    continue;
+                }
+                final List<String> units = new ArrayList<>();
+                for (final String event : shards.get(i).getTestEvents()) {
+                    if (keys.containsKey(event)) {
+                        units.add(event);
+                    }
+                }
+                if (units.isEmpty() && keys.containsKey("")) {
+                    units.add("");
+                }
+                if (units.isEmpty()) {
+                    continue;
+                }
+                final Map<String, byte[]> reports = workspace.act(
+                        new Split(shards.get(i).getResultsFile(), units));
+                for (final Map.Entry<String, byte[]> report
+                        : reports.entrySet()) {
+                    cache.put(keys.get(report.getKey()), report.getValue());
+                    stored++;
+                }
+            }
+            logger.println(Messages.resultCacheStored(stored));
+        } catch (final IOException e) {
+            logger.println(Messages.resultCacheStoreFailed(e.getMessage()));
+        }
+    }
+    /**
+     * Deletes the copies of the cached results from the workspace in a
+     * single call, once they are published. Failures are only logged, they
+     * do not fail the build.
+     *
+     * @param workspace the workspace
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     */
+    void delete(final FilePath workspace, final TaskListener listener)
+            throws InterruptedException {
+        if (hits.isEmpty()) {
+            return;
+        }
+        try {
+            workspace.act(new Cleanup(getResultsFiles()));
+        } catch (final IOException e) {
+            listener.getLogger()
+                    .println(Messages.resultCacheDeleteFailed(e.getMessage()));
+        }
+    }
+    /**
+     * Gets the name of a cached test event for the log.
+     *
+     * @param unit the test event, empty for the configuration file
+     * @return the name
+     */
+    private String getName(final String unit) {
+        return unit.isEmpty() ? configurationFile : unit;
+    }
+
+    /**
+     * Splits a results file into one report per test event. A test case
+     * belongs to the test event named by its class name or name, or to the
+     * only test event of the file. Test events with a failed test case are
+     * left out. If a test case cannot be attributed, nothing is returned.
+     * Invoked on the workspace.
+     */
+    static final class Split
+            extends MasterToSlaveFileCallable<Map<String, byte[]>> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The results file, relative to the workspace. */
+        private final String resultsFile;
+        /** The test events of the results file. */
+        private final List<String> testEvents;
+
+        /**
+         * Instantiates a new split.
+         *
+         * @param newResultsFile the results file, relative to the workspace
+         * @param newTestEvents  the test events of the results file
+         */
+        Split(final String newResultsFile, final List<String> newTestEvents) {
+            this.resultsFile = newResultsFile;
+            this.testEvents = new ArrayList<>(newTestEvents);
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return the reports of the passed test events by test event
+         * @throws IOException          Signals that an I/O exception has
+         *                              occurred.
+         * @throws InterruptedException the interrupted exception
+         */
+        @Override
+        public Map<String, byte[]> invoke(final File workspace,
+                final VirtualChannel channel)
+                throws IOException, InterruptedException {
+            final Map<String, byte[]> reports = new HashMap<>();
+            final File file = new File(workspace, resultsFile);
+            if (!file.isFile()) {
+                return reports;
+            }
+            final Map<String, ResultsMerger.Suites> suites = new HashMap<>();
+            for (final String event : testEvents) {
+                suites.put(event, new ResultsMerger.Suites(false));
+            }
+            final Set<String> failed = new HashSet<>();
+            final boolean[] unattributed = new boolean[1];
+            try (InputStream in = new BufferedInputStream(
+                    new FileInputStream(file))) {
+                new ResultsSummaryParser().parse(in,
+                        new ResultsSummaryParser.Handler() {
+                            @Override
+                            public void testCase(final String className,
+                                    final String name, final Status status,
+                                    final double duration,
+                                    final String message,
+                                    final String details) {
+                                final String event = attribute(className,
+                                        name, testEvents);
+                                if (event == null) {
+                                    unattributed[0] = true;
+                                    return;
+                                }
+                                if (status == Status.FAILED
+                                        || status == Status.ERROR) {
+                                    failed.add(event);
+                                }
+                                suites.get(event).testCase(className, name,
+                                        status, duration, message, details);
+                            }
+                        });
+            }
+            if (unattributed[0]) {
+                return reports;
+            }
+            for (final Map.Entry<String, ResultsMerger.Suites> suite
+                    : suites.entrySet()) {
+                if (!failed.contains(suite.getKey())
+                        && suite.getValue().size() > 0) {
+                    final ByteArrayOutputStream out
+                            = new ByteArrayOutputStream();
+                    suite.getValue().write(out);
+                    reports.put(suite.getKey(), out.toByteArray());
+                }
+            }
+            return reports;
+        }
+        /**
+         * Attributes a test case to a test event.
+         *
+         * @param className the class name of the test case
+         * @param name      the name of the test case
+         * @param events    the test events
+         * @return the test event, or null if none matches
+         */
+        static String attribute(final String className, final String name,
+                final List<String> events) {
+            if (events.size() == 1) {
+                return events.get(0);
+            }
+            final String testCase = (className + ' ' + name)
+                    .toLowerCase(Locale.ENGLISH);
+            for (final String event : events) {
+                if (testCase.contains(event.toLowerCase(Locale.ENGLISH))) {
+                    return event;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the copies of cached results. Invoked on the workspace.
+     */
+    static final class Cleanup
+            extends MasterToSlaveFileCallable<Void> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The results files, relative to the workspace. */
+        private final ArrayList<String> files;
+
+        /**
+         * Instantiates a new cleanup.
+         *
+         * @param newFiles the results files, relative to the workspace
+         */
+        Cleanup(final List<String> newFiles) {
+            this.files = new ArrayList<>(newFiles);
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return null
+         * @throws IOException if a file could not be deleted
+         */
+        @Override
+        public Void invoke(final File workspace, final VirtualChannel channel)
+                throws IOException {
+            final List<String> failed = new ArrayList<>();
+            for (final String name : files) {
+                final File file = new File(workspace, name);
+                if (!file.delete() && file.exists()) {
+                    failed.add(name);
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new IOException(failed.toString());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import hudson.model.InvisibleAction;
+
+/**
+ * Marks a build whose results of some test events were taken from the
+ * {@link ResultCache} instead of executing them. Shown on the build page.
+ */
+public class CachedResultsAction extends InvisibleAction {
+    /** The cached test events, or the cached configuration file. */
+    private final List<String> testEvents;
+    /** The version of the system under test. */
+    private final String sutVersion;
+
+    /**
+     * Instantiates a new cached results action.
+     *
+     * @param newTestEvents the cached test events, or the cached
+     *                      configuration file
+     * @param newSutVersion the version of the system under test
+     */
+    CachedResultsAction(final List<String> newTestEvents,
+            final String newSutVersion) {
+        this.testEvents = new ArrayList<>(newTestEvents);
+        this.sutVersion = newSutVersion;
+    }
+    /**
+     * Gets the cached test events.
+     *
+     * @return the test events, or the configuration file
+     */
+    public List<String> getTestEvents() {
+        return Collections.unmodifiableList(testEvents);
+    }
+    /**
+     * Gets the version of the system under test.
+     *
+     * @return the SUT version
+     */
+    public String getSutVersion() {
+        return sutVersion;
+    }
+}
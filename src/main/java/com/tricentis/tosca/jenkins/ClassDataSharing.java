@@ -0,0 +1,148 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Determines the class data sharing options of a client jar. The archive of
+ * the loaded classes is stored next to the client jar, keyed by the MD5 hash
+ * of the jar and the version of the JDK. If there is none yet, the first run
+ * creates it with <code>-XX:ArchiveClassesAtExit</code>, later runs map it
+ * with <code>-XX:SharedArchiveFile</code>. Dynamic archives require Java 13
+ * or later, no options are returned for older versions. Invoked on the client
+ * jar.
+ */
+class ClassDataSharing extends MasterToSlaveFileCallable<List<String>> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The first Java version which supports dynamic archives. */
+    static final int MIN_JAVA_VERSION = 13;
+    /** The option which creates the archive at exit. */
+    static final String CREATE_OPTION = "-XX:ArchiveClassesAtExit=";
+    /** The option which uses the archive. */
+    static final String USE_OPTION = "-XX:SharedArchiveFile=";
+    /** The Constant ARCHIVE_EXTENSION. */
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+    /** The Constant LOCK_EXTENSION. */
+    private static final String LOCK_EXTENSION = ".lock";
+    /**
+     * The age after which a lock is considered left over by a run which did
+     * not create the archive.
+     */
+    private static final long STALE_LOCK_AGE = TimeUnit.HOURS.toMillis(1);
+    /** The java home. */
+    private final String javaHome;
+    /** The launch descriptor of the jar, null to resolve it here. */
+    private final ClientLaunchCache.Descriptor descriptor;
+
+    /**
+     * Instantiates a new class data sharing.
+     *
+     * @param newJavaHome the java home on the agent
+     */
+    ClassDataSharing(final String newJavaHome) {
+        this(newJavaHome, null);
+    }
+    /**
+     * Instantiates a new class data sharing which takes the version of Java
+     * and the hash of the jar from a cached launch descriptor. The cached
+     * descriptor may be stale, for example right after the client was
+     * upgraded, so it is only used if it is still current on the agent.
+     *
+     * @param newJavaHome   the java home on the agent
+     * @param newDescriptor the launch descriptor of the jar, null to resolve
+     *                      it here
+     */
+    ClassDataSharing(final String newJavaHome,
+            final ClientLaunchCache.Descriptor newDescriptor) {
+        this.javaHome = newJavaHome;
+        this.descriptor = newDescriptor;
+    }
+    /**
+     * Invoke. Only one run creates the archive: the one which creates its
+     * lock file. Runs started while the archive is being created get no
+     * options.
+     *
+     * @param jar     the client jar
+     * @param channel the channel
+     * @return the options, empty if class data sharing is not available
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public List<String> invoke(final File jar, final VirtualChannel channel)
+            throws IOException {
+        final List<String> options = new ArrayList<>();
+        final File home = new File(javaHome);
+        final ClientLaunchCache.Descriptor current
+                = descriptor != null && descriptor.isCurrent(jar, home)
+                        ? descriptor : null;
+        final String version = current == null
+                ? JavaRelease.readVersion(home) : current.getJavaVersion();
+        if (JavaRelease.getMajorVersion(version) < MIN_JAVA_VERSION
+                || !jar.isFile()) {
+            return options;
+        }
+        final File archive = getArchive(jar, version,
+                current == null || current.getClientDigest() == null
+                        ? Util.getDigestOf(jar)
+                        : current.getClientDigest());
+        final File lock = new File(archive.getPath() + LOCK_EXTENSION);
+        if (archive.isFile() && archive.length() > 0) {
+            lock.delete();
+            options.add(USE_OPTION + archive.getAbsolutePath());
+            return options;
+        }
+        if (lock.isFile() && System.currentTimeMillis()
+                - lock.lastModified() > STALE_LOCK_AGE) {
+            lock.delete();
+        }
+        try {
+            if (lock.createNewFile()) {
+                options.add(CREATE_OPTION + archive.getAbsolutePath());
+            }
+        } catch (final IOException e) {
+            // The directory of the client is not writable.
+        }
+        return options;
+    }
+    /**
+     * Gets the archive of a client jar.
+     *
+     * @param jar     the client jar
+     * @param version the version of the JDK
+     * @return the archive
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static File getArchive(final File jar, final String version)
+            throws IOException {
+        return getArchive(jar, version, Util.getDigestOf(jar));
+    }
+    /**
+     * Gets the archive of a client jar with a known hash.
+     *
+     * @param jar     the client jar
+     * @param version the version of the JDK
+     * @param digest  the MD5 hash of the jar
+     * @return the archive
+     */
+    static File getArchive(final File jar, final String version,
+            final String digest) {
+        final String name = jar.getName();
+        final int extension = name.lastIndexOf('.');
+        final String baseName
+                = extension > 0 ? name.substring(0, extension) : name;
+        return new File(jar.getAbsoluteFile().getParentFile(),
+                baseName + "-" + digest + "-"
+                        + version.replaceAll("[^A-Za-z0-9._-]", "_")
+                        + ARCHIVE_EXTENSION);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import hudson.FilePath;
+import hudson.Launcher.ProcStarter;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Writes the configuration file of the client for a list of test events, on
+ * the agent in a single call. The name of the file is unique per execution
+ * and shard, so builds sharing a workspace do not overwrite each other's
+ * configuration, and the file is deleted with {@link #delete} once the client
+ * has finished. Invoked on the workspace.
+ */
+class ClientConfigFile extends MasterToSlaveFileCallable<String> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The prefix of the names of generated configuration files. */
+    static final String PREFIX = "temp-jenkins-tricentis-";
+    /** The Constant EXTENSION. */
+    private static final String EXTENSION = ".xml";
+    /** The file name, relative to the workspace. */
+    private final String fileName;
+    /** The test events, separated by semicolons. */
+    private final String testEvents;
+
+    /**
+     * Instantiates a new client config file.
+     *
+     * @param newFileName   the file name, relative to the workspace
+     * @param newTestEvents the test events, separated by semicolons
+     */
+    ClientConfigFile(final String newFileName, final String newTestEvents) {
+        this.fileName = newFileName;
+        this.testEvents = newTestEvents;
+    }
+    /**
+     * Invoke.
+     *
+     * @param workspace the workspace
+     * @param channel   the channel
+     * @return the absolute path of the file, with forward slashes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public String invoke(final File workspace, final VirtualChannel channel)
+            throws IOException {
+        final File file = new File(workspace, fileName);
+        try (TestEventsConfigWriter writer = new TestEventsConfigWriter(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            writer.addAll(testEvents);
+        }
+        return file.getAbsolutePath().replace('\\', '/');
+    }
+    /**
+     * Creates a unique name for the configuration file of an execution. It
+     * holds the build number for diagnosis and a random part, so concurrent
+     * builds and parallel steps of one build get different files.
+     *
+     * @param run   the run
+     * @param shard the shard, or null if all test events are executed
+     * @return the file name
+     */
+    static String createFileName(final Run<?, ?> run,
+            final TestEventShard shard) {
+        final String fileName = PREFIX + run.getNumber() + "-"
+                + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + EXTENSION;
+        return shard == null ? fileName : shard.getConfigFileName(fileName);
+    }
+    /**
+     * Gets the generated configuration file a starter passes to the client.
+     * Configuration files of the user are never returned.
+     *
+     * @param starter the starter
+     * @return the absolute path of the file in a list, or an empty list
+     */
+    static List<String> getFiles(final ProcStarter starter) {
+        final List<String> files = new ArrayList<>();
+        final List<String> cmds = starter.cmds();
+        if (cmds == null) {
+            return files;
+        }
+        for (int i = 0; i + 1 < cmds.size(); i++) {
+            final String path = cmds.get(i + 1);
+            if (DefaultProcStarterFactory.CONFIG_SWITCH.equals(cmds.get(i))
+                    && path.substring(path.lastIndexOf('/') + 1)
+                            .startsWith(PREFIX)) {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+    /**
+     * Deletes generated configuration files on the agent in a single call.
+     * Failures are only logged, they do not fail the build.
+     *
+     * @param workspace the workspace
+     * @param files     the absolute paths of the files
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     */
+    static void delete(final FilePath workspace, final List<String> files,
+            final TaskListener listener) throws InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            workspace.act(new Cleanup(files));
+        } catch (final IOException e) {
+            listener.getLogger()
+                    .println(Messages.configFileDeleteFailed(e.getMessage()));
+        }
+    }
+
+    /**
+     * Deletes generated configuration files. Invoked on the workspace.
+     */
+    private static final class Cleanup
+            extends MasterToSlaveFileCallable<Void> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The absolute paths of the files. */
+        private final ArrayList<String> files;
+
+        /**
+         * Instantiates a new cleanup.
+         *
+         * @param newFiles the absolute paths of the files
+         */
+        Cleanup(final List<String> newFiles) {
+            this.files = new ArrayList<>(newFiles);
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return null
+         * @throws IOException if a file could not be deleted
+         */
+        @Override
+        public Void invoke(final File workspace, final VirtualChannel channel)
+                throws IOException {
+            final List<String> failed = new ArrayList<>();
+            for (final String path : files) {
+                final File file = new File(path);
+                if (!file.delete() && file.exists()) {
+                    failed.add(path);
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new IOException(failed.toString());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.Permission;
+import java.security.SecureRandom;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Keeps a Tricentis CI client jar loaded in a resident JVM and runs its main
+ * class on request, so a build does not pay for JVM startup and class loading
+ * of the client. The daemon is started by {@link ClientDaemonRun} on the agent
+ * and accepts runs on a loopback port which it writes together with a random
+ * token and the key of its environment into its port file. One run is
+ * executed at a time, a connection accepted while a run is in progress is
+ * answered with {@link #BUSY} and closed. The daemon exits when no run was
+ * requested within the idle timeout, after the configured number of runs,
+ * when the requester of a run disconnects before the run has finished, and
+ * when it is recycled for a run with another environment. Runs are executed
+ * in the environment and working directory of the daemon, so requesters pass
+ * absolute paths. Failures of the daemon itself are written to its log.
+ * <p>
+ * This class is executed outside of Jenkins and must only depend on the JDK.
+ */
+public final class ClientDaemon {
+    /** The answer to a request which is executed. */
+    static final int ACCEPTED = 1;
+    /** The answer to a request received while a run is in progress. */
+    static final int BUSY = 2;
+    /** The length of a frame which ends the output of a run. */
+    static final int END_OF_OUTPUT = -1;
+    /** The exit code of a run which failed with an exception. */
+    static final int FAILURE_EXIT_CODE = 1;
+    /** The number of arguments of a request which recycles the daemon. */
+    static final int RECYCLE = -1;
+    /** The Constant TOKEN_LENGTH. */
+    private static final int TOKEN_LENGTH = 16;
+    /** The Constant CLASS_SUFFIX. */
+    private static final String CLASS_SUFFIX = ".class";
+    /** The main method of the client. */
+    private final Method main;
+    /** The port file. */
+    private final File portFile;
+    /** The idle timeout in milliseconds. */
+    private final int idleTimeout;
+    /** The number of runs after which the daemon exits. */
+    private final int maxRuns;
+    /** The key of the environment of the daemon. */
+    private final String environment;
+    /** The log of the daemon, its standard error at startup. */
+    private final PrintStream log = System.err;
+    /** The token a request must present. */
+    private final String token;
+    /** The trap for exit calls of the client. */
+    private final ExitTrap exitTrap = new ExitTrap();
+    /** The number of runs started. */
+    private int runs;
+    /** Whether a run is in progress. */
+    private boolean running;
+
+    /**
+     * Instantiates a new client daemon.
+     *
+     * @param newMain        the main method of the client
+     * @param newPortFile    the port file
+     * @param newIdleTimeout the idle timeout in milliseconds
+     * @param newMaxRuns     the number of runs after which the daemon exits
+     * @param newEnvironment the key of the environment of the daemon
+     */
+    private ClientDaemon(final Method newMain, final File newPortFile,
+            final int newIdleTimeout, final int newMaxRuns,
+            final String newEnvironment) {
+        this.main = newMain;
+        this.portFile = newPortFile;
+        this.idleTimeout = newIdleTimeout;
+        this.maxRuns = newMaxRuns;
+        this.environment = newEnvironment;
+        final byte[] bytes = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        this.token = hex.toString();
+    }
+    /**
+     * The main method. The arguments are the client jar, the port file, the
+     * idle timeout in milliseconds, the number of runs after which the daemon
+     * exits and the key of the environment of the daemon.
+     *
+     * @param args the arguments
+     * @throws Exception the exception
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 5) {
+            System.err.println("Usage: ClientDaemon <client jar> <port file>"
+                    + " <idle timeout ms> <max runs> <environment key>");
+            System.exit(FAILURE_EXIT_CODE);
+        }
+        final File jar = new File(args[0]).getAbsoluteFile();
+        final ClassLoader loader = new URLClassLoader(
+                new URL[] {jar.toURI().toURL()},
+                ClientDaemon.class.getClassLoader());
+        final String mainClass;
+        try (JarFile jarFile = new JarFile(jar)) {
+            mainClass = jarFile.getManifest().getMainAttributes()
+                    .getValue(Attributes.Name.MAIN_CLASS);
+        }
+        final ClientDaemon daemon = new ClientDaemon(
+                loader.loadClass(mainClass).getMethod("main", String[].class),
+                new File(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]), args[4]);
+        System.setSecurityManager(daemon.exitTrap);
+        daemon.serve(jar, loader);
+    }
+    /**
+     * Accepts runs until the daemon is idle or has executed the maximum number
+     * of runs.
+     *
+     * @param jar    the client jar
+     * @param loader the class loader of the client
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void serve(final File jar, final ClassLoader loader)
+            throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 0,
+                InetAddress.getByName(null))) {
+            server.setSoTimeout(idleTimeout);
+            writePortFile(server.getLocalPort());
+            final Thread preloader = new Thread(new Preloader(jar, loader),
+                    "Tricentis CI client preloader");
+            preloader.setDaemon(true);
+            preloader.setPriority(Thread.MIN_PRIORITY);
+            preloader.start();
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (final SocketTimeoutException e) {
+                    if (isIdle()) {
+                        break;
+                    }
+                    continue;
+                }
+                if (!accept(socket)) {
+                    break;
+                }
+            }
+            awaitRuns();
+        } finally {
+            portFile.delete();
+        }
+        exit(0);
+    }
+    /**
+     * Accepts a connection and starts its run, unless a run is in progress.
+     *
+     * @param socket the socket
+     * @return false if no more runs are accepted
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private synchronized boolean accept(final Socket socket)
+            throws IOException {
+        if (running) {
+            try (Socket busy = socket) {
+                busy.getOutputStream().write(BUSY);
+            }
+            return true;
+        }
+        running = true;
+        runs++;
+        final Thread thread = new Thread(new Connection(socket),
+                "Tricentis CI client run " + runs);
+        thread.start();
+        if (runs >= maxRuns) {
+            portFile.delete();
+            return false;
+        }
+        return true;
+    }
+    /**
+     * Checks whether no run is in progress.
+     *
+     * @return true, if idle
+     */
+    private synchronized boolean isIdle() {
+        return !running;
+    }
+    /**
+     * Waits until the run in progress has finished.
+     */
+    private synchronized void awaitRuns() {
+        while (running) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    /**
+     * Marks the run in progress as finished.
+     */
+    private synchronized void finished() {
+        running = false;
+        notifyAll();
+    }
+    /**
+     * Writes the port file, readable by the owner only. It is written to a
+     * temporary file first, so it never appears incomplete.
+     *
+     * @param port the port
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writePortFile(final int port) throws IOException {
+        final File tmp = new File(portFile.getPath() + ".tmp");
+        tmp.delete();
+        tmp.createNewFile();
+        tmp.setReadable(false, false);
+        tmp.setReadable(true, true);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                StandardCharsets.UTF_8)) {
+            writer.write(port + "\n" + token + "\n" + environment + "\n");
+        }
+        if (!tmp.renameTo(portFile)) {
+            portFile.delete();
+            if (!tmp.renameTo(portFile)) {
+                throw new IOException("Could not write " + portFile);
+            }
+        }
+    }
+    /**
+     * Exits the JVM.
+     *
+     * @param status the status
+     */
+    private void exit(final int status) {
+        exitTrap.allowExit();
+        System.exit(status);
+    }
+    /**
+     * Exits the daemon for a run with another environment. The port file is
+     * deleted first, so the requester can start a new daemon once the
+     * connection is closed.
+     */
+    private void recycle() {
+        log.println("Recycled for another environment");
+        portFile.delete();
+        exit(0);
+    }
+    /**
+     * Executes a run of the client.
+     *
+     * @param args the arguments
+     * @param out  the output of the run
+     * @return the exit code
+     */
+    private int run(final String[] args, final PrintStream out) {
+        final PrintStream stdout = System.out;
+        final PrintStream stderr = System.err;
+        System.setOut(out);
+        System.setErr(out);
+        try {
+            main.invoke(null, (Object) args);
+            return 0;
+        } catch (final InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ExitException) {
+                return ((ExitException) cause).getStatus();
+            }
+            cause.printStackTrace(out);
+            return FAILURE_EXIT_CODE;
+        } catch (final Exception e) {
+            e.printStackTrace(out);
+            return FAILURE_EXIT_CODE;
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /**
+     * Handles the request of a run. The connection is answered with
+     * {@link ClientDaemon#ACCEPTED} first. The request is the token, the
+     * number of arguments and the arguments, or {@link ClientDaemon#RECYCLE}
+     * to make the daemon exit. The output of the run follows in frames, each
+     * the length and the bytes, and finally
+     * {@link ClientDaemon#END_OF_OUTPUT} and the exit code.
+     */
+    private final class Connection implements Runnable {
+        /** The socket. */
+        private final Socket socket;
+
+        /**
+         * Instantiates a new connection.
+         *
+         * @param newSocket the socket
+         */
+        Connection(final Socket newSocket) {
+            this.socket = newSocket;
+        }
+        /**
+         * Run.
+         */
+        @Override
+        public void run() {
+            final DisconnectWatcher watcher = new DisconnectWatcher();
+            boolean started = false;
+            try (Socket closed = socket) {
+                socket.setSoTimeout(idleTimeout);
+                final DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream()));
+                out.write(ACCEPTED);
+                out.flush();
+                if (!token.equals(in.readUTF())) {
+                    return;
+                }
+                final int count = in.readInt();
+                if (count == RECYCLE) {
+                    recycle();
+                }
+                final String[] args = new String[count];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+                socket.setSoTimeout(0);
+                started = true;
+                watcher.watch(in);
+                final int exitCode = ClientDaemon.this.run(args,
+                        new PrintStream(new FrameOutputStream(out), true,
+                                StandardCharsets.UTF_8.name()));
+                watcher.done();
+                out.writeInt(END_OF_OUTPUT);
+                out.writeInt(exitCode);
+                out.flush();
+            } catch (final IOException e) {
+                log.println(Thread.currentThread().getName() + " failed:");
+                e.printStackTrace(log);
+            } finally {
+                if (started && !watcher.isDone()) {
+                    // The state of an abandoned client run is unknown.
+                    exit(FAILURE_EXIT_CODE);
+                }
+                finished();
+            }
+        }
+    }
+
+    /**
+     * Exits the daemon if the requester of the run in progress disconnects,
+     * because an abandoned run of the client cannot be stopped otherwise.
+     */
+    private final class DisconnectWatcher implements Runnable {
+        /** The input of the connection. */
+        private DataInputStream in;
+        /** Whether the run has finished. */
+        private volatile boolean done;
+
+        /**
+         * Starts watching the connection.
+         *
+         * @param newIn the input of the connection
+         */
+        void watch(final DataInputStream newIn) {
+            this.in = newIn;
+            final Thread thread
+                    = new Thread(this, "Tricentis CI client run watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        /**
+         * Marks the run as finished, a disconnect is expected from now on.
+         */
+        void done() {
+            done = true;
+        }
+        /**
+         * Checks whether the run has finished.
+         *
+         * @return true, if done
+         */
+        boolean isDone() {
+            return done;
+        }
+        /**
+         * Run.
+         */
+        @Override
+        public void run() {
+            try {
+                while (in.read() != -1) {
+                    continue;
+                }
+            } catch (final IOException e) {
+                // Treated as disconnect.
+            }
+            if (!done) {
+                exit(FAILURE_EXIT_CODE);
+            }
+        }
+    }
+
+    /**
+     * Sends everything written as output frames.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        /** The out. */
+        private final DataOutputStream out;
+
+        /**
+         * Instantiates a new frame output stream.
+         *
+         * @param newOut the out
+         */
+        FrameOutputStream(final DataOutputStream newOut) {
+            this.out = newOut;
+        }
+        /**
+         * Write.
+         *
+         * @param b the b
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+        /**
+         * Write.
+         *
+         * @param b   the b
+         * @param off the off
+         * @param len the len
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public synchronized void write(final byte[] b, final int off,
+                final int len) throws IOException {
+            if (len > 0) {
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+        /**
+         * Flush.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Loads all classes of the client jar in the background, so even the
+     * first run finds them loaded.
+     */
+    private static final class Preloader implements Runnable {
+        /** The jar. */
+        private final File jar;
+        /** The loader. */
+        private final ClassLoader loader;
+
+        /**
+         * Instantiates a new preloader.
+         *
+         * @param newJar    the jar
+         * @param newLoader the loader
+         */
+        Preloader(final File newJar, final ClassLoader newLoader) {
+            this.jar = newJar;
+            this.loader = newLoader;
+        }
+        /**
+         * Run.
+         */
+        @Override
+        public void run() {
+            try (JarFile jarFile = new JarFile(jar)) {
+                final Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    if (name.endsWith(CLASS_SUFFIX)) {
+                        preload(name.substring(0,
+                                name.length() - CLASS_SUFFIX.length())
+                                .replace('/', '.'));
+                    }
+                }
+            } catch (final IOException e) {
+                // Classes are loaded on demand then.
+            }
+        }
+        /**
+         * Loads a class without initializing it.
+         *
+         * @param className the class name
+         */
+        private void preload(final String className) {
+            try {
+                Class.forName(className, false, loader);
+            } catch (final ClassNotFoundException | LinkageError e) {
+                // Not loadable in advance, e.g. optional dependencies.
+            }
+        }
+    }
+
+    /**
+     * Turns calls of {@link System#exit(int)} by the client into
+     * {@link ExitException}s. Everything else is permitted.
+     */
+    private static final class ExitTrap extends SecurityManager {
+        /** Whether the daemon itself exits. */
+        private volatile boolean exitAllowed;
+
+        /**
+         * Allows the daemon to exit.
+         */
+        void allowExit() {
+            exitAllowed = true;
+        }
+        /**
+         * Check exit.
+         *
+         * @param status the status
+         */
+        @Override
+        public void checkExit(final int status) {
+            if (!exitAllowed) {
+                throw new ExitException(status);
+            }
+        }
+        /**
+         * Check permission.
+         *
+         * @param perm the perm
+         */
+        @Override
+        public void checkPermission(final Permission perm) {
+            // Permitted.
+        }
+        /**
+         * Check permission.
+         *
+         * @param perm    the perm
+         * @param context the context
+         */
+        @Override
+        public void checkPermission(final Permission perm,
+                final Object context) {
+            // Permitted.
+        }
+    }
+
+    /**
+     * Thrown instead of exiting when the client calls
+     * {@link System#exit(int)}.
+     */
+    private static final class ExitException extends SecurityException {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The status. */
+        private final int status;
+
+        /**
+         * Instantiates a new exit exception.
+         *
+         * @param newStatus the status
+         */
+        ExitException(final int newStatus) {
+            super("System.exit(" + newStatus + ")");
+            this.status = newStatus;
+        }
+        /**
+         * Gets the status.
+         *
+         * @return the status
+         */
+        int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Executes a run of a client jar in the {@link ClientDaemon} of the agent,
+ * starting the daemon if there is none for the jar yet. The output of the run
+ * is copied to the given stream, which is closed at the end. Daemons live in
+ * the temporary directory of the agent, one per Java executable, JVM options
+ * and client jar. The file of a client jar is part of the key, so an updated
+ * jar gets a new daemon. A daemon keeps the environment it was started with,
+ * so a run with another environment recycles an idle daemon and is executed
+ * as a new process if the daemon is busy. Relative paths of the
+ * configuration and results files are resolved against the workspace, since
+ * the daemon does not run in it.
+ */
+public class ClientDaemonRun extends MasterToSlaveFileCallable<Integer> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The version of the protocol, part of the key of a daemon. */
+    private static final int PROTOCOL_VERSION = 2;
+    /** The Constant DAEMON_DIRECTORY. */
+    private static final String DAEMON_DIRECTORY = "tricentis-daemon";
+    /** The Constant PORT_FILE_NAME. */
+    private static final String PORT_FILE_NAME = "port";
+    /** The Constant LOCK_FILE_NAME. */
+    private static final String LOCK_FILE_NAME = "lock";
+    /** The Constant LOG_FILE_NAME. */
+    private static final String LOG_FILE_NAME = "daemon.log";
+    /** The Constant CLASSES_DIRECTORY. */
+    private static final String CLASSES_DIRECTORY = "classes";
+    /** The maximum time in milliseconds to wait for a daemon to start. */
+    private static final long START_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    /** Interval in milliseconds for checking whether a daemon has started. */
+    private static final long START_POLL_INTERVAL = 100;
+    /** The first Java version which needs the security manager allowed. */
+    private static final int SECURITY_MANAGER_OPT_IN_VERSION = 12;
+    /** The Constant ALLOW_SECURITY_MANAGER. */
+    private static final String ALLOW_SECURITY_MANAGER
+            = "-Djava.security.manager=allow";
+    /** The switches of the client which are followed by a path. */
+    private static final List<String> PATH_SWITCHES = Arrays.asList(
+            DefaultProcStarterFactory.CONFIG_SWITCH,
+            DefaultProcStarterFactory.RESULTS_SWITCH);
+    /** Serializes daemon startup within the agent JVM. */
+    private static final Object START_LOCK = new Object();
+    /** The java executable. */
+    private final String java;
+    /** The options of the JVM of the daemon. */
+    private final List<String> jvmOptions;
+    /** The client jar. */
+    private final String jar;
+    /** The arguments of the client. */
+    private final List<String> args;
+    /** The environment of the daemon, as name=value pairs. */
+    private final String[] envs;
+    /** The idle timeout of the daemon in milliseconds. */
+    private final int idleTimeout;
+    /** The number of runs after which the daemon exits. */
+    private final int maxRuns;
+    /** The output. */
+    private final OutputStream out;
+    /** The token of the daemon connected to. */
+    private transient String token;
+    /** The key of the environment of the daemon connected to. */
+    private transient String daemonEnvironment;
+
+    /**
+     * Instantiates a new client daemon run.
+     *
+     * @param newJava        the java executable
+     * @param newJvmOptions  the options of the JVM of the daemon
+     * @param newJar         the client jar
+     * @param newArgs        the arguments of the client
+     * @param newEnvs        the environment of the daemon, as name=value pairs
+     * @param newIdleTimeout the idle timeout of the daemon in milliseconds
+     * @param newMaxRuns     the number of runs after which the daemon exits
+     * @param newOut         the output
+     */
+    public ClientDaemonRun(final String newJava,
+            final List<String> newJvmOptions, final String newJar,
+            final List<String> newArgs, final String[] newEnvs,
+            final int newIdleTimeout, final int newMaxRuns,
+            final OutputStream newOut) {
+        this.java = newJava;
+        this.jvmOptions = new ArrayList<>(newJvmOptions);
+        this.jar = newJar;
+        this.args = new ArrayList<>(newArgs);
+        this.envs = newEnvs.clone();
+        this.idleTimeout = newIdleTimeout;
+        this.maxRuns = newMaxRuns;
+        this.out = newOut;
+    }
+    /**
+     * Invoke.
+     *
+     * @param workspace the working directory of the run
+     * @param channel   the channel
+     * @return the exit code, or null if the run has to be executed in a new
+     *         process because the daemon is busy or could not be started
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public Integer invoke(final File workspace, final VirtualChannel channel)
+            throws IOException, InterruptedException {
+        final PrintStream logger
+                = new PrintStream(out, true, StandardCharsets.UTF_8.name());
+        final File directory = new File(System.getProperty("java.io.tmpdir"),
+                DAEMON_DIRECTORY + File.separator + getKey());
+        final SocketChannel socket = connect(directory, logger);
+        if (socket == null) {
+            out.close();
+            return null;
+        }
+        try (SocketChannel closed = socket) {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(socket)));
+            if (in.read() != ClientDaemon.ACCEPTED) {
+                logger.println(Messages.clientDaemonBusy());
+                return null;
+            }
+            final DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(socket)));
+            final List<String> resolved = resolveArguments(workspace);
+            request.writeUTF(token);
+            request.writeInt(resolved.size());
+            for (final String arg : resolved) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            return copyOutput(in);
+        } finally {
+            out.close();
+        }
+    }
+    /**
+     * Resolves the relative paths of the arguments against the workspace.
+     *
+     * @param workspace the workspace
+     * @return the arguments
+     */
+    List<String> resolveArguments(final File workspace) {
+        final List<String> resolved = new ArrayList<>(args.size());
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            if (i > 0 && PATH_SWITCHES.contains(args.get(i - 1))
+                    && !new File(arg).isAbsolute()) {
+                resolved.add(new File(workspace, arg).getAbsolutePath());
+            } else {
+                resolved.add(arg);
+            }
+        }
+        return resolved;
+    }
+    /**
+     * Copies the output frames of the run and reads its exit code.
+     *
+     * @param in the input of the connection
+     * @return the exit code
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private int copyOutput(final DataInputStream in) throws IOException {
+        final byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.readInt()) != ClientDaemon.END_OF_OUTPUT) {
+            while (length > 0) {
+                final int read = Math.min(length, buffer.length);
+                in.readFully(buffer, 0, read);
+                out.write(buffer, 0, read);
+                length -= read;
+            }
+            out.flush();
+        }
+        return in.readInt();
+    }
+    /**
+     * Connects to the daemon, starting it if necessary. A daemon with another
+     * environment is recycled first.
+     *
+     * @param directory the directory of the daemon
+     * @param logger    the logger
+     * @return the connection, or null if the daemon could not be started or
+     *         is busy with another environment
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private SocketChannel connect(final File directory,
+            final PrintStream logger)
+            throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        final File portFile = new File(directory, PORT_FILE_NAME);
+        synchronized (START_LOCK) {
+            try (RandomAccessFile lockFile = new RandomAccessFile(
+                    new File(directory, LOCK_FILE_NAME), "rw");
+                    FileChannel lockChannel = lockFile.getChannel();
+                    FileLock lock = lockChannel.lock()) {
+                final String environment = getEnvironmentKey();
+                SocketChannel socket = open(portFile);
+                if (socket != null
+                        && !environment.equals(daemonEnvironment)) {
+                    if (!recycle(socket, portFile)) {
+                        logger.println(Messages.clientDaemonBusy());
+                        return null;
+                    }
+                    logger.println(Messages.clientDaemonRecycled(jar));
+                    socket = null;
+                }
+                if (socket == null) {
+                    logger.println(Messages.clientDaemonStart(jar));
+                    if (start(directory, portFile, environment)) {
+                        socket = open(portFile);
+                    }
+                    if (socket == null) {
+                        logger.println(Messages.clientDaemonFailed(
+                                new File(directory, LOG_FILE_NAME)));
+                    }
+                }
+                return socket;
+            }
+        }
+    }
+    /**
+     * Opens a connection to the port of the port file and remembers the
+     * token and the environment of the daemon. A port file nobody listens on
+     * is left over by a terminated daemon and is deleted.
+     *
+     * @param portFile the port file
+     * @return the connection, or null if there is no daemon
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private SocketChannel open(final File portFile) throws IOException {
+        if (!portFile.isFile()) {
+            return null;
+        }
+        final String[] daemon = readPortFile(portFile);
+        try {
+            final SocketChannel socket = SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getByName(null),
+                            Integer.parseInt(daemon[0])));
+            token = daemon[1];
+            daemonEnvironment = daemon[2];
+            return socket;
+        } catch (final IOException e) {
+            Files.deleteIfExists(portFile.toPath());
+            return null;
+        }
+    }
+    /**
+     * Asks an idle daemon to exit and waits until it has closed the
+     * connection.
+     *
+     * @param socket   the connection to the daemon
+     * @param portFile the port file
+     * @return true, if the daemon has exited, false if it is busy
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean recycle(final SocketChannel socket, final File portFile)
+            throws IOException {
+        try (SocketChannel closed = socket) {
+            final InputStream in = Channels.newInputStream(socket);
+            if (in.read() != ClientDaemon.ACCEPTED) {
+                return false;
+            }
+            final DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(socket)));
+            request.writeUTF(token);
+            request.writeInt(ClientDaemon.RECYCLE);
+            request.flush();
+            while (in.read() != -1) {
+                continue;
+            }
+        } catch (final IOException e) {
+            // The daemon has exited.
+        }
+        Files.deleteIfExists(portFile.toPath());
+        return true;
+    }
+    /**
+     * Starts a daemon and waits until it has written its port file.
+     *
+     * @param directory   the directory of the daemon
+     * @param portFile    the port file
+     * @param environment the key of the environment of the daemon
+     * @return true, if the daemon has started
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private boolean start(final File directory, final File portFile,
+            final String environment)
+            throws IOException, InterruptedException {
+        final File classes = new File(directory, CLASSES_DIRECTORY);
+        extractClass(ClientDaemon.class, classes);
+        for (final Class<?> nested : ClientDaemon.class.getDeclaredClasses()) {
+            extractClass(nested, classes);
+        }
+        final List<String> command = new ArrayList<>();
+        command.add(java);
+        if (JavaRelease.getMajorVersion(JavaRelease.readVersionOfExecutable(
+                new File(java))) >= SECURITY_MANAGER_OPT_IN_VERSION) {
+            command.add(ALLOW_SECURITY_MANAGER);
+        }
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classes.getAbsolutePath());
+        command.add(ClientDaemon.class.getName());
+        command.add(jar);
+        command.add(portFile.getAbsolutePath());
+        command.add(String.valueOf(idleTimeout));
+        command.add(String.valueOf(maxRuns));
+        command.add(environment);
+        final ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(directory).redirectErrorStream(true)
+                .redirectOutput(new File(directory, LOG_FILE_NAME));
+        for (final String env : envs) {
+            final int separator = env.indexOf('=');
+            if (separator > 0) {
+                builder.environment().put(env.substring(0, separator),
+                        env.substring(separator + 1));
+            }
+        }
+        final Process process = builder.start();
+        final long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (!portFile.isFile()) {
+            if (hasExited(process)
+                    || System.currentTimeMillis() > deadline) {
+                process.destroy();
+                return false;
+            }
+            Thread.sleep(START_POLL_INTERVAL);
+        }
+        return true;
+    }
+    /**
+     * Gets the key of the daemon: a hash of the protocol version, the java
+     * executable, the JVM options and the path, size and modification time of
+     * the jar.
+     *
+     * @return the key
+     */
+    String getKey() {
+        final File jarFile = new File(jar);
+        return digest(PROTOCOL_VERSION + "\n" + java + "\n" + jvmOptions
+                + "\n" + jarFile.getAbsolutePath() + "\n" + jarFile.length()
+                + "\n" + jarFile.lastModified());
+    }
+    /**
+     * Gets the key of the environment of the run: a hash of the sorted
+     * name=value pairs.
+     *
+     * @return the key
+     */
+    String getEnvironmentKey() {
+        final String[] sorted = envs.clone();
+        Arrays.sort(sorted);
+        final StringBuilder key = new StringBuilder();
+        for (final String env : sorted) {
+            key.append(env).append('\0');
+        }
+        return digest(key.toString());
+    }
+    /**
+     * Hashes a key.
+     *
+     * @param key the key
+     * @return the hash as hex string
+     */
+    private static String digest(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder();
+            for (final byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Copies the class file of a class of the daemon to the classpath of the
+     * daemon.
+     *
+     * @param type    the class
+     * @param classes the classpath directory
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void extractClass(final Class<?> type, final File classes)
+            throws IOException {
+        final String name = type.getName().replace('.', '/') + ".class";
+        final File file = new File(classes, name);
+        if (!file.getParentFile().isDirectory()
+                && !file.getParentFile().mkdirs()) {
+            throw new IOException("Could not create " + file.getParentFile());
+        }
+        try (InputStream in = type.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IOException("Class file not found: " + name);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    /**
+     * Reads the port file.
+     *
+     * @param portFile the port file
+     * @return the port, the token and the key of the environment
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static String[] readPortFile(final File portFile)
+            throws IOException {
+        final String[] lines = new String(Files.readAllBytes(portFile.toPath()),
+                StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 3) {
+            throw new IOException("Invalid port file " + portFile);
+        }
+        return lines;
+    }
+    /**
+     * Checks whether a process has exited.
+     *
+     * @param process the process
+     * @return true, if exited
+     */
+    private static boolean hasExited(final Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (final IllegalThreadStateException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.Timer;
+
+/**
+ * Caches the resolved launch descriptors of client jars per node, so
+ * creating a client process does not repeat the same remote work on every
+ * execution: resolving the java binary, hashing the client jar and reading
+ * the versions of Java and the client. A cached descriptor is returned
+ * right away; once it is older than the refresh interval,
+ * {@link #REFRESH_INTERVAL} on the controller, it is validated in the
+ * background by the modification times of the jar and of the Java release
+ * file, and only resolved again if one of them changed. Work on the node
+ * which depends on the jar itself checks that the descriptor is still
+ * current first, see {@link Descriptor#isCurrent(File, File)}. The
+ * descriptors of a node are dropped when it goes offline or comes online
+ * again.
+ */
+public final class ClientLaunchCache {
+    /** The interval in milliseconds after which a descriptor is validated. */
+    static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(ClientLaunchCache.class.getName());
+    /** The cache of the controller. */
+    private static final ClientLaunchCache INSTANCE = new ClientLaunchCache(
+            new AgentResolver(), REFRESH_INTERVAL, new Executor() {
+                @Override
+                public void execute(final Runnable command) {
+                    Timer.get().submit(command);
+                }
+            });
+    /** The resolver. */
+    private final Resolver resolver;
+    /** The interval in milliseconds after which a descriptor is validated. */
+    private final long refreshInterval;
+    /** The executor of background refreshes. */
+    private final Executor executor;
+    /** The entries by node name and by java home and jar. */
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> nodes
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new client launch cache.
+     *
+     * @param newResolver        the resolver
+     * @param newRefreshInterval the interval in milliseconds after which a
+     *                           descriptor is validated
+     * @param newExecutor        the executor of background refreshes
+     */
+    ClientLaunchCache(final Resolver newResolver,
+            final long newRefreshInterval, final Executor newExecutor) {
+        this.resolver = newResolver;
+        this.refreshInterval = newRefreshInterval;
+        this.executor = newExecutor;
+    }
+    /**
+     * Gets the cache of the controller.
+     *
+     * @return the cache
+     */
+    static ClientLaunchCache getInstance() {
+        return INSTANCE;
+    }
+    /**
+     * Gets the launch descriptor of a client jar. It is resolved on the node
+     * if it is not cached or was cached for a former connection of the node.
+     *
+     * @param node     the name of the node, or null to resolve it without
+     *                 caching
+     * @param jar      the client jar
+     * @param javaHome the java home on the node
+     * @return the descriptor
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    Descriptor get(final String node, final FilePath jar,
+            final String javaHome) throws IOException, InterruptedException {
+        if (node == null) {
+            return resolver.resolve(jar, javaHome, null);
+        }
+        ConcurrentMap<String, Entry> entries = nodes.get(node);
+        if (entries == null) {
+            nodes.putIfAbsent(node, new ConcurrentHashMap<String, Entry>());
+            entries = nodes.get(node);
+        }
+        final String key = javaHome + File.pathSeparator + jar.getRemote();
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.channel == jar.getChannel()) {
+            final Descriptor cached = entry.descriptor;
+            refresh(entries, key, entry, jar, javaHome);
+            return cached;
+        }
+        final Descriptor descriptor = resolver.resolve(jar, javaHome, null);
+        entries.put(key, new Entry(descriptor, jar.getChannel()));
+        return descriptor;
+    }
+    /**
+     * Drops the descriptors of a node.
+     *
+     * @param node the name of the node
+     */
+    void invalidate(final String node) {
+        nodes.remove(node);
+    }
+    /**
+     * Validates a descriptor in the background, if it is older than the
+     * refresh interval and not being validated already. A descriptor which
+     * cannot be validated is dropped.
+     *
+     * @param entries  the entries of the node
+     * @param key      the key of the entry
+     * @param entry    the entry
+     * @param jar      the client jar
+     * @param javaHome the java home on the node
+     */
+    private void refresh(final ConcurrentMap<String, Entry> entries,
+            final String key, final Entry entry, final FilePath jar,
+            final String javaHome) {
+        if (System.currentTimeMillis() - entry.validated < refreshInterval
+                || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    entry.descriptor
+                            = resolver.resolve(jar, javaHome, entry.descriptor);
+                    entry.validated = System.currentTimeMillis();
+                } catch (final IOException e) {
+                    entries.remove(key, entry);
+                    LOGGER.log(Level.FINE,
+                            "Could not validate " + jar.getRemote(), e);
+                } catch (final InterruptedException e) {
+                    entries.remove(key, entry);
+                    Thread.currentThread().interrupt();
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves launch descriptors.
+     */
+    interface Resolver {
+        /**
+         * Resolves the launch descriptor of a client jar.
+         *
+         * @param jar      the client jar
+         * @param javaHome the java home on the node
+         * @param previous the descriptor to validate, null if there is none
+         * @return the descriptor, the previous one if it is still valid
+         * @throws IOException          Signals that an I/O exception has
+         *                              occurred.
+         * @throws InterruptedException the interrupted exception
+         */
+        Descriptor resolve(FilePath jar, String javaHome, Descriptor previous)
+                throws IOException, InterruptedException;
+    }
+
+    /**
+     * Resolves launch descriptors on the node of the jar in a single call.
+     */
+    private static final class AgentResolver implements Resolver {
+        /**
+         * Resolve.
+         *
+         * @param jar      the client jar
+         * @param javaHome the java home on the node
+         * @param previous the descriptor to validate, null if there is none
+         * @return the descriptor
+         * @throws IOException          Signals that an I/O exception has
+         *                              occurred.
+         * @throws InterruptedException the interrupted exception
+         */
+        @Override
+        public Descriptor resolve(final FilePath jar, final String javaHome,
+                final Descriptor previous)
+                throws IOException, InterruptedException {
+            return jar.act(new Probe(javaHome, previous));
+        }
+    }
+
+    /**
+     * Resolves a launch descriptor. Invoked on the client jar.
+     */
+    static final class Probe extends MasterToSlaveFileCallable<Descriptor> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The java home. */
+        private final String javaHome;
+        /** The descriptor to validate, null if there is none. */
+        private final Descriptor previous;
+
+        /**
+         * Instantiates a new probe.
+         *
+         * @param newJavaHome the java home on the node
+         * @param newPrevious the descriptor to validate, null if there is
+         *                    none
+         */
+        Probe(final String newJavaHome, final Descriptor newPrevious) {
+            this.javaHome = newJavaHome;
+            this.previous = newPrevious;
+        }
+        /**
+         * Invoke.
+         *
+         * @param jar     the client jar
+         * @param channel the channel
+         * @return the descriptor, the previous one if it is still current
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public Descriptor invoke(final File jar, final VirtualChannel channel)
+                throws IOException {
+            final File home = new File(javaHome);
+            if (previous != null && previous.isCurrent(jar, home)) {
+                return previous;
+            }
+            final boolean exists = jar.isFile();
+            return new Descriptor(
+                    new File(new File(home, "bin"), "java").getPath(),
+                    JavaRelease.readVersion(home),
+                    exists ? Util.getDigestOf(jar) : null,
+                    exists ? readClientVersion(jar) : null, jar.length(),
+                    jar.lastModified(),
+                    new File(home, JavaRelease.FILE_NAME).lastModified());
+        }
+        /**
+         * Reads the implementation version from the manifest of a client
+         * jar.
+         *
+         * @param jar the client jar
+         * @return the version, or null if unknown
+         */
+        static String readClientVersion(final File jar) {
+            try (JarFile file = new JarFile(jar)) {
+                final Manifest manifest = file.getManifest();
+                return manifest == null ? null
+                        : manifest.getMainAttributes().getValue(
+                                Attributes.Name.IMPLEMENTATION_VERSION);
+            } catch (final IOException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The resolved launch descriptor of a client jar on a node.
+     */
+    static final class Descriptor implements Serializable {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The java binary. */
+        private final String java;
+        /** The version of Java, null if unknown. */
+        private final String javaVersion;
+        /** The MD5 hash of the client jar, null if it does not exist. */
+        private final String clientDigest;
+        /** The version of the client, null if unknown. */
+        private final String clientVersion;
+        /** The size of the client jar. */
+        private final long clientSize;
+        /** The modification time of the client jar. */
+        private final long clientModified;
+        /** The modification time of the Java release file. */
+        private final long releaseModified;
+
+        /**
+         * Instantiates a new descriptor.
+         *
+         * @param newJava            the java binary
+         * @param newJavaVersion     the version of Java, null if unknown
+         * @param newClientDigest    the MD5 hash of the client jar, null if
+         *                           it does not exist
+         * @param newClientVersion   the version of the client, null if
+         *                           unknown
+         * @param newClientSize      the size of the client jar
+         * @param newClientModified  the modification time of the client jar
+         * @param newReleaseModified the modification time of the Java
+         *                           release file
+         */
+        Descriptor(final String newJava, final String newJavaVersion,
+                final String newClientDigest, final String newClientVersion,
+                final long newClientSize, final long newClientModified,
+                final long newReleaseModified) {
+            this.java = newJava;
+            this.javaVersion = newJavaVersion;
+            this.clientDigest = newClientDigest;
+            this.clientVersion = newClientVersion;
+            this.clientSize = newClientSize;
+            this.clientModified = newClientModified;
+            this.releaseModified = newReleaseModified;
+        }
+        /**
+         * Gets the java binary.
+         *
+         * @return the java binary
+         */
+        String getJava() {
+            return java;
+        }
+        /**
+         * Gets the version of Java.
+         *
+         * @return the version, null if unknown
+         */
+        String getJavaVersion() {
+            return javaVersion;
+        }
+        /**
+         * Gets the MD5 hash of the client jar.
+         *
+         * @return the hash, null if the jar does not exist
+         */
+        String getClientDigest() {
+            return clientDigest;
+        }
+        /**
+         * Gets the version of the client.
+         *
+         * @return the version, null if unknown
+         */
+        String getClientVersion() {
+            return clientVersion;
+        }
+        /**
+         * Checks whether the client jar and the Java release file are
+         * unchanged since the descriptor was resolved, by the size and
+         * modification time of the jar and the modification time of the
+         * release file. Invoked on the node of the jar.
+         *
+         * @param jar      the client jar
+         * @param javaHome the java home
+         * @return true, if the descriptor is still current
+         */
+        boolean isCurrent(final File jar, final File javaHome) {
+            return jar.length() == clientSize
+                    && jar.lastModified() == clientModified
+                    && new File(javaHome, JavaRelease.FILE_NAME)
+                            .lastModified() == releaseModified;
+        }
+    }
+
+    /**
+     * A cached descriptor.
+     */
+    private static final class Entry {
+        /** The channel of the node the descriptor was resolved through. */
+        private final VirtualChannel channel;
+        /** Whether the descriptor is being validated. */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        /** The descriptor. */
+        private volatile Descriptor descriptor;
+        /** The time the descriptor was resolved or validated. */
+        private volatile long validated = System.currentTimeMillis();
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param newDescriptor the descriptor
+         * @param newChannel    the channel of the node
+         */
+        Entry(final Descriptor newDescriptor,
+                final VirtualChannel newChannel) {
+            this.descriptor = newDescriptor;
+            this.channel = newChannel;
+        }
+    }
+
+    /**
+     * Drops the cached descriptors of a node when it goes offline or comes
+     * online again, since its Java or client may have changed meanwhile.
+     */
+    @Extension
+    public static final class Invalidation extends ComputerListener {
+        /**
+         * On online.
+         *
+         * @param computer the computer
+         * @param listener the listener
+         */
+        @Override
+        public void onOnline(final Computer computer,
+                final TaskListener listener) {
+            getInstance().invalidate(computer.getName());
+        }
+        /**
+         * On offline.
+         *
+         * @param computer the computer
+         * @param cause    the cause
+         */
+        @Override
+        public void onOffline(final Computer computer,
+                final OfflineCause cause) {
+            getInstance().invalidate(computer.getName());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream which passes the output of a client process on unchanged and
+ * recognizes its progress lines on the way: a test event being started, a
+ * test case having passed or failed and a change of the execution state.
+ * Lines are collected in a fixed buffer and matched byte by byte, ignoring
+ * the case of ASCII letters, so decoding allocates nothing per line. Only
+ * the text of a state line is copied. Characters beyond the buffer are
+ * ignored for matching.
+ */
+final class ClientOutputDecoder extends OutputStream {
+    /** The maximum number of bytes of a line which are matched. */
+    static final int MAX_LINE = 512;
+    /** The maximum number of characters of a state kept. */
+    private static final int MAX_STATE = 80;
+    /** The Constant TEST_EVENT. */
+    private static final byte[] TEST_EVENT = ascii("test event");
+    /** The Constant TESTEVENT. */
+    private static final byte[] TESTEVENT = ascii("testevent");
+    /** The Constant STARTED. */
+    private static final byte[] STARTED = ascii("started");
+    /** The Constant TEST_CASE. */
+    private static final byte[] TEST_CASE = ascii("test case");
+    /** The Constant TESTCASE. */
+    private static final byte[] TESTCASE = ascii("testcase");
+    /** The Constant FAILED. */
+    private static final byte[] FAILED = ascii("failed");
+    /** The Constant ERROR. */
+    private static final byte[] ERROR = ascii("error");
+    /** The Constant PASSED. */
+    private static final byte[] PASSED = ascii("passed");
+    /** The Constant FINISHED. */
+    private static final byte[] FINISHED = ascii("finished");
+    /** The Constant STATE. */
+    private static final byte[] STATE = ascii("state:");
+    /** The stream the output is passed on to. */
+    private final OutputStream out;
+    /** The progress updated by the recognized lines. */
+    private final ClientProgressAction progress;
+    /** The index of the process in the progress. */
+    private final int process;
+    /** The current line. */
+    private final byte[] line = new byte[MAX_LINE];
+    /** The number of bytes of the current line in the buffer. */
+    private int length;
+
+    /**
+     * Instantiates a new client output decoder.
+     *
+     * @param newOut      the stream the output is passed on to
+     * @param newProgress the progress updated by the recognized lines
+     * @param newProcess  the index of the process in the progress
+     */
+    ClientOutputDecoder(final OutputStream newOut,
+            final ClientProgressAction newProgress, final int newProcess) {
+        this.out = newOut;
+        this.progress = newProgress;
+        this.process = newProcess;
+    }
+    /**
+     * Write.
+     *
+     * @param b the byte
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        decode((byte) b);
+    }
+    /**
+     * Write.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        out.write(b, off, len);
+        for (int i = off; i < off + len; i++) {
+            decode(b[i]);
+        }
+    }
+    /**
+     * Flush.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+    /**
+     * Close. A last line without line break is decoded. The stream the
+     * output is passed on to is the build log, it is only flushed.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        endLine();
+        out.flush();
+    }
+    /**
+     * Adds a byte to the current line, and decodes the line at its end.
+     *
+     * @param b the byte
+     */
+    private void decode(final byte b) {
+        if (b == '\n' || b == '\r') {
+            endLine();
+        } else if (length < line.length) {
+            line[length++] = b;
+        }
+    }
+    /**
+     * Decodes the current line and starts a new one.
+     */
+    private void endLine() {
+        if (length == 0) {
+            return;
+        }
+        if (contains(TEST_CASE) || contains(TESTCASE)) {
+            if (contains(FAILED) || contains(ERROR)) {
+                progress.testCaseFinished(true);
+            } else if (contains(PASSED) || contains(FINISHED)) {
+                progress.testCaseFinished(false);
+            }
+        } else if ((contains(TEST_EVENT) || contains(TESTEVENT))
+                && contains(STARTED)) {
+            progress.testEventStarted(process);
+        } else {
+            final int state = indexOf(STATE);
+            if (state >= 0) {
+                int from = state + STATE.length;
+                while (from < length && line[from] == ' ') {
+                    from++;
+                }
+                progress.stateChanged(new String(line, from,
+                        Math.min(length - from, MAX_STATE),
+                        StandardCharsets.UTF_8).trim());
+            }
+        }
+        length = 0;
+    }
+    /**
+     * Checks whether the current line contains the given lower case ASCII
+     * text, ignoring case.
+     *
+     * @param text the text
+     * @return true, if found
+     */
+    private boolean contains(final byte[] text) {
+        return indexOf(text) >= 0;
+    }
+    /**
+     * Finds the given lower case ASCII text in the current line, ignoring
+     * case.
+     *
+     * @param text the text
+     * @return the index, or -1 if not found
+     */
+    private int indexOf(final byte[] text) {
+        for (int i = 0; i + text.length <= length; i++) {
+            int j = 0;
+            while (j < text.length && toLowerCase(line[i + j]) == text[j]) {
+                j++;
+            }
+            if (j == text.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Converts an ASCII upper case letter to lower case.
+     *
+     * @param b the byte
+     * @return the lower case byte
+     */
+    private static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+    /**
+     * Encodes a text in ASCII.
+     *
+     * @param text the text
+     * @return the bytes
+     */
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.Api;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * The live progress of the client processes of a build, decoded from their
+ * output by {@link ClientOutputDecoder}s. Shown on the build page and
+ * exported as JSON at {@code tricentisProgress/api/json}, which is cheap to
+ * poll as nothing is computed beyond a few counters. The time left is
+ * estimated from the duration history of the test events and from the
+ * throughput so far, the latter weighing more the further the run has got.
+ */
+@ExportedBean
+public class ClientProgressAction implements Action {
+    /** The Constant URL_NAME. */
+    static final String URL_NAME = "tricentisProgress";
+    /** The number of test events of the build. */
+    private final int total;
+    /** The number of test events started, by process. */
+    private final int[] started;
+    /** The expected duration in milliseconds, or UNKNOWN. */
+    private final long expected;
+    /** The time the processes were started. */
+    private final long start;
+    /** The time the processes finished, 0 while they are running. */
+    private long end;
+    /** The number of test cases finished. */
+    private int testCases;
+    /** The number of test cases failed. */
+    private int failures;
+    /** The last execution state reported. */
+    private String state;
+
+    /**
+     * Instantiates a new client progress action.
+     *
+     * @param newTotal     the number of test events of the build, 0 if not
+     *                     known
+     * @param processes    the number of client processes
+     * @param newExpected  the expected duration in milliseconds, or
+     *                     {@link TestEventDurationIndex#UNKNOWN}
+     */
+    ClientProgressAction(final int newTotal, final int processes,
+            final long newExpected) {
+        this.total = newTotal;
+        this.started = new int[processes];
+        this.expected = newExpected;
+        this.start = System.currentTimeMillis();
+    }
+    /**
+     * Records that a process started a test event. The previous test event
+     * of the process has completed then.
+     *
+     * @param process the index of the process
+     */
+    synchronized void testEventStarted(final int process) {
+        started[process]++;
+    }
+    /**
+     * Records that a test case finished.
+     *
+     * @param failed whether the test case failed
+     */
+    synchronized void testCaseFinished(final boolean failed) {
+        testCases++;
+        if (failed) {
+            failures++;
+        }
+    }
+    /**
+     * Records a change of the execution state.
+     *
+     * @param newState the new state
+     */
+    synchronized void stateChanged(final String newState) {
+        this.state = newState;
+    }
+    /**
+     * Records that all processes have finished.
+     */
+    synchronized void finish() {
+        if (end == 0) {
+            end = System.currentTimeMillis();
+        }
+    }
+    /**
+     * Gets the number of test events of the build.
+     *
+     * @return the total, 0 if not known
+     */
+    @Exported
+    public int getTotal() {
+        return total;
+    }
+    /**
+     * Gets the number of test events completed.
+     *
+     * @return the completed test events
+     */
+    @Exported
+    public synchronized int getCompleted() {
+        if (isFinished()) {
+            return total;
+        }
+        int completed = 0;
+        for (final int count : started) {
+            completed += Math.max(0, count - 1);
+        }
+        return Math.min(completed, total);
+    }
+    /**
+     * Gets the number of test cases finished.
+     *
+     * @return the test cases
+     */
+    @Exported
+    public synchronized int getTestCases() {
+        return testCases;
+    }
+    /**
+     * Gets the number of test cases failed.
+     *
+     * @return the failures
+     */
+    @Exported
+    public synchronized int getFailures() {
+        return failures;
+    }
+    /**
+     * Gets the last execution state reported.
+     *
+     * @return the state, null if none was reported
+     */
+    @Exported
+    public synchronized String getState() {
+        return state;
+    }
+    /**
+     * Checks whether the processes have finished.
+     *
+     * @return true, if finished
+     */
+    @Exported
+    public synchronized boolean isFinished() {
+        return end != 0;
+    }
+    /**
+     * Gets the time since the processes were started.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    @Exported
+    public synchronized long getElapsed() {
+        return (end == 0 ? System.currentTimeMillis() : end) - start;
+    }
+    /**
+     * Gets the estimated time until the processes finish.
+     *
+     * @return the time left in milliseconds, or -1 if it cannot be
+     *         estimated
+     */
+    @Exported
+    public synchronized long getEta() {
+        if (isFinished()) {
+            return 0;
+        }
+        return eta(getElapsed(), getCompleted(), total, expected);
+    }
+    /**
+     * Gets the estimated time until the processes finish for display.
+     *
+     * @return the time left, or null if it cannot be estimated
+     */
+    public String getEtaString() {
+        final long eta = getEta();
+        return eta < 0 ? null : Util.getTimeSpanString(eta);
+    }
+    /**
+     * Gets the time since the processes were started for display.
+     *
+     * @return the elapsed time
+     */
+    public String getElapsedString() {
+        return Util.getTimeSpanString(getElapsed());
+    }
+    /**
+     * Estimates the time left. The estimate from the history is blended with
+     * the estimate from the throughput in proportion to the completed test
+     * events.
+     *
+     * @param elapsed   the elapsed time in milliseconds
+     * @param completed the number of test events completed
+     * @param total     the number of test events, 0 if not known
+     * @param expected  the expected duration in milliseconds, or
+     *                  {@link TestEventDurationIndex#UNKNOWN}
+     * @return the time left in milliseconds, or -1 if it cannot be estimated
+     */
+    static long eta(final long elapsed, final int completed, final int total,
+            final long expected) {
+        final long history = expected == TestEventDurationIndex.UNKNOWN
+                ? -1 : Math.max(0, expected - elapsed);
+        if (total <= 0 || completed <= 0) {
+            return history;
+        }
+        final long throughput = elapsed * (total - completed) / completed;
+        if (history < 0) {
+            return throughput;
+        }
+        final double done = (double) completed / total;
+        return Math.round((1 - done) * history + done * throughput);
+    }
+    /**
+     * Gets the api.
+     *
+     * @return the api
+     */
+    public Api getApi() {
+        return new Api(this);
+    }
+    /**
+     * Gets the icon file name.
+     *
+     * @return null, the progress is shown on the build page
+     */
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.progressTitle();
+    }
+    /**
+     * Gets the url name.
+     *
+     * @return the url name
+     */
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import hudson.CloseProofOutputStream;
+import hudson.FilePath;
+import hudson.Launcher.ProcStarter;
+import hudson.Proc;
+import hudson.remoting.RemoteOutputStream;
+
+/**
+ * Implementation of {@link ProcessExecutor} which executes client jars in a
+ * warm {@link ClientDaemon} on the agent instead of starting a new JVM per
+ * run, see {@link ClientDaemonRun}. Other commands, and runs the daemon
+ * cannot take because it is busy or cannot be started, are executed as new
+ * processes like {@link DefaultProcessExecutor} does.
+ */
+public class DaemonProcessExecutor extends DefaultProcessExecutor {
+    /** The Constant JAR_SWITCH. */
+    private static final String JAR_SWITCH = "-jar";
+    /** Starts runs the daemon does not take as new processes. */
+    private static final DefaultProcessExecutor PROCESSES
+            = new DefaultProcessExecutor();
+    /** The idle timeout of the daemon in milliseconds. */
+    private final int idleTimeout;
+    /** The number of runs after which the daemon exits. */
+    private final int maxRuns;
+
+    /**
+     * Instantiates a new daemon process executor.
+     *
+     * @param newIdleTimeout the idle timeout of the daemon in milliseconds
+     * @param newMaxRuns     the number of runs after which the daemon exits
+     */
+    public DaemonProcessExecutor(final int newIdleTimeout,
+            final int newMaxRuns) {
+        this.idleTimeout = newIdleTimeout;
+        this.maxRuns = newMaxRuns;
+    }
+    /**
+     * Starts a run. Commands of the form <code>java [options] -jar
+     * client.jar args</code> are submitted to the daemon.
+     *
+     * @param starter the starter
+     * @return the proc
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    protected Proc start(final ProcStarter starter)
+            throws IOException, InterruptedException {
+        final List<String> cmds = starter.cmds();
+        final FilePath pwd = starter.pwd();
+        final OutputStream stdout = starter.stdout();
+        final int jarSwitch = cmds.indexOf(JAR_SWITCH);
+        if (pwd == null || stdout == null || jarSwitch < 1
+                || jarSwitch + 1 >= cmds.size()) {
+            return super.start(starter);
+        }
+        return new RemoteCallProc(starter, PROCESSES,
+                pwd.actAsync(new ClientDaemonRun(cmds.get(0),
+                        cmds.subList(1, jarSwitch), cmds.get(jarSwitch + 1),
+                        cmds.subList(jarSwitch + 2, cmds.size()),
+                        starter.envs(), idleTimeout, maxRuns,
+                        new RemoteOutputStream(
+                                new CloseProofOutputStream(stdout)))));
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Default implementation of {@link DexClient}. Calls the SOAP operations of
+ * the ManagerService with {@link HttpURLConnection}. Responses are parsed
+ * with StAX, and the report is copied to the output as it is received.
+ * Responses are read to the end and connections are not disconnected, so the
+ * keep-alive connections of an endpoint are reused by all clients of the JVM.
+ * The operations follow the contract used by the Tricentis CI client; they
+ * are only tested against a stub of the service, so the option is
+ * experimental.
+ */
+public class DefaultDexClient implements DexClient {
+    /** The namespace of the ManagerService. */
+    static final String NAMESPACE = "http://tempuri.org/";
+    /** The namespace of serialized string arrays. */
+    static final String ARRAYS_NAMESPACE
+            = "http://schemas.microsoft.com/2003/10/Serialization/Arrays";
+    /** The Constant SOAP_NAMESPACE. */
+    static final String SOAP_NAMESPACE
+            = "http://schemas.xmlsoap.org/soap/envelope/";
+    /** The prefix of the SOAP actions. */
+    static final String ACTION_PREFIX = NAMESPACE + "IManagerService/";
+    /** The operation which enqueues test events. */
+    static final String ENQUEUE = "EnqueueTestEvents";
+    /** The operation which gets the state of an execution. */
+    static final String GET_STATE = "GetExecutionState";
+    /** The operation which gets the JUnit report of an execution. */
+    static final String GET_REPORT = "GetJUnitReport";
+    /** The operation which cancels an execution. */
+    static final String CANCEL = "CancelExecution";
+    /** The Constant TEST_EVENTS. */
+    private static final String TEST_EVENTS = "testEvents";
+    /** The Constant EXECUTION_ID. */
+    private static final String EXECUTION_ID = "executionId";
+    /** The Constant RESULT_SUFFIX. */
+    private static final String RESULT_SUFFIX = "Result";
+    /** The Constant FAULT_STRING. */
+    private static final String FAULT_STRING = "faultstring";
+    /** The Constant CONNECT_TIMEOUT. */
+    private static final int CONNECT_TIMEOUT
+            = (int) TimeUnit.SECONDS.toMillis(30);
+    /** The Constant READ_TIMEOUT. */
+    private static final int READ_TIMEOUT
+            = (int) TimeUnit.MINUTES.toMillis(5);
+    /** The endpoint. */
+    private final URL endpoint;
+
+    /**
+     * Instantiates a new default dex client.
+     *
+     * @param newEndpoint the URL of <code>ManagerService.svc</code>
+     */
+    public DefaultDexClient(final URL newEndpoint) {
+        this.endpoint = newEndpoint;
+    }
+    /**
+     * Enqueue.
+     *
+     * @param testEvents the test events
+     * @return the id of the execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public String enqueue(final List<String> testEvents) throws IOException {
+        return callForString(ENQUEUE, TEST_EVENTS, testEvents);
+    }
+    /**
+     * Gets the state.
+     *
+     * @param executionId the id of the execution
+     * @return the state
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public State getState(final String executionId) throws IOException {
+        return State.parse(callForString(GET_STATE, EXECUTION_ID,
+                Collections.singletonList(executionId)));
+    }
+    /**
+     * Download report.
+     *
+     * @param executionId the id of the execution
+     * @param out         the stream the UTF-8 encoded report is written to
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void downloadReport(final String executionId,
+            final OutputStream out) throws IOException {
+        final Writer writer = new OutputStreamWriter(out,
+                StandardCharsets.UTF_8);
+        call(GET_REPORT, EXECUTION_ID, Collections.singletonList(executionId),
+                writer);
+        writer.flush();
+    }
+    /**
+     * Cancel.
+     *
+     * @param executionId the id of the execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void cancel(final String executionId) throws IOException {
+        callForString(CANCEL, EXECUTION_ID,
+                Collections.singletonList(executionId));
+    }
+    /**
+     * Calls an operation and returns its result.
+     *
+     * @param operation the operation
+     * @param parameter the name of the parameter
+     * @param values    the value of the parameter, a string array if it has
+     *                  more than one element or the parameter is
+     *                  {@link #TEST_EVENTS}
+     * @return the result
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private String callForString(final String operation,
+            final String parameter, final List<String> values)
+            throws IOException {
+        final StringWriter result = new StringWriter();
+        call(operation, parameter, values, result);
+        return result.toString().trim();
+    }
+    /**
+     * Calls an operation and copies its result.
+     *
+     * @param operation the operation
+     * @param parameter the name of the parameter
+     * @param values    the value of the parameter
+     * @param result    the writer the result is copied to
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void call(final String operation, final String parameter,
+            final List<String> values, final Writer result)
+            throws IOException {
+        final HttpURLConnection connection
+                = (HttpURLConnection) endpoint.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type",
+                "text/xml; charset=utf-8");
+        connection.setRequestProperty("SOAPAction",
+                "\"" + ACTION_PREFIX + operation + "\"");
+        try (OutputStream out = new BufferedOutputStream(
+                connection.getOutputStream())) {
+            writeRequest(out, operation, parameter, values);
+        }
+        final int status = connection.getResponseCode();
+        if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            final InputStream error = connection.getErrorStream();
+            final String fault = error == null ? null
+                    : readElement(error, FAULT_STRING);
+            throw new IOException(Messages.dexFault(operation,
+                    fault == null ? status + " "
+                            + connection.getResponseMessage() : fault));
+        }
+        try (InputStream in = new BufferedInputStream(
+                connection.getInputStream())) {
+            final boolean found
+                    = copyElement(in, operation + RESULT_SUFFIX, result);
+            drain(in);
+            if (!found) {
+                throw new IOException(Messages.dexFault(operation,
+                        "no " + operation + RESULT_SUFFIX));
+            }
+        }
+    }
+    /**
+     * Writes the SOAP envelope of a request.
+     *
+     * @param out       the out
+     * @param operation the operation
+     * @param parameter the name of the parameter
+     * @param values    the value of the parameter
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void writeRequest(final OutputStream out,
+            final String operation, final String parameter,
+            final List<String> values) throws IOException {
+        try {
+            final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+            xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            xml.writeStartElement("s", "Envelope", SOAP_NAMESPACE);
+            xml.writeNamespace("s", SOAP_NAMESPACE);
+            xml.writeStartElement("s", "Body", SOAP_NAMESPACE);
+            xml.writeStartElement("", operation, NAMESPACE);
+            xml.writeDefaultNamespace(NAMESPACE);
+            xml.writeStartElement(NAMESPACE, parameter);
+            if (TEST_EVENTS.equals(parameter)) {
+                xml.writeNamespace("a", ARRAYS_NAMESPACE);
+                for (final String value : values) {
+                    xml.writeStartElement("a", "string", ARRAYS_NAMESPACE);
+                    xml.writeCharacters(value);
+                    xml.writeEndElement();
+                }
+            } else {
+                xml.writeCharacters(values.get(0));
+            }
+            xml.writeEndDocument();
+            xml.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    /**
+     * Reads the text of the first element with the given local name.
+     *
+     * @param in        the response
+     * @param localName the local name
+     * @return the text, or null if there is no such element
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static String readElement(final InputStream in,
+            final String localName) throws IOException {
+        final StringWriter text = new StringWriter();
+        try (InputStream closed = in) {
+            final boolean found = copyElement(in, localName, text);
+            drain(in);
+            return found ? text.toString().trim() : null;
+        }
+    }
+    /**
+     * Reads the rest of a response, so that its connection can be reused.
+     *
+     * @param in the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void drain(final InputStream in) throws IOException {
+        final byte[] buffer = new byte[1024];
+        while (in.read(buffer) != -1) {
+            continue;
+        }
+    }
+    /**
+     * Copies the text of the first element with the given local name, chunk
+     * by chunk.
+     *
+     * @param in        the response
+     * @param localName the local name
+     * @param out       the writer the text is copied to
+     * @return true, if the element was found
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static boolean copyElement(final InputStream in, final String localName,
+            final Writer out) throws IOException {
+        try {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            final XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT
+                            && localName.equals(xml.getLocalName())) {
+                        copyText(xml, out);
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                xml.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    /**
+     * Copies the text of the current element up to its end.
+     *
+     * @param xml the reader positioned at the start of the element
+     * @param out the out
+     * @throws XMLStreamException the XML stream exception
+     * @throws IOException        Signals that an I/O exception has occurred.
+     */
+    private static void copyText(final XMLStreamReader xml, final Writer out)
+            throws XMLStreamException, IOException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (xml.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                out.write(xml.getTextCharacters(), xml.getTextStart(),
+                        xml.getTextLength());
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
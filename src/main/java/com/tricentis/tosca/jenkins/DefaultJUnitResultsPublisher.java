@@ -4,6 +4,7 @@
 package com.tricentis.tosca.jenkins;
 
 import java.io.IOException;
+import java.io.Serializable;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
@@ -16,7 +17,11 @@ import hudson.tasks.junit.JUnitResultArchiver;
  *
  * @author Sergey Oplavin
  */
-public class DefaultJUnitResultsPublisher implements JUnitResultsPublisher {
+public class DefaultJUnitResultsPublisher
+        implements JUnitResultsPublisher, Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
     /**
      * Publish.
      *
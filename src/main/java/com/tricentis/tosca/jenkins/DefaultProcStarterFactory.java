@@ -2,18 +2,18 @@
  **/
 package com.tricentis.tosca.jenkins;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.commons.lang.StringUtils;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Launcher.ProcStarter;
+import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -29,9 +29,9 @@ public class DefaultProcStarterFactory implements ProcStarterFactory {
     /** The Constant MODE_SWITCH. */
     private static final String MODE_SWITCH = "-m";
     /** The Constant RESULTS_SWITCH. */
-    private static final String RESULTS_SWITCH = "-r";
+    static final String RESULTS_SWITCH = "-r";
     /** The Constant CONFIG_SWITCH. */
-    private static final String CONFIG_SWITCH = "-c";
+    static final String CONFIG_SWITCH = "-c";
     /** The Constant ENDPOINT_SWITCH. */
     private static final String ENDPOINT_SWITCH = "-e";
     /** The Constant REPORT_TYPE_SWITH. */
@@ -49,17 +49,6 @@ public class DefaultProcStarterFactory implements ProcStarterFactory {
     /** The Constant CONFIG_FILE_PATH. */
     private static final String CONFIG_FILE_PATH
             = "/jenkins-tricentis/config.xml";
-    /** The Constant CONFIG_FILE_START. */
-    private static final String CONFIG_FILE_START
-            = "<?xml version=\"1.0\" encoding=\"utf-16\" ?>\n" + "\n"
-                    + "<testConfiguration>\n" + "\n" + "   <TestEvents>";
-    /** The Constant CONFIG_FILE_END. */
-    private static final String CONFIG_FILE_END
-            = "\n" + "    </TestEvents>\n" + "\n" + "</testConfiguration>";
-    /** The Constant TEST_EVENT_START. */
-    private static final String TEST_EVENT_START = "\n" + "        <TestEvent>";
-    /** The Constant TEST_EVENT_END. */
-    private static final String TEST_EVENT_END = "</TestEvent>";
 
     /**
      * Creates the.
@@ -78,12 +67,54 @@ public class DefaultProcStarterFactory implements ProcStarterFactory {
             final Run<?, ?> run, final FilePath workspace,
             final Launcher launcher, final TaskListener listener)
             throws InterruptedException, IOException {
+        return create(runner, null, run, workspace, launcher, listener);
+    }
+    /**
+     * Creates the.
+     *
+     * @param runner    the runner
+     * @param shard     the shard, or null to execute all test events
+     * @param run       the run
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @return the proc starter
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Override
+    public ProcStarter create(final TricentisCiBuilder runner,
+            final TestEventShard shard, final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
         String clientPath = runner.getTricentisClientPath();
-        final EnvVars vars = run.getEnvironment(listener);
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        final EnvVars vars;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.ENVIRONMENT)) {
+            vars = run.getEnvironment(listener);
+        }
         final String configPath = runner.getConfigurationFilePath();
         final String testEvents = runner.getTestEvents();
-        final String endpoint = runner.getEndpoint();
+        final String testEventsFile = runner.getTestEventsFile();
+        if (isStringValid(testEventsFile)
+                && (isStringValid(testEvents) || isStringValid(configPath))) {
+            throw new AbortException(Messages.testEventsFileExclusive());
+        }
+        final String resultsFile = shard == null ? runner.getResultsFile()
+                : shard.getResultsFile();
+        final String configFileName
+                = ClientConfigFile.createFileName(run, shard);
+        final String endpoint;
+        if (shard != null && shard.getEndpoint() != null) {
+            endpoint = shard.getEndpoint();
+        } else {
+            endpoint = runner.getEndpoint();
+        }
         final String application;
+        final String javaHome;
+        final ClientLaunchCache.Descriptor descriptor;
         final PrintStream logger = listener.getLogger();
         final Executor executor = run.getExecutor();
         if (executor == null) {
@@ -95,41 +126,86 @@ public class DefaultProcStarterFactory implements ProcStarterFactory {
         }
         clientPath = vars.expand(clientPath);
         if (clientPath.toLowerCase().endsWith(".jar")) {
-            final String javaHome = vars.get(JAVA_HOME);
+            javaHome = vars.get(JAVA_HOME);
             if (StringUtils.isEmpty(javaHome)) {
                 throw new RuntimeException(Messages.setJavaHome());
             }
-            application = new FilePath(launcher.getChannel(), javaHome)
-                    .child("bin").child("java").getRemote();
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.ENVIRONMENT)) {
+                descriptor = ClientLaunchCache.getInstance().get(
+                        getNodeName(workspace), workspace.child(clientPath),
+                        javaHome);
+            }
+            application = descriptor.getJava();
+            if (descriptor.getClientVersion() != null
+                    && (shard == null || shard.getIndex() == 0)) {
+                logger.println(Messages.clientVersion(
+                        descriptor.getClientVersion(),
+                        StringUtils.defaultString(descriptor.getJavaVersion(),
+                                "?")));
+            }
         } else {
             application = null;
+            javaHome = null;
+            descriptor = null;
         }
         final ArgumentListBuilder builder = new ArgumentListBuilder();
         if (application != null) {
             builder.add(application);
+            builder.add(
+                    Util.tokenize(vars.expand(runner.getClientJvmOptions())));
+            if (runner.isClassDataSharing() && !runner.isClientDaemon()) {
+                try (PhaseTimingsAction.Split split = timings
+                        .start(ExecutionPhase.CLASS_DATA_SHARING)) {
+                    builder.add(getClassDataSharingOptions(javaHome,
+                            descriptor, workspace.child(clientPath), logger));
+                }
+            }
             builder.add("-jar");
         }
         builder.add(clientPath, MODE_SWITCH, DEFAULT_MODE, REPORT_TYPE_SWITH,
                 JUNIT_REPORT_TYPE, SPEC_EXIT_CODE_SWITCH, SPEC_EXIT_CODE_VALUE,
                 RESULTS_SWITCH,
-                workspace.child(vars.expand(runner.getResultsFile()))
-                        .getRemote());
+                workspace.child(vars.expand(resultsFile)).getRemote());
         if (isStringValid(testEvents)) {
             if (isStringValid(configPath)) {
                 logger.println(
                         "Tricentis-CI Plugin: TestEvents and ConfigPath set");
                 executor.interrupt(Result.FAILURE);
             }
-            String path = buildXmlFile(testEvents.split(";"), workspace,
-                    executor, logger);
+            final String path;
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.CONFIG_FILE)) {
+                path = buildXmlFile(shard == null ? testEvents
+                        : StringUtils.join(shard.getTestEvents(),
+                                TestEventSharder.EVENT_SEPARATOR),
+                        configFileName, workspace, executor, logger);
+            }
             if (isStringValid(path)) {
                 builder.add(CONFIG_SWITCH, path);
             }
+        } else if (isStringValid(testEventsFile)) {
+            final String includes = vars.expand(testEventsFile);
+            final int count;
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.CONFIG_FILE)) {
+                count = workspace.act(
+                        new TestEventsFileSource(includes, configFileName));
+            }
+            if (count == 0) {
+                throw new AbortException(
+                        Messages.testEventsFileEmpty(includes));
+            }
+            logger.println(Messages.testEventsFileRead(count, includes));
+            builder.add(CONFIG_SWITCH, workspace.child(configFileName)
+                    .getRemote().replace('\\', '/'));
         } else if (isStringValid(configPath)) {
             builder.add(CONFIG_SWITCH, vars.expand(configPath));
         }
-        if (isStringValid(endpoint)) {
-            builder.add(ENDPOINT_SWITCH, vars.expand(runner.getEndpoint()));
+        final List<String> endpoints
+                = EndpointPool.parse(vars.expand(endpoint));
+        if (!endpoints.isEmpty()) {
+            builder.add(ENDPOINT_SWITCH, endpoints.get(0));
         } else {
             logger.println("Tricentis-CI Plugin: Endpoint not set");
             executor.interrupt(Result.FAILURE);
@@ -138,47 +214,78 @@ public class DefaultProcStarterFactory implements ProcStarterFactory {
                 .pwd(workspace);
     }
     /**
-     * Builds the xml file.
+     * Gets the class data sharing options of a client jar. The archive is
+     * created by the first run on the agent. The agent is not called if the
+     * launch descriptor shows that Java does not support dynamic archives.
      *
-     * @param testEvents the test events
+     * @param javaHome   the java home
+     * @param descriptor the launch descriptor of the client jar
+     * @param clientJar  the client jar
+     * @param logger     the logger
+     * @return the options
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private String[] getClassDataSharingOptions(final String javaHome,
+            final ClientLaunchCache.Descriptor descriptor,
+            final FilePath clientJar, final PrintStream logger)
+            throws InterruptedException, IOException {
+        final List<String> options = JavaRelease.getMajorVersion(
+                descriptor.getJavaVersion()) < ClassDataSharing.MIN_JAVA_VERSION
+                        ? new ArrayList<String>()
+                        : clientJar.act(
+                                new ClassDataSharing(javaHome, descriptor));
+        if (options.isEmpty()) {
+            logger.println(Messages.classDataSharingUnavailable(
+                    ClassDataSharing.MIN_JAVA_VERSION));
+        }
+        for (final String option : options) {
+            if (option.startsWith(ClassDataSharing.CREATE_OPTION)) {
+                logger.println(Messages.classDataSharingCreate(option
+                        .substring(ClassDataSharing.CREATE_OPTION.length())));
+            } else {
+                logger.println(Messages.classDataSharingUse(option
+                        .substring(ClassDataSharing.USE_OPTION.length())));
+            }
+        }
+        return options.toArray(new String[options.size()]);
+    }
+    /**
+     * Builds the xml file. It is rendered and written on the agent running
+     * the client in a single call.
+     *
+     * @param testEvents the test events, separated by semicolons
+     * @param fileName   the file name
      * @param workspace  the workspace
      * @param executor   the executor
      * @param logger     the logger
      * @return the string
      */
-    private String buildXmlFile(final String[] testEvents,
-            final FilePath workspace, final Executor executor,
-            final PrintStream logger) {
-        File file;
+    private String buildXmlFile(final String testEvents,
+            final String fileName, final FilePath workspace,
+            final Executor executor, final PrintStream logger) {
         try {
-            file = new File(new File(workspace.toURI()).getAbsolutePath()
-                    + "\\temp-jenkins-tricentis.xml");
-            boolean isNewlyCreated = file.createNewFile();
-        } catch (IOException e1) {
-            logger.println("Tricentis-CI Plugin: " + e1.getMessage());
-            executor.interrupt(Result.FAILURE);
-            return null;
-        } catch (InterruptedException e1) {
-            logger.println("Tricentis-CI Plugin: " + e1.getMessage());
-            executor.interrupt(Result.FAILURE);
-            return null;
-        }
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
-                new FileOutputStream(file), StandardCharsets.UTF_8))) {
-            writer.write(CONFIG_FILE_START);
-            for (String testEvent : testEvents) {
-                writer.append(TEST_EVENT_START);
-                writer.append(testEvent);
-                writer.append(TEST_EVENT_END);
-            }
-            writer.append(CONFIG_FILE_END);
+            return workspace.act(new ClientConfigFile(fileName, testEvents));
         } catch (IOException e) {
             logger.println("Tricentis-CI Plugin: (Filewriter IOException)");
             logger.println("Tricentis-CI Plugin: " + e.getMessage());
             executor.interrupt(Result.FAILURE);
             return null;
+        } catch (InterruptedException e) {
+            logger.println("Tricentis-CI Plugin: " + e.getMessage());
+            executor.interrupt(Result.FAILURE);
+            return null;
         }
-        return file.getAbsolutePath().replace('\\', '/');
+    }
+    /**
+     * Gets the name of the node of a workspace.
+     *
+     * @param workspace the workspace
+     * @return the name, or null if the node is unknown
+     */
+    private static String getNodeName(final FilePath workspace) {
+        final Computer computer = workspace.toComputer();
+        return computer == null ? null : computer.getName();
     }
     /**
      * Checks if is string valid.
@@ -4,7 +4,14 @@
 package com.tricentis.tosca.jenkins;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import hudson.Launcher.ProcStarter;
+import hudson.Proc;
 
 /**
  * Default implementation of {@link ProcessExecutor}. Just executrs given
@@ -13,6 +20,13 @@ import hudson.Launcher.ProcStarter;
  * @author Sergey Oplavin
  */
 public class DefaultProcessExecutor implements ProcessExecutor {
+    /** Interval in milliseconds for checking the state of processes. */
+    private static final long POLL_INTERVAL = 1000;
+    /** Time in milliseconds killed processes are given to terminate. */
+    private static final long KILL_GRACE_PERIOD = 30000;
+    /** Interval in milliseconds for checking killed processes. */
+    private static final long KILL_POLL_INTERVAL = 100;
+
     /**
      * Execute.
      *
@@ -24,6 +38,204 @@ public class DefaultProcessExecutor implements ProcessExecutor {
     @Override
     public int execute(final ProcStarter starter)
             throws IOException, InterruptedException {
-        return starter.join();
+        return start(starter).join();
+    }
+    /**
+     * Execute. All processes are started without limit.
+     *
+     * @param starters the starters
+     * @param monitor  the monitor, may be null
+     * @return the results
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public List<ProcessResult> executeAll(final List<ProcStarter> starters,
+            final ProcessMonitor monitor)
+            throws IOException, InterruptedException {
+        return executeAll(starters, null,
+                Collections.<String, Integer>emptyMap(), monitor);
+    }
+    /**
+     * Execute. The processes are started as long as their endpoint has a
+     * free slot and then polled until all of them have terminated, so they
+     * run concurrently and the duration of each process is known. A process
+     * waiting for a slot is started by the first check after a process of
+     * its endpoint has terminated, and its duration is measured from then.
+     * The monitor is told when each process is started and when it has
+     * terminated, and it is polled between two checks. If waiting or the
+     * monitor fails, all processes which are still alive are killed with
+     * their process trees, the waiting ones are not started, and the monitor
+     * is told how long it took until they terminated.
+     *
+     * @param starters  the starters
+     * @param endpoints the endpoints of the processes, may be null if
+     *                  there are no slots
+     * @param slots     the slots by endpoint
+     * @param monitor   the monitor, may be null
+     * @return the results
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public List<ProcessResult> executeAll(final List<ProcStarter> starters,
+            final List<String> endpoints, final Map<String, Integer> slots,
+            final ProcessMonitor monitor)
+            throws IOException, InterruptedException {
+        final Proc[] procs = new Proc[starters.size()];
+        final long[] starts = new long[procs.length];
+        final Map<String, Integer> free = new HashMap<>(slots);
+        boolean completed = false;
+        try {
+            final ProcessResult[] results = new ProcessResult[procs.length];
+            int remaining = results.length;
+            while (remaining > 0) {
+                for (int i = 0; i < procs.length; i++) {
+                    final String endpoint = getEndpoint(endpoints, i);
+                    if (procs[i] == null && take(free, endpoint)) {
+                        starts[i] = System.currentTimeMillis();
+                        procs[i] = start(starters.get(i));
+                        if (monitor != null) {
+                            monitor.started(i);
+                        }
+                    }
+                }
+                for (int i = 0; i < procs.length; i++) {
+                    if (procs[i] != null && results[i] == null
+                            && !procs[i].isAlive()) {
+                        results[i] = new ProcessResult(procs[i].join(),
+                                System.currentTimeMillis() - starts[i]);
+                        remaining--;
+                        release(free, getEndpoint(endpoints, i));
+                        if (monitor != null) {
+                            monitor.terminated(i);
+                        }
+                    }
+                }
+                if (remaining > 0) {
+                    if (monitor != null) {
+                        monitor.poll();
+                    }
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            }
+            completed = true;
+            return Arrays.asList(results);
+        } finally {
+            if (!completed) {
+                final List<Proc> started = new ArrayList<>(procs.length);
+                for (final Proc proc : procs) {
+                    if (proc != null) {
+                        started.add(proc);
+                    }
+                }
+                final long teardown = System.currentTimeMillis();
+                final int killed = killAll(started);
+                if (monitor != null && killed > 0) {
+                    final int alive = awaitTermination(started);
+                    monitor.killed(killed, alive,
+                            System.currentTimeMillis() - teardown);
+                }
+            }
+        }
+    }
+    /**
+     * Gets the endpoint of a process.
+     *
+     * @param endpoints the endpoints of the processes, may be null
+     * @param index     the index of the process
+     * @return the endpoint, or null if not known
+     */
+    private static String getEndpoint(final List<String> endpoints,
+            final int index) {
+        return endpoints == null ? null : endpoints.get(index);
+    }
+    /**
+     * Takes a free slot of an endpoint.
+     *
+     * @param free     the free slots by endpoint
+     * @param endpoint the endpoint
+     * @return true, if the endpoint has no slots or a free one was taken
+     */
+    private static boolean take(final Map<String, Integer> free,
+            final String endpoint) {
+        final Integer count = free.get(endpoint);
+        if (count == null) {
+            return true;
+        }
+        if (count <= 0) {
+            return false;
+        }
+        free.put(endpoint, count - 1);
+        return true;
+    }
+    /**
+     * Releases a slot of an endpoint.
+     *
+     * @param free     the free slots by endpoint
+     * @param endpoint the endpoint
+     */
+    private static void release(final Map<String, Integer> free,
+            final String endpoint) {
+        final Integer count = free.get(endpoint);
+        if (count != null) {
+            free.put(endpoint, count + 1);
+        }
+    }
+    /**
+     * Starts a process.
+     *
+     * @param starter the starter
+     * @return the proc
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    protected Proc start(final ProcStarter starter)
+            throws IOException, InterruptedException {
+        return starter.start();
+    }
+    /**
+     * Kill all processes which are still alive.
+     *
+     * @param procs the procs
+     * @return the number of processes which were killed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private int killAll(final List<Proc> procs)
+            throws IOException, InterruptedException {
+        int killed = 0;
+        for (final Proc proc : procs) {
+            if (proc.isAlive()) {
+                proc.kill();
+                killed++;
+            }
+        }
+        return killed;
+    }
+    /**
+     * Waits until the killed processes have terminated, at most for the
+     * grace period.
+     *
+     * @param procs the procs
+     * @return the number of processes still alive
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private int awaitTermination(final List<Proc> procs)
+            throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + KILL_GRACE_PERIOD;
+        while (true) {
+            int alive = 0;
+            for (final Proc proc : procs) {
+                if (proc.isAlive()) {
+                    alive++;
+                }
+            }
+            if (alive == 0 || System.currentTimeMillis() >= deadline) {
+                return alive;
+            }
+            Thread.sleep(KILL_POLL_INTERVAL);
+        }
     }
 }
@@ -0,0 +1,109 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Client of the ManagerService of the Tosca Distributed Execution (DEX)
+ * server. Replaces the Tricentis CI client for executions of test events.
+ */
+public interface DexClient {
+    /**
+     * Enqueues an execution of test events.
+     *
+     * @param testEvents the test events
+     * @return the id of the execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    String enqueue(List<String> testEvents) throws IOException;
+    /**
+     * Gets the state of an execution.
+     *
+     * @param executionId the id of the execution
+     * @return the state
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    State getState(String executionId) throws IOException;
+    /**
+     * Writes the JUnit report of a finished execution.
+     *
+     * @param executionId the id of the execution
+     * @param out         the stream the UTF-8 encoded report is written to
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void downloadReport(String executionId, OutputStream out)
+            throws IOException;
+    /**
+     * Cancels an execution.
+     *
+     * @param executionId the id of the execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void cancel(String executionId) throws IOException;
+
+    /**
+     * The state of an execution.
+     */
+    enum State {
+        /** Waiting for an agent. */
+        QUEUED(false),
+        /** Running. */
+        RUNNING(false),
+        /** Finished, the report is available. */
+        COMPLETED(true),
+        /** Finished with an error. */
+        ERROR(true),
+        /** Cancelled. */
+        CANCELLED(true);
+
+        /** Whether the execution has finished. */
+        private final boolean finished;
+
+        /**
+         * Instantiates a new state.
+         *
+         * @param newFinished whether the execution has finished
+         */
+        State(final boolean newFinished) {
+            this.finished = newFinished;
+        }
+        /**
+         * Checks whether the execution has finished.
+         *
+         * @return true, if finished
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+        /**
+         * Parses the state reported by the server. Unknown states are
+         * considered running.
+         *
+         * @param value the value
+         * @return the state
+         */
+        static State parse(final String value) {
+            final String state = value.trim().toLowerCase();
+            if (state.startsWith("queue") || state.startsWith("pending")
+                    || state.startsWith("wait")) {
+                return QUEUED;
+            }
+            if (state.startsWith("complete") || state.startsWith("finish")
+                    || state.startsWith("succe")) {
+                return COMPLETED;
+            }
+            if (state.startsWith("error") || state.startsWith("fail")
+                    || state.startsWith("abort")) {
+                return ERROR;
+            }
+            if (state.startsWith("cancel")) {
+                return CANCELLED;
+            }
+            return RUNNING;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import com.tricentis.tosca.jenkins.DexClient.State;
+
+/**
+ * Polls the state of the DEX executions of all builds on an agent. Instead
+ * of every run polling on its own at a fixed rate, the executions of an
+ * endpoint are polled together in one sweep over the keep-alive connection of
+ * the endpoint, and executions which are polled by several runs are queried
+ * once per sweep. The interval of an execution grows while its state does not
+ * change and is reset when it changes. Intervals are jittered so builds
+ * started at the same time do not poll in lockstep.
+ */
+final class DexPollScheduler {
+    /** The maximum interval in milliseconds between two polls. */
+    static final long MAX_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    /** The factor the interval grows by per poll without a state change. */
+    static final double BACKOFF = 1.5;
+    /** The maximum deviation of an interval, relative to the interval. */
+    static final double JITTER = 0.2;
+    /**
+     * Polls due within this time in milliseconds after a sweep are polled
+     * early by the sweep, which keeps the polls of an endpoint together.
+     */
+    static final long BATCH_WINDOW = 250;
+    /** The number of failed polls in a row after which a poll fails. */
+    private static final int MAX_FAILURES = 3;
+    /** The number of threads polling endpoints concurrently. */
+    private static final int THREADS = 4;
+    /** The scheduler of the agent JVM. */
+    private static final DexPollScheduler INSTANCE = new DexPollScheduler();
+    /** The timer which runs the sweeps. */
+    private final ScheduledExecutorService timer;
+    /** The polls by endpoint. */
+    private final ConcurrentMap<String, Endpoint> endpoints
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new dex poll scheduler.
+     */
+    DexPollScheduler() {
+        timer = Executors.newScheduledThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "DEX status poll");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    /**
+     * Gets the scheduler of the agent JVM.
+     *
+     * @return the scheduler
+     */
+    static DexPollScheduler getInstance() {
+        return INSTANCE;
+    }
+    /**
+     * Starts polling an execution until it has finished.
+     *
+     * @param endpoint        the endpoint
+     * @param client          the client of the endpoint
+     * @param executionId     the id of the execution
+     * @param initialInterval the interval in milliseconds before the first
+     *                        poll and after state changes
+     * @param listener        the listener notified of state changes
+     * @return the poll
+     */
+    Poll poll(final String endpoint, final DexClient client,
+            final String executionId, final long initialInterval,
+            final Listener listener) {
+        Endpoint polls = endpoints.get(endpoint);
+        if (polls == null) {
+            final Endpoint created = new Endpoint();
+            polls = endpoints.putIfAbsent(endpoint, created);
+            if (polls == null) {
+                polls = created;
+            }
+        }
+        final Poll poll = new Poll(client, executionId,
+                Math.max(1, initialInterval), listener);
+        polls.add(poll);
+        return poll;
+    }
+    /**
+     * Gets the delay until the next poll of an execution.
+     *
+     * @param initialInterval the initial interval in milliseconds
+     * @param unchanged       the number of polls without a state change
+     * @param random          a random number between 0 and 1
+     * @return the delay in milliseconds
+     */
+    static long getDelay(final long initialInterval, final int unchanged,
+            final double random) {
+        final double interval = Math.min(MAX_INTERVAL,
+                initialInterval * Math.pow(BACKOFF, unchanged));
+        return Math.max(1,
+                Math.round(interval * (1 - JITTER + 2 * JITTER * random)));
+    }
+
+    /**
+     * Listener of the state changes of an execution.
+     */
+    interface Listener {
+        /**
+         * Called when the state of an execution has changed.
+         *
+         * @param state the new state
+         */
+        void stateChanged(State state);
+    }
+
+    /**
+     * The poll of an execution.
+     */
+    static final class Poll {
+        /** The client. */
+        private final DexClient client;
+        /** The id of the execution. */
+        private final String executionId;
+        /** The initial interval in milliseconds. */
+        private final long initialInterval;
+        /** The listener. */
+        private final Listener listener;
+        /** Counted down when the poll has ended. */
+        private final CountDownLatch ended = new CountDownLatch(1);
+        /** The last known state. */
+        private State state;
+        /** The number of polls without a state change. */
+        private int unchanged;
+        /** The number of failed polls in a row. */
+        private int failures;
+        /** The time of the next poll. */
+        private long due;
+        /** The error the poll failed with, if any. */
+        private volatile IOException error;
+
+        /**
+         * Instantiates a new poll.
+         *
+         * @param newClient          the client
+         * @param newExecutionId     the id of the execution
+         * @param newInitialInterval the initial interval in milliseconds
+         * @param newListener        the listener
+         */
+        private Poll(final DexClient newClient, final String newExecutionId,
+                final long newInitialInterval, final Listener newListener) {
+            this.client = newClient;
+            this.executionId = newExecutionId;
+            this.initialInterval = newInitialInterval;
+            this.listener = newListener;
+            this.due = System.currentTimeMillis() + newInitialInterval;
+        }
+        /**
+         * Waits until the execution has finished.
+         *
+         * @return the final state, or null if the poll was cancelled
+         * @throws IOException          if polling failed repeatedly
+         * @throws InterruptedException the interrupted exception
+         */
+        State await() throws IOException, InterruptedException {
+            ended.await();
+            if (error != null) {
+                throw error;
+            }
+            synchronized (this) {
+                return state == null || !state.isFinished() ? null : state;
+            }
+        }
+        /**
+         * Stops polling the execution.
+         */
+        void cancel() {
+            ended.countDown();
+        }
+        /**
+         * Checks whether the poll has ended.
+         *
+         * @return true, if ended
+         */
+        private boolean isEnded() {
+            return ended.getCount() == 0;
+        }
+        /**
+         * Gets the time of the next poll.
+         *
+         * @return the time
+         */
+        private synchronized long getDue() {
+            return due;
+        }
+        /**
+         * Records a polled state.
+         *
+         * @param newState the state
+         * @param now      the time of the poll
+         */
+        private void update(final State newState, final long now) {
+            final boolean changed;
+            synchronized (this) {
+                changed = newState != state;
+                unchanged = changed ? 0 : unchanged + 1;
+                failures = 0;
+                state = newState;
+                due = now + getDelay(initialInterval, unchanged,
+                        ThreadLocalRandom.current().nextDouble());
+            }
+            if (changed) {
+                listener.stateChanged(newState);
+            }
+            if (newState.isFinished()) {
+                ended.countDown();
+            }
+        }
+        /**
+         * Records a failed poll. The poll fails after several failures in a
+         * row.
+         *
+         * @param e   the error
+         * @param now the time of the poll
+         */
+        private void failed(final IOException e, final long now) {
+            synchronized (this) {
+                failures++;
+                unchanged++;
+                due = now + getDelay(initialInterval, unchanged,
+                        ThreadLocalRandom.current().nextDouble());
+                if (failures < MAX_FAILURES) {
+                    return;
+                }
+            }
+            error = e;
+            ended.countDown();
+        }
+    }
+
+    /**
+     * The polls of an endpoint, swept together.
+     */
+    private final class Endpoint implements Runnable {
+        /** The polls. */
+        private final List<Poll> polls = new ArrayList<>();
+        /** The next sweep, if scheduled. */
+        private ScheduledFuture<?> next;
+        /** The time of the next sweep. */
+        private long nextDue;
+        /** Whether a sweep is running. */
+        private boolean sweeping;
+
+        /**
+         * Adds a poll.
+         *
+         * @param poll the poll
+         */
+        private synchronized void add(final Poll poll) {
+            polls.add(poll);
+            schedule();
+        }
+        /**
+         * Schedules the next sweep for the earliest due poll, unless a sweep
+         * is running, which schedules the next one when it is done.
+         */
+        private synchronized void schedule() {
+            if (sweeping) {
+                return;
+            }
+            long due = Long.MAX_VALUE;
+            for (final Poll poll : polls) {
+                due = Math.min(due, poll.getDue());
+            }
+            if (due == Long.MAX_VALUE
+                    || (next != null && !next.isDone() && nextDue <= due)) {
+                return;
+            }
+            if (next != null) {
+                next.cancel(false);
+            }
+            nextDue = due;
+            next = timer.schedule(this,
+                    Math.max(0, due - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+        /**
+         * Polls the due executions.
+         */
+        @Override
+        public void run() {
+            final long now = System.currentTimeMillis();
+            final List<Poll> due = new ArrayList<>();
+            synchronized (this) {
+                sweeping = true;
+                next = null;
+                for (final Iterator<Poll> i = polls.iterator(); i.hasNext();) {
+                    final Poll poll = i.next();
+                    if (poll.isEnded()) {
+                        i.remove();
+                    } else if (poll.getDue() <= now + BATCH_WINDOW) {
+                        due.add(poll);
+                    }
+                }
+            }
+            try {
+                final Map<String, State> states = new HashMap<>();
+                for (final Poll poll : due) {
+                    State state = states.get(poll.executionId);
+                    try {
+                        if (state == null) {
+                            state = poll.client.getState(poll.executionId);
+                            states.put(poll.executionId, state);
+                        }
+                        poll.update(state, now);
+                    } catch (final IOException e) {
+                        poll.failed(e, now);
+                    } catch (final RuntimeException e) {
+                        poll.failed(new IOException(e), now);
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    sweeping = false;
+                    for (final Iterator<Poll> i = polls.iterator();
+                            i.hasNext();) {
+                        if (i.next().isEnded()) {
+                            i.remove();
+                        }
+                    }
+                    schedule();
+                }
+            }
+        }
+    }
+}
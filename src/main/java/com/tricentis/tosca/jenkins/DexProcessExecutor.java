@@ -0,0 +1,92 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import hudson.CloseProofOutputStream;
+import hudson.FilePath;
+import hudson.Launcher.ProcStarter;
+import hudson.Proc;
+import hudson.remoting.RemoteOutputStream;
+
+/**
+ * Implementation of {@link ProcessExecutor} which executes the test events
+ * of runs against a DEX endpoint with a {@link DexRun} inside the agent JVM,
+ * without starting the Tricentis CI client. Other runs, and runs whose
+ * configuration contains more than test events, are started by the given
+ * executor.
+ */
+public class DexProcessExecutor extends DefaultProcessExecutor {
+    /** The Constant ENDPOINT_SWITCH. */
+    private static final String ENDPOINT_SWITCH = "-e";
+    /** The Constant CONFIG_SWITCH. */
+    private static final String CONFIG_SWITCH = "-c";
+    /** The Constant RESULTS_SWITCH. */
+    private static final String RESULTS_SWITCH = "-r";
+    /** The Constant DEX_ENDPOINT. */
+    private static final String DEX_ENDPOINT = "managerservice.svc";
+    /** The executor of the runs which are not executed natively. */
+    private final DefaultProcessExecutor fallback;
+    /** The initial interval in milliseconds for polling executions. */
+    private final long pollInterval;
+
+    /**
+     * Instantiates a new dex process executor.
+     *
+     * @param newFallback     the executor of the runs which are not executed
+     *                        natively
+     * @param newPollInterval the interval in milliseconds for polling the
+     *                        state of executions
+     */
+    public DexProcessExecutor(final DefaultProcessExecutor newFallback,
+            final long newPollInterval) {
+        this.fallback = newFallback;
+        this.pollInterval = newPollInterval;
+    }
+    /**
+     * Starts a run. Runs with a DEX endpoint and a configuration file are
+     * submitted to the endpoint.
+     *
+     * @param starter the starter
+     * @return the proc
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    protected Proc start(final ProcStarter starter)
+            throws IOException, InterruptedException {
+        final List<String> cmds = starter.cmds();
+        final FilePath pwd = starter.pwd();
+        final OutputStream stdout = starter.stdout();
+        final String endpoint = getValue(cmds, ENDPOINT_SWITCH);
+        final String config = getValue(cmds, CONFIG_SWITCH);
+        final String results = getValue(cmds, RESULTS_SWITCH);
+        if (pwd == null || stdout == null || endpoint == null || config == null
+                || results == null
+                || !endpoint.toLowerCase().contains(DEX_ENDPOINT)) {
+            return fallback.start(starter);
+        }
+        return new RemoteCallProc(starter, fallback,
+                pwd.actAsync(new DexRun(endpoint, config, results,
+                        pollInterval, new RemoteOutputStream(
+                                new CloseProofOutputStream(stdout)))));
+    }
+    /**
+     * Gets the value of a switch of the client.
+     *
+     * @param cmds  the command line
+     * @param name  the switch
+     * @return the value, or null if the switch is not set
+     */
+    private static String getValue(final List<String> cmds,
+            final String name) {
+        final int index = cmds.lastIndexOf(name);
+        if (index < 1 || index + 1 >= cmds.size()) {
+            return null;
+        }
+        return cmds.get(index + 1);
+    }
+}
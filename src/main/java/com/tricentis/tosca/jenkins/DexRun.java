@@ -0,0 +1,255 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import com.tricentis.tosca.jenkins.DexClient.State;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Executes the test events of a configuration file on the DEX server with a
+ * {@link DefaultDexClient} inside the agent JVM, instead of starting the
+ * Tricentis CI client. Waits for the execution to finish and writes its JUnit
+ * report to the results file. Configurations with more than test events are
+ * left to the client. Progress is written to the given stream, which is
+ * closed at the end. Invoked on the workspace.
+ */
+public class DexRun extends MasterToSlaveFileCallable<Integer> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The Constant TEST_EVENT. */
+    private static final String TEST_EVENT = "TestEvent";
+    /** The elements of configurations which can be executed. */
+    private static final Set<String> SUPPORTED_ELEMENTS
+            = new HashSet<>(Arrays.asList("testConfiguration", "TestEvents",
+                    TEST_EVENT));
+    /** The Constant TEMP_EXTENSION. */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /** The endpoint. */
+    private final String endpoint;
+    /** The configuration file. */
+    private final String configurationFile;
+    /** The results file. */
+    private final String resultsFile;
+    /**
+     * The interval in milliseconds for polling the state, before backoff.
+     */
+    private final long pollInterval;
+    /** The out. */
+    private final OutputStream out;
+
+    /**
+     * Instantiates a new dex run.
+     *
+     * @param newEndpoint          the URL of <code>ManagerService.svc</code>
+     * @param newConfigurationFile the configuration file
+     * @param newResultsFile       the results file
+     * @param newPollInterval      the interval in milliseconds for polling
+     *                             the state, before backoff
+     * @param newOut               the stream progress is written to
+     */
+    public DexRun(final String newEndpoint, final String newConfigurationFile,
+            final String newResultsFile, final long newPollInterval,
+            final OutputStream newOut) {
+        this.endpoint = newEndpoint;
+        this.configurationFile = newConfigurationFile;
+        this.resultsFile = newResultsFile;
+        this.pollInterval = newPollInterval;
+        this.out = newOut;
+    }
+    /**
+     * Invoke.
+     *
+     * @param workspace the workspace
+     * @param channel   the channel
+     * @return 0 if the execution completed, 1 if it failed, or null if the
+     *         configuration has to be executed by the client
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public Integer invoke(final File workspace, final VirtualChannel channel)
+            throws IOException, InterruptedException {
+        try {
+            final File configuration = resolve(workspace, configurationFile);
+            if (!configuration.isFile()) {
+                return null;
+            }
+            final List<String> testEvents = readTestEvents(configuration);
+            if (testEvents == null || testEvents.isEmpty()) {
+                return null;
+            }
+            final PrintStream logger
+                    = new PrintStream(out, true, StandardCharsets.UTF_8.name());
+            return execute(new DefaultDexClient(new URL(endpoint)), testEvents,
+                    resolve(workspace, resultsFile), logger);
+        } finally {
+            out.close();
+        }
+    }
+    /**
+     * Executes test events and downloads the report. The state of the
+     * execution is polled by the {@link DexPollScheduler} of the agent. The
+     * execution is cancelled if the run is interrupted.
+     *
+     * @param client     the client
+     * @param testEvents the test events
+     * @param results    the results file
+     * @param logger     the logger
+     * @return the exit code
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private int execute(final DexClient client, final List<String> testEvents,
+            final File results, final PrintStream logger)
+            throws IOException, InterruptedException {
+        final String executionId = client.enqueue(testEvents);
+        logger.println(Messages.dexEnqueued(testEvents.size(), executionId));
+        final DexPollScheduler.Poll poll = DexPollScheduler.getInstance()
+                .poll(endpoint, client, executionId, pollInterval,
+                        new DexPollScheduler.Listener() {
+                            @Override
+                            public void stateChanged(final State state) {
+                                logger.println(
+                                        Messages.dexState(executionId, state));
+                            }
+                        });
+        final State state;
+        try {
+            state = poll.await();
+        } catch (final InterruptedException e) {
+            poll.cancel();
+            logger.println(Messages.dexCancel(executionId));
+            client.cancel(executionId);
+            throw e;
+        }
+        if (state != State.COMPLETED) {
+            return 1;
+        }
+        final File parent = results.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        final File temp = new File(results.getPath() + TEMP_EXTENSION);
+        try (OutputStream report = new BufferedOutputStream(
+                new FileOutputStream(temp))) {
+            client.downloadReport(executionId, report);
+        }
+        Files.move(temp.toPath(), results.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        logger.println(Messages.dexReport(results.getPath()));
+        return 0;
+    }
+    /**
+     * Resolves a path against the workspace.
+     *
+     * @param workspace the workspace
+     * @param path      the path
+     * @return the file
+     */
+    private static File resolve(final File workspace, final String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file : new File(workspace, path);
+    }
+    /**
+     * Reads the test events of a configuration file.
+     *
+     * @param file the file
+     * @return the test events, or null if the configuration contains more
+     *         than test events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static List<String> readTestEvents(final File file) throws IOException {
+        final List<String> testEvents = new ArrayList<>();
+        try (Reader reader = openReader(file)) {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            final XMLStreamReader xml = factory.createXMLStreamReader(reader);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    if (!SUPPORTED_ELEMENTS.contains(xml.getLocalName())) {
+                        return null;
+                    }
+                    if (TEST_EVENT.equals(xml.getLocalName())) {
+                        final String testEvent = xml.getElementText().trim();
+                        if (!testEvent.isEmpty()) {
+                            testEvents.add(testEvent);
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return testEvents;
+    }
+    /**
+     * Opens a reader for a configuration file. The encoding is taken from the
+     * byte order mark, files without one are read as UTF-8, whatever their
+     * declaration says.
+     *
+     * @param file the file
+     * @return the reader
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static Reader openReader(final File file) throws IOException {
+        final InputStream in
+                = new BufferedInputStream(new FileInputStream(file));
+        final int[] mark = new int[3];
+        in.mark(mark.length);
+        for (int i = 0; i < mark.length; i++) {
+            mark[i] = in.read();
+        }
+        in.reset();
+        final Charset charset;
+        long skip = 0;
+        if (mark[0] == 0xFE && mark[1] == 0xFF) {
+            charset = StandardCharsets.UTF_16BE;
+            skip = 2;
+        } else if (mark[0] == 0xFF && mark[1] == 0xFE) {
+            charset = StandardCharsets.UTF_16LE;
+            skip = 2;
+        } else {
+            charset = StandardCharsets.UTF_8;
+            if (mark[0] == 0xEF && mark[1] == 0xBB && mark[2] == 0xBF) {
+                skip = 3;
+            }
+        }
+        if (in.skip(skip) != skip) {
+            in.close();
+            throw new IOException(file.getPath());
+        }
+        return new InputStreamReader(in, charset);
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of client processes running concurrently against an
+ * endpoint on the controller. Builds which exceed the limit wait in a queue
+ * per endpoint, ordered by priority and, within a priority, by arrival. A
+ * build only starts when it is at the head of the queue, so a build needing
+ * several slots is not overtaken by builds needing fewer. Every endpoint has
+ * its own lock, so endpoints do not contend with each other.
+ */
+final class EndpointConcurrencyGovernor {
+    /** The governor of the controller. */
+    private static final EndpointConcurrencyGovernor INSTANCE
+            = new EndpointConcurrencyGovernor();
+    /** The lanes by endpoint. */
+    private final ConcurrentMap<String, Lane> lanes
+            = new ConcurrentHashMap<>();
+    /** The arrival sequence of waiting builds. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Gets the governor of the controller.
+     *
+     * @return the governor
+     */
+    static EndpointConcurrencyGovernor getInstance() {
+        return INSTANCE;
+    }
+    /**
+     * Acquires slots for client processes of a build, waiting until they are
+     * available. A build with more processes than the limit gets as many
+     * slots as the limit allows, and must not run more processes at a time
+     * than {@link Permit#getSlots()} grants.
+     *
+     * @param endpoint the endpoint
+     * @param slots    the number of processes, limited to the limit
+     * @param limit    the maximum number of concurrent processes, 0 for no
+     *                 limit
+     * @param priority the priority, higher priorities are served first
+     * @param logger   the logger of the build
+     * @return the permit, which releases the slots when closed
+     * @throws InterruptedException the interrupted exception
+     */
+    Permit acquire(final String endpoint, final int slots, final int limit,
+            final int priority, final PrintStream logger)
+            throws InterruptedException {
+        Lane lane = lanes.get(endpoint);
+        if (lane == null) {
+            final Lane created = new Lane(endpoint);
+            lane = lanes.putIfAbsent(endpoint, created);
+            if (lane == null) {
+                lane = created;
+            }
+        }
+        final int needed = limit > 0 ? Math.max(1, Math.min(slots, limit))
+                : Math.max(1, slots);
+        lane.acquire(needed, limit, priority, logger);
+        return new Permit(lane, needed);
+    }
+    /**
+     * Gets the statistics of all endpoints.
+     *
+     * @return the statistics, sorted by endpoint
+     */
+    List<Statistics> getStatistics() {
+        final List<Statistics> statistics = new ArrayList<>();
+        for (final Map.Entry<String, Lane> lane : lanes.entrySet()) {
+            statistics.add(lane.getValue().getStatistics());
+        }
+        Collections.sort(statistics, new Comparator<Statistics>() {
+            @Override
+            public int compare(final Statistics first,
+                    final Statistics second) {
+                return first.getEndpoint().compareTo(second.getEndpoint());
+            }
+        });
+        return statistics;
+    }
+
+    /**
+     * The slots acquired by a build.
+     */
+    static final class Permit implements AutoCloseable {
+        /** The lane, null for combined permits. */
+        private final Lane lane;
+        /** The number of slots. */
+        private final int slots;
+        /** The combined permits. */
+        private final List<Permit> parts;
+        /** Whether the slots have been released. */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Instantiates a new permit.
+         *
+         * @param newLane  the lane
+         * @param newSlots the number of slots
+         */
+        private Permit(final Lane newLane, final int newSlots) {
+            this.lane = newLane;
+            this.slots = newSlots;
+            this.parts = Collections.emptyList();
+        }
+        /**
+         * Instantiates a new combined permit.
+         *
+         * @param newParts the permits
+         */
+        private Permit(final List<Permit> newParts) {
+            this.lane = null;
+            this.slots = 0;
+            this.parts = new ArrayList<>(newParts);
+        }
+        /**
+         * Combines the permits of several endpoints into one.
+         *
+         * @param permits the permits
+         * @return the permit which releases all of them
+         */
+        static Permit combine(final List<Permit> permits) {
+            return new Permit(permits);
+        }
+        /**
+         * Gets the slots granted by endpoint. The processes of an endpoint
+         * must not run more of them at a time than this.
+         *
+         * @return the slots by endpoint
+         */
+        Map<String, Integer> getSlots() {
+            final Map<String, Integer> slots = new HashMap<>();
+            if (lane != null) {
+                slots.put(lane.endpoint, this.slots);
+            }
+            for (final Permit part : parts) {
+                slots.putAll(part.getSlots());
+            }
+            return slots;
+        }
+        /**
+         * Releases the slots.
+         */
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                if (lane != null) {
+                    lane.release(slots);
+                }
+                for (final Permit part : parts) {
+                    part.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The statistics of an endpoint.
+     */
+    public static final class Statistics {
+        /** The endpoint. */
+        private final String endpoint;
+        /** The limit, 0 for none. */
+        private final int limit;
+        /** The number of running processes. */
+        private final int running;
+        /** The number of waiting builds. */
+        private final int waiting;
+        /** The number of builds which acquired slots. */
+        private final long acquired;
+        /** The total wait time in milliseconds. */
+        private final long totalWait;
+        /** The longest wait time in milliseconds. */
+        private final long maxWait;
+
+        /**
+         * Instantiates new statistics.
+         *
+         * @param newEndpoint  the endpoint
+         * @param newLimit     the limit
+         * @param newRunning   the number of running processes
+         * @param newWaiting   the number of waiting builds
+         * @param newAcquired  the number of builds which acquired slots
+         * @param newTotalWait the total wait time in milliseconds
+         * @param newMaxWait   the longest wait time in milliseconds
+         */
+        Statistics(final String newEndpoint, final int newLimit,
+                final int newRunning, final int newWaiting,
+                final long newAcquired, final long newTotalWait,
+                final long newMaxWait) {
+            this.endpoint = newEndpoint;
+            this.limit = newLimit;
+            this.running = newRunning;
+            this.waiting = newWaiting;
+            this.acquired = newAcquired;
+            this.totalWait = newTotalWait;
+            this.maxWait = newMaxWait;
+        }
+        /**
+         * Gets the endpoint.
+         *
+         * @return the endpoint
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+        /**
+         * Gets the limit.
+         *
+         * @return the limit, 0 for none
+         */
+        public int getLimit() {
+            return limit;
+        }
+        /**
+         * Gets the number of running processes.
+         *
+         * @return the running
+         */
+        public int getRunning() {
+            return running;
+        }
+        /**
+         * Gets the number of waiting builds.
+         *
+         * @return the waiting
+         */
+        public int getWaiting() {
+            return waiting;
+        }
+        /**
+         * Gets the number of builds which acquired slots.
+         *
+         * @return the acquired
+         */
+        public long getAcquired() {
+            return acquired;
+        }
+        /**
+         * Gets the total wait time in milliseconds.
+         *
+         * @return the total wait
+         */
+        public long getTotalWait() {
+            return totalWait;
+        }
+        /**
+         * Gets the average wait time in milliseconds.
+         *
+         * @return the average wait
+         */
+        public long getAverageWait() {
+            return acquired == 0 ? 0 : totalWait / acquired;
+        }
+        /**
+         * Gets the longest wait time in milliseconds.
+         *
+         * @return the max wait
+         */
+        public long getMaxWait() {
+            return maxWait;
+        }
+    }
+
+    /**
+     * A build waiting for slots.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        /** The number of slots. */
+        private final int slots;
+        /** The priority. */
+        private final int priority;
+        /** The arrival sequence. */
+        private final long arrival;
+        /** Signalled when the waiter may check for free slots. */
+        private final Condition turn;
+
+        /**
+         * Instantiates a new waiter.
+         *
+         * @param newSlots    the number of slots
+         * @param newPriority the priority
+         * @param newArrival  the arrival sequence
+         * @param newTurn     the condition
+         */
+        private Waiter(final int newSlots, final int newPriority,
+                final long newArrival, final Condition newTurn) {
+            this.slots = newSlots;
+            this.priority = newPriority;
+            this.arrival = newArrival;
+            this.turn = newTurn;
+        }
+        /**
+         * Compare to.
+         *
+         * @param other the other
+         * @return the comparison
+         */
+        @Override
+        public int compareTo(final Waiter other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return arrival < other.arrival ? -1
+                    : arrival == other.arrival ? 0 : 1;
+        }
+    }
+
+    /**
+     * The queue and slots of an endpoint.
+     */
+    private final class Lane {
+        /** The endpoint. */
+        private final String endpoint;
+        /** The lock. */
+        private final ReentrantLock lock = new ReentrantLock();
+        /** The waiting builds. */
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+        /** The number of slots in use. */
+        private int running;
+        /** The limit last requested, 0 for none. */
+        private int limit;
+        /** The number of builds which acquired slots. */
+        private long acquired;
+        /** The total wait time in milliseconds. */
+        private long totalWait;
+        /** The longest wait time in milliseconds. */
+        private long maxWait;
+
+        /**
+         * Instantiates a new lane.
+         *
+         * @param newEndpoint the endpoint
+         */
+        private Lane(final String newEndpoint) {
+            this.endpoint = newEndpoint;
+        }
+        /**
+         * Acquires slots.
+         *
+         * @param slots    the number of slots
+         * @param newLimit the limit, 0 for none
+         * @param priority the priority
+         * @param logger   the logger
+         * @throws InterruptedException the interrupted exception
+         */
+        private void acquire(final int slots, final int newLimit,
+                final int priority, final PrintStream logger)
+                throws InterruptedException {
+            final long start = System.currentTimeMillis();
+            lock.lock();
+            try {
+                limit = newLimit;
+                if (waiters.isEmpty() && fits(slots)) {
+                    take(slots, 0);
+                    return;
+                }
+                final Waiter waiter = new Waiter(slots, priority,
+                        sequence.incrementAndGet(), lock.newCondition());
+                waiters.add(waiter);
+                logger.println(Messages.endpointWaiting(endpoint,
+                        getPosition(waiter), running, limit));
+                try {
+                    while (waiters.peek() != waiter || !fits(slots)) {
+                        waiter.turn.await();
+                    }
+                } finally {
+                    waiters.remove(waiter);
+                    signalHead();
+                }
+                final long wait = System.currentTimeMillis() - start;
+                take(slots, wait);
+                logger.println(Messages.endpointAcquired(endpoint,
+                        wait / 1000.0));
+            } finally {
+                lock.unlock();
+            }
+        }
+        /**
+         * Releases slots.
+         *
+         * @param slots the number of slots
+         */
+        private void release(final int slots) {
+            lock.lock();
+            try {
+                running -= slots;
+                signalHead();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /**
+         * Checks whether slots are free.
+         *
+         * @param slots the number of slots
+         * @return true, if free
+         */
+        private boolean fits(final int slots) {
+            return limit <= 0 || running + slots <= limit;
+        }
+        /**
+         * Takes slots and records the wait time.
+         *
+         * @param slots the number of slots
+         * @param wait  the wait time in milliseconds
+         */
+        private void take(final int slots, final long wait) {
+            running += slots;
+            acquired++;
+            totalWait += wait;
+            maxWait = Math.max(maxWait, wait);
+        }
+        /**
+         * Gets the position of a waiting build in the queue.
+         *
+         * @param waiter the waiter
+         * @return the position, starting at 1
+         */
+        private int getPosition(final Waiter waiter) {
+            int position = 1;
+            for (final Waiter other : waiters) {
+                if (other.compareTo(waiter) < 0) {
+                    position++;
+                }
+            }
+            return position;
+        }
+        /**
+         * Wakes up the build at the head of the queue.
+         */
+        private void signalHead() {
+            final Waiter head = waiters.peek();
+            if (head != null) {
+                head.turn.signal();
+            }
+        }
+        /**
+         * Gets the statistics.
+         *
+         * @return the statistics
+         */
+        private Statistics getStatistics() {
+            lock.lock();
+            try {
+                return new Statistics(endpoint, limit, running,
+                        waiters.size(), acquired, totalWait, maxWait);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
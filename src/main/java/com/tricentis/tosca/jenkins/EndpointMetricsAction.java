@@ -0,0 +1,92 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+/**
+ * Shows the running processes, the queue and the wait times of every
+ * endpoint governed by the {@link EndpointConcurrencyGovernor}, and the
+ * percentiles of the {@link PhaseMetrics}. The phase histograms can be
+ * scraped in the Prometheus text format at {@code tricentis-ci/metrics}.
+ * Visible to administrators.
+ */
+@Extension
+public class EndpointMetricsAction implements RootAction {
+    /** The Constant URL_NAME. */
+    static final String URL_NAME = "tricentis-ci";
+
+    /**
+     * Gets the icon file name.
+     *
+     * @return the icon file name, null if the user may not see the page
+     */
+    @Override
+    public String getIconFileName() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null || !jenkins.hasPermission(Jenkins.ADMINISTER)) {
+            return null;
+        }
+        return "graph.png";
+    }
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.endpointMetricsTitle();
+    }
+    /**
+     * Gets the url name.
+     *
+     * @return the url name
+     */
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+    /**
+     * Gets the statistics of the endpoints.
+     *
+     * @return the statistics
+     */
+    public List<EndpointConcurrencyGovernor.Statistics> getStatistics() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return EndpointConcurrencyGovernor.getInstance().getStatistics();
+    }
+    /**
+     * Gets the histograms of the execution phases.
+     *
+     * @return the histograms
+     */
+    public List<PhaseMetrics.Histogram> getPhaseHistograms() {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        return PhaseMetrics.getInstance().getHistograms();
+    }
+    /**
+     * Writes the histograms of the execution phases in the Prometheus text
+     * format.
+     *
+     * @param req the request
+     * @param rsp the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void doMetrics(final StaplerRequest req,
+            final StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        try (PrintWriter out = rsp.getWriter()) {
+            PhaseMetrics.getInstance().write(out);
+        }
+    }
+}
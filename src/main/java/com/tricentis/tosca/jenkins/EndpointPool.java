@@ -0,0 +1,380 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Routes the client processes of builds configured with several endpoints to
+ * the least loaded healthy endpoint. The load of an endpoint is the number of
+ * processes routed to it which are still running, weighted by the
+ * exponentially weighted moving average of the latency of its health checks.
+ * A failed check counts as a check which took the whole check timeout, so the
+ * load of an endpoint rises with its first failure. Endpoints are checked in
+ * the background when they are routed to and their last check is older than
+ * the check interval, {@link #CHECK_INTERVAL} on the controller, or failed;
+ * routing does not wait for the checks. An endpoint which fails
+ * {@link #MAX_FAILURES} checks in a row is not routed to until it passes a
+ * check again.
+ */
+final class EndpointPool {
+    /** The interval in milliseconds between health checks of an endpoint. */
+    static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    /** The number of failed checks in a row after which it is unhealthy. */
+    static final int MAX_FAILURES = 2;
+    /** The weight of the latest latency in the moving average. */
+    static final double ALPHA = 0.3;
+    /** The Constant SEPARATORS. */
+    private static final String SEPARATORS = "[,;\\s]+";
+    /** The Constant CHECK_TIMEOUT. */
+    private static final int CHECK_TIMEOUT
+            = (int) TimeUnit.SECONDS.toMillis(5);
+    /** The pool of the controller. */
+    private static final EndpointPool INSTANCE
+            = new EndpointPool(new HttpHealthCheck(), CHECK_INTERVAL,
+                    Executors.newCachedThreadPool(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    "Endpoint health check");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }));
+    /** The health check. */
+    private final HealthCheck healthCheck;
+    /** The interval in milliseconds between health checks. */
+    private final long checkInterval;
+    /** The executor running the health checks. */
+    private final Executor checker;
+    /** The endpoints. */
+    private final ConcurrentMap<String, Endpoint> endpoints
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new endpoint pool.
+     *
+     * @param newHealthCheck   the health check
+     * @param newCheckInterval the interval in milliseconds between health
+     *                         checks of an endpoint
+     * @param newChecker       the executor running the health checks
+     */
+    EndpointPool(final HealthCheck newHealthCheck,
+            final long newCheckInterval, final Executor newChecker) {
+        this.healthCheck = newHealthCheck;
+        this.checkInterval = newCheckInterval;
+        this.checker = newChecker;
+    }
+    /**
+     * Gets the pool of the controller.
+     *
+     * @return the pool
+     */
+    static EndpointPool getInstance() {
+        return INSTANCE;
+    }
+    /**
+     * Splits an endpoint field into its endpoints, which are separated by
+     * commas, semicolons or whitespace.
+     *
+     * @param value the value of the field
+     * @return the endpoints, without duplicates
+     */
+    static List<String> parse(final String value) {
+        final Set<String> parsed = new LinkedHashSet<>();
+        if (value != null) {
+            for (final String endpoint : value.trim().split(SEPARATORS)) {
+                if (!endpoint.isEmpty()) {
+                    parsed.add(endpoint);
+                }
+            }
+        }
+        return new ArrayList<>(parsed);
+    }
+    /**
+     * Routes a client process to one of the given endpoints. The checks which
+     * are due are started, but the process is routed by the results of the
+     * checks which have finished.
+     *
+     * @param candidates the endpoints
+     * @return the lease of the endpoint, to be closed when the process has
+     *         finished
+     */
+    Lease route(final List<String> candidates) {
+        final List<Endpoint> checked = new ArrayList<>(candidates.size());
+        for (final String candidate : candidates) {
+            final Endpoint endpoint = getEndpoint(candidate);
+            endpoint.checkIfDue();
+            checked.add(endpoint);
+        }
+        synchronized (this) {
+            return lease(checked);
+        }
+    }
+    /**
+     * Routes a client process to the least loaded of the given endpoints,
+     * preferring healthy ones.
+     *
+     * @param candidates the endpoints
+     * @return the lease
+     */
+    private Lease lease(final List<Endpoint> candidates) {
+        Endpoint best = null;
+        boolean bestHealthy = false;
+        double bestLoad = Double.MAX_VALUE;
+        for (final Endpoint endpoint : candidates) {
+            final boolean healthy = endpoint.isHealthy();
+            final double load = endpoint.getLoad();
+            if (best == null || (healthy && !bestHealthy)
+                    || (healthy == bestHealthy && load < bestLoad)) {
+                best = endpoint;
+                bestHealthy = healthy;
+                bestLoad = load;
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("No endpoints");
+        }
+        return best.lease(bestHealthy);
+    }
+    /**
+     * Gets the state of an endpoint, creating it if necessary.
+     *
+     * @param url the endpoint
+     * @return the endpoint
+     */
+    private Endpoint getEndpoint(final String url) {
+        Endpoint endpoint = endpoints.get(url);
+        if (endpoint == null) {
+            final Endpoint created = new Endpoint(url);
+            endpoint = endpoints.putIfAbsent(url, created);
+            if (endpoint == null) {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * Checks the health of an endpoint.
+     */
+    interface HealthCheck {
+        /**
+         * Checks an endpoint.
+         *
+         * @param endpoint the endpoint
+         * @throws IOException if the endpoint is not healthy
+         */
+        void check(String endpoint) throws IOException;
+    }
+
+    /**
+     * Checks that an endpoint answers a GET request without server error.
+     */
+    static final class HttpHealthCheck implements HealthCheck {
+        /**
+         * Check.
+         *
+         * @param endpoint the endpoint
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void check(final String endpoint) throws IOException {
+            final HttpURLConnection connection
+                    = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setConnectTimeout(CHECK_TIMEOUT);
+            connection.setReadTimeout(CHECK_TIMEOUT);
+            final int status = connection.getResponseCode();
+            final InputStream body
+                    = status >= HttpURLConnection.HTTP_BAD_REQUEST
+                            ? connection.getErrorStream()
+                            : connection.getInputStream();
+            if (body != null) {
+                try (InputStream in = body) {
+                    final byte[] buffer = new byte[1024];
+                    while (in.read(buffer) != -1) {
+                        continue;
+                    }
+                }
+            }
+            if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new IOException(endpoint + ": " + status);
+            }
+        }
+    }
+
+    /**
+     * A client process routed to an endpoint.
+     */
+    static final class Lease implements AutoCloseable {
+        /** The endpoint. */
+        private final Endpoint endpoint;
+        /** Whether the endpoint was healthy when it was chosen. */
+        private final boolean healthy;
+        /** Whether the lease has been closed. */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Instantiates a new lease.
+         *
+         * @param newEndpoint the endpoint
+         * @param newHealthy  whether the endpoint is healthy
+         */
+        private Lease(final Endpoint newEndpoint, final boolean newHealthy) {
+            this.endpoint = newEndpoint;
+            this.healthy = newHealthy;
+        }
+        /**
+         * Gets the endpoint.
+         *
+         * @return the endpoint
+         */
+        String getEndpoint() {
+            return endpoint.url;
+        }
+        /**
+         * Checks whether the endpoint was healthy when it was chosen. If no
+         * endpoint is healthy, the least loaded one is chosen anyway.
+         *
+         * @return true, if healthy
+         */
+        boolean isHealthy() {
+            return healthy;
+        }
+        /**
+         * Releases the endpoint.
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                endpoint.release();
+            }
+        }
+    }
+
+    /**
+     * The load and health of an endpoint.
+     */
+    private final class Endpoint {
+        /** The url. */
+        private final String url;
+        /** The number of running processes routed to the endpoint. */
+        private int inFlight;
+        /** The moving average of the check latency in milliseconds. */
+        private double latency;
+        /** The number of failed checks in a row. */
+        private int failures;
+        /** The time of the last check, 0 if not checked yet. */
+        private long lastCheck;
+        /** Whether a check is running. */
+        private boolean checking;
+
+        /**
+         * Instantiates a new endpoint.
+         *
+         * @param newUrl the url
+         */
+        private Endpoint(final String newUrl) {
+            this.url = newUrl;
+        }
+        /**
+         * Starts a check of the endpoint in the background if its last check
+         * is older than the check interval or failed. At most one check of
+         * the endpoint runs at a time.
+         */
+        private void checkIfDue() {
+            final long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (checking || (lastCheck != 0 && failures == 0
+                        && now - lastCheck < checkInterval)) {
+                    return;
+                }
+                checking = true;
+            }
+            try {
+                checker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        check();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                synchronized (this) {
+                    checking = false;
+                }
+            }
+        }
+        /**
+         * Checks the endpoint and records the result.
+         */
+        private void check() {
+            final long start = System.currentTimeMillis();
+            boolean passed = false;
+            try {
+                healthCheck.check(url);
+                passed = true;
+            } catch (final IOException | RuntimeException e) {
+                // Counted as a failure below.
+            } finally {
+                final long end = System.currentTimeMillis();
+                synchronized (this) {
+                    checking = false;
+                    lastCheck = end;
+                    final double sample = passed ? Math.max(1, end - start)
+                            : Math.max(CHECK_TIMEOUT, end - start);
+                    latency = latency == 0 ? sample
+                            : ALPHA * sample + (1 - ALPHA) * latency;
+                    failures = passed ? 0 : failures + 1;
+                }
+            }
+        }
+        /**
+         * Checks if the endpoint is healthy.
+         *
+         * @return true, if healthy
+         */
+        private synchronized boolean isHealthy() {
+            return failures < MAX_FAILURES;
+        }
+        /**
+         * Gets the load of the endpoint.
+         *
+         * @return the load
+         */
+        private synchronized double getLoad() {
+            return (inFlight + 1) * Math.max(1, latency);
+        }
+        /**
+         * Routes a process to the endpoint.
+         *
+         * @param healthy whether the endpoint is healthy
+         * @return the lease
+         */
+        private synchronized Lease lease(final boolean healthy) {
+            inFlight++;
+            return new Lease(this, healthy);
+        }
+        /**
+         * Releases a process.
+         */
+        private synchronized void release() {
+            inFlight--;
+        }
+    }
+}
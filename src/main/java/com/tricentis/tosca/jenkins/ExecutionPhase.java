@@ -0,0 +1,49 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+/**
+ * The phases of a Tricentis execution which are timed by
+ * {@link PhaseTimingsAction}.
+ */
+public enum ExecutionPhase {
+    /** Preparing the build: history, rerun plan, result cache, shards. */
+    PREPARE("prepare"),
+    /** Computing the environment of the run. */
+    ENVIRONMENT("environment"),
+    /** Creating the command lines of the client processes. */
+    PROCESS_SETUP("process_setup"),
+    /** Writing the configuration files of the test events. */
+    CONFIG_FILE("config_file"),
+    /** Creating or checking the class data sharing archive. */
+    CLASS_DATA_SHARING("class_data_sharing"),
+    /** Waiting for free slots of the endpoints. */
+    ENDPOINT_WAIT("endpoint_wait"),
+    /** Running the client processes. */
+    CLIENT_RUN("client_run"),
+    /** Publishing the results. */
+    PUBLISH("publish"),
+    /** Recording durations, cached results and outcomes. */
+    RECORD("record");
+
+    /** The label of the phase in metrics. */
+    private final String label;
+
+    /**
+     * Instantiates a new execution phase.
+     *
+     * @param newLabel the label of the phase in metrics
+     */
+    ExecutionPhase(final String newLabel) {
+        this.label = newLabel;
+    }
+    /**
+     * Gets the label of the phase in metrics.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.util.List;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * {@link ProcessMonitor} which aborts the client processes as soon as too
+ * many test cases have failed. The results files are parsed incrementally on
+ * the agent by {@link IncrementalResultsParser}s, like for streaming, and the
+ * completed test cases are kept as delta reports, so the results up to the
+ * abort can still be published although the results files are incomplete.
+ * Throwing from {@link #poll()} makes the {@link ProcessExecutor} kill all
+ * client processes.
+ */
+public class FailFastMonitor implements ProcessMonitor {
+    /** The prefix of the directories the delta reports are written to. */
+    static final String FAIL_FAST_DIRECTORY = "tricentis-fail-fast";
+    /** The minimum number of test cases before the ratio is checked. */
+    static final int MIN_TEST_CASES = 10;
+    /** Minimum interval in milliseconds between two checks. */
+    private static final long CHECK_INTERVAL = 5000;
+    /** The monitor polled before each check, may be null. */
+    private final ProcessMonitor delegate;
+    /** The results files. */
+    private final List<String> resultsFiles;
+    /** The parsers, one per results file. */
+    private final IncrementalResultsParser[] parsers;
+    /** The maximum number of failed test cases, 0 if unlimited. */
+    private final int maxFailures;
+    /** The maximum percentage of failed test cases, 0 if unlimited. */
+    private final int maxRatio;
+    /** The workspace. */
+    private final FilePath workspace;
+    /** The listener. */
+    private final TaskListener listener;
+    /** The directory in the workspace the delta reports are written to. */
+    private final String directory;
+    /** The number of delta reports written. */
+    private int parts;
+    /** The time of the last check. */
+    private long lastChecked;
+    /** Whether the processes were aborted. */
+    private boolean aborted;
+
+    /**
+     * Instantiates a new fail fast monitor. The delta reports are written to
+     * a directory of the build, so builds sharing the workspace do not
+     * overwrite each other's reports; it is removed by {@link #delete()}.
+     *
+     * @param newDelegate     the monitor polled before each check, may be
+     *                        null
+     * @param newResultsFiles the results files, relative to the workspace
+     * @param newMaxFailures  the maximum number of failed test cases, 0 if
+     *                        unlimited
+     * @param newMaxRatio     the maximum percentage of failed test cases, 0
+     *                        if unlimited
+     * @param newRun          the run
+     * @param newWorkspace    the workspace
+     * @param newListener     the listener
+     */
+    public FailFastMonitor(final ProcessMonitor newDelegate,
+            final List<String> newResultsFiles, final int newMaxFailures,
+            final int newMaxRatio, final Run<?, ?> newRun,
+            final FilePath newWorkspace, final TaskListener newListener) {
+        this.delegate = newDelegate;
+        this.resultsFiles = newResultsFiles;
+        this.parsers = new IncrementalResultsParser[newResultsFiles.size()];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = new IncrementalResultsParser();
+        }
+        this.maxFailures = newMaxFailures;
+        this.maxRatio = newMaxRatio;
+        this.workspace = newWorkspace;
+        this.listener = newListener;
+        this.lastChecked = System.currentTimeMillis();
+        this.directory = StreamingResultsMonitor.createDirectoryName(
+                FAIL_FAST_DIRECTORY, newRun);
+    }
+    /**
+     * Polls the delegate and checks the failed test cases at most once per
+     * check interval.
+     *
+     * @throws AbortException       if the threshold has been crossed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void poll() throws IOException, InterruptedException {
+        if (delegate != null) {
+            delegate.poll();
+        }
+        final long now = System.currentTimeMillis();
+        if (now - lastChecked < CHECK_INTERVAL) {
+            return;
+        }
+        lastChecked = now;
+        check();
+    }
+    /**
+     * Started.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void started(final int process) {
+        if (delegate != null) {
+            delegate.started(process);
+        }
+    }
+    /**
+     * Terminated.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void terminated(final int process) {
+        if (delegate != null) {
+            delegate.terminated(process);
+        }
+    }
+    /**
+     * Killed.
+     *
+     * @param killed   the number of processes which were killed
+     * @param alive    the number of processes still alive
+     * @param duration the duration of the teardown in milliseconds
+     */
+    @Override
+    public void killed(final int killed, final int alive,
+            final long duration) {
+        if (delegate != null) {
+            delegate.killed(killed, alive, duration);
+        }
+    }
+    /**
+     * Parses the new content of all results files and aborts if the
+     * threshold has been crossed.
+     *
+     * @throws AbortException       if the threshold has been crossed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    void check() throws IOException, InterruptedException {
+        for (int i = 0; i < parsers.length; i++) {
+            final String delta = directory + "/part" + (parts + 1) + ".xml";
+            final int before = parsers[i].getTestCases();
+            parsers[i] = workspace.child(resultsFiles.get(i)).act(
+                    new StreamingResultsMonitor.ParseDelta(parsers[i],
+                            workspace.child(delta).getRemote()));
+            if (parsers[i].getTestCases() > before) {
+                parts++;
+            }
+        }
+        final int testCases = getTestCases();
+        final int failures = getFailures();
+        if (isExceeded(failures, testCases, maxFailures, maxRatio)) {
+            aborted = true;
+            final String message = Messages.failFastAbort(failures, testCases);
+            listener.getLogger().println(message);
+            throw new AbortException(message);
+        }
+    }
+    /**
+     * Checks whether a threshold has been crossed.
+     *
+     * @param failures    the number of failed test cases
+     * @param testCases   the number of completed test cases
+     * @param maxFailures the maximum number of failed test cases, 0 if
+     *                    unlimited
+     * @param maxRatio    the maximum percentage of failed test cases, 0 if
+     *                    unlimited
+     * @return true, if the processes are aborted
+     */
+    static boolean isExceeded(final int failures, final int testCases,
+            final int maxFailures, final int maxRatio) {
+        if (maxFailures > 0 && failures >= maxFailures) {
+            return true;
+        }
+        return maxRatio > 0 && testCases >= MIN_TEST_CASES
+                && failures * 100L >= (long) maxRatio * testCases;
+    }
+    /**
+     * Checks whether the processes were aborted by this monitor.
+     *
+     * @return true, if aborted
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+    /**
+     * Gets the number of completed test cases of all results files.
+     *
+     * @return the test cases
+     */
+    public int getTestCases() {
+        int testCases = 0;
+        for (final IncrementalResultsParser parser : parsers) {
+            testCases += parser.getTestCases();
+        }
+        return testCases;
+    }
+    /**
+     * Gets the number of failed test cases of all results files.
+     *
+     * @return the failures
+     */
+    public int getFailures() {
+        int failures = 0;
+        for (final IncrementalResultsParser parser : parsers) {
+            failures += parser.getFailures();
+        }
+        return failures;
+    }
+    /**
+     * Gets the pattern of the delta reports of the completed test cases.
+     *
+     * @return the pattern, or null if no test case has completed
+     */
+    public String getDeltas() {
+        return parts == 0 ? null : directory + "/*.xml";
+    }
+    /**
+     * Deletes the delta reports from the workspace, once they are published.
+     * Failures are only logged, they do not fail the build.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public void delete() throws InterruptedException {
+        try {
+            workspace.child(directory).deleteRecursive();
+        } catch (final IOException e) {
+            listener.getLogger().println(
+                    Messages.failFastDeleteFailed(e.getMessage()));
+        }
+    }
+}
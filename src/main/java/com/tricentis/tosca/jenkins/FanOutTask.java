@@ -0,0 +1,387 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import hudson.Extension;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.ResourceList;
+import hudson.model.Run;
+import hudson.model.queue.AbstractQueueTask;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import jenkins.model.queue.AsynchronousExecution;
+
+/**
+ * Queue task of a shard of an {@link AgentFanOut}. The task takes an
+ * executor of an agent matching the label of the fan-out, and the client
+ * process of the shard runs in a workspace allocated on that agent, so the
+ * fan-out is subject to the executor capacity and the workspace locking of
+ * the agents like any other build. The executor is held by an
+ * {@link AsynchronousExecution} while the client is running, without a
+ * thread waiting for it. After a restart of Jenkins, a task bound to the
+ * agent reattaches to a client which is still running.
+ */
+public final class FanOutTask extends AbstractQueueTask
+        implements Queue.TransientTask {
+    /** The fan-out. */
+    private final AgentFanOut fanOut;
+    /** The index of the shard. */
+    private final int shard;
+    /** The run. */
+    private final Run<?, ?> run;
+    /** The label of the agents which may take the task. */
+    private final Label label;
+    /** The agent of the running client to reattach to, null to launch. */
+    private final String reattach;
+
+    /**
+     * Instantiates a new task.
+     *
+     * @param newFanOut   the fan-out
+     * @param newShard    the index of the shard
+     * @param newRun      the run
+     * @param newLabel    the label of the agents which may take the task
+     * @param newReattach the agent of the running client to reattach to, null
+     *                    to launch the client
+     */
+    FanOutTask(final AgentFanOut newFanOut, final int newShard,
+            final Run<?, ?> newRun, final Label newLabel,
+            final String newReattach) {
+        this.fanOut = newFanOut;
+        this.shard = newShard;
+        this.run = newRun;
+        this.label = newLabel;
+        this.reattach = newReattach;
+    }
+    /**
+     * Gets the index of the shard.
+     *
+     * @return the index of the shard
+     */
+    int getShard() {
+        return shard;
+    }
+    /**
+     * Checks whether the task reattaches to a running client.
+     *
+     * @return true, if the task reattaches
+     */
+    boolean isReattach() {
+        return reattach != null;
+    }
+    /**
+     * Gets the assigned label.
+     *
+     * @return the label
+     */
+    @Override
+    public Label getAssignedLabel() {
+        return label;
+    }
+    /**
+     * Gets the last built on.
+     *
+     * @return null
+     */
+    @Override
+    public Node getLastBuiltOn() {
+        return null;
+    }
+    /**
+     * Checks if is builds the blocked.
+     *
+     * @return false
+     */
+    @Override
+    @Deprecated
+    public boolean isBuildBlocked() {
+        return false;
+    }
+    /**
+     * Gets the why blocked.
+     *
+     * @return null
+     */
+    @Override
+    @Deprecated
+    public String getWhyBlocked() {
+        return null;
+    }
+    /**
+     * Gets the cause of blockage.
+     *
+     * @return null
+     */
+    @Override
+    public CauseOfBlockage getCauseOfBlockage() {
+        return null;
+    }
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    @Override
+    public String getName() {
+        return getDisplayName();
+    }
+    /**
+     * Gets the full display name.
+     *
+     * @return the full display name
+     */
+    @Override
+    public String getFullDisplayName() {
+        return getDisplayName();
+    }
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.fanOutTask(run.getFullDisplayName(),
+                fanOut.getShards().get(shard));
+    }
+    /**
+     * Check abort permission.
+     */
+    @Override
+    public void checkAbortPermission() {
+        run.getParent().checkPermission(Item.CANCEL);
+    }
+    /**
+     * Checks for abort permission.
+     *
+     * @return true, if the user may abort the build
+     */
+    @Override
+    public boolean hasAbortPermission() {
+        return run.getParent().hasPermission(Item.CANCEL);
+    }
+    /**
+     * Gets the url.
+     *
+     * @return the url of the run
+     */
+    @Override
+    public String getUrl() {
+        return run.getUrl();
+    }
+    /**
+     * Gets the estimated duration.
+     *
+     * @return the expected duration of the shard in milliseconds, or -1 if
+     *         not known
+     */
+    @Override
+    public long getEstimatedDuration() {
+        return fanOut.getExpected(shard);
+    }
+    /**
+     * Creates the executable.
+     *
+     * @return the executable
+     */
+    @Override
+    public Queue.Executable createExecutable() {
+        return new Executable(this);
+    }
+    /**
+     * Gets the resource list.
+     *
+     * @return an empty resource list
+     */
+    @Override
+    public ResourceList getResourceList() {
+        return new ResourceList();
+    }
+
+    /**
+     * Runs on the executor the task was given. It launches the client or
+     * reattaches to it and holds the executor until the fan-out releases it.
+     */
+    private static final class Executable implements Queue.Executable {
+        /** The task. */
+        private final FanOutTask task;
+
+        /**
+         * Instantiates a new executable.
+         *
+         * @param newTask the task
+         */
+        private Executable(final FanOutTask newTask) {
+            this.task = newTask;
+        }
+        /**
+         * Gets the parent.
+         *
+         * @return the task
+         */
+        @Override
+        public FanOutTask getParent() {
+            return task;
+        }
+        /**
+         * Launches the client or reattaches to it.
+         *
+         * @throws AsynchronousExecution while the client is running
+         */
+        @Override
+        public void run() throws AsynchronousExecution {
+            final Executor executor = Executor.currentExecutor();
+            if (executor == null) {
+                return;
+            }
+            final AsynchronousExecution execution
+                    = task.fanOut.start(task, executor);
+            if (execution != null) {
+                throw execution;
+            }
+        }
+        /**
+         * Gets the estimated duration.
+         *
+         * @return the estimated duration
+         */
+        @Override
+        public long getEstimatedDuration() {
+            return task.getEstimatedDuration();
+        }
+        /**
+         * To string.
+         *
+         * @return the display name of the task
+         */
+        @Override
+        public String toString() {
+            return task.getDisplayName();
+        }
+    }
+
+    /**
+     * Holds the executor of a task while the client is running.
+     */
+    static final class Execution extends AsynchronousExecution {
+        /** The task. */
+        private final FanOutTask task;
+
+        /**
+         * Instantiates a new execution.
+         *
+         * @param newTask the task
+         */
+        Execution(final FanOutTask newTask) {
+            this.task = newTask;
+        }
+        /**
+         * Records that the executor has been interrupted, for example by a
+         * user or because the agent disconnected. The fan-out stops the
+         * client and reassigns the shard.
+         *
+         * @param cause the cause
+         */
+        @Override
+        public void stop(final Throwable cause) {
+            task.fanOut.interrupted(task);
+        }
+        /**
+         * Blocks restart.
+         *
+         * @return false, the client survives a restart
+         */
+        @Override
+        public boolean blocksRestart() {
+            return false;
+        }
+        /**
+         * Display cell.
+         *
+         * @return true
+         */
+        @Override
+        public boolean displayCell() {
+            return true;
+        }
+    }
+
+    /**
+     * Keeps a shard off agents which already run another shard of the same
+     * fan-out, which have been given up or which the shard has been
+     * reassigned from.
+     */
+    @Extension
+    public static final class Dispatcher extends QueueTaskDispatcher {
+        /**
+         * Can take.
+         *
+         * @param node the node
+         * @param item the item
+         * @return the cause of blockage, or null if the node can take the item
+         */
+        @Override
+        public CauseOfBlockage canTake(final Node node,
+                final Queue.BuildableItem item) {
+            if (!(item.task instanceof FanOutTask)) {
+                return null;
+            }
+            final FanOutTask task = (FanOutTask) item.task;
+            if (task.isReattach()) {
+                return null;
+            }
+            final String reason = task.fanOut.getBlockage(task.shard,
+                    node.getNodeName(), getNodeNames(task.label));
+            return reason == null ? null : new Blockage(reason);
+        }
+        /**
+         * Gets the names of the nodes of a label.
+         *
+         * @param label the label, may be null
+         * @return the names of the nodes
+         */
+        private static Collection<String> getNodeNames(final Label label) {
+            final List<String> names = new ArrayList<>();
+            if (label != null) {
+                for (final Node node : label.getNodes()) {
+                    names.add(node.getNodeName());
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Why an agent cannot take a shard.
+     */
+    private static final class Blockage extends CauseOfBlockage {
+        /** The reason. */
+        private final String reason;
+
+        /**
+         * Instantiates a new blockage.
+         *
+         * @param newReason the reason
+         */
+        private Blockage(final String newReason) {
+            this.reason = newReason;
+        }
+        /**
+         * Gets the short description.
+         *
+         * @return the reason
+         */
+        @Override
+        public String getShortDescription() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses a JUnit results file while it is still being written. Every call of
+ * {@link #parse(InputStream, File)} continues at the byte offset where the
+ * previous call stopped and copies the test cases which have been completed
+ * since then into a small, self-contained JUnit report (the delta). The start
+ * tags of the elements which are still open are kept, so the parser can be
+ * restarted in the middle of the file. Memory use is bounded by the size of
+ * the largest single test case, not by the size of the file.
+ */
+public class IncrementalResultsParser implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The Constant TESTCASE. */
+    private static final String TESTCASE = "testcase";
+    /** The Constant TESTSUITE. */
+    private static final String TESTSUITE = "testsuite";
+    /** The Constant FAILURE. */
+    private static final String FAILURE = "failure";
+    /** The Constant ERROR. */
+    private static final String ERROR = "error";
+    /** Attributes of a test suite copied into the delta. */
+    private static final String[] SUITE_ATTRIBUTES
+            = {"name", "package", "id", "timestamp", "hostname"};
+    /** The number of bytes of the results file parsed so far. */
+    private long offset;
+    /** The raw start tags of the currently open elements. */
+    private final List<String> openTags = new ArrayList<>();
+    /** The start tags used in deltas for open test suites, null otherwise. */
+    private final List<String> suiteTags = new ArrayList<>();
+    /** The number of test cases parsed so far. */
+    private int testCases;
+    /** The number of failed test cases parsed so far. */
+    private int failures;
+
+    /**
+     * Gets the number of bytes of the results file parsed so far.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+    /**
+     * Gets the number of test cases parsed so far.
+     *
+     * @return the test cases
+     */
+    public int getTestCases() {
+        return testCases;
+    }
+    /**
+     * Gets the number of test cases parsed so far which failed or had an
+     * error.
+     *
+     * @return the failures
+     */
+    public int getFailures() {
+        return failures;
+    }
+    /**
+     * Parses the content of the results file which has been appended since
+     * the previous call and writes the completed test cases into the delta
+     * file. The delta file is only created if there is at least one new test
+     * case. Incomplete content at the end is parsed again by the next call.
+     *
+     * @param appended  the content of the results file, starting at
+     *                  {@link #getOffset()}
+     * @param deltaFile the delta file
+     * @return the number of test cases written to the delta file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public int parse(final InputStream appended, final File deltaFile)
+            throws IOException {
+        final PushbackInputStream in = new PushbackInputStream(appended, 3);
+        if (offset == 0) {
+            skipByteOrderMark(in);
+        }
+        final StringBuilder prefix = new StringBuilder();
+        for (final String tag : openTags) {
+            prefix.append(tag);
+        }
+        final RecordingReader reader = new RecordingReader(prefix.toString(),
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+        final Delta delta = new Delta(deltaFile);
+        try {
+            parse(reader, delta);
+        } finally {
+            delta.close();
+        }
+        testCases += delta.count;
+        return delta.count;
+    }
+    /**
+     * Parses until the end of the available content or until the content
+     * cannot be parsed any further because it is incomplete. The XML parser
+     * reports the elements, their raw text is located by scanning the
+     * recorded content tag by tag, as the locations reported by the parser
+     * may already include characters read ahead.
+     *
+     * @param reader the reader
+     * @param delta  the delta
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void parse(final RecordingReader reader, final Delta delta)
+            throws IOException {
+        int committed = reader.prefixLength;
+        int cursor = 0;
+        boolean emptyElement = false;
+        int caseStart = -1;
+        int caseDepth = 0;
+        boolean caseFailed = false;
+        try {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            final XMLStreamReader xml = factory.createXMLStreamReader(reader);
+            while (xml.hasNext()) {
+                final int event = xml.next();
+                if (event != XMLStreamConstants.START_ELEMENT
+                        && event != XMLStreamConstants.END_ELEMENT) {
+                    continue;
+                }
+                final int start;
+                if (event == XMLStreamConstants.END_ELEMENT && emptyElement) {
+                    start = cursor;
+                    emptyElement = false;
+                } else {
+                    start = reader.nextTag(cursor);
+                    cursor = reader.tagEnd(start);
+                    emptyElement = event == XMLStreamConstants.START_ELEMENT
+                            && reader.charAt(cursor - 2) == '/';
+                }
+                final int end = cursor;
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (end <= reader.prefixLength) {
+                        continue;
+                    }
+                    if (caseStart >= 0) {
+                        caseFailed |= caseDepth == 1
+                                && (FAILURE.equals(xml.getLocalName())
+                                || ERROR.equals(xml.getLocalName()));
+                        caseDepth++;
+                    } else if (TESTCASE.equals(xml.getLocalName())) {
+                        caseStart = start;
+                        caseDepth = 1;
+                        caseFailed = false;
+                    } else {
+                        openTags.add(reader.substring(start, end));
+                        suiteTags.add(TESTSUITE.equals(xml.getLocalName())
+                                ? suiteTag(xml) : null);
+                        committed = commit(reader, committed, end);
+                    }
+                } else if (caseStart >= 0) {
+                    caseDepth--;
+                    if (caseDepth == 0) {
+                        delta.write(currentSuiteTag(),
+                                reader.substring(caseStart, end));
+                        caseStart = -1;
+                        if (caseFailed) {
+                            failures++;
+                        }
+                        committed = commit(reader, committed, end);
+                    }
+                } else if (!openTags.isEmpty()) {
+                    openTags.remove(openTags.size() - 1);
+                    suiteTags.remove(suiteTags.size() - 1);
+                    committed = commit(reader, committed, end);
+                }
+            }
+        } catch (final XMLStreamException e) {
+            // the end of the content is incomplete, continue there next time
+            return;
+        }
+    }
+    /**
+     * Marks the content up to the given character offset as parsed.
+     *
+     * @param reader    the reader
+     * @param committed the character offset parsed so far
+     * @param end       the new character offset
+     * @return the new character offset
+     */
+    private int commit(final RecordingReader reader, final int committed,
+            final int end) {
+        offset += utf8Length(reader.substring(committed, end));
+        reader.discard(end);
+        return end;
+    }
+    /**
+     * Gets the start tag of the innermost open test suite.
+     *
+     * @return the start tag
+     */
+    private String currentSuiteTag() {
+        for (int i = suiteTags.size() - 1; i >= 0; i--) {
+            if (suiteTags.get(i) != null) {
+                return suiteTags.get(i);
+            }
+        }
+        return "<" + TESTSUITE + " name=\"\">";
+    }
+    /**
+     * Creates the start tag of a test suite in a delta. Only identifying
+     * attributes are kept, counters and times of the whole suite would be
+     * wrong for the part of the suite in a delta.
+     *
+     * @param xml the reader positioned at the start tag
+     * @return the start tag
+     */
+    private static String suiteTag(final XMLStreamReader xml) {
+        final StringBuilder tag = new StringBuilder("<" + TESTSUITE);
+        for (final String name : SUITE_ATTRIBUTES) {
+            final String value = xml.getAttributeValue(null, name);
+            if (value != null) {
+                tag.append(' ').append(name).append("=\"")
+                        .append(escape(value)).append('"');
+            }
+        }
+        return tag.append('>').toString();
+    }
+    /**
+     * Escapes an attribute value.
+     *
+     * @param value the value
+     * @return the escaped value
+     */
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;")
+                .replace("\"", "&quot;");
+    }
+    /**
+     * Skips an UTF-8 byte order mark at the beginning of the file.
+     *
+     * @param in the in
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void skipByteOrderMark(final PushbackInputStream in)
+            throws IOException {
+        final byte[] bom = new byte[3];
+        int read = 0;
+        while (read < bom.length) {
+            final int n = in.read(bom, read, bom.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        if (read == bom.length && (bom[0] & 0xFF) == 0xEF
+                && (bom[1] & 0xFF) == 0xBB && (bom[2] & 0xFF) == 0xBF) {
+            offset = bom.length;
+        } else if (read > 0) {
+            in.unread(bom, 0, read);
+        }
+    }
+    /**
+     * Gets the number of bytes of the UTF-8 encoding of the given characters.
+     *
+     * @param chars the chars
+     * @return the length in bytes
+     */
+    static long utf8Length(final CharSequence chars) {
+        long length = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Reader which first returns the given prefix and then the content of the
+     * underlying reader. It records the returned content until it is
+     * discarded, so the raw text of elements can be extracted by character
+     * offsets.
+     */
+    private static final class RecordingReader extends Reader {
+        /** The prefix. */
+        private final String prefix;
+        /** The prefix length. */
+        private final int prefixLength;
+        /** The underlying reader. */
+        private final Reader in;
+        /** The recorded content. */
+        private final StringBuilder recorded = new StringBuilder();
+        /** The character offset of the first recorded character. */
+        private int base;
+        /** The number of prefix characters returned so far. */
+        private int prefixRead;
+
+        /**
+         * Instantiates a new recording reader.
+         *
+         * @param newPrefix the prefix
+         * @param newIn     the underlying reader
+         */
+        RecordingReader(final String newPrefix, final Reader newIn) {
+            this.prefix = newPrefix;
+            this.prefixLength = newPrefix.length();
+            this.in = newIn;
+        }
+        /**
+         * Read.
+         *
+         * @param cbuf the cbuf
+         * @param off  the off
+         * @param len  the len
+         * @return the int
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException {
+            final int n;
+            if (prefixRead < prefixLength) {
+                n = Math.min(len, prefixLength - prefixRead);
+                prefix.getChars(prefixRead, prefixRead + n, cbuf, off);
+                prefixRead += n;
+            } else {
+                n = in.read(cbuf, off, len);
+            }
+            if (n > 0) {
+                recorded.append(cbuf, off, n);
+            }
+            return n;
+        }
+        /**
+         * Gets the recorded character at the given offset.
+         *
+         * @param index the offset
+         * @return the character
+         */
+        char charAt(final int index) {
+            return recorded.charAt(index - base);
+        }
+        /**
+         * Gets the recorded characters between the given offsets.
+         *
+         * @param from the from
+         * @param to   the to
+         * @return the characters
+         */
+        String substring(final int from, final int to) {
+            return recorded.substring(from - base, to - base);
+        }
+        /**
+         * Finds the next start or end tag, skipping comments, CDATA sections,
+         * processing instructions and document type declarations.
+         *
+         * @param from the offset to start at
+         * @return the offset of the tag
+         * @throws XMLStreamException if no tag has been recorded
+         */
+        int nextTag(final int from) throws XMLStreamException {
+            int i = from - base;
+            while (true) {
+                i = recorded.indexOf("<", i);
+                if (i < 0 || i + 1 >= recorded.length()) {
+                    throw new XMLStreamException("No tag after " + from);
+                }
+                if (startsWith("<!--", i)) {
+                    i = skip(i, "-->");
+                } else if (startsWith("<![CDATA[", i)) {
+                    i = skip(i, "]]>");
+                } else if (startsWith("<?", i)) {
+                    i = skip(i, "?>");
+                } else if (startsWith("<!", i)) {
+                    i = skip(i, ">");
+                } else {
+                    return base + i;
+                }
+            }
+        }
+        /**
+         * Finds the end of the tag at the given offset. Attribute values may
+         * contain the character which closes the tag.
+         *
+         * @param start the offset of the tag
+         * @return the offset after the end of the tag
+         * @throws XMLStreamException if the end has not been recorded
+         */
+        int tagEnd(final int start) throws XMLStreamException {
+            char quote = 0;
+            for (int i = start - base + 1; i < recorded.length(); i++) {
+                final char c = recorded.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return base + i + 1;
+                }
+            }
+            throw new XMLStreamException("No end of tag at " + start);
+        }
+        /**
+         * Checks whether the recorded content contains the given text at the
+         * given index.
+         *
+         * @param text  the text
+         * @param index the index
+         * @return true, if successful
+         */
+        private boolean startsWith(final String text, final int index) {
+            if (index + text.length() > recorded.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (recorded.charAt(index + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        /**
+         * Skips to the end of a markup construct.
+         *
+         * @param from the index of the construct
+         * @param end  the end of the construct
+         * @return the index after the end
+         * @throws XMLStreamException if the end has not been recorded
+         */
+        private int skip(final int from, final String end)
+                throws XMLStreamException {
+            final int i = recorded.indexOf(end, from + 2);
+            if (i < 0) {
+                throw new XMLStreamException("No end of markup at " + from);
+            }
+            return i + end.length();
+        }
+        /**
+         * Discards the recorded characters before the given offset.
+         *
+         * @param to the offset
+         */
+        void discard(final int to) {
+            recorded.delete(0, to - base);
+            base = to;
+        }
+        /**
+         * Close.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * The delta file, created when the first test case is written.
+     */
+    private static final class Delta {
+        /** The file. */
+        private final File file;
+        /** The writer. */
+        private Writer writer;
+        /** The start tag of the currently open test suite. */
+        private String suiteTag;
+        /** The number of test cases written. */
+        private int count;
+
+        /**
+         * Instantiates a new delta.
+         *
+         * @param newFile the file
+         */
+        Delta(final File newFile) {
+            this.file = newFile;
+        }
+        /**
+         * Writes a test case.
+         *
+         * @param newSuiteTag the start tag of the test suite of the case
+         * @param testCase    the raw test case
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void write(final String newSuiteTag, final String testCase)
+                throws IOException {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file), StandardCharsets.UTF_8));
+                writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<testsuites>\n");
+            }
+            if (!newSuiteTag.equals(suiteTag)) {
+                if (suiteTag != null) {
+                    writer.write("</" + TESTSUITE + ">\n");
+                }
+                writer.write(newSuiteTag);
+                suiteTag = newSuiteTag;
+            }
+            writer.write(testCase);
+            count++;
+        }
+        /**
+         * Completes and closes the file.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void close() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            try {
+                if (suiteTag != null) {
+                    writer.write("\n</" + TESTSUITE + ">");
+                }
+                writer.write("\n</testsuites>\n");
+            } finally {
+                writer.close();
+            }
+        }
+    }
+}
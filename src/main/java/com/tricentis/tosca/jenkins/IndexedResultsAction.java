@@ -0,0 +1,294 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * Attaches the results published by {@link IndexedResultsPublisher} to a
+ * run. Only the totals are stored in the build record. The
+ * {@link ResultsIndex} is loaded from the build directory when the results
+ * page is opened and may be dropped again under memory pressure. Details of a
+ * test case are read from the details file only when its page is opened.
+ */
+public class IndexedResultsAction implements RunAction2 {
+    /** The Constant INDEX_FILE_NAME. */
+    static final String INDEX_FILE_NAME = "tricentis-results.idx";
+    /** The Constant DETAILS_FILE_NAME. */
+    static final String DETAILS_FILE_NAME = "tricentis-results.details";
+    /** The maximum number of failed test cases listed on the page. */
+    static final int MAX_LISTED_CASES = 1000;
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(IndexedResultsAction.class.getName());
+    /** The run. */
+    private transient Run<?, ?> run;
+    /** The index, loaded on demand. */
+    private transient SoftReference<ResultsIndex> index;
+    /** The number of test cases. */
+    private int tests;
+    /** The number of failed test cases, including errors. */
+    private int failed;
+    /** The number of skipped test cases. */
+    private int skipped;
+
+    /**
+     * Gets the action of the run, attaching a new one if there is none yet.
+     *
+     * @param run the run
+     * @return the action
+     */
+    static IndexedResultsAction attach(final Run<?, ?> run) {
+        synchronized (run) {
+            IndexedResultsAction action
+                    = run.getAction(IndexedResultsAction.class);
+            if (action == null) {
+                action = new IndexedResultsAction();
+                run.addAction(action);
+            }
+            return action;
+        }
+    }
+    /**
+     * On attached.
+     *
+     * @param newRun the run
+     */
+    @Override
+    public void onAttached(final Run<?, ?> newRun) {
+        this.run = newRun;
+    }
+    /**
+     * On load.
+     *
+     * @param newRun the run
+     */
+    @Override
+    public void onLoad(final Run<?, ?> newRun) {
+        this.run = newRun;
+    }
+    /**
+     * Gets the run.
+     *
+     * @return the run
+     */
+    public Run<?, ?> getRun() {
+        return run;
+    }
+    /**
+     * Gets the icon file name.
+     *
+     * @return the icon file name
+     */
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.summaryTitle();
+    }
+    /**
+     * Gets the url name.
+     *
+     * @return the url name
+     */
+    @Override
+    public String getUrlName() {
+        return "tricentisResults";
+    }
+    /**
+     * Gets the number of test cases.
+     *
+     * @return the tests
+     */
+    public int getTests() {
+        return tests;
+    }
+    /**
+     * Gets the number of failed test cases, including errors.
+     *
+     * @return the failed
+     */
+    public int getFailed() {
+        return failed;
+    }
+    /**
+     * Gets the number of skipped test cases.
+     *
+     * @return the skipped
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+    /**
+     * Gets the failed test cases, at most {@link #MAX_LISTED_CASES}.
+     *
+     * @return the failed cases
+     */
+    public List<TestCase> getFailedCases() {
+        final ResultsIndex loaded = getIndex();
+        final List<TestCase> cases = new ArrayList<>();
+        for (int i = 0; i < loaded.size()
+                && cases.size() < MAX_LISTED_CASES; i++) {
+            if (loaded.getStatus(i).isFailed()) {
+                cases.add(new TestCase(loaded, i));
+            }
+        }
+        return cases;
+    }
+    /**
+     * Gets a test case, bound to the URL <code>case/index</code>.
+     *
+     * @param caseIndex the index of the test case
+     * @return the test case, or null if there is none
+     */
+    public TestCase getCase(final int caseIndex) {
+        final ResultsIndex loaded = getIndex();
+        if (caseIndex < 0 || caseIndex >= loaded.size()) {
+            return null;
+        }
+        return new TestCase(loaded, caseIndex);
+    }
+    /**
+     * Gets the index, loading it from the build directory if necessary.
+     *
+     * @return the index, empty if it cannot be loaded
+     */
+    synchronized ResultsIndex getIndex() {
+        ResultsIndex loaded = index == null ? null : index.get();
+        if (loaded == null) {
+            final File file = new File(run.getRootDir(), INDEX_FILE_NAME);
+            loaded = new ResultsIndex();
+            if (file.isFile()) {
+                try {
+                    loaded = ResultsIndex.load(file);
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not load " + file, e);
+                }
+            }
+            index = new SoftReference<>(loaded);
+        }
+        return loaded;
+    }
+    /**
+     * Gets the details file.
+     *
+     * @return the details file
+     */
+    File getDetailsFile() {
+        return new File(run.getRootDir(), DETAILS_FILE_NAME);
+    }
+    /**
+     * Appends test cases to the stored index. Their details offsets must
+     * already refer to the details file of the run.
+     *
+     * @param added the added test cases
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    synchronized void append(final ResultsIndex added) throws IOException {
+        final ResultsIndex merged = getIndex();
+        merged.append(added, 0);
+        merged.save(new File(run.getRootDir(), INDEX_FILE_NAME));
+        tests = merged.size();
+        failed = merged.count(ResultsSummaryParser.Status.FAILED)
+                + merged.count(ResultsSummaryParser.Status.ERROR);
+        skipped = merged.count(ResultsSummaryParser.Status.SKIPPED);
+    }
+
+    /**
+     * A test case of the index. Its details are read when they are shown.
+     */
+    public final class TestCase {
+        /** The index. */
+        private final ResultsIndex cases;
+        /** The position of the test case in the index. */
+        private final int position;
+
+        /**
+         * Instantiates a new test case.
+         *
+         * @param newCases    the index
+         * @param newPosition the position of the test case in the index
+         */
+        TestCase(final ResultsIndex newCases, final int newPosition) {
+            this.cases = newCases;
+            this.position = newPosition;
+        }
+        /**
+         * Gets the position of the test case in the index.
+         *
+         * @return the position
+         */
+        public int getPosition() {
+            return position;
+        }
+        /**
+         * Gets the class name.
+         *
+         * @return the class name
+         */
+        public String getClassName() {
+            return cases.getClassName(position);
+        }
+        /**
+         * Gets the name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return cases.getName(position);
+        }
+        /**
+         * Gets the status.
+         *
+         * @return the status
+         */
+        public ResultsSummaryParser.Status getStatus() {
+            return cases.getStatus(position);
+        }
+        /**
+         * Gets the duration in seconds.
+         *
+         * @return the duration
+         */
+        public float getDuration() {
+            return cases.getDuration(position);
+        }
+        /**
+         * Gets the run.
+         *
+         * @return the run
+         */
+        public Run<?, ?> getRun() {
+            return run;
+        }
+        /**
+         * Reads the details from the details file.
+         *
+         * @return the details, or null if the test case has none
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        public ResultsDetails getDetails() throws IOException {
+            final long offset = cases.getDetailOffset(position);
+            if (offset == ResultsIndex.NO_DETAILS) {
+                return null;
+            }
+            return ResultsDetails.read(getDetailsFile(), offset);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Implementation of {@link JUnitResultsPublisher} for very large reports. The
+ * reports are parsed on the agent into a columnar {@link ResultsIndex}, the
+ * details of failed test cases are streamed directly into the details file
+ * of the run. The controller keeps neither per test case objects nor details
+ * in memory, see {@link IndexedResultsAction}.
+ */
+public class IndexedResultsPublisher
+        implements JUnitResultsPublisher, Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Publish.
+     *
+     * @param reportFileName the report file name, or comma separated patterns
+     * @param run            the run
+     * @param workspace      the workspace
+     * @param launcher       the launcher
+     * @param listener       the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void publish(final String reportFileName, final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        final IndexedResultsAction action = IndexedResultsAction.attach(run);
+        final ResultsIndex index;
+        synchronized (action) {
+            final File detailsFile = action.getDetailsFile();
+            try (OutputStream out = new FileOutputStream(detailsFile, true)) {
+                index = workspace.act(new IndexReports(reportFileName,
+                        new RemoteOutputStream(out), detailsFile.length()));
+                // Writes to the remote stream arrive asynchronously, the
+                // details have to be complete before the index refers to them.
+                workspace.getChannel().syncIO();
+            }
+            if (index == null) {
+                throw new AbortException(
+                        Messages.noResultsFound(reportFileName));
+            }
+            action.append(index);
+        }
+        final int failed = index.count(ResultsSummaryParser.Status.FAILED)
+                + index.count(ResultsSummaryParser.Status.ERROR);
+        listener.getLogger().println(Messages.summaryLog(index.size(), failed,
+                index.count(ResultsSummaryParser.Status.SKIPPED)));
+        if (failed > 0) {
+            run.setResult(Result.UNSTABLE);
+        }
+    }
+
+    /**
+     * Parses the reports matching the patterns on the agent.
+     */
+    private static final class IndexReports
+            extends MasterToSlaveFileCallable<ResultsIndex> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The comma separated patterns of the reports. */
+        private final String includes;
+        /** The stream to the details file on the controller. */
+        private final OutputStream details;
+        /** The current length of the details file. */
+        private final long detailsLength;
+
+        /**
+         * Instantiates a new index reports.
+         *
+         * @param newIncludes      the comma separated patterns of the reports
+         * @param newDetails       the stream to the details file
+         * @param newDetailsLength the current length of the details file
+         */
+        IndexReports(final String newIncludes, final OutputStream newDetails,
+                final long newDetailsLength) {
+            this.includes = newIncludes;
+            this.details = newDetails;
+            this.detailsLength = newDetailsLength;
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return the index, or null if no report matches the patterns
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public ResultsIndex invoke(final File workspace,
+                final VirtualChannel channel) throws IOException {
+            final String[] reports = Util.createFileSet(workspace, includes)
+                    .getDirectoryScanner().getIncludedFiles();
+            if (reports.length == 0) {
+                details.close();
+                return null;
+            }
+            final ResultsIndex index = new ResultsIndex();
+            final ResultsSummaryParser parser = new ResultsSummaryParser();
+            try (ResultsDetails.Writer writer
+                    = new ResultsDetails.Writer(details, detailsLength)) {
+                final ResultsSummaryParser.Handler handler
+                        = index.handler(writer);
+                for (final String report : reports) {
+                    try (InputStream in = new BufferedInputStream(
+                            new FileInputStream(new File(workspace,
+                                    report)))) {
+                        parser.parse(in, handler);
+                    }
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Reads the version of a Java installation from its <code>release</code>
+ * file, without starting the Java executable.
+ */
+final class JavaRelease {
+    /** The Constant FILE_NAME. */
+    static final String FILE_NAME = "release";
+    /** The Constant JAVA_VERSION. */
+    private static final String JAVA_VERSION = "JAVA_VERSION";
+
+    /**
+     * Instantiates a new java release.
+     */
+    private JavaRelease() {
+    }
+    /**
+     * Reads the version of the installation a Java executable belongs to.
+     *
+     * @param java the java executable, <code>home/bin/java</code>
+     * @return the version, or null if unknown
+     */
+    static String readVersionOfExecutable(final File java) {
+        return readVersion(
+                java.getAbsoluteFile().getParentFile().getParentFile());
+    }
+    /**
+     * Reads the version of a Java installation.
+     *
+     * @param javaHome the java home
+     * @return the version, such as <code>17.0.2</code>, or null if unknown
+     */
+    static String readVersion(final File javaHome) {
+        final File release = new File(javaHome, FILE_NAME);
+        if (!release.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(release)) {
+            properties.load(in);
+        } catch (final IOException e) {
+            return null;
+        }
+        final String version = properties.getProperty(JAVA_VERSION);
+        if (version == null) {
+            return null;
+        }
+        return version.replace("\"", "").trim();
+    }
+    /**
+     * Gets the major version of a Java version such as
+     * <code>"1.8.0_292"</code> or <code>"17.0.2"</code>.
+     *
+     * @param version the version, may be quoted or null
+     * @return the major version, 0 if unknown
+     */
+    static int getMajorVersion(final String version) {
+        if (version == null) {
+            return 0;
+        }
+        final String[] parts = version.replace("\"", "").split("[._+-]");
+        try {
+            final int major = Integer.parseInt(parts[0]);
+            if (major == 1 && parts.length > 1) {
+                return Integer.parseInt(parts[1]);
+            }
+            return major;
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
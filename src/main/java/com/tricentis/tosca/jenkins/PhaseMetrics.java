@@ -0,0 +1,262 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histograms of the durations of the {@link ExecutionPhase}s of all builds on
+ * the controller, per phase and endpoint. The buckets grow exponentially
+ * from one millisecond to several hours, so recording is constant time and
+ * memory stays fixed, and the percentiles are accurate to a factor of two.
+ * The histograms are written in the Prometheus text format for scraping.
+ */
+final class PhaseMetrics {
+    /** The metrics of the controller. */
+    private static final PhaseMetrics INSTANCE = new PhaseMetrics();
+    /** The number of buckets with an upper bound. */
+    static final int BUCKETS = 24;
+    /** The upper bound of the first bucket in nanoseconds. */
+    private static final long FIRST_BOUND = TimeUnit.MILLISECONDS.toNanos(1);
+    /** The Constant NANOS_PER_SECOND. */
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    /** The Constant NAME. */
+    private static final String NAME = "tricentis_phase_duration_seconds";
+    /** The Constant QUANTILES. */
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    /** The histograms by phase and endpoint. */
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+
+    /**
+     * Gets the metrics of the controller.
+     *
+     * @return the metrics
+     */
+    static PhaseMetrics getInstance() {
+        return INSTANCE;
+    }
+    /**
+     * Records the duration of a phase.
+     *
+     * @param phase    the phase
+     * @param endpoint the endpoint
+     * @param nanos    the duration in nanoseconds
+     */
+    void record(final ExecutionPhase phase, final String endpoint,
+            final long nanos) {
+        final String key = phase.ordinal() + "\u0000" + endpoint;
+        synchronized (histograms) {
+            Histogram histogram = histograms.get(key);
+            if (histogram == null) {
+                histogram = new Histogram(phase, endpoint);
+                histograms.put(key, histogram);
+            }
+            histogram.record(nanos);
+        }
+    }
+    /**
+     * Gets copies of the histograms, ordered by phase and endpoint.
+     *
+     * @return the histograms
+     */
+    List<Histogram> getHistograms() {
+        final List<Histogram> copies = new ArrayList<>();
+        synchronized (histograms) {
+            for (final Histogram histogram : histograms.values()) {
+                copies.add(new Histogram(histogram));
+            }
+        }
+        return copies;
+    }
+    /**
+     * Writes the histograms in the Prometheus text format, with the
+     * percentiles as an additional gauge.
+     *
+     * @param out the out
+     */
+    void write(final PrintWriter out) {
+        final List<Histogram> copies = getHistograms();
+        out.print("# HELP " + NAME
+                + " Time spent in a phase of a Tricentis execution.\n");
+        out.print("# TYPE " + NAME + " histogram\n");
+        for (final Histogram histogram : copies) {
+            final String labels = histogram.getLabels();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += histogram.counts[i];
+                out.print(NAME + "_bucket{" + labels + ",le=\""
+                        + seconds(bound(i)) + "\"} " + cumulative + "\n");
+            }
+            out.print(NAME + "_bucket{" + labels + ",le=\"+Inf\"} "
+                    + histogram.count + "\n");
+            out.print(NAME + "_sum{" + labels + "} "
+                    + seconds(histogram.sum) + "\n");
+            out.print(NAME + "_count{" + labels + "} " + histogram.count
+                    + "\n");
+        }
+        out.print("# HELP " + NAME + "_quantile"
+                + " Percentiles of the time spent in a phase.\n");
+        out.print("# TYPE " + NAME + "_quantile gauge\n");
+        for (final Histogram histogram : copies) {
+            for (final double quantile : QUANTILES) {
+                out.print(NAME + "_quantile{" + histogram.getLabels()
+                        + ",quantile=\"" + quantile + "\"} "
+                        + seconds(histogram.percentile(quantile)) + "\n");
+            }
+        }
+        out.flush();
+    }
+    /**
+     * Gets the upper bound of a bucket.
+     *
+     * @param bucket the bucket
+     * @return the upper bound in nanoseconds
+     */
+    static long bound(final int bucket) {
+        return FIRST_BOUND << bucket;
+    }
+    /**
+     * Converts nanoseconds to seconds for the text format.
+     *
+     * @param nanos the nanoseconds
+     * @return the seconds
+     */
+    private static String seconds(final long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / NANOS_PER_SECOND);
+    }
+    /**
+     * Escapes a label value.
+     *
+     * @param value the value
+     * @return the escaped value
+     */
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    /**
+     * The histogram of a phase and endpoint.
+     */
+    static final class Histogram {
+        /** The phase. */
+        private final ExecutionPhase phase;
+        /** The endpoint. */
+        private final String endpoint;
+        /** The counts of the buckets, the last one without upper bound. */
+        private final long[] counts;
+        /** The number of durations. */
+        private long count;
+        /** The sum of the durations in nanoseconds. */
+        private long sum;
+        /** The longest duration in nanoseconds. */
+        private long max;
+
+        /**
+         * Instantiates a new histogram.
+         *
+         * @param newPhase    the phase
+         * @param newEndpoint the endpoint
+         */
+        Histogram(final ExecutionPhase newPhase, final String newEndpoint) {
+            this.phase = newPhase;
+            this.endpoint = newEndpoint;
+            this.counts = new long[BUCKETS + 1];
+        }
+        /**
+         * Instantiates a copy of a histogram.
+         *
+         * @param other the histogram
+         */
+        Histogram(final Histogram other) {
+            this.phase = other.phase;
+            this.endpoint = other.endpoint;
+            this.counts = other.counts.clone();
+            this.count = other.count;
+            this.sum = other.sum;
+            this.max = other.max;
+        }
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        void record(final long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKETS && nanos > bound(bucket)) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sum += nanos;
+            max = Math.max(max, nanos);
+        }
+        /**
+         * Gets a percentile, as the upper bound of the bucket it falls into,
+         * but not more than the longest duration.
+         *
+         * @param quantile the quantile, between 0 and 1
+         * @return the percentile in nanoseconds, 0 if nothing was recorded
+         */
+        long percentile(final double quantile) {
+            final long rank = (long) Math.ceil(quantile * count);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank && cumulative > 0) {
+                    return Math.min(bound(i), max);
+                }
+            }
+            return max;
+        }
+        /**
+         * Gets the phase.
+         *
+         * @return the phase
+         */
+        public ExecutionPhase getPhase() {
+            return phase;
+        }
+        /**
+         * Gets the endpoint.
+         *
+         * @return the endpoint
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+        /**
+         * Gets the number of durations.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+        /**
+         * Gets a percentile for display.
+         *
+         * @param percent the percentile, between 0 and 100
+         * @return the percentile in milliseconds
+         */
+        public long getPercentileMillis(final int percent) {
+            return TimeUnit.NANOSECONDS.toMillis(percentile(percent / 100.0));
+        }
+        /**
+         * Gets the labels in the text format.
+         *
+         * @return the labels
+         */
+        String getLabels() {
+            return "phase=\"" + phase.getLabel() + "\",endpoint=\""
+                    + escape(endpoint) + "\"";
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+/**
+ * The time a build spent in each {@link ExecutionPhase}, shown on the build
+ * page. Phases are timed with {@link System#nanoTime()}. A phase started
+ * while another one is running pauses the other one, so every phase only
+ * counts its own time and the phases add up to the time of the execution.
+ * Every timed phase is also recorded in the {@link PhaseMetrics} of the
+ * controller.
+ */
+public class PhaseTimingsAction extends InvisibleAction {
+    /** The time spent in each phase in nanoseconds. */
+    private final Map<ExecutionPhase, Long> nanos
+            = new EnumMap<>(ExecutionPhase.class);
+    /** The endpoint the phases are recorded for in the metrics. */
+    private String endpoint = "";
+    /** The running phases, the innermost first. */
+    private transient Deque<Split> running;
+
+    /**
+     * Gets the action of the run, attaching a new one if there is none yet.
+     *
+     * @param run the run
+     * @return the action
+     */
+    static PhaseTimingsAction attach(final Run<?, ?> run) {
+        synchronized (run) {
+            PhaseTimingsAction action
+                    = run.getAction(PhaseTimingsAction.class);
+            if (action == null) {
+                action = new PhaseTimingsAction();
+                run.addAction(action);
+            }
+            return action;
+        }
+    }
+    /**
+     * Sets the endpoint the phases are recorded for in the metrics.
+     *
+     * @param newEndpoint the endpoint
+     */
+    synchronized void setEndpoint(final String newEndpoint) {
+        this.endpoint = newEndpoint == null ? "" : newEndpoint;
+    }
+    /**
+     * Starts timing a phase, pausing the phase which is running.
+     *
+     * @param phase the phase
+     * @return the split, to be closed at the end of the phase
+     */
+    synchronized Split start(final ExecutionPhase phase) {
+        if (running == null) {
+            running = new ArrayDeque<>();
+        }
+        final long now = System.nanoTime();
+        final Split outer = running.peek();
+        if (outer != null) {
+            outer.pause(now);
+        }
+        final Split split = new Split(phase, now);
+        running.push(split);
+        return split;
+    }
+    /**
+     * Stops timing a phase and resumes the phase it paused.
+     *
+     * @param split the split of the phase
+     */
+    private synchronized void stop(final Split split) {
+        if (!running.remove(split)) {
+            return;
+        }
+        final long now = System.nanoTime();
+        record(split.phase, split.pause(now));
+        final Split outer = running.peek();
+        if (outer != null) {
+            outer.resume(now);
+        }
+    }
+    /**
+     * Records time spent in a phase which could not be timed with a split,
+     * like the run of a client which continues while no thread waits for it.
+     *
+     * @param phase   the phase
+     * @param elapsed the time in nanoseconds
+     */
+    synchronized void record(final ExecutionPhase phase, final long elapsed) {
+        final Long total = nanos.get(phase);
+        nanos.put(phase, total == null ? elapsed : total + elapsed);
+        PhaseMetrics.getInstance().record(phase, endpoint, elapsed);
+    }
+    /**
+     * Gets the time spent in a phase.
+     *
+     * @param phase the phase
+     * @return the time in milliseconds, 0 if the phase did not run
+     */
+    public synchronized double getMillis(final ExecutionPhase phase) {
+        final Long total = nanos.get(phase);
+        return total == null ? 0 : total / (double) TimeUnit.MILLISECONDS
+                .toNanos(1);
+    }
+    /**
+     * Gets the phases which ran.
+     *
+     * @return the phases, in the order of their declaration
+     */
+    public synchronized ExecutionPhase[] getPhases() {
+        return nanos.keySet().toArray(new ExecutionPhase[nanos.size()]);
+    }
+    /**
+     * Gets the time spent in all phases.
+     *
+     * @return the time in milliseconds
+     */
+    public synchronized double getTotalMillis() {
+        long total = 0;
+        for (final Long phase : nanos.values()) {
+            total += phase;
+        }
+        return total / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * The timing of a running phase.
+     */
+    final class Split implements Closeable {
+        /** The phase. */
+        private final ExecutionPhase phase;
+        /** The time the phase was started or resumed. */
+        private long resumed;
+        /** Whether the phase is paused. */
+        private boolean paused;
+        /** The time spent in the phase before it was paused. */
+        private long elapsed;
+
+        /**
+         * Instantiates a new split.
+         *
+         * @param newPhase the phase
+         * @param now      the current time
+         */
+        Split(final ExecutionPhase newPhase, final long now) {
+            this.phase = newPhase;
+            this.resumed = now;
+        }
+        /**
+         * Pauses the phase.
+         *
+         * @param now the current time
+         * @return the time spent in the phase so far
+         */
+        long pause(final long now) {
+            if (!paused) {
+                elapsed += now - resumed;
+                paused = true;
+            }
+            return elapsed;
+        }
+        /**
+         * Resumes the phase.
+         *
+         * @param now the current time
+         */
+        void resume(final long now) {
+            resumed = now;
+            paused = false;
+        }
+        /**
+         * Stops timing the phase.
+         */
+        @Override
+        public void close() {
+            stop(this);
+        }
+    }
+}
@@ -32,4 +32,22 @@ public interface ProcStarterFactory {
     ProcStarter create(TricentisCiBuilder runner, Run<?, ?> run,
             FilePath workspace, Launcher launcher, TaskListener listener)
             throws InterruptedException, IOException;
+    /**
+     * Create a new, ready to run {@link ProcStarter} object instance which
+     * executes only the test events of the given shard and writes the results
+     * file of the shard.
+     *
+     * @param runner    runner
+     * @param shard     shard
+     * @param run       Jenkins run
+     * @param workspace worksapce
+     * @param launcher  launcher
+     * @param listener  listener
+     * @return a new, ready to run {@link ProcStarter} object instance
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    ProcStarter create(TricentisCiBuilder runner, TestEventShard shard,
+            Run<?, ?> run, FilePath workspace, Launcher launcher,
+            TaskListener listener) throws InterruptedException, IOException;
 }
@@ -4,6 +4,8 @@
 package com.tricentis.tosca.jenkins;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import hudson.Launcher.ProcStarter;
 
 /**
@@ -22,4 +24,37 @@ public interface ProcessExecutor {
      */
     int execute(ProcStarter procStarter)
             throws IOException, InterruptedException;
+    /**
+     * Execute all given {@link ProcStarter}s concurrently and wait for all of
+     * them to terminate.
+     *
+     * @param procStarters process starters.
+     * @param monitor      monitor polled while processes are running, may be
+     *                     null.
+     * @return execution results in the order of the given starters.
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    List<ProcessResult> executeAll(List<ProcStarter> procStarters,
+            ProcessMonitor monitor) throws IOException, InterruptedException;
+    /**
+     * Execute all given {@link ProcStarter}s concurrently, but never more
+     * processes of an endpoint at a time than the slots of the endpoint, and
+     * wait for all of them to terminate. The other processes are started in
+     * order as processes of their endpoint terminate.
+     *
+     * @param procStarters process starters.
+     * @param endpoints    endpoints of the processes, in the order of the
+     *                     starters.
+     * @param slots        slots by endpoint, endpoints without slots are not
+     *                     limited.
+     * @param monitor      monitor polled while processes are running, may be
+     *                     null.
+     * @return execution results in the order of the given starters.
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    List<ProcessResult> executeAll(List<ProcStarter> procStarters,
+            List<String> endpoints, Map<String, Integer> slots,
+            ProcessMonitor monitor) throws IOException, InterruptedException;
 }
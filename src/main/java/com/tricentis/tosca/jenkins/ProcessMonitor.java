@@ -0,0 +1,44 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+
+/**
+ * Callback invoked periodically by a {@link ProcessExecutor} while client
+ * processes are running.
+ */
+public interface ProcessMonitor {
+    /**
+     * Called while processes are running, at most once per poll interval of
+     * the executor.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    void poll() throws IOException, InterruptedException;
+    /**
+     * Called right after a process has been started. Processes waiting for
+     * a free slot of their endpoint are started later than the others.
+     *
+     * @param process the index of the process
+     */
+    void started(int process);
+    /**
+     * Called once a process has terminated by itself.
+     *
+     * @param process the index of the process
+     */
+    void terminated(int process);
+    /**
+     * Called after the processes which were still alive have been killed,
+     * because waiting was interrupted or the monitor failed.
+     *
+     * @param killed   the number of processes which were killed
+     * @param alive    the number of processes still alive after the grace
+     *                 period
+     * @param duration the duration of the teardown in milliseconds
+     */
+    void killed(int killed, int alive, long duration);
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of a single client process.
+ */
+public class ProcessResult implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The exit code. */
+    private final int exitCode;
+    /** The duration in milliseconds. */
+    private final long duration;
+
+    /**
+     * Instantiates a new process result.
+     *
+     * @param newExitCode the exit code
+     * @param newDuration the duration in milliseconds
+     */
+    public ProcessResult(final int newExitCode, final long newDuration) {
+        this.exitCode = newExitCode;
+        this.duration = newDuration;
+    }
+    /**
+     * Gets the exit code.
+     *
+     * @return the exit code
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+    /**
+     * Gets the duration.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import hudson.AbortException;
+import hudson.Launcher.ProcStarter;
+import hudson.model.TaskListener;
+
+/**
+ * {@link ProcessMonitor} which aborts the client processes if one of them
+ * runs longer than the overall timeout, or has not written any output for
+ * the no-output timeout. Both are measured per process from the time the
+ * {@link ProcessExecutor} started it, so processes waiting for a free slot
+ * of their endpoint are not timed while they wait. The output is observed by
+ * wrapping the output streams of the starters. Throwing from {@link #poll()}
+ * makes the {@link ProcessExecutor} kill all client processes with their
+ * process trees, and cancel the executions submitted natively to DEX. The
+ * time the teardown takes is logged.
+ */
+public class ProcessWatchdog implements ProcessMonitor {
+    /** The monitor polled before each check, may be null. */
+    private final ProcessMonitor delegate;
+    /** The overall timeout in minutes, 0 if unlimited. */
+    private final int timeout;
+    /** The no-output timeout in minutes, 0 if unlimited. */
+    private final int noOutputTimeout;
+    /** The listener. */
+    private final TaskListener listener;
+    /** The output streams of the processes. */
+    private final ActivityOutputStream[] outputs;
+    /** The times the running processes were started, 0 if not running. */
+    private final long[] starts;
+
+    /**
+     * Instantiates a new process watchdog. The output streams of the
+     * starters are replaced by streams which record when output was written,
+     * so the watchdog has to be created before the processes are started.
+     *
+     * @param newDelegate        the monitor polled before each check, may be
+     *                           null
+     * @param starters           the starters of the processes
+     * @param newTimeout         the overall timeout in minutes, 0 if
+     *                           unlimited
+     * @param newNoOutputTimeout the no-output timeout in minutes, 0 if
+     *                           unlimited
+     * @param newListener        the listener
+     */
+    public ProcessWatchdog(final ProcessMonitor newDelegate,
+            final List<ProcStarter> starters, final int newTimeout,
+            final int newNoOutputTimeout, final TaskListener newListener) {
+        this.delegate = newDelegate;
+        this.timeout = newTimeout;
+        this.noOutputTimeout = newNoOutputTimeout;
+        this.listener = newListener;
+        final long now = System.currentTimeMillis();
+        this.starts = new long[starters.size()];
+        this.outputs = new ActivityOutputStream[starters.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            final OutputStream stdout = starters.get(i).stdout();
+            if (stdout != null) {
+                outputs[i] = new ActivityOutputStream(stdout, now);
+                starters.get(i).stdout(outputs[i]);
+            }
+        }
+    }
+    /**
+     * Starts the clocks of the timeouts of a process.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void started(final int process) {
+        if (delegate != null) {
+            delegate.started(process);
+        }
+        started(process, System.currentTimeMillis());
+    }
+    /**
+     * Starts the clocks of the timeouts of a process.
+     *
+     * @param process the index of the process
+     * @param now     the current time
+     */
+    void started(final int process, final long now) {
+        if (outputs[process] != null) {
+            outputs[process].lastWrite = now;
+        }
+        starts[process] = now;
+    }
+    /**
+     * Stops the clocks of the timeouts of a process.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void terminated(final int process) {
+        if (delegate != null) {
+            delegate.terminated(process);
+        }
+        starts[process] = 0;
+    }
+    /**
+     * Polls the delegate and checks the timeouts.
+     *
+     * @throws AbortException       if a timeout has expired
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void poll() throws IOException, InterruptedException {
+        if (delegate != null) {
+            delegate.poll();
+        }
+        final String reason = check(System.currentTimeMillis());
+        if (reason != null) {
+            listener.getLogger().println(reason);
+            throw new AbortException(reason);
+        }
+    }
+    /**
+     * Logs how long it took to stop the processes.
+     *
+     * @param killed   the number of processes which were killed
+     * @param alive    the number of processes still alive
+     * @param duration the duration of the teardown in milliseconds
+     */
+    @Override
+    public void killed(final int killed, final int alive,
+            final long duration) {
+        if (delegate != null) {
+            delegate.killed(killed, alive, duration);
+        }
+        listener.getLogger().println(alive == 0
+                ? Messages.watchdogReclaimed(killed, duration / 1000.0)
+                : Messages.watchdogNotReclaimed(alive, duration / 1000.0));
+    }
+    /**
+     * Checks the timeouts.
+     *
+     * @param now the current time
+     * @return the reason for aborting the processes, or null if no timeout
+     *         has expired
+     */
+    String check(final long now) {
+        for (int i = 0; i < starts.length; i++) {
+            final long start = starts[i];
+            if (start == 0) {
+                continue;
+            }
+            if (timeout > 0
+                    && now - start >= TimeUnit.MINUTES.toMillis(timeout)) {
+                return Messages.watchdogTimeout(timeout);
+            }
+            if (noOutputTimeout > 0 && now - getLastOutput(i)
+                    >= TimeUnit.MINUTES.toMillis(noOutputTimeout)) {
+                return Messages.watchdogNoOutput(noOutputTimeout);
+            }
+        }
+        return null;
+    }
+    /**
+     * Gets the time a process wrote output the last time.
+     *
+     * @param process the index of the process
+     * @return the time, or the start time if there was no output
+     */
+    long getLastOutput(final int process) {
+        final ActivityOutputStream output = outputs[process];
+        return output == null ? starts[process]
+                : Math.max(starts[process], output.getLastWrite());
+    }
+
+    /**
+     * Output stream which records the time of the last write.
+     */
+    static final class ActivityOutputStream extends FilterOutputStream {
+        /** The time of the last write. */
+        private volatile long lastWrite;
+
+        /**
+         * Instantiates a new activity output stream.
+         *
+         * @param out   the stream written to
+         * @param start the time the process was started
+         */
+        ActivityOutputStream(final OutputStream out, final long start) {
+            super(out);
+            this.lastWrite = start;
+        }
+        /**
+         * Gets the time of the last write.
+         *
+         * @return the time, or the start time if nothing was written
+         */
+        long getLastWrite() {
+            return lastWrite;
+        }
+        /**
+         * Write.
+         *
+         * @param b the byte
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void write(final int b) throws IOException {
+            lastWrite = System.currentTimeMillis();
+            out.write(b);
+        }
+        /**
+         * Write.
+         *
+         * @param b   the bytes
+         * @param off the offset
+         * @param len the length
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            lastWrite = System.currentTimeMillis();
+            out.write(b, off, len);
+        }
+    }
+}
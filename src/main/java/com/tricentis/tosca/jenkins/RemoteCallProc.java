@@ -0,0 +1,150 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import hudson.Launcher.ProcStarter;
+import hudson.Proc;
+
+/**
+ * A run of the client which is executed by a callable on the agent instead of
+ * a new process, see {@link DaemonProcessExecutor} and
+ * {@link DexProcessExecutor}. If the callable does not take the run, which it
+ * signals by returning null instead of an exit code, the run is started by a
+ * fallback executor.
+ */
+final class RemoteCallProc extends Proc {
+    /** The starter. */
+    private final ProcStarter starter;
+    /** The executor which starts the run if the callable does not take it. */
+    private final DefaultProcessExecutor fallback;
+    /** The run of the callable. */
+    private final Future<Integer> run;
+    /** The proc the run was started as instead, if any. */
+    private Proc process;
+
+    /**
+     * Instantiates a new remote call proc.
+     *
+     * @param newStarter  the starter
+     * @param newFallback the executor which starts the run if the callable
+     *                    does not take it
+     * @param newRun      the run of the callable
+     */
+    RemoteCallProc(final ProcStarter newStarter,
+            final DefaultProcessExecutor newFallback,
+            final Future<Integer> newRun) {
+        this.starter = newStarter;
+        this.fallback = newFallback;
+        this.run = newRun;
+    }
+    /**
+     * Checks if is alive.
+     *
+     * @return true, if is alive
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public synchronized boolean isAlive()
+            throws IOException, InterruptedException {
+        if (process == null) {
+            if (!run.isDone()) {
+                return true;
+            }
+            if (run.isCancelled()) {
+                return false;
+            }
+            if (getExitCode() != null) {
+                return false;
+            }
+            process = fallback.start(starter);
+        }
+        return process.isAlive();
+    }
+    /**
+     * Kill.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public synchronized void kill() throws IOException, InterruptedException {
+        run.cancel(true);
+        if (process != null) {
+            process.kill();
+        }
+    }
+    /**
+     * Join.
+     *
+     * @return the exit code
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public int join() throws IOException, InterruptedException {
+        final Integer exitCode = getExitCode();
+        synchronized (this) {
+            if (exitCode != null && process == null) {
+                return exitCode;
+            }
+            if (process == null) {
+                process = fallback.start(starter);
+            }
+        }
+        return process.join();
+    }
+    /**
+     * Waits for the run of the callable.
+     *
+     * @return the exit code, or null if the callable did not take the run
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private Integer getExitCode() throws IOException, InterruptedException {
+        try {
+            return run.get();
+        } catch (final CancellationException e) {
+            throw new InterruptedException(e.getMessage());
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+    /**
+     * Gets the stdin.
+     *
+     * @return null, the callable does not read input
+     */
+    @Override
+    public OutputStream getStdin() {
+        return null;
+    }
+    /**
+     * Gets the stdout.
+     *
+     * @return null, the output is copied to the stdout of the starter
+     */
+    @Override
+    public InputStream getStdout() {
+        return null;
+    }
+    /**
+     * Gets the stderr.
+     *
+     * @return null, the output is copied to the stdout of the starter
+     */
+    @Override
+    public InputStream getStderr() {
+        return null;
+    }
+}
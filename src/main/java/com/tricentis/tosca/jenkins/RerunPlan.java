@@ -0,0 +1,475 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.lang.StringUtils;
+import com.tricentis.tosca.jenkins.ResultsSummaryParser.Status;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Plan of a build which only reruns the test events which failed in the
+ * previous build. Every build in this mode records whether each of its test
+ * events passed or failed in its build directory, and archives its merged
+ * results in the job directory. The next build executes only the failed test
+ * events, through the same generated configuration as a shard, and merges
+ * their results into the archived results of the previous build, so the
+ * published report still covers all test events. Only the archived results
+ * of the build and of the build its plan was created from are kept, so
+ * builds running concurrently still find theirs. If the previous build has
+ * no record or no archived results, or none of its test events failed, all
+ * test events are executed.
+ */
+final class RerunPlan implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The Constant OUTCOMES_FILE_NAME. */
+    static final String OUTCOMES_FILE_NAME = "tricentis-test-events.properties";
+    /** The prefix of the archived results files in the job directory. */
+    static final String RESULTS_FILE_PREFIX = "tricentis-results-";
+    /** The Constant RESULTS_FILE_EXTENSION. */
+    private static final String RESULTS_FILE_EXTENSION = ".xml";
+    /** The Constant PREVIOUS_RESULTS_FILE. */
+    private static final String PREVIOUS_RESULTS_FILE
+            = "results-previous.xml";
+    /** The Constant TEMP_EXTENSION. */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /** The Constant FAILED. */
+    private static final String FAILED = "failed";
+    /** The Constant PASSED. */
+    private static final String PASSED = "passed";
+    /** The test events to execute, empty to execute all of them. */
+    private final List<String> testEvents;
+    /** Whether test events failed by test event of the previous build. */
+    private final Map<String, Boolean> previousOutcomes;
+    /** The archived results of the previous build, null if none. */
+    private final String previousResults;
+    /** The number of the previous completed build, 0 if none. */
+    private final int previousBuild;
+
+    /**
+     * Instantiates a new rerun plan.
+     *
+     * @param newTestEvents       the test events to execute, empty to execute
+     *                            all of them
+     * @param newPreviousOutcomes whether test events failed by test event of
+     *                            the previous build
+     * @param newPreviousResults  the archived results of the previous build,
+     *                            null if none
+     * @param newPreviousBuild    the number of the previous completed build,
+     *                            0 if none
+     */
+    private RerunPlan(final List<String> newTestEvents,
+            final Map<String, Boolean> newPreviousOutcomes,
+            final String newPreviousResults, final int newPreviousBuild) {
+        this.testEvents = new ArrayList<>(newTestEvents);
+        this.previousOutcomes = new LinkedHashMap<>(newPreviousOutcomes);
+        this.previousResults = newPreviousResults;
+        this.previousBuild = newPreviousBuild;
+    }
+    /**
+     * Creates the plan of a build from the record of the previous completed
+     * build.
+     *
+     * @param run        the run
+     * @param configured the configured test events
+     * @param logger     the logger
+     * @return the plan
+     */
+    static RerunPlan create(final Run<?, ?> run,
+            final List<String> configured, final PrintStream logger) {
+        final Map<String, Boolean> empty = Collections.emptyMap();
+        final List<String> all = Collections.emptyList();
+        final Run<?, ?> previous = run.getPreviousCompletedBuild();
+        final int previousBuild = previous == null ? 0 : previous.getNumber();
+        if (configured.isEmpty()) {
+            logger.println(Messages.rerunNoTestEvents());
+            return new RerunPlan(all, empty, null, previousBuild);
+        }
+        final Map<String, Boolean> outcomes = previous == null ? empty
+                : load(new File(previous.getRootDir(), OUTCOMES_FILE_NAME));
+        if (outcomes.isEmpty()) {
+            logger.println(Messages.rerunNoRecord());
+            return new RerunPlan(all, empty, null, previousBuild);
+        }
+        final List<String> failed = selectFailed(configured, outcomes);
+        if (failed.isEmpty() || failed.size() == configured.size()) {
+            logger.println(Messages.rerunAll(previousBuild));
+            return new RerunPlan(all, empty, null, previousBuild);
+        }
+        final File results = getResultsFile(run.getParent().getRootDir(),
+                previousBuild);
+        if (!results.isFile()) {
+            logger.println(Messages.rerunNoResults(previousBuild));
+            return new RerunPlan(all, empty, null, previousBuild);
+        }
+        logger.println(Messages.rerunReduced(failed.size(), configured.size(),
+                previousBuild, StringUtils.join(failed,
+                        TestEventSharder.EVENT_SEPARATOR)));
+        return new RerunPlan(failed, outcomes, results.getPath(),
+                previousBuild);
+    }
+    /**
+     * Gets the archived results of a build.
+     *
+     * @param jobDir the root directory of the job
+     * @param build  the number of the build
+     * @return the file
+     */
+    static File getResultsFile(final File jobDir, final int build) {
+        return new File(jobDir,
+                RESULTS_FILE_PREFIX + build + RESULTS_FILE_EXTENSION);
+    }
+    /**
+     * Deletes the archived results of the builds before a build from the job
+     * directory.
+     *
+     * @param jobDir the root directory of the job
+     * @param build  the number of the oldest build whose results are kept
+     * @return the number of deleted files
+     */
+    static int prune(final File jobDir, final int build) {
+        final File[] files = jobDir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (final File file : files) {
+            final String name = file.getName();
+            if (!name.startsWith(RESULTS_FILE_PREFIX)
+                    || !name.endsWith(RESULTS_FILE_EXTENSION)) {
+                continue;
+            }
+            final int number;
+            try {
+                number = Integer.parseInt(name.substring(
+                        RESULTS_FILE_PREFIX.length(),
+                        name.length() - RESULTS_FILE_EXTENSION.length()));
+            } catch (final NumberFormatException e) {
+                continue;
+            }
+            if (number < build && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    /**
+     * Selects the configured test events which failed in the previous build
+     * or were not executed by it.
+     *
+     * @param configured the configured test events
+     * @param outcomes   whether test events failed by test event
+     * @return the test events to execute, in configured order
+     */
+    static List<String> selectFailed(final List<String> configured,
+            final Map<String, Boolean> outcomes) {
+        final List<String> failed = new ArrayList<>();
+        for (final String event : configured) {
+            if (!Boolean.FALSE.equals(outcomes.get(event))) {
+                failed.add(event);
+            }
+        }
+        return failed;
+    }
+    /**
+     * Checks whether only some of the test events are executed.
+     *
+     * @return true, if reduced
+     */
+    boolean isReduced() {
+        return !testEvents.isEmpty();
+    }
+    /**
+     * Gets the test events to execute.
+     *
+     * @return the test events, empty to execute all of them
+     */
+    List<String> getTestEvents() {
+        return Collections.unmodifiableList(testEvents);
+    }
+    /**
+     * Merges the results files of the build into its results file. The
+     * results of a reduced build are merged into the archived results of the
+     * previous build, replacing the test cases which were executed again. If
+     * these are gone, the build is aborted, since the report would only
+     * cover the test events which were executed again.
+     *
+     * @param resultsFiles the results files of the client processes
+     * @param resultsFile  the results file of the build
+     * @param workspace    the workspace
+     * @param logger       the logger
+     * @return the comma separated results files to publish
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    String mergeResults(final List<String> resultsFiles,
+            final String resultsFile, final FilePath workspace,
+            final PrintStream logger)
+            throws InterruptedException, IOException {
+        if (!isReduced()) {
+            return TricentisCiBuilder.mergeResults(true, resultsFiles,
+                    resultsFile, workspace, logger);
+        }
+        if (previousResults == null || !new File(previousResults).isFile()) {
+            throw new AbortException(
+                    Messages.rerunResultsMissing(previousBuild));
+        }
+        final FilePath previous = workspace.child(PREVIOUS_RESULTS_FILE);
+        previous.copyFrom(new FilePath(new File(previousResults)));
+        try {
+            final List<String> reports = new ArrayList<>();
+            reports.add(PREVIOUS_RESULTS_FILE);
+            reports.addAll(resultsFiles);
+            final long start = System.currentTimeMillis();
+            final Integer testCases = workspace
+                    .act(new ResultsMerger(reports, resultsFile, true));
+            logger.println(Messages.mergeResultsLog(reports.size(), testCases,
+                    resultsFile,
+                    (System.currentTimeMillis() - start) / 1000.0));
+            return resultsFile;
+        } finally {
+            previous.delete();
+        }
+    }
+    /**
+     * Records whether the test events of the build passed or failed, and
+     * archives its results, for the next build. Test events which were not
+     * executed keep the outcome of the previous build. The archived results
+     * of builds before the previous build are deleted. Failures are logged,
+     * they do not fail the build.
+     *
+     * @param run       the run
+     * @param workspace the workspace
+     * @param shards    the shards
+     * @param results   the results of the client processes of the shards
+     * @param published the comma separated results files which were
+     *                  published
+     * @param logger    the logger
+     * @throws InterruptedException the interrupted exception
+     */
+    void record(final Run<?, ?> run, final FilePath workspace,
+            final List<TestEventShard> shards,
+            final List<ProcessResult> results, final String published,
+            final PrintStream logger) throws InterruptedException {
+        final List<String> resultsFiles = new ArrayList<>(shards.size());
+        final List<Integer> exitCodes = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            resultsFiles.add(shards.get(i).getResultsFile());
+            exitCodes.add(results.get(i).getExitCode());
+        }
+        try {
+            final List<List<String>> failedCases
+                    = workspace.act(new FailedTestCases(resultsFiles));
+            final Map<String, Boolean> outcomes
+                    = new LinkedHashMap<>(previousOutcomes);
+            outcomes.putAll(getOutcomes(shards, exitCodes, failedCases));
+            final File rootDir = run.getRootDir();
+            store(new File(rootDir, OUTCOMES_FILE_NAME), outcomes);
+            final File jobDir = run.getParent().getRootDir();
+            final FilePath report = workspace.child(published);
+            if (published.indexOf(',') < 0 && report.exists()) {
+                report.copyTo(new FilePath(
+                        getResultsFile(jobDir, run.getNumber())));
+            }
+            prune(jobDir, previousBuild > 0 ? previousBuild : run.getNumber());
+            int failed = 0;
+            for (final Boolean outcome : outcomes.values()) {
+                if (outcome) {
+                    failed++;
+                }
+            }
+            logger.println(Messages.rerunRecorded(outcomes.size(), failed));
+        } catch (final IOException e) {
+            logger.println(Messages.rerunRecordFailed(e.getMessage()));
+        }
+    }
+    /**
+     * Works out whether the test events of the shards failed. A test event
+     * failed if a failed test case names it in its class name or name. If a
+     * shard has failed test cases which do not name any of its test events,
+     * exits with a non-zero exit code without failed test cases, or has no
+     * results file, all of its test events are considered failed.
+     *
+     * @param shards      the shards
+     * @param exitCodes   the exit codes of the client processes of the shards
+     * @param failedCases the class names and names of the failed test cases
+     *                    of each shard, null if its results file is missing
+     * @return whether the test events failed by test event
+     */
+    static Map<String, Boolean> getOutcomes(final List<TestEventShard> shards,
+            final List<Integer> exitCodes,
+            final List<List<String>> failedCases) {
+        final Map<String, Boolean> outcomes = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            final List<String> events = shards.get(i).getTestEvents();
+            final List<String> cases = failedCases.get(i);
+            if (cases == null || (cases.isEmpty() && exitCodes.get(i) != 0)) {
+                for (final String event : events) {
+                    outcomes.put(event, true);
+                }
+                continue;
+            }
+            boolean unmatched = false;
+            final Map<String, Boolean> shardOutcomes = new LinkedHashMap<>();
+            for (final String event : events) {
+                shardOutcomes.put(event, false);
+            }
+            for (final String testCase : cases) {
+                boolean matched = false;
+                for (final String event : events) {
+                    if (testCase.contains(event.toLowerCase(Locale.ENGLISH))) {
+                        shardOutcomes.put(event, true);
+                        matched = true;
+                    }
+                }
+                unmatched |= !matched;
+            }
+            for (final Map.Entry<String, Boolean> outcome
+                    : shardOutcomes.entrySet()) {
+                outcomes.put(outcome.getKey(),
+                        unmatched || outcome.getValue());
+            }
+        }
+        return outcomes;
+    }
+    /**
+     * Loads the recorded outcomes of a build. A missing or unreadable file
+     * results in no outcomes.
+     *
+     * @param file the file
+     * @return whether the test events failed by test event
+     */
+    static Map<String, Boolean> load(final File file) {
+        final Map<String, Boolean> outcomes = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return outcomes;
+        }
+        final Properties properties = new Properties();
+        try (Reader in = new InputStreamReader(new BufferedInputStream(
+                new FileInputStream(file)), StandardCharsets.UTF_8)) {
+            properties.load(in);
+        } catch (final IOException e) {
+            return outcomes;
+        }
+        for (final String event : properties.stringPropertyNames()) {
+            outcomes.put(event, FAILED.equals(properties.getProperty(event)));
+        }
+        return outcomes;
+    }
+    /**
+     * Stores the outcomes of a build.
+     *
+     * @param file     the file
+     * @param outcomes whether the test events failed by test event
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void store(final File file, final Map<String, Boolean> outcomes)
+            throws IOException {
+        final Properties properties = new Properties();
+        for (final Map.Entry<String, Boolean> outcome : outcomes.entrySet()) {
+            properties.setProperty(outcome.getKey(),
+                    outcome.getValue() ? FAILED : PASSED);
+        }
+        final File tmp = new File(file.getPath() + TEMP_EXTENSION);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp),
+                StandardCharsets.UTF_8)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Collects the class names and names of the failed test cases of results
+     * files, in lower case. Invoked on the workspace.
+     */
+    static final class FailedTestCases
+            extends MasterToSlaveFileCallable<List<List<String>>> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The results files, relative to the workspace. */
+        private final List<String> resultsFiles;
+
+        /**
+         * Instantiates a new failed test cases callable.
+         *
+         * @param newResultsFiles the results files, relative to the workspace
+         */
+        FailedTestCases(final List<String> newResultsFiles) {
+            this.resultsFiles = new ArrayList<>(newResultsFiles);
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return the failed test cases of each results file, null for a
+         *         missing file
+         * @throws IOException          Signals that an I/O exception has
+         *                              occurred.
+         * @throws InterruptedException the interrupted exception
+         */
+        @Override
+        public List<List<String>> invoke(final File workspace,
+                final VirtualChannel channel)
+                throws IOException, InterruptedException {
+            final List<List<String>> failed = new ArrayList<>();
+            for (final String resultsFile : resultsFiles) {
+                final File file = new File(workspace, resultsFile);
+                if (!file.isFile()) {
+                    failed.add(null);
+                    continue;
+                }
+                final List<String> cases = new ArrayList<>();
+                try (InputStream in = new BufferedInputStream(
+                        new FileInputStream(file))) {
+                    new ResultsSummaryParser().parse(in,
+                            new ResultsSummaryParser.Handler() {
+                                @Override
+                                public void testCase(final String className,
+                                        final String name,
+                                        final Status status,
+                                        final double duration,
+                                        final String message,
+                                        final String details) {
+                                    if (status == Status.FAILED
+                                            || status == Status.ERROR) {
+                                        cases.add((className + ' ' + name)
+                                                .toLowerCase(Locale.ENGLISH));
+                                    }
+                                }
+                            });
+                }
+                failed.add(cases);
+            }
+            return failed;
+        }
+    }
+}
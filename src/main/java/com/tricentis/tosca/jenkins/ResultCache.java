@@ -0,0 +1,166 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import jenkins.model.Jenkins;
+
+/**
+ * Content-addressed cache of the JUnit results of test events on the
+ * controller. An entry is keyed by a hash of everything which determines the
+ * outcome of a test event: the endpoint, the test event, the content of the
+ * configuration file and the version of the system under test. The cache is
+ * limited in size, the least recently used entries are evicted first.
+ */
+final class ResultCache {
+    /** The Constant DIRECTORY. */
+    static final String DIRECTORY = "tricentis-result-cache";
+    /** The Constant EXTENSION. */
+    private static final String EXTENSION = ".xml";
+    /** The Constant TEMP_EXTENSION. */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /** The Constant HEX. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Lock for writing and evicting entries. */
+    private static final Object LOCK = new Object();
+    /** The directory of the entries. */
+    private final File directory;
+    /** The maximum total size of the entries in bytes. */
+    private final long maxSize;
+
+    /**
+     * Instantiates a new result cache.
+     *
+     * @param newDirectory the directory of the entries
+     * @param newMaxSize   the maximum total size of the entries in bytes
+     */
+    ResultCache(final File newDirectory, final long newMaxSize) {
+        this.directory = newDirectory;
+        this.maxSize = newMaxSize;
+    }
+    /**
+     * Gets the cache of the controller, limited to the size of the global
+     * configuration.
+     *
+     * @return the cache, or null if Jenkins is not running
+     */
+    static ResultCache forController() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return null;
+        }
+        return new ResultCache(new File(jenkins.getRootDir(), DIRECTORY),
+                TricentisCiConfiguration.getResultCacheLimit());
+    }
+    /**
+     * Computes the key of an entry.
+     *
+     * @param endpoint   the endpoint
+     * @param testEvent  the test event, empty for a configuration file
+     * @param config     the content of the configuration file, empty for a
+     *                   test event
+     * @param sutVersion the version of the system under test
+     * @return the key, a hexadecimal SHA-256 hash
+     */
+    static String key(final String endpoint, final String testEvent,
+            final String config, final String sutVersion) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (final String part : new String[] {endpoint, testEvent, config,
+                sutVersion}) {
+            final byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+            digest.update(String.valueOf(bytes.length)
+                    .getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        }
+        final byte[] hash = digest.digest();
+        final char[] key = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            key[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            key[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(key);
+    }
+    /**
+     * Gets the report of an entry and marks it as recently used.
+     *
+     * @param key the key
+     * @return the report, or null if there is no entry
+     */
+    File get(final String key) {
+        final File file = new File(directory, key + EXTENSION);
+        synchronized (LOCK) {
+            if (!file.isFile()) {
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+    }
+    /**
+     * Puts an entry, replacing an existing one, and evicts the least
+     * recently used entries beyond the maximum size.
+     *
+     * @param key    the key
+     * @param report the JUnit report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void put(final String key, final byte[] report) throws IOException {
+        synchronized (LOCK) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException(directory.getPath());
+            }
+            final File file = new File(directory, key + EXTENSION);
+            final File tmp = new File(directory, key + TEMP_EXTENSION);
+            Files.write(tmp.toPath(), report);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            evict();
+        }
+    }
+    /**
+     * Evicts the least recently used entries until the entries fit into the
+     * maximum size.
+     */
+    private void evict() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (final File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                final long a = first.lastModified();
+                final long b = second.lastModified();
+                return a < b ? -1 : a == b ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            final long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The details file of a {@link ResultsIndex}: messages and stack traces of
+ * failed test cases, one record per test case. Records are appended while
+ * the reports are parsed and read by offset, each through a small memory
+ * mapped region of the file, so viewing a test case neither loads the file
+ * nor any other record into the heap.
+ */
+public final class ResultsDetails {
+    /** The maximum length of a record in bytes. */
+    private static final int MAX_RECORD_LENGTH = 8
+            + 4 * (ResultsSummaryParser.MAX_MESSAGE_LENGTH
+                    + ResultsSummaryParser.MAX_DETAILS_LENGTH
+                    + 2 * ResultsSummaryParser.TRUNCATED.length());
+    /** The message. */
+    private final String message;
+    /** The stack trace and output. */
+    private final String details;
+
+    /**
+     * Instantiates new details.
+     *
+     * @param newMessage the message
+     * @param newDetails the stack trace and output
+     */
+    private ResultsDetails(final String newMessage, final String newDetails) {
+        this.message = newMessage;
+        this.details = newDetails;
+    }
+    /**
+     * Gets the message.
+     *
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+    /**
+     * Gets the stack trace and output.
+     *
+     * @return the details
+     */
+    public String getDetails() {
+        return details;
+    }
+    /**
+     * Reads the record at the given offset.
+     *
+     * @param file   the details file
+     * @param offset the offset
+     * @return the details
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static ResultsDetails read(final File file, final long offset)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            final long length = Math.min(MAX_RECORD_LENGTH,
+                    channel.size() - offset);
+            final MappedByteBuffer buffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, offset, length);
+            return new ResultsDetails(readString(buffer),
+                    readString(buffer));
+        }
+    }
+    /**
+     * Reads a length prefixed UTF-8 string.
+     *
+     * @param buffer the buffer
+     * @return the string
+     */
+    private static String readString(final MappedByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends records to a details file.
+     */
+    static final class Writer implements Closeable {
+        /** The out. */
+        private final DataOutputStream out;
+        /** The offset of the next record. */
+        private long offset;
+
+        /**
+         * Instantiates a new writer.
+         *
+         * @param newOut the stream the records are appended to
+         * @param base   the current length of the details file
+         */
+        Writer(final OutputStream newOut, final long base) {
+            this.out = new DataOutputStream(new BufferedOutputStream(newOut));
+            this.offset = base;
+        }
+        /**
+         * Writes a record.
+         *
+         * @param message the message
+         * @param details the stack trace and output
+         * @return the offset of the record
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        long write(final String message, final String details)
+                throws IOException {
+            final long recordOffset = offset;
+            offset += writeString(message) + writeString(details);
+            return recordOffset;
+        }
+        /**
+         * Writes a length prefixed UTF-8 string.
+         *
+         * @param value the value
+         * @return the number of bytes written
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private int writeString(final String value) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            return 4 + bytes.length;
+        }
+        /**
+         * Close.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
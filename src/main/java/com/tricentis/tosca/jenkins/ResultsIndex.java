@@ -0,0 +1,338 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar storage of test cases. Class names are kept once in a string
+ * table, test case names are kept as UTF-8 in a single byte array, status
+ * and duration in primitive arrays. 50,000 test cases take a few megabytes
+ * instead of one object graph per test case. Messages and stack traces are
+ * not kept, only the offsets of their records in a separate details file
+ * (see {@link ResultsDetails}).
+ */
+public final class ResultsIndex implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The offset of test cases without details. */
+    static final long NO_DETAILS = -1;
+    /** The Constant MAGIC. */
+    private static final int MAGIC = 0x54524931;
+    /** The Constant VERSION. */
+    private static final int VERSION = 1;
+    /** The Constant INITIAL_CAPACITY. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** The Constant STATUSES. */
+    private static final ResultsSummaryParser.Status[] STATUSES
+            = ResultsSummaryParser.Status.values();
+    /** The distinct class names. */
+    private final List<String> classNames = new ArrayList<>();
+    /** The positions of the class names in the string table. */
+    private transient Map<String, Integer> classNameIds;
+    /** The number of test cases. */
+    private int size;
+    /** The class name of each test case. */
+    private int[] classIds = new int[INITIAL_CAPACITY];
+    /** The end offset of the name of each test case in the name data. */
+    private int[] nameEnds = new int[INITIAL_CAPACITY];
+    /** The UTF-8 encoded names. */
+    private byte[] nameData = new byte[INITIAL_CAPACITY * 16];
+    /** The status of each test case. */
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    /** The duration of each test case in seconds. */
+    private float[] durations = new float[INITIAL_CAPACITY];
+    /** The offset of the details of each test case. */
+    private long[] detailOffsets = new long[INITIAL_CAPACITY];
+
+    /**
+     * Gets the number of test cases.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+    /**
+     * Gets the class name of a test case.
+     *
+     * @param index the index
+     * @return the class name
+     */
+    public String getClassName(final int index) {
+        return classNames.get(classIds[index]);
+    }
+    /**
+     * Gets the name of a test case.
+     *
+     * @param index the index
+     * @return the name
+     */
+    public String getName(final int index) {
+        final int start = index == 0 ? 0 : nameEnds[index - 1];
+        return new String(nameData, start, nameEnds[index] - start,
+                StandardCharsets.UTF_8);
+    }
+    /**
+     * Gets the status of a test case.
+     *
+     * @param index the index
+     * @return the status
+     */
+    public ResultsSummaryParser.Status getStatus(final int index) {
+        return STATUSES[statuses[index]];
+    }
+    /**
+     * Gets the duration of a test case.
+     *
+     * @param index the index
+     * @return the duration in seconds
+     */
+    public float getDuration(final int index) {
+        return durations[index];
+    }
+    /**
+     * Gets the offset of the details of a test case.
+     *
+     * @param index the index
+     * @return the offset, or {@link #NO_DETAILS}
+     */
+    public long getDetailOffset(final int index) {
+        return detailOffsets[index];
+    }
+    /**
+     * Counts the test cases with the given status.
+     *
+     * @param status the status
+     * @return the count
+     */
+    public int count(final ResultsSummaryParser.Status status) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (statuses[i] == status.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    /**
+     * Adds a test case.
+     *
+     * @param className    the class name
+     * @param name         the name
+     * @param status       the status
+     * @param duration     the duration in seconds
+     * @param detailOffset the offset of the details, or {@link #NO_DETAILS}
+     */
+    void add(final String className, final String name,
+            final ResultsSummaryParser.Status status, final float duration,
+            final long detailOffset) {
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(size + 1, nameBytes.length);
+        final int nameStart = size == 0 ? 0 : nameEnds[size - 1];
+        System.arraycopy(nameBytes, 0, nameData, nameStart, nameBytes.length);
+        nameEnds[size] = nameStart + nameBytes.length;
+        classIds[size] = classId(className);
+        statuses[size] = (byte) status.ordinal();
+        durations[size] = duration;
+        detailOffsets[size] = detailOffset;
+        size++;
+    }
+    /**
+     * Creates a handler which adds parsed test cases to this index and writes
+     * their details.
+     *
+     * @param detailsWriter the writer of the details file
+     * @return the handler
+     */
+    ResultsSummaryParser.Handler handler(
+            final ResultsDetails.Writer detailsWriter) {
+        return new ResultsSummaryParser.Handler() {
+            @Override
+            public void testCase(final String className, final String name,
+                    final ResultsSummaryParser.Status status,
+                    final double duration, final String message,
+                    final String details) throws IOException {
+                add(className, name, status, (float) duration,
+                        status.isFailed()
+                                ? detailsWriter.write(message, details)
+                                : NO_DETAILS);
+            }
+        };
+    }
+    /**
+     * Appends the test cases of another index.
+     *
+     * @param other        the other index
+     * @param detailsShift the shift of the details offsets of the other index
+     */
+    void append(final ResultsIndex other, final long detailsShift) {
+        for (int i = 0; i < other.size; i++) {
+            final long offset = other.detailOffsets[i];
+            add(other.getClassName(i), other.getName(i), other.getStatus(i),
+                    other.durations[i],
+                    offset == NO_DETAILS ? NO_DETAILS : offset + detailsShift);
+        }
+    }
+    /**
+     * Gets the position of a class name in the string table, adding it if
+     * necessary.
+     *
+     * @param className the class name
+     * @return the position
+     */
+    private int classId(final String className) {
+        if (classNameIds == null) {
+            classNameIds = new HashMap<>();
+            for (int i = 0; i < classNames.size(); i++) {
+                classNameIds.put(classNames.get(i), i);
+            }
+        }
+        Integer id = classNameIds.get(className);
+        if (id == null) {
+            id = classNames.size();
+            classNames.add(className);
+            classNameIds.put(className, id);
+        }
+        return id;
+    }
+    /**
+     * Grows the arrays if necessary.
+     *
+     * @param cases     the number of test cases
+     * @param nameBytes the number of bytes of the next name
+     */
+    private void ensureCapacity(final int cases, final int nameBytes) {
+        if (cases > statuses.length) {
+            final int capacity = Math.max(cases, statuses.length * 2);
+            classIds = Arrays.copyOf(classIds, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            detailOffsets = Arrays.copyOf(detailOffsets, capacity);
+        }
+        final int nameLength = (size == 0 ? 0 : nameEnds[size - 1])
+                + nameBytes;
+        if (nameLength > nameData.length) {
+            nameData = Arrays.copyOf(nameData,
+                    Math.max(nameLength, nameData.length * 2));
+        }
+    }
+    /**
+     * Write object. Unused capacity of the arrays is not serialized.
+     *
+     * @param out the out
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writeObject(final ObjectOutputStream out)
+            throws IOException {
+        final int nameLength = size == 0 ? 0 : nameEnds[size - 1];
+        classIds = Arrays.copyOf(classIds, size);
+        nameEnds = Arrays.copyOf(nameEnds, size);
+        nameData = Arrays.copyOf(nameData, nameLength);
+        statuses = Arrays.copyOf(statuses, size);
+        durations = Arrays.copyOf(durations, size);
+        detailOffsets = Arrays.copyOf(detailOffsets, size);
+        out.defaultWriteObject();
+    }
+    /**
+     * Loads an index.
+     *
+     * @param file the file
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static ResultsIndex load(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported format of " + file);
+            }
+            final ResultsIndex index = new ResultsIndex();
+            final int classCount = in.readInt();
+            for (int i = 0; i < classCount; i++) {
+                index.classNames.add(in.readUTF());
+            }
+            final int size = in.readInt();
+            final int nameLength = in.readInt();
+            index.size = size;
+            index.classIds = new int[size];
+            index.nameEnds = new int[size];
+            index.nameData = new byte[nameLength];
+            index.statuses = new byte[size];
+            index.durations = new float[size];
+            index.detailOffsets = new long[size];
+            for (int i = 0; i < size; i++) {
+                index.classIds[i] = in.readInt();
+            }
+            for (int i = 0; i < size; i++) {
+                index.nameEnds[i] = in.readInt();
+            }
+            in.readFully(index.nameData);
+            in.readFully(index.statuses);
+            for (int i = 0; i < size; i++) {
+                index.durations[i] = in.readFloat();
+            }
+            for (int i = 0; i < size; i++) {
+                index.detailOffsets[i] = in.readLong();
+            }
+            return index;
+        }
+    }
+    /**
+     * Saves the index, column by column. The file is replaced atomically.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void save(final File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(classNames.size());
+            for (final String className : classNames) {
+                out.writeUTF(className);
+            }
+            final int nameLength = size == 0 ? 0 : nameEnds[size - 1];
+            out.writeInt(size);
+            out.writeInt(nameLength);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(classIds[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeInt(nameEnds[i]);
+            }
+            out.write(nameData, 0, nameLength);
+            out.write(statuses, 0, size);
+            for (int i = 0; i < size; i++) {
+                out.writeFloat(durations[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeLong(detailOffsets[i]);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,1083 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import com.tricentis.tosca.jenkins.ResultsSummaryParser.Status;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Merges the JUnit reports of several client processes into one report on
+ * the agent. The reports are read in parallel on a fork-join pool shared by
+ * all merges, and their test cases are sorted by class name and name in runs
+ * of at most {@link #SPILL_SIZE} characters, which are spilled to temporary
+ * files next to the merged report. The runs are then merged k-way into one
+ * suite per class name, so memory is bounded by one run per thread of the
+ * pool plus one test case per run, however large the reports are. A test
+ * case reported by more than one process is kept once, with the most severe
+ * status and the longest duration, so a failure is never hidden by a pass.
+ * When a rerun is merged into earlier results, a test case of a later report
+ * replaces the earlier one instead. The content of the test cases, such as
+ * failure messages, stack traces and the output of passed test cases, is
+ * copied unchanged. Invoked on the workspace.
+ */
+public class ResultsMerger extends MasterToSlaveFileCallable<Integer> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The maximum number of characters of a run held in memory. */
+    static final int SPILL_SIZE = 1 << 22;
+    /** The Constant TEMP_EXTENSION. */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /** The prefix of spilled runs. */
+    private static final String SPILL_PREFIX = "tricentis-merge-";
+    /** The Constant TESTCASE. */
+    private static final String TESTCASE = "testcase";
+    /** The pool the reports are read on, shared by all merges. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+    /** Orders test cases by class name and name. */
+    private static final Comparator<Record> ORDER = new Comparator<Record>() {
+        @Override
+        public int compare(final Record first, final Record second) {
+            final int order = first.className.compareTo(second.className);
+            return order != 0 ? order : first.name.compareTo(second.name);
+        }
+    };
+    /** The reports, relative to the workspace. */
+    private final List<String> reports;
+    /** The merged report, relative to the workspace. */
+    private final String target;
+    /** Whether later reports replace test cases of earlier ones. */
+    private final boolean replace;
+
+    /**
+     * Instantiates a new results merger.
+     *
+     * @param newReports the reports, relative to the workspace
+     * @param newTarget  the merged report, relative to the workspace
+     */
+    public ResultsMerger(final List<String> newReports,
+            final String newTarget) {
+        this(newReports, newTarget, false);
+    }
+    /**
+     * Instantiates a new results merger.
+     *
+     * @param newReports the reports, relative to the workspace
+     * @param newTarget  the merged report, relative to the workspace
+     * @param newReplace whether a test case of a later report replaces the
+     *                   one of an earlier report instead of being reconciled
+     *                   with it
+     */
+    public ResultsMerger(final List<String> newReports,
+            final String newTarget, final boolean newReplace) {
+        this.reports = new ArrayList<>(newReports);
+        this.target = newTarget;
+        this.replace = newReplace;
+    }
+    /**
+     * Invoke.
+     *
+     * @param workspace the workspace
+     * @param channel   the channel
+     * @return the number of test cases in the merged report, or null if none
+     *         of the reports exists
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public Integer invoke(final File workspace, final VirtualChannel channel)
+            throws IOException, InterruptedException {
+        final List<File> files = new ArrayList<>(reports.size());
+        for (final String report : reports) {
+            final File file = new File(workspace, report);
+            if (file.isFile()) {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        return merge(files, new File(workspace, target), replace);
+    }
+    /**
+     * Merges reports into one.
+     *
+     * @param files   the reports
+     * @param merged  the merged report, may be one of the reports
+     * @param replace whether later reports replace test cases of earlier
+     *                ones
+     * @return the number of test cases in the merged report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static int merge(final List<File> files, final File merged,
+            final boolean replace) throws IOException {
+        return merge(files, merged, replace, SPILL_SIZE);
+    }
+    /**
+     * Merges reports into one.
+     *
+     * @param files     the reports
+     * @param merged    the merged report, may be one of the reports
+     * @param replace   whether later reports replace test cases of earlier
+     *                  ones
+     * @param spillSize the maximum number of characters of a run held in
+     *                  memory
+     * @return the number of test cases in the merged report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static int merge(final List<File> files, final File merged,
+            final boolean replace, final int spillSize) throws IOException {
+        final File parent = merged.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        final List<ForkJoinTask<List<File>>> tasks = new ArrayList<>();
+        for (final File file : files) {
+            tasks.add(POOL.submit(new Spill(file, parent, spillSize)));
+        }
+        final List<File> runs = new ArrayList<>();
+        final List<File> temps = new ArrayList<>();
+        try {
+            RuntimeException failure = null;
+            for (final ForkJoinTask<List<File>> task : tasks) {
+                try {
+                    runs.addAll(task.join());
+                } catch (final RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            temps.addAll(runs);
+            if (failure != null) {
+                throw getIOException(failure);
+            }
+            final File sorted = createTempFile(parent);
+            temps.add(sorted);
+            final List<Suite> suites = new ArrayList<>();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(sorted)))) {
+                mergeRuns(runs, replace, out, suites);
+            }
+            final File temp = new File(merged.getPath() + TEMP_EXTENSION);
+            temps.add(temp);
+            final int size;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(sorted)));
+                    OutputStream out = new BufferedOutputStream(
+                            new FileOutputStream(temp))) {
+                size = write(in, suites, out);
+            }
+            Files.move(temp.toPath(), merged.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } finally {
+            for (final File temp : temps) {
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+    }
+    /**
+     * Merges sorted runs into one, reconciling the test cases of the same
+     * name. The suites are counted while the test cases are written.
+     *
+     * @param runs    the runs, in the order of the reports
+     * @param replace whether later test cases replace earlier ones
+     * @param out     the merged run
+     * @param suites  the suites, in the order of the merged run
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void mergeRuns(final List<File> runs,
+            final boolean replace, final DataOutputStream out,
+            final List<Suite> suites) throws IOException {
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                Math.max(1, runs.size()));
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                final RunReader reader = new RunReader(runs.get(i), i);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            Record pending = null;
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+                final Record record = reader.current;
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+                if (pending == null) {
+                    pending = record;
+                } else if (ORDER.compare(pending, record) != 0) {
+                    add(pending, out, suites);
+                    pending = record;
+                } else if (replace) {
+                    pending = record;
+                } else {
+                    pending = pending.reconcile(record);
+                }
+            }
+            if (pending != null) {
+                add(pending, out, suites);
+            }
+        } finally {
+            for (final RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+    /**
+     * Adds a merged test case to its suite.
+     *
+     * @param record the test case
+     * @param out    the merged run
+     * @param suites the suites
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void add(final Record record, final DataOutputStream out,
+            final List<Suite> suites) throws IOException {
+        Suite suite = suites.isEmpty() ? null : suites.get(suites.size() - 1);
+        if (suite == null || !suite.name.equals(record.className)) {
+            suite = new Suite(record.className);
+            suites.add(suite);
+        }
+        suite.add(record);
+        record.write(out);
+    }
+    /**
+     * Writes the merged test cases as JUnit report.
+     *
+     * @param in     the merged run
+     * @param suites the suites of the merged run
+     * @param out    the report
+     * @return the number of test cases
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static int write(final DataInputStream in,
+            final List<Suite> suites, final OutputStream out)
+            throws IOException {
+        int size = 0;
+        try {
+            final Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                    .createXMLStreamWriter(writer);
+            xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            xml.writeStartElement("testsuites");
+            for (final Suite suite : suites) {
+                suite.writeStart(xml);
+                for (int i = 0; i < suite.tests; i++) {
+                    Record.read(in).write(xml, writer);
+                }
+                xml.writeEndElement();
+                size += suite.tests;
+            }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+            writer.flush();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return size;
+    }
+    /**
+     * Creates a temporary file for a run.
+     *
+     * @param directory the directory
+     * @return the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static File createTempFile(final File directory)
+            throws IOException {
+        return File.createTempFile(SPILL_PREFIX, TEMP_EXTENSION, directory);
+    }
+    /**
+     * Gets the I/O exception a task failed with.
+     *
+     * @param e the exception thrown by the task
+     * @return the I/O exception
+     * @throws RuntimeException the exception, if not caused by an I/O
+     *                          exception
+     */
+    private static IOException getIOException(final RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return (IOException) cause;
+            }
+        }
+        throw e;
+    }
+    /**
+     * Formats a duration in seconds.
+     *
+     * @param duration the duration
+     * @return the formatted duration
+     */
+    static String formatDuration(final double duration) {
+        return String.valueOf(Math.round(duration * 1000) / 1000.0);
+    }
+    /**
+     * Writes a string of any length.
+     *
+     * @param out   the stream
+     * @param value the string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void writeString(final DataOutputStream out,
+            final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in the stream
+     * @return the string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static String readString(final DataInputStream in)
+            throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a report and spills its test cases in sorted runs.
+     */
+    private static final class Spill extends RecursiveTask<List<File>> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The report. */
+        private final File file;
+        /** The directory of the runs. */
+        private final File directory;
+        /** The maximum number of characters of a run held in memory. */
+        private final int spillSize;
+
+        /**
+         * Instantiates a new spill.
+         *
+         * @param newFile      the report
+         * @param newDirectory the directory of the runs
+         * @param newSpillSize the maximum number of characters of a run held
+         *                     in memory
+         */
+        private Spill(final File newFile, final File newDirectory,
+                final int newSpillSize) {
+            this.file = newFile;
+            this.directory = newDirectory;
+            this.spillSize = newSpillSize;
+        }
+        /**
+         * Compute.
+         *
+         * @return the runs, in the order of the report
+         */
+        @Override
+        protected List<File> compute() {
+            final List<File> runs = new ArrayList<>();
+            try {
+                read(runs);
+            } catch (final IOException | RuntimeException e) {
+                for (final File run : runs) {
+                    if (!run.delete()) {
+                        run.deleteOnExit();
+                    }
+                }
+                throw new IllegalStateException(e);
+            }
+            return runs;
+        }
+        /**
+         * Reads the report.
+         *
+         * @param runs the runs, which spilled runs are added to
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void read(final List<File> runs) throws IOException {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            final XMLOutputFactory output = XMLOutputFactory.newInstance();
+            final List<Record> records = new ArrayList<>();
+            long size = 0;
+            try (InputStream in = new BufferedInputStream(
+                    new FileInputStream(file))) {
+                final XMLStreamReader xml = factory.createXMLStreamReader(in);
+                try {
+                    while (xml.hasNext()) {
+                        if (xml.next() == XMLStreamConstants.START_ELEMENT
+                                && TESTCASE.equals(xml.getLocalName())) {
+                            final Record record = Record.parse(xml, output);
+                            records.add(record);
+                            size += record.getSize();
+                            if (size > spillSize) {
+                                runs.add(spill(records));
+                                records.clear();
+                                size = 0;
+                            }
+                        }
+                    }
+                } finally {
+                    xml.close();
+                }
+            } catch (final XMLStreamException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (!records.isEmpty()) {
+                runs.add(spill(records));
+            }
+        }
+        /**
+         * Sorts test cases and writes them to a run. Test cases of the same
+         * name keep their order.
+         *
+         * @param records the test cases
+         * @return the run
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private File spill(final List<Record> records) throws IOException {
+            Collections.sort(records, ORDER);
+            final File run = createTempFile(directory);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(run)))) {
+                for (final Record record : records) {
+                    record.write(out);
+                }
+            } catch (final IOException e) {
+                Files.deleteIfExists(run.toPath());
+                throw e;
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Reads the test cases of a sorted run one by one.
+     */
+    private static final class RunReader implements Comparable<RunReader> {
+        /** The stream. */
+        private final DataInputStream in;
+        /** The position of the run, later runs come from later reports. */
+        private final int position;
+        /** The current test case. */
+        private Record current;
+
+        /**
+         * Instantiates a new run reader.
+         *
+         * @param run         the run
+         * @param newPosition the position of the run
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private RunReader(final File run, final int newPosition)
+                throws IOException {
+            this.in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(run)));
+            this.position = newPosition;
+        }
+        /**
+         * Reads the next test case.
+         *
+         * @return true, if there was one
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private boolean next() throws IOException {
+            try {
+                current = Record.read(in);
+                return true;
+            } catch (final EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+        /**
+         * Closes the run.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void close() throws IOException {
+            in.close();
+        }
+        /**
+         * Compares the current test cases, then the positions of the runs.
+         *
+         * @param other the other run
+         * @return the order
+         */
+        @Override
+        public int compareTo(final RunReader other) {
+            final int order = ORDER.compare(current, other.current);
+            return order != 0 ? order
+                    : Integer.compare(position, other.position);
+        }
+    }
+
+    /**
+     * The counts of a suite of the merged report.
+     */
+    private static final class Suite {
+        /** The class name of the test cases. */
+        private final String name;
+        /** The number of test cases. */
+        private int tests;
+        /** The number of failed test cases. */
+        private int failures;
+        /** The number of test cases with an error. */
+        private int errors;
+        /** The number of skipped test cases. */
+        private int skipped;
+        /** The duration in seconds. */
+        private double time;
+
+        /**
+         * Instantiates a new suite.
+         *
+         * @param newName the class name of the test cases
+         */
+        private Suite(final String newName) {
+            this.name = newName;
+        }
+        /**
+         * Counts a test case.
+         *
+         * @param record the test case
+         */
+        private void add(final Record record) {
+            tests++;
+            if (record.status == Status.FAILED) {
+                failures++;
+            } else if (record.status == Status.ERROR) {
+                errors++;
+            } else if (record.status == Status.SKIPPED) {
+                skipped++;
+            }
+            time += record.duration;
+        }
+        /**
+         * Writes the start of the suite.
+         *
+         * @param xml the writer
+         * @throws XMLStreamException the XML stream exception
+         */
+        private void writeStart(final XMLStreamWriter xml)
+                throws XMLStreamException {
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("name", name);
+            xml.writeAttribute("tests", String.valueOf(tests));
+            xml.writeAttribute("failures", String.valueOf(failures));
+            xml.writeAttribute("errors", String.valueOf(errors));
+            xml.writeAttribute("skipped", String.valueOf(skipped));
+            xml.writeAttribute("time", formatDuration(time));
+        }
+    }
+
+    /**
+     * A test case as reported, with its content serialized unchanged.
+     */
+    private static final class Record {
+        /** The class name. */
+        private final String className;
+        /** The name. */
+        private final String name;
+        /** The status. */
+        private final Status status;
+        /** The duration in seconds. */
+        private final double duration;
+        /** The other attributes, names and values alternating. */
+        private final List<String> attributes;
+        /** The content of the test case element as XML. */
+        private final String content;
+
+        /**
+         * Instantiates a new record.
+         *
+         * @param newClassName  the class name
+         * @param newName       the name
+         * @param newStatus     the status
+         * @param newDuration   the duration in seconds
+         * @param newAttributes the other attributes, names and values
+         *                      alternating
+         * @param newContent    the content of the test case element as XML
+         */
+        private Record(final String newClassName, final String newName,
+                final Status newStatus, final double newDuration,
+                final List<String> newAttributes, final String newContent) {
+            this.className = newClassName;
+            this.name = newName;
+            this.status = newStatus;
+            this.duration = newDuration;
+            this.attributes = newAttributes;
+            this.content = newContent;
+        }
+        /**
+         * Parses a test case. Comments and processing instructions in it are
+         * dropped.
+         *
+         * @param xml    the reader positioned at the start of the test case,
+         *               positioned at its end afterwards
+         * @param output the factory the content is serialized with
+         * @return the test case
+         * @throws XMLStreamException the XML stream exception
+         */
+        private static Record parse(final XMLStreamReader xml,
+                final XMLOutputFactory output) throws XMLStreamException {
+            String className = "";
+            String name = "";
+            String time = null;
+            final List<String> attributes = new ArrayList<>();
+            for (int i = 0; i < xml.getAttributeCount(); i++) {
+                final String attribute = xml.getAttributeLocalName(i);
+                final String value = xml.getAttributeValue(i);
+                if ("classname".equals(attribute)) {
+                    className = value;
+                } else if ("name".equals(attribute)) {
+                    name = value;
+                } else if ("time".equals(attribute)) {
+                    time = value;
+                } else {
+                    attributes.add(attribute);
+                    attributes.add(value);
+                }
+            }
+            Status status = Status.PASSED;
+            final StringWriter content = new StringWriter();
+            final XMLStreamWriter writer
+                    = output.createXMLStreamWriter(content);
+            int depth = 0;
+            while (depth >= 0) {
+                final int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 0) {
+                        status = getStatus(xml.getLocalName(), status);
+                    }
+                    writer.writeStartElement(xml.getLocalName());
+                    for (int i = 0; i < xml.getAttributeCount(); i++) {
+                        writer.writeAttribute(xml.getAttributeLocalName(i),
+                                xml.getAttributeValue(i));
+                    }
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth > 0) {
+                        writer.writeEndElement();
+                    }
+                    depth--;
+                } else if (event == XMLStreamConstants.CDATA) {
+                    writer.writeCData(xml.getText());
+                } else if (xml.isCharacters()) {
+                    writer.writeCharacters(xml.getTextCharacters(),
+                            xml.getTextStart(), xml.getTextLength());
+                }
+            }
+            writer.close();
+            return new Record(className, name, status,
+                    ResultsSummaryParser.parseDuration(time), attributes,
+                    content.toString());
+        }
+        /**
+         * Gets the status a child element of a test case implies, like the
+         * {@link ResultsSummaryParser} does.
+         *
+         * @param element the name of the element
+         * @param status  the status implied by the earlier elements
+         * @return the status
+         */
+        private static Status getStatus(final String element,
+                final Status status) {
+            if ("failure".equals(element)) {
+                return Status.FAILED;
+            }
+            if ("error".equals(element)) {
+                return Status.ERROR;
+            }
+            if ("skipped".equals(element) && status == Status.PASSED) {
+                return Status.SKIPPED;
+            }
+            return status;
+        }
+        /**
+         * Gets the size of the test case in memory.
+         *
+         * @return the number of characters
+         */
+        private long getSize() {
+            long size = className.length() + name.length() + content.length();
+            for (final String attribute : attributes) {
+                size += attribute.length();
+            }
+            return size;
+        }
+        /**
+         * Reconciles two results of the same test case. The result with the
+         * most severe status is kept, with the longest duration.
+         *
+         * @param other the other result
+         * @return the reconciled result
+         */
+        private Record reconcile(final Record other) {
+            final Record kept = TestCase.getSeverity(other.status)
+                    > TestCase.getSeverity(status) ? other : this;
+            return new Record(className, name, kept.status,
+                    Math.max(duration, other.duration), kept.attributes,
+                    kept.content);
+        }
+        /**
+         * Writes the test case to a run.
+         *
+         * @param out the stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void write(final DataOutputStream out) throws IOException {
+            writeString(out, className);
+            writeString(out, name);
+            out.writeByte(status.ordinal());
+            out.writeDouble(duration);
+            out.writeInt(attributes.size());
+            for (final String attribute : attributes) {
+                writeString(out, attribute);
+            }
+            writeString(out, content);
+        }
+        /**
+         * Reads a test case from a run.
+         *
+         * @param in the stream
+         * @return the test case
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private static Record read(final DataInputStream in)
+                throws IOException {
+            final String className = readString(in);
+            final String name = readString(in);
+            final Status status = Status.values()[in.readByte()];
+            final double duration = in.readDouble();
+            final int count = in.readInt();
+            final List<String> attributes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                attributes.add(readString(in));
+            }
+            return new Record(className, name, status, duration, attributes,
+                    readString(in));
+        }
+        /**
+         * Writes the test case to a report. The content is written to the
+         * underlying writer as is, since it was serialized when it was read.
+         *
+         * @param xml    the writer
+         * @param writer the writer underlying the XML writer
+         * @throws XMLStreamException the XML stream exception
+         * @throws IOException        Signals that an I/O exception has
+         *                            occurred.
+         */
+        private void write(final XMLStreamWriter xml, final Writer writer)
+                throws XMLStreamException, IOException {
+            xml.writeStartElement(TESTCASE);
+            xml.writeAttribute("classname", className);
+            xml.writeAttribute("name", name);
+            xml.writeAttribute("time", formatDuration(duration));
+            for (int i = 0; i + 1 < attributes.size(); i += 2) {
+                xml.writeAttribute(attributes.get(i), attributes.get(i + 1));
+            }
+            if (!content.isEmpty()) {
+                xml.writeCharacters("");
+                xml.flush();
+                writer.write(content);
+            }
+            xml.writeEndElement();
+        }
+    }
+
+    /**
+     * The test cases of a report held in memory, by class name and name, with
+     * the truncated details the {@link ResultsSummaryParser} reports. Used
+     * for the small reports of single test events.
+     */
+    static final class Suites implements ResultsSummaryParser.Handler {
+        /** The test cases by class name, then by name. */
+        private final Map<String, Map<String, TestCase>> suites
+                = new TreeMap<>();
+        /** Whether later test cases replace earlier ones. */
+        private final boolean replace;
+        /** The number of test cases. */
+        private int size;
+
+        /**
+         * Instantiates new suites.
+         *
+         * @param newReplace whether later test cases replace earlier ones
+         *                   instead of being reconciled with them
+         */
+        Suites(final boolean newReplace) {
+            this.replace = newReplace;
+        }
+
+        /**
+         * Test case.
+         *
+         * @param className the class name
+         * @param name      the name
+         * @param status    the status
+         * @param duration  the duration in seconds
+         * @param message   the truncated message
+         * @param details   the truncated stack trace and output
+         */
+        @Override
+        public void testCase(final String className, final String name,
+                final Status status, final double duration,
+                final String message, final String details) {
+            add(className, name,
+                    new TestCase(status, duration, message, details));
+        }
+        /**
+         * Adds a test case, reconciling it with a test case of the same name.
+         *
+         * @param className the class name
+         * @param name      the name
+         * @param testCase  the test case
+         */
+        private void add(final String className, final String name,
+                final TestCase testCase) {
+            Map<String, TestCase> suite = suites.get(className);
+            if (suite == null) {
+                suite = new LinkedHashMap<>();
+                suites.put(className, suite);
+            }
+            final TestCase existing = suite.get(name);
+            if (existing == null) {
+                suite.put(name, testCase);
+                size++;
+            } else if (replace) {
+                suite.put(name, testCase);
+            } else {
+                suite.put(name, existing.reconcile(testCase));
+            }
+        }
+        /**
+         * Gets the number of test cases.
+         *
+         * @return the size
+         */
+        int size() {
+            return size;
+        }
+        /**
+         * Gets the test case.
+         *
+         * @param className the class name
+         * @param name      the name
+         * @return the test case, or null if unknown
+         */
+        TestCase get(final String className, final String name) {
+            final Map<String, TestCase> suite = suites.get(className);
+            return suite == null ? null : suite.get(name);
+        }
+        /**
+         * Writes the test cases as JUnit report.
+         *
+         * @param out the stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void write(final OutputStream out) throws IOException {
+            try {
+                final XMLStreamWriter xml = XMLOutputFactory.newInstance()
+                        .createXMLStreamWriter(out,
+                                StandardCharsets.UTF_8.name());
+                xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+                xml.writeStartElement("testsuites");
+                for (final Map.Entry<String, Map<String, TestCase>> suite
+                        : suites.entrySet()) {
+                    writeSuite(xml, suite.getKey(), suite.getValue());
+                }
+                xml.writeEndElement();
+                xml.writeEndDocument();
+                xml.close();
+            } catch (final XMLStreamException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        /**
+         * Writes a suite.
+         *
+         * @param xml       the writer
+         * @param className the class name of the test cases
+         * @param testCases the test cases by name
+         * @throws XMLStreamException the XML stream exception
+         */
+        private static void writeSuite(final XMLStreamWriter xml,
+                final String className, final Map<String, TestCase> testCases)
+                throws XMLStreamException {
+            int failures = 0;
+            int errors = 0;
+            int skipped = 0;
+            double time = 0;
+            for (final TestCase testCase : testCases.values()) {
+                if (testCase.status == Status.FAILED) {
+                    failures++;
+                } else if (testCase.status == Status.ERROR) {
+                    errors++;
+                } else if (testCase.status == Status.SKIPPED) {
+                    skipped++;
+                }
+                time += testCase.duration;
+            }
+            xml.writeStartElement("testsuite");
+            xml.writeAttribute("name", className);
+            xml.writeAttribute("tests", String.valueOf(testCases.size()));
+            xml.writeAttribute("failures", String.valueOf(failures));
+            xml.writeAttribute("errors", String.valueOf(errors));
+            xml.writeAttribute("skipped", String.valueOf(skipped));
+            xml.writeAttribute("time", formatDuration(time));
+            for (final Map.Entry<String, TestCase> testCase
+                    : testCases.entrySet()) {
+                testCase.getValue().write(xml, className, testCase.getKey());
+            }
+            xml.writeEndElement();
+        }
+    }
+
+    /**
+     * The result of a test case.
+     */
+    static final class TestCase {
+        /** The status. */
+        private final Status status;
+        /** The duration in seconds. */
+        private final double duration;
+        /** The truncated message. */
+        private final String message;
+        /** The truncated details. */
+        private final String details;
+
+        /**
+         * Instantiates a new test case.
+         *
+         * @param newStatus   the status
+         * @param newDuration the duration in seconds
+         * @param newMessage  the truncated message
+         * @param newDetails  the truncated details
+         */
+        TestCase(final Status newStatus, final double newDuration,
+                final String newMessage, final String newDetails) {
+            this.status = newStatus;
+            this.duration = newDuration;
+            this.message = newMessage;
+            this.details = newDetails;
+        }
+        /**
+         * Gets the status.
+         *
+         * @return the status
+         */
+        Status getStatus() {
+            return status;
+        }
+        /**
+         * Gets the duration.
+         *
+         * @return the duration in seconds
+         */
+        double getDuration() {
+            return duration;
+        }
+        /**
+         * Reconciles two results of the same test case. The result with the
+         * most severe status is kept, with the longest duration.
+         *
+         * @param other the other result
+         * @return the reconciled result
+         */
+        TestCase reconcile(final TestCase other) {
+            final TestCase kept = getSeverity(other.status)
+                    > getSeverity(status) ? other : this;
+            return new TestCase(kept.status,
+                    Math.max(duration, other.duration), kept.message,
+                    kept.details);
+        }
+        /**
+         * Gets the severity of a status. A skipped test case is less severe
+         * than a passed one, since it says nothing about the test.
+         *
+         * @param status the status
+         * @return the severity
+         */
+        private static int getSeverity(final Status status) {
+            switch (status) {
+            case SKIPPED:
+                return 0;
+            case PASSED:
+                return 1;
+            case FAILED:
+                return 2;
+            default:
+                return 3;
+            }
+        }
+        /**
+         * Writes the test case.
+         *
+         * @param xml       the writer
+         * @param className the class name
+         * @param name      the name
+         * @throws XMLStreamException the XML stream exception
+         */
+        private void write(final XMLStreamWriter xml, final String className,
+                final String name) throws XMLStreamException {
+            xml.writeStartElement("testcase");
+            xml.writeAttribute("classname", className);
+            xml.writeAttribute("name", name);
+            xml.writeAttribute("time", formatDuration(duration));
+            if (status.isFailed()) {
+                xml.writeStartElement(
+                        status == Status.ERROR ? "error" : "failure");
+                xml.writeAttribute("message", message);
+                xml.writeCharacters(details);
+                xml.writeEndElement();
+            } else if (status == Status.SKIPPED) {
+                xml.writeEmptyElement("skipped");
+            }
+            xml.writeEndElement();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+/**
+ * How the results of the client are published.
+ */
+public enum ResultsMode {
+    /** The results are published by the JUnit plugin. */
+    JUNIT {
+        /**
+         * Gets the display name.
+         *
+         * @return the display name
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.resultsModeJUnit();
+        }
+        /**
+         * Creates the publisher.
+         *
+         * @return the publisher
+         */
+        @Override
+        JUnitResultsPublisher createPublisher() {
+            return new DefaultJUnitResultsPublisher();
+        }
+    },
+    /**
+     * The results are parsed on the agent and only a compact summary is sent
+     * to the controller.
+     */
+    SUMMARY {
+        /**
+         * Gets the display name.
+         *
+         * @return the display name
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.resultsModeSummary();
+        }
+        /**
+         * Creates the publisher.
+         *
+         * @return the publisher
+         */
+        @Override
+        JUnitResultsPublisher createPublisher() {
+            return new SummaryResultsPublisher();
+        }
+    },
+    /**
+     * The results are parsed on the agent into an index of all test cases,
+     * details are only loaded when they are shown.
+     */
+    INDEXED {
+        /**
+         * Gets the display name.
+         *
+         * @return the display name
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.resultsModeIndexed();
+        }
+        /**
+         * Creates the publisher.
+         *
+         * @return the publisher
+         */
+        @Override
+        JUnitResultsPublisher createPublisher() {
+            return new IndexedResultsPublisher();
+        }
+    };
+
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    public abstract String getDisplayName();
+    /**
+     * Creates the publisher of this mode.
+     *
+     * @return the publisher
+     */
+    abstract JUnitResultsPublisher createPublisher();
+}
@@ -0,0 +1,341 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact summary of JUnit results: the totals and the details of failed test
+ * cases only. Passed and skipped test cases are counted, but not kept. The
+ * summary is created on the agent and stored in a small binary file in the
+ * build directory, so the controller never holds the whole report.
+ */
+public final class ResultsSummary
+        implements ResultsSummaryParser.Handler, Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The maximum number of failed test cases kept with details. */
+    static final int MAX_FAILED_CASES = 1000;
+    /** The Constant MAGIC. */
+    private static final int MAGIC = 0x54525331;
+    /** The Constant VERSION. */
+    private static final int VERSION = 1;
+    /** The number of test cases. */
+    private int tests;
+    /** The number of failed test cases. */
+    private int failures;
+    /** The number of test cases with errors. */
+    private int errors;
+    /** The number of skipped test cases. */
+    private int skipped;
+    /** The total duration in seconds. */
+    private double duration;
+    /** The failed test cases, at most {@link #MAX_FAILED_CASES}. */
+    private final List<FailedCase> failedCases = new ArrayList<>();
+
+    /**
+     * Gets the number of test cases.
+     *
+     * @return the tests
+     */
+    public int getTests() {
+        return tests;
+    }
+    /**
+     * Gets the number of failed test cases.
+     *
+     * @return the failures
+     */
+    public int getFailures() {
+        return failures;
+    }
+    /**
+     * Gets the number of test cases with errors.
+     *
+     * @return the errors
+     */
+    public int getErrors() {
+        return errors;
+    }
+    /**
+     * Gets the number of skipped test cases.
+     *
+     * @return the skipped
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+    /**
+     * Gets the number of passed test cases.
+     *
+     * @return the passed
+     */
+    public int getPassed() {
+        return tests - failures - errors - skipped;
+    }
+    /**
+     * Gets the total duration in seconds.
+     *
+     * @return the duration
+     */
+    public double getDuration() {
+        return duration;
+    }
+    /**
+     * Gets the failed test cases with details.
+     *
+     * @return the failed cases
+     */
+    public List<FailedCase> getFailedCases() {
+        return Collections.unmodifiableList(failedCases);
+    }
+    /**
+     * Gets the number of failed test cases without details, because there
+     * were too many.
+     *
+     * @return the omitted failed cases
+     */
+    public int getOmittedFailedCases() {
+        return failures + errors - failedCases.size();
+    }
+    /**
+     * Adds a test case.
+     *
+     * @param className    the class name
+     * @param name         the name
+     * @param status       the status
+     * @param caseDuration the duration in seconds
+     * @param message      the message
+     * @param details      the details
+     */
+    @Override
+    public void testCase(final String className, final String name,
+            final ResultsSummaryParser.Status status, final double caseDuration,
+            final String message, final String details) {
+        if (status.isFailed()) {
+            addFailed(new FailedCase(className, name,
+                    status == ResultsSummaryParser.Status.ERROR, caseDuration,
+                    message, details));
+        } else if (status == ResultsSummaryParser.Status.SKIPPED) {
+            addSkipped(caseDuration);
+        } else {
+            addPassed(caseDuration);
+        }
+    }
+    /**
+     * Adds a passed test case.
+     *
+     * @param caseDuration the duration in seconds
+     */
+    void addPassed(final double caseDuration) {
+        tests++;
+        duration += caseDuration;
+    }
+    /**
+     * Adds a skipped test case.
+     *
+     * @param caseDuration the duration in seconds
+     */
+    void addSkipped(final double caseDuration) {
+        tests++;
+        skipped++;
+        duration += caseDuration;
+    }
+    /**
+     * Adds a failed test case.
+     *
+     * @param failedCase the failed case
+     */
+    void addFailed(final FailedCase failedCase) {
+        tests++;
+        if (failedCase.isError()) {
+            errors++;
+        } else {
+            failures++;
+        }
+        duration += failedCase.getDuration();
+        if (failedCases.size() < MAX_FAILED_CASES) {
+            failedCases.add(failedCase);
+        }
+    }
+    /**
+     * Adds the results of another summary to this one.
+     *
+     * @param other the other
+     */
+    void merge(final ResultsSummary other) {
+        tests += other.tests;
+        failures += other.failures;
+        errors += other.errors;
+        skipped += other.skipped;
+        duration += other.duration;
+        final int room = MAX_FAILED_CASES - failedCases.size();
+        failedCases.addAll(other.failedCases.subList(0,
+                Math.min(room, other.failedCases.size())));
+    }
+    /**
+     * Loads a summary.
+     *
+     * @param file the file
+     * @return the summary
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static ResultsSummary load(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported format of " + file);
+            }
+            final ResultsSummary summary = new ResultsSummary();
+            summary.tests = in.readInt();
+            summary.failures = in.readInt();
+            summary.errors = in.readInt();
+            summary.skipped = in.readInt();
+            summary.duration = in.readDouble();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                summary.failedCases.add(new FailedCase(in.readUTF(),
+                        in.readUTF(), in.readBoolean(), in.readDouble(),
+                        in.readUTF(), in.readUTF()));
+            }
+            return summary;
+        }
+    }
+    /**
+     * Saves the summary. The file is replaced atomically.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void save(final File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(
+                        new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tests);
+            out.writeInt(failures);
+            out.writeInt(errors);
+            out.writeInt(skipped);
+            out.writeDouble(duration);
+            out.writeInt(failedCases.size());
+            for (final FailedCase failedCase : failedCases) {
+                out.writeUTF(failedCase.getClassName());
+                out.writeUTF(failedCase.getName());
+                out.writeBoolean(failedCase.isError());
+                out.writeDouble(failedCase.getDuration());
+                out.writeUTF(failedCase.getMessage());
+                out.writeUTF(failedCase.getDetails());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A failed test case. Its message and details are truncated on the agent.
+     */
+    public static final class FailedCase implements Serializable {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The class name. */
+        private final String className;
+        /** The name. */
+        private final String name;
+        /** Whether the test case has an error rather than a failure. */
+        private final boolean error;
+        /** The duration in seconds. */
+        private final double duration;
+        /** The message. */
+        private final String message;
+        /** The stack trace and output. */
+        private final String details;
+
+        /**
+         * Instantiates a new failed case.
+         *
+         * @param newClassName the class name
+         * @param newName      the name
+         * @param newError     whether the test case has an error
+         * @param newDuration  the duration in seconds
+         * @param newMessage   the message
+         * @param newDetails   the stack trace and output
+         */
+        FailedCase(final String newClassName, final String newName,
+                final boolean newError, final double newDuration,
+                final String newMessage, final String newDetails) {
+            this.className = newClassName;
+            this.name = newName;
+            this.error = newError;
+            this.duration = newDuration;
+            this.message = newMessage;
+            this.details = newDetails;
+        }
+        /**
+         * Gets the class name.
+         *
+         * @return the class name
+         */
+        public String getClassName() {
+            return className;
+        }
+        /**
+         * Gets the name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+        /**
+         * Checks whether the test case has an error rather than a failure.
+         *
+         * @return true, if it is an error
+         */
+        public boolean isError() {
+            return error;
+        }
+        /**
+         * Gets the duration in seconds.
+         *
+         * @return the duration
+         */
+        public double getDuration() {
+            return duration;
+        }
+        /**
+         * Gets the message.
+         *
+         * @return the message
+         */
+        public String getMessage() {
+            return message;
+        }
+        /**
+         * Gets the stack trace and output.
+         *
+         * @return the details
+         */
+        public String getDetails() {
+            return details;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * Attaches a {@link ResultsSummary} to a run. The summary is stored in a
+ * binary file in the build directory and only loaded when its page is shown.
+ * The totals are kept in the action itself, so the build page does not need
+ * to load the file.
+ */
+public class ResultsSummaryAction implements RunAction2 {
+    /** The Constant FILE_NAME. */
+    static final String FILE_NAME = "tricentis-summary.bin";
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(ResultsSummaryAction.class.getName());
+    /** The run. */
+    private transient Run<?, ?> run;
+    /** The summary, loaded on demand. */
+    private transient SoftReference<ResultsSummary> summary;
+    /** The number of test cases. */
+    private int tests;
+    /** The number of failed test cases, including errors. */
+    private int failed;
+    /** The number of skipped test cases. */
+    private int skipped;
+
+    /**
+     * Gets the action of the run, attaching a new one if there is none yet.
+     *
+     * @param run the run
+     * @return the action
+     */
+    static ResultsSummaryAction attach(final Run<?, ?> run) {
+        synchronized (run) {
+            ResultsSummaryAction action
+                    = run.getAction(ResultsSummaryAction.class);
+            if (action == null) {
+                action = new ResultsSummaryAction();
+                run.addAction(action);
+            }
+            return action;
+        }
+    }
+    /**
+     * On attached.
+     *
+     * @param newRun the run
+     */
+    @Override
+    public void onAttached(final Run<?, ?> newRun) {
+        this.run = newRun;
+    }
+    /**
+     * On load.
+     *
+     * @param newRun the run
+     */
+    @Override
+    public void onLoad(final Run<?, ?> newRun) {
+        this.run = newRun;
+    }
+    /**
+     * Gets the run.
+     *
+     * @return the run
+     */
+    public Run<?, ?> getRun() {
+        return run;
+    }
+    /**
+     * Gets the icon file name.
+     *
+     * @return the icon file name
+     */
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+    /**
+     * Gets the display name.
+     *
+     * @return the display name
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.summaryTitle();
+    }
+    /**
+     * Gets the url name.
+     *
+     * @return the url name
+     */
+    @Override
+    public String getUrlName() {
+        return "tricentisResults";
+    }
+    /**
+     * Gets the number of test cases.
+     *
+     * @return the tests
+     */
+    public int getTests() {
+        return tests;
+    }
+    /**
+     * Gets the number of failed test cases, including errors.
+     *
+     * @return the failed
+     */
+    public int getFailed() {
+        return failed;
+    }
+    /**
+     * Gets the number of skipped test cases.
+     *
+     * @return the skipped
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+    /**
+     * Gets the summary, loading it from the build directory if necessary.
+     *
+     * @return the summary, empty if it cannot be loaded
+     */
+    public synchronized ResultsSummary getSummary() {
+        ResultsSummary loaded = summary == null ? null : summary.get();
+        if (loaded == null) {
+            final File file = getFile();
+            loaded = new ResultsSummary();
+            if (file.isFile()) {
+                try {
+                    loaded = ResultsSummary.load(file);
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not load " + file, e);
+                }
+            }
+            summary = new SoftReference<>(loaded);
+        }
+        return loaded;
+    }
+    /**
+     * Adds the results of a summary to the stored summary.
+     *
+     * @param added the added summary
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    synchronized void merge(final ResultsSummary added) throws IOException {
+        final ResultsSummary merged = getSummary();
+        merged.merge(added);
+        merged.save(getFile());
+        tests = merged.getTests();
+        failed = merged.getFailures() + merged.getErrors();
+        skipped = merged.getSkipped();
+    }
+    /**
+     * Gets the file of the summary.
+     *
+     * @return the file
+     */
+    private File getFile() {
+        return new File(run.getRootDir(), FILE_NAME);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser which reports the test cases of a JUnit report to a
+ * {@link Handler}, for example a {@link ResultsSummary}. Messages, stack
+ * traces and output are truncated while they are read, so large step logs
+ * embedded in the report are never held in memory. Only failed test cases
+ * keep them at all.
+ */
+public class ResultsSummaryParser {
+    /** The maximum length of a failure message. */
+    static final int MAX_MESSAGE_LENGTH = 1024;
+    /** The maximum length of the details of a failure. */
+    static final int MAX_DETAILS_LENGTH = 8192;
+    /** Appended to truncated texts. */
+    static final String TRUNCATED = "...";
+    /** The Constant TESTCASE. */
+    private static final String TESTCASE = "testcase";
+
+    /**
+     * Parses a JUnit report.
+     *
+     * @param in      the report
+     * @param handler the handler the test cases are reported to
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void parse(final InputStream in, final Handler handler)
+            throws IOException {
+        try {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            final XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT
+                            && TESTCASE.equals(xml.getLocalName())) {
+                        parseTestCase(xml, handler);
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    /**
+     * Parses a test case.
+     *
+     * @param xml     the reader positioned at the start of the test case
+     * @param handler the handler
+     * @throws XMLStreamException the XML stream exception
+     * @throws IOException        Signals that an I/O exception has occurred.
+     */
+    private void parseTestCase(final XMLStreamReader xml,
+            final Handler handler) throws XMLStreamException, IOException {
+        final String className = value(xml.getAttributeValue(null,
+                "classname"));
+        final String name = value(xml.getAttributeValue(null, "name"));
+        final double duration = parseDuration(
+                xml.getAttributeValue(null, "time"));
+        Status status = Status.PASSED;
+        String message = "";
+        final StringBuilder details = new StringBuilder();
+        final StringBuilder output = new StringBuilder();
+        while (xml.next() != XMLStreamConstants.END_ELEMENT) {
+            if (xml.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            final String element = xml.getLocalName();
+            if ("failure".equals(element) || "error".equals(element)) {
+                status = "error".equals(element) ? Status.ERROR
+                        : Status.FAILED;
+                message = truncate(value(xml.getAttributeValue(null,
+                        "message")), MAX_MESSAGE_LENGTH);
+                readText(xml, details);
+            } else if ("system-out".equals(element)
+                    || "system-err".equals(element)) {
+                if (output.length() > 0) {
+                    output.append('\n');
+                }
+                readText(xml, output);
+            } else {
+                if ("skipped".equals(element) && status == Status.PASSED) {
+                    status = Status.SKIPPED;
+                }
+                skip(xml);
+            }
+        }
+        if (status.isFailed()) {
+            if (details.length() > 0 && output.length() > 0) {
+                details.append('\n');
+            }
+            details.append(output);
+            handler.testCase(className, name, status, duration, message,
+                    truncate(details.toString(), MAX_DETAILS_LENGTH));
+        } else {
+            handler.testCase(className, name, status, duration, "", "");
+        }
+    }
+    /**
+     * Reads the text of the current element up to the maximum details length
+     * and skips the rest. The reader is positioned at the end of the element
+     * afterwards.
+     *
+     * @param xml    the reader
+     * @param target the target
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void readText(final XMLStreamReader xml,
+            final StringBuilder target) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (xml.isCharacters()
+                    && target.length() <= MAX_DETAILS_LENGTH) {
+                final int length = Math.min(xml.getTextLength(),
+                        MAX_DETAILS_LENGTH + 1 - target.length());
+                target.append(xml.getTextCharacters(), xml.getTextStart(),
+                        length);
+            }
+        }
+    }
+    /**
+     * Skips the current element.
+     *
+     * @param xml the reader
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void skip(final XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+    /**
+     * Parses a duration in seconds, unparsable durations are 0.
+     *
+     * @param time the time attribute
+     * @return the duration
+     */
+    static double parseDuration(final String time) {
+        if (time == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(time.replace(",", ""));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+    /**
+     * Truncates a text.
+     *
+     * @param text      the text
+     * @param maxLength the max length
+     * @return the text, truncated if longer than the max length
+     */
+    static String truncate(final String text, final int maxLength) {
+        if (text.length() <= maxLength) {
+            return text;
+        }
+        return text.substring(0, maxLength) + TRUNCATED;
+    }
+    /**
+     * Replaces a missing attribute value by an empty string.
+     *
+     * @param value the value
+     * @return the value
+     */
+    private static String value(final String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * The status of a test case.
+     */
+    public enum Status {
+        /** The test case passed. */
+        PASSED,
+        /** The test case was skipped. */
+        SKIPPED,
+        /** The test case failed. */
+        FAILED,
+        /** The test case had an error. */
+        ERROR;
+
+        /**
+         * Checks whether the test case failed or had an error.
+         *
+         * @return true, if failed
+         */
+        public boolean isFailed() {
+            return this == FAILED || this == ERROR;
+        }
+    }
+
+    /**
+     * Receives the test cases of a report.
+     */
+    public interface Handler {
+        /**
+         * Called for each test case. Message and details are empty unless
+         * the test case failed.
+         *
+         * @param className the class name
+         * @param name      the name
+         * @param status    the status
+         * @param duration  the duration in seconds
+         * @param message   the truncated message
+         * @param details   the truncated stack trace and output
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void testCase(String className, String name, Status status,
+                double duration, String message, String details)
+                throws IOException;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * {@link ProcessMonitor} which publishes test results while the client
+ * processes are still running. The results files are parsed incrementally on
+ * the agent by {@link IncrementalResultsParser}s, and each batch of completed
+ * test cases is published as a small delta report, which is merged into the
+ * test results of the run. Only the test cases completed after the last poll
+ * are left for {@link #finish()}.
+ */
+public class StreamingResultsMonitor implements ProcessMonitor {
+    /** The prefix of the directories the delta reports are written to. */
+    static final String STREAM_DIRECTORY = "tricentis-stream";
+    /** Minimum interval in milliseconds between two publications. */
+    private static final long PUBLISH_INTERVAL = 10000;
+    /** The results files. */
+    private final List<String> resultsFiles;
+    /** The parsers, one per results file. */
+    private final IncrementalResultsParser[] parsers;
+    /** The publisher. */
+    private final JUnitResultsPublisher publisher;
+    /** The run. */
+    private final Run<?, ?> run;
+    /** The workspace. */
+    private final FilePath workspace;
+    /** The launcher. */
+    private final Launcher launcher;
+    /** The listener. */
+    private final TaskListener listener;
+    /** The directory in the workspace the delta reports are written to. */
+    private final String directory;
+    /** The number of delta reports written. */
+    private int parts;
+    /** The number of test cases published. */
+    private int published;
+    /** The time of the last publication. */
+    private long lastPublished;
+
+    /**
+     * Instantiates a new streaming results monitor. The delta reports are
+     * written to a directory of the build, so builds sharing the workspace
+     * do not overwrite each other's reports; it is removed by
+     * {@link #delete()}.
+     *
+     * @param newResultsFiles the results files, relative to the workspace
+     * @param newPublisher    the publisher
+     * @param newRun          the run
+     * @param newWorkspace    the workspace
+     * @param newLauncher     the launcher
+     * @param newListener     the listener
+     */
+    public StreamingResultsMonitor(final List<String> newResultsFiles,
+            final JUnitResultsPublisher newPublisher, final Run<?, ?> newRun,
+            final FilePath newWorkspace, final Launcher newLauncher,
+            final TaskListener newListener) {
+        this.resultsFiles = newResultsFiles;
+        this.parsers = new IncrementalResultsParser[newResultsFiles.size()];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = new IncrementalResultsParser();
+        }
+        this.publisher = newPublisher;
+        this.run = newRun;
+        this.workspace = newWorkspace;
+        this.launcher = newLauncher;
+        this.listener = newListener;
+        this.lastPublished = System.currentTimeMillis();
+        this.directory = createDirectoryName(STREAM_DIRECTORY, newRun);
+    }
+    /**
+     * Creates the name of a directory of the delta reports of a build, from
+     * the build number and a random suffix.
+     *
+     * @param prefix the prefix of the name
+     * @param run    the run
+     * @return the name of the directory
+     */
+    static String createDirectoryName(final String prefix,
+            final Run<?, ?> run) {
+        return prefix + "-" + run.getNumber() + "-"
+                + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+    /**
+     * Publishes the test cases completed since the last publication, at most
+     * once per publish interval.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    @Override
+    public void poll() throws IOException, InterruptedException {
+        final long now = System.currentTimeMillis();
+        if (now - lastPublished < PUBLISH_INTERVAL) {
+            return;
+        }
+        lastPublished = now;
+        publishDeltas();
+    }
+    /**
+     * Started.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void started(final int process) {
+        // nothing to track
+    }
+    /**
+     * Terminated.
+     *
+     * @param process the index of the process
+     */
+    @Override
+    public void terminated(final int process) {
+        // nothing to track
+    }
+    /**
+     * Killed. The test cases completed so far are left for
+     * {@link #finish()}.
+     *
+     * @param killed   the number of processes which were killed
+     * @param alive    the number of processes still alive
+     * @param duration the duration of the teardown in milliseconds
+     */
+    @Override
+    public void killed(final int killed, final int alive,
+            final long duration) {
+        // nothing to release
+    }
+    /**
+     * Publishes the remaining test cases, once the processes have finished.
+     *
+     * @return the number of test cases published in total
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    public int finish() throws IOException, InterruptedException {
+        publishDeltas();
+        return published;
+    }
+    /**
+     * Deletes the delta reports from the workspace, once they are published.
+     * Failures are only logged, they do not fail the build.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public void delete() throws InterruptedException {
+        try {
+            workspace.child(directory).deleteRecursive();
+        } catch (final IOException e) {
+            listener.getLogger().println(
+                    Messages.streamResultsDeleteFailed(e.getMessage()));
+        }
+    }
+    /**
+     * Parses the new content of all results files and publishes the completed
+     * test cases.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private void publishDeltas() throws IOException, InterruptedException {
+        for (int i = 0; i < parsers.length; i++) {
+            final String delta = directory + "/part" + (parts + 1) + ".xml";
+            final int before = parsers[i].getTestCases();
+            parsers[i] = workspace.child(resultsFiles.get(i)).act(
+                    new ParseDelta(parsers[i],
+                            workspace.child(delta).getRemote()));
+            final int count = parsers[i].getTestCases() - before;
+            if (count > 0) {
+                parts++;
+                listener.getLogger().println(Messages.streamResultsLog(count));
+                publisher.publish(delta, run, workspace, launcher, listener);
+                published += count;
+            }
+        }
+    }
+
+    /**
+     * Parses the new content of a results file on the agent.
+     */
+    static final class ParseDelta
+            extends MasterToSlaveFileCallable<IncrementalResultsParser> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The parser. */
+        private final IncrementalResultsParser parser;
+        /** The path of the delta report. */
+        private final String deltaPath;
+
+        /**
+         * Instantiates a new parse delta.
+         *
+         * @param newParser    the parser
+         * @param newDeltaPath the path of the delta report
+         */
+        ParseDelta(final IncrementalResultsParser newParser,
+                final String newDeltaPath) {
+            this.parser = newParser;
+            this.deltaPath = newDeltaPath;
+        }
+        /**
+         * Invoke.
+         *
+         * @param file    the results file
+         * @param channel the channel
+         * @return the parser with the new state
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public IncrementalResultsParser invoke(final File file,
+                final VirtualChannel channel) throws IOException {
+            if (!file.isFile() || file.length() <= parser.getOffset()) {
+                return parser;
+            }
+            final File deltaFile = new File(deltaPath);
+            deltaFile.getParentFile().mkdirs();
+            try (FileInputStream in = new FileInputStream(file)) {
+                in.getChannel().position(parser.getOffset());
+                parser.parse(in, deltaFile);
+            }
+            return parser;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Implementation of {@link JUnitResultsPublisher} which parses the reports on
+ * the agent and only sends a {@link ResultsSummary} to the controller. The
+ * summary is attached to the run by a {@link ResultsSummaryAction}. Unlike
+ * the JUnit plugin, it never loads the whole report into controller memory.
+ */
+public class SummaryResultsPublisher
+        implements JUnitResultsPublisher, Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Publish.
+     *
+     * @param reportFileName the report file name, or comma separated patterns
+     * @param run            the run
+     * @param workspace      the workspace
+     * @param launcher       the launcher
+     * @param listener       the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void publish(final String reportFileName, final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        final ResultsSummary summary
+                = workspace.act(new Summarize(reportFileName));
+        if (summary == null) {
+            throw new AbortException(Messages.noResultsFound(reportFileName));
+        }
+        listener.getLogger().println(Messages.summaryLog(summary.getTests(),
+                summary.getFailures() + summary.getErrors(),
+                summary.getSkipped()));
+        ResultsSummaryAction.attach(run).merge(summary);
+        if (summary.getFailures() + summary.getErrors() > 0) {
+            run.setResult(Result.UNSTABLE);
+        }
+    }
+
+    /**
+     * Parses the reports matching the patterns on the agent.
+     */
+    private static final class Summarize
+            extends MasterToSlaveFileCallable<ResultsSummary> {
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+        /** The comma separated patterns of the reports. */
+        private final String includes;
+
+        /**
+         * Instantiates a new summarize.
+         *
+         * @param newIncludes the comma separated patterns of the reports
+         */
+        Summarize(final String newIncludes) {
+            this.includes = newIncludes;
+        }
+        /**
+         * Invoke.
+         *
+         * @param workspace the workspace
+         * @param channel   the channel
+         * @return the summary, or null if no report matches the patterns
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public ResultsSummary invoke(final File workspace,
+                final VirtualChannel channel) throws IOException {
+            final String[] reports = Util.createFileSet(workspace, includes)
+                    .getDirectoryScanner().getIncludedFiles();
+            if (reports.length == 0) {
+                return null;
+            }
+            final ResultsSummary summary = new ResultsSummary();
+            final ResultsSummaryParser parser = new ResultsSummaryParser();
+            for (final String report : reports) {
+                try (InputStream in = new BufferedInputStream(
+                        new FileInputStream(new File(workspace, report)))) {
+                    parser.parse(in, summary);
+                }
+            }
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact on-disk index of the recent duration of every test event of a job.
+ * The index holds one entry per test event, so reading it does not depend on
+ * the number of builds of the job and does not need any old test results.
+ * Durations are smoothed with an exponentially weighted moving average.
+ * Entries of test events which were not executed in the last
+ * {@link #MAX_AGE} updates, e.g. because they were removed from the job, are
+ * dropped, so the index does not grow forever.
+ */
+public final class TestEventDurationIndex {
+    /** The Constant FILE_NAME. */
+    static final String FILE_NAME = "tricentis-durations.idx";
+    /** The Constant MAGIC. */
+    private static final int MAGIC = 0x54444931;
+    /** The Constant VERSION. */
+    private static final int VERSION = 2;
+    /** The first version, without the ages of the entries. */
+    private static final int VERSION_WITHOUT_AGES = 1;
+    /** The number of updates without a test event after which it is dropped. */
+    static final int MAX_AGE = 50;
+    /** Weight of the newest sample in the moving average. */
+    private static final double ALPHA = 0.3;
+    /** The Constant UNKNOWN. */
+    static final long UNKNOWN = -1;
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(TestEventDurationIndex.class.getName());
+    /** Lock for read-modify-write cycles of index files. */
+    private static final Object LOCK = new Object();
+    /** The estimated durations in milliseconds by test event. */
+    private final Map<String, Long> estimates;
+    /** The number of updates since a test event was last recorded. */
+    private final Map<String, Integer> ages;
+
+    /**
+     * Instantiates a new empty index.
+     */
+    TestEventDurationIndex() {
+        this(new HashMap<String, Long>(), new HashMap<String, Integer>());
+    }
+    /**
+     * Instantiates a new index.
+     *
+     * @param newEstimates the estimates
+     * @param newAges      the number of updates since each test event was
+     *                     last recorded
+     */
+    private TestEventDurationIndex(final Map<String, Long> newEstimates,
+            final Map<String, Integer> newAges) {
+        this.estimates = newEstimates;
+        this.ages = newAges;
+    }
+    /**
+     * Gets the index file of the given job directory.
+     *
+     * @param jobDir the root directory of the job
+     * @return the index file
+     */
+    public static File getFile(final File jobDir) {
+        return new File(jobDir, FILE_NAME);
+    }
+    /**
+     * Loads the index. A missing or unreadable file results in an empty
+     * index.
+     *
+     * @param file the index file
+     * @return the index
+     */
+    public static TestEventDurationIndex load(final File file) {
+        if (!file.isFile()) {
+            return new TestEventDurationIndex();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            final int version = in.readInt() == MAGIC ? in.readInt() : 0;
+            if (version != VERSION && version != VERSION_WITHOUT_AGES) {
+                LOGGER.log(Level.WARNING, "Ignoring unknown format of {0}",
+                        file);
+                return new TestEventDurationIndex();
+            }
+            final int size = in.readInt();
+            final Map<String, Long> estimates = new HashMap<>(size * 2);
+            final Map<String, Integer> ages = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                final String testEvent = in.readUTF();
+                estimates.put(testEvent, in.readLong());
+                ages.put(testEvent, version == VERSION ? in.readInt() : 0);
+            }
+            return new TestEventDurationIndex(estimates, ages);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file, e);
+            return new TestEventDurationIndex();
+        }
+    }
+    /**
+     * Records the given durations in the index file. All other test events
+     * age by one update and are dropped once they are older than
+     * {@link #MAX_AGE}.
+     *
+     * @param file      the index file
+     * @param durations the durations in milliseconds by test event
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void update(final File file,
+            final Map<String, Long> durations) throws IOException {
+        synchronized (LOCK) {
+            final TestEventDurationIndex index = load(file);
+            index.age();
+            for (final Map.Entry<String, Long> entry : durations.entrySet()) {
+                index.record(entry.getKey(), entry.getValue());
+            }
+            index.save(file);
+        }
+    }
+    /**
+     * Gets the estimated duration of the test event.
+     *
+     * @param testEvent the test event
+     * @return the estimated duration in milliseconds or {@link #UNKNOWN}
+     */
+    public long getEstimate(final String testEvent) {
+        final Long estimate = estimates.get(testEvent);
+        return estimate == null ? UNKNOWN : estimate;
+    }
+    /**
+     * Checks whether any of the given test events has an estimate.
+     *
+     * @param testEvents the test events
+     * @return true, if at least one estimate is known
+     */
+    public boolean hasAny(final Collection<String> testEvents) {
+        for (final String testEvent : testEvents) {
+            if (estimates.containsKey(testEvent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Gets the expected duration of executing the given test events one
+     * after the other.
+     *
+     * @param testEvents the test events
+     * @return the expected duration in milliseconds, or {@link #UNKNOWN} if
+     *         no estimate is known
+     */
+    public long getExpected(final List<String> testEvents) {
+        if (!hasAny(testEvents)) {
+            return UNKNOWN;
+        }
+        long sum = 0;
+        for (final Long estimate : estimate(testEvents).values()) {
+            sum += Math.max(0, estimate);
+        }
+        return sum;
+    }
+    /**
+     * Gets the estimated duration of every given test event. Test events
+     * without history are estimated with the mean of the known ones.
+     *
+     * @param testEvents the test events
+     * @return the estimates in milliseconds, by test event, or
+     *         {@link #UNKNOWN} for every test event if none is known
+     */
+    public Map<String, Long> estimate(final List<String> testEvents) {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        long sum = 0;
+        int known = 0;
+        for (final String testEvent : testEvents) {
+            final long estimate = getEstimate(testEvent);
+            result.put(testEvent, estimate);
+            if (estimate != UNKNOWN) {
+                sum += estimate;
+                known++;
+            }
+        }
+        final long mean = known == 0 ? UNKNOWN : sum / known;
+        for (final Map.Entry<String, Long> entry : result.entrySet()) {
+            if (entry.getValue() == UNKNOWN) {
+                entry.setValue(mean);
+            }
+        }
+        return result;
+    }
+    /**
+     * Splits the measured duration of a client process among the test events
+     * it executed, in proportion to their estimates.
+     *
+     * @param testEvents the test events executed by the process
+     * @param duration   the duration of the process in milliseconds
+     * @return the durations in milliseconds by test event
+     */
+    public Map<String, Long> apportion(final List<String> testEvents,
+            final long duration) {
+        final Map<String, Long> weights = estimate(testEvents);
+        long total = 0;
+        for (final Long weight : weights.values()) {
+            total += Math.max(weight, 0);
+        }
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, Long> entry : weights.entrySet()) {
+            if (total <= 0) {
+                result.put(entry.getKey(), duration / weights.size());
+            } else {
+                result.put(entry.getKey(), Math.round(
+                        (double) duration * entry.getValue() / total));
+            }
+        }
+        return result;
+    }
+    /**
+     * Records a duration of the test event.
+     *
+     * @param testEvent the test event
+     * @param duration  the duration in milliseconds
+     */
+    void record(final String testEvent, final long duration) {
+        ages.put(testEvent, 0);
+        final Long previous = estimates.get(testEvent);
+        if (previous == null) {
+            estimates.put(testEvent, duration);
+        } else {
+            estimates.put(testEvent,
+                    Math.round(ALPHA * duration + (1 - ALPHA) * previous));
+        }
+    }
+    /**
+     * Ages all test events by one update and drops the ones older than
+     * {@link #MAX_AGE}.
+     */
+    void age() {
+        final Iterator<Map.Entry<String, Long>> iterator
+                = estimates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final String testEvent = iterator.next().getKey();
+            final Integer age = ages.get(testEvent);
+            final int older = age == null ? 1 : age + 1;
+            if (older > MAX_AGE) {
+                iterator.remove();
+                ages.remove(testEvent);
+            } else {
+                ages.put(testEvent, older);
+            }
+        }
+    }
+    /**
+     * Gets the number of test events in the index.
+     *
+     * @return the size
+     */
+    int size() {
+        return estimates.size();
+    }
+    /**
+     * Saves the index. The file is replaced atomically, so concurrent readers
+     * never see a partially written index.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void save(final File file) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(estimates.size());
+            for (final Map.Entry<String, Long> entry : estimates.entrySet()) {
+                final Integer age = ages.get(entry.getKey());
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+                out.writeInt(age == null ? 0 : age);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
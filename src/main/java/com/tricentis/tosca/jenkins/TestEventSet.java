@@ -0,0 +1,95 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+/**
+ * Set of test events which only keeps a 64 bit fingerprint of each test
+ * event in an open addressing table, so removing the duplicates of a list of
+ * a million test events takes 16 MB at most instead of the strings
+ * themselves. Two different test events share a fingerprint with a
+ * probability of about n^2 / 2^65, which is negligible even for millions of
+ * test events.
+ */
+final class TestEventSet {
+    /** The initial capacity of the table, a power of two. */
+    private static final int INITIAL_CAPACITY = 1024;
+    /** The Constant FNV_OFFSET_BASIS. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    /** The Constant FNV_PRIME. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** The fingerprints, 0 for an empty slot. */
+    private long[] table = new long[INITIAL_CAPACITY];
+    /** The number of fingerprints. */
+    private int size;
+
+    /**
+     * Adds a test event.
+     *
+     * @param testEvent the test event
+     * @return true, if the test event was not in the set yet
+     */
+    boolean add(final String testEvent) {
+        if ((size + 1) * 2 > table.length) {
+            final long[] grown = new long[table.length * 2];
+            for (final long fingerprint : table) {
+                if (fingerprint != 0) {
+                    insert(grown, fingerprint);
+                }
+            }
+            table = grown;
+        }
+        if (insert(table, fingerprint(testEvent))) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Gets the number of test events.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+    /**
+     * Inserts a fingerprint into a table with linear probing.
+     *
+     * @param into        the table
+     * @param fingerprint the fingerprint
+     * @return true, if the fingerprint was not in the table yet
+     */
+    private static boolean insert(final long[] into, final long fingerprint) {
+        final int mask = into.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (into[slot] != 0) {
+            if (into[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        into[slot] = fingerprint;
+        return true;
+    }
+    /**
+     * Computes the fingerprint of a test event: 64 bit FNV-1a of its
+     * characters, mixed so that the low bits are usable as slot.
+     *
+     * @param testEvent the test event
+     * @return the fingerprint, never 0
+     */
+    static long fingerprint(final String testEvent) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < testEvent.length(); i++) {
+            hash ^= testEvent.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
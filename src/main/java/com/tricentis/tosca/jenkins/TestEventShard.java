@@ -0,0 +1,148 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Part of the test events of a single build which is executed by its own Tosca
+ * CI client process and writes its own results file.
+ */
+public class TestEventShard implements Serializable {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The index of the shard, starting with 0. */
+    private final int index;
+    /** The total number of shards. */
+    private final int count;
+    /** The test events. */
+    private final List<String> testEvents;
+    /** The results file. */
+    private final String resultsFile;
+    /** The endpoint the shard is routed to, null for the configured one. */
+    private final String endpoint;
+
+    /**
+     * Instantiates a new test event shard.
+     *
+     * @param newIndex       the index of the shard, starting with 0
+     * @param newCount       the total number of shards
+     * @param newTestEvents  the test events of the shard
+     * @param newResultsFile the results file of the shard
+     */
+    public TestEventShard(final int newIndex, final int newCount,
+            final List<String> newTestEvents, final String newResultsFile) {
+        this(newIndex, newCount, newTestEvents, newResultsFile, null);
+    }
+    /**
+     * Instantiates a new test event shard routed to an endpoint.
+     *
+     * @param newIndex       the index of the shard, starting with 0
+     * @param newCount       the total number of shards
+     * @param newTestEvents  the test events of the shard
+     * @param newResultsFile the results file of the shard
+     * @param newEndpoint    the endpoint, null for the configured one
+     */
+    public TestEventShard(final int newIndex, final int newCount,
+            final List<String> newTestEvents, final String newResultsFile,
+            final String newEndpoint) {
+        this.index = newIndex;
+        this.count = newCount;
+        this.testEvents = Collections
+                .unmodifiableList(new ArrayList<String>(newTestEvents));
+        this.resultsFile = newResultsFile;
+        this.endpoint = newEndpoint;
+    }
+    /**
+     * Gets a copy of the shard routed to an endpoint.
+     *
+     * @param newEndpoint the endpoint
+     * @return the routed shard
+     */
+    public TestEventShard withEndpoint(final String newEndpoint) {
+        return new TestEventShard(index, count, testEvents, resultsFile,
+                newEndpoint);
+    }
+    /**
+     * Gets the index.
+     *
+     * @return the index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * Gets the count.
+     *
+     * @return the count
+     */
+    public int getCount() {
+        return count;
+    }
+    /**
+     * Gets the test events.
+     *
+     * @return the test events
+     */
+    public List<String> getTestEvents() {
+        return testEvents;
+    }
+    /**
+     * Gets the results file.
+     *
+     * @return the results file
+     */
+    public String getResultsFile() {
+        return resultsFile;
+    }
+    /**
+     * Gets the endpoint the shard is routed to.
+     *
+     * @return the endpoint, null for the configured one
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+    /**
+     * Gets the name of the generated configuration file of the shard.
+     *
+     * @param fileName the name of the configuration file of the execution
+     * @return the config file name
+     */
+    public String getConfigFileName(final String fileName) {
+        return shardFileName(fileName, index);
+    }
+    /**
+     * Derives the name of a per-shard file from the given file name, e.g.
+     * {@code results.xml} becomes {@code results-shard1.xml} for the first
+     * shard.
+     *
+     * @param fileName the file name
+     * @param index    the index of the shard, starting with 0
+     * @return the file name for the shard
+     */
+    public static String shardFileName(final String fileName,
+            final int index) {
+        final String suffix = "-shard" + (index + 1);
+        final int dot = fileName.lastIndexOf('.');
+        if (dot <= 0 || dot < StringUtils.lastIndexOfAny(fileName,
+                new String[] {"/", "\\"})) {
+            return fileName + suffix;
+        }
+        return fileName.substring(0, dot) + suffix + fileName.substring(dot);
+    }
+    /**
+     * To string.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return (index + 1) + "/" + count;
+    }
+}
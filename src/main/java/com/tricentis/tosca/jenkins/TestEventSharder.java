@@ -0,0 +1,151 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the test events of a build into {@link TestEventShard}s. If the
+ * durations of the test events are known from previous builds, the longest
+ * test events are assigned first, each to the shard with the least total
+ * duration so far. Otherwise events are distributed by count and consecutive
+ * events stay in the same shard.
+ */
+public class TestEventSharder {
+    /** The Constant EVENT_SEPARATOR. */
+    static final String EVENT_SEPARATOR = ";";
+
+    /**
+     * Split the given test events into shards by count.
+     *
+     * @param testEvents  semicolon separated test events
+     * @param shardCount  the maximum number of shards
+     * @param resultsFile the results file of the build
+     * @return the shards, never more than there are test events
+     */
+    public List<TestEventShard> shard(final String testEvents,
+            final int shardCount, final String resultsFile) {
+        return shard(testEvents, shardCount, resultsFile, null);
+    }
+    /**
+     * Split the given test events into shards, balanced by the durations
+     * recorded in the history.
+     *
+     * @param testEvents  semicolon separated test events
+     * @param shardCount  the maximum number of shards
+     * @param resultsFile the results file of the build
+     * @param history     the duration history, may be null
+     * @return the shards, never more than there are test events
+     */
+    public List<TestEventShard> shard(final String testEvents,
+            final int shardCount, final String resultsFile,
+            final TestEventDurationIndex history) {
+        final List<String> events = parse(testEvents);
+        final int count = Math.max(1, Math.min(shardCount, events.size()));
+        final List<List<String>> groups;
+        if (history != null && history.hasAny(events)) {
+            groups = splitByDuration(events, count, history);
+        } else {
+            groups = splitByCount(events, count);
+        }
+        final List<TestEventShard> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new TestEventShard(i, count, groups.get(i),
+                    TestEventShard.shardFileName(resultsFile, i)));
+        }
+        return shards;
+    }
+    /**
+     * Split by count.
+     *
+     * @param events the events
+     * @param count  the number of shards
+     * @return the groups of events
+     */
+    private List<List<String>> splitByCount(final List<String> events,
+            final int count) {
+        final List<List<String>> groups = new ArrayList<>(count);
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            final int size = (events.size() - from) / (count - i);
+            groups.add(events.subList(from, from + size));
+            from += size;
+        }
+        return groups;
+    }
+    /**
+     * Split by duration, longest processing time first. The events of a
+     * shard keep their configured order.
+     *
+     * @param events  the events
+     * @param count   the number of shards
+     * @param history the history
+     * @return the groups of events
+     */
+    private List<List<String>> splitByDuration(final List<String> events,
+            final int count, final TestEventDurationIndex history) {
+        final Map<String, Long> estimates = history.estimate(events);
+        final List<Integer> order = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer left, final Integer right) {
+                return Long.compare(estimates.get(events.get(right)),
+                        estimates.get(events.get(left)));
+            }
+        });
+        final long[] totals = new long[count];
+        final List<List<Integer>> assigned = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            assigned.add(new ArrayList<Integer>());
+        }
+        for (final Integer index : order) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[lightest]
+                        || totals[i] == totals[lightest] && assigned.get(i)
+                                .size() < assigned.get(lightest).size()) {
+                    lightest = i;
+                }
+            }
+            totals[lightest] += estimates.get(events.get(index));
+            assigned.get(lightest).add(index);
+        }
+        final List<List<String>> groups = new ArrayList<>(count);
+        for (final List<Integer> indices : assigned) {
+            Collections.sort(indices);
+            final List<String> group = new ArrayList<>(indices.size());
+            for (final Integer index : indices) {
+                group.add(events.get(index));
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+    /**
+     * Parses semicolon separated test events, blank entries are dropped.
+     *
+     * @param testEvents the test events
+     * @return the list of test events
+     */
+    static List<String> parse(final String testEvents) {
+        final List<String> events = new ArrayList<>();
+        if (testEvents == null) {
+            return events;
+        }
+        for (final String event : testEvents.split(EVENT_SEPARATOR)) {
+            final String trimmed = event.trim();
+            if (!trimmed.isEmpty()) {
+                events.add(trimmed);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the configuration file of the client while test events are added,
+ * with an {@link XMLStreamWriter}, so memory stays bounded however many test
+ * events there are. Blank test events are skipped and duplicates are
+ * removed on the fly with a {@link TestEventSet}. The layout is the one the
+ * builder has always written.
+ */
+final class TestEventsConfigWriter implements Closeable {
+    /** The declaration, written as before and read as UTF-8 anyway. */
+    private static final String DECLARATION
+            = "<?xml version=\"1.0\" encoding=\"utf-16\" ?>\n\n";
+    /** The Constant TEST_CONFIGURATION. */
+    private static final String TEST_CONFIGURATION = "testConfiguration";
+    /** The Constant TEST_EVENTS. */
+    private static final String TEST_EVENTS = "TestEvents";
+    /** The Constant TEST_EVENT. */
+    private static final String TEST_EVENT = "TestEvent";
+    /** The stream the file is written to. */
+    private final OutputStream out;
+    /** The writer. */
+    private final XMLStreamWriter xml;
+    /** The test events written so far. */
+    private final TestEventSet written = new TestEventSet();
+
+    /**
+     * Instantiates a new test events config writer and writes the start of
+     * the file.
+     *
+     * @param newOut the stream the file is written to, closed by
+     *               {@link #close()}
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    TestEventsConfigWriter(final OutputStream newOut) throws IOException {
+        this.out = newOut;
+        out.write(DECLARATION.getBytes(StandardCharsets.UTF_8));
+        try {
+            xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out,
+                    StandardCharsets.UTF_8.name());
+            xml.writeStartElement(TEST_CONFIGURATION);
+            xml.writeCharacters("\n\n   ");
+            xml.writeStartElement(TEST_EVENTS);
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+    /**
+     * Adds a test event.
+     *
+     * @param testEvent the test event
+     * @return true, if it was written, false if it is blank or a duplicate
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    boolean add(final String testEvent) throws IOException {
+        final String trimmed = testEvent.trim();
+        if (trimmed.isEmpty() || !written.add(trimmed)) {
+            return false;
+        }
+        try {
+            xml.writeCharacters("\n        ");
+            xml.writeStartElement(TEST_EVENT);
+            xml.writeCharacters(trimmed);
+            xml.writeEndElement();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return true;
+    }
+    /**
+     * Adds test events separated by
+     * {@link TestEventSharder#EVENT_SEPARATOR}, without splitting them into
+     * an array first.
+     *
+     * @param testEvents the test events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void addAll(final String testEvents) throws IOException {
+        int start = 0;
+        while (start <= testEvents.length()) {
+            int end = testEvents.indexOf(TestEventSharder.EVENT_SEPARATOR,
+                    start);
+            if (end < 0) {
+                end = testEvents.length();
+            }
+            add(testEvents.substring(start, end));
+            start = end + TestEventSharder.EVENT_SEPARATOR.length();
+        }
+    }
+    /**
+     * Gets the number of test events written.
+     *
+     * @return the count
+     */
+    int getCount() {
+        return written.size();
+    }
+    /**
+     * Writes the end of the file and closes the stream.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.writeCharacters("\n    ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n\n");
+            xml.writeEndElement();
+            xml.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            out.close();
+        }
+    }
+}
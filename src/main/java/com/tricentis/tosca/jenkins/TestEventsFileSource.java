@@ -0,0 +1,90 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Writes the configuration file of the client for the test events listed in
+ * workspace files, on the agent. The files matching the patterns are read
+ * line by line in the order of their paths. A line holds test events
+ * separated by semicolons, lines starting with <code>#</code> are comments.
+ * The test events are streamed into a {@link TestEventsConfigWriter}, so
+ * only their fingerprints are kept in memory.
+ */
+public class TestEventsFileSource extends MasterToSlaveFileCallable<Integer> {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The Constant COMMENT. */
+    private static final String COMMENT = "#";
+    /** The Constant BYTE_ORDER_MARK. */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    /** The comma separated patterns of the files, relative to the workspace. */
+    private final String includes;
+    /** The configuration file, relative to the workspace. */
+    private final String configFile;
+
+    /**
+     * Instantiates a new test events file source.
+     *
+     * @param newIncludes   the comma separated patterns of the files
+     * @param newConfigFile the configuration file, relative to the workspace
+     */
+    public TestEventsFileSource(final String newIncludes,
+            final String newConfigFile) {
+        this.includes = newIncludes;
+        this.configFile = newConfigFile;
+    }
+    /**
+     * Invoke.
+     *
+     * @param workspace the workspace
+     * @param channel   the channel
+     * @return the number of distinct test events, 0 if no file matches the
+     *         patterns, in which case no configuration file is written
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public Integer invoke(final File workspace, final VirtualChannel channel)
+            throws IOException {
+        final String[] files = Util.createFileSet(workspace, includes)
+                .getDirectoryScanner().getIncludedFiles();
+        if (files.length == 0) {
+            return 0;
+        }
+        Arrays.sort(files);
+        try (TestEventsConfigWriter writer = new TestEventsConfigWriter(
+                new BufferedOutputStream(new FileOutputStream(
+                        new File(workspace, configFile))))) {
+            for (final String file : files) {
+                try (BufferedReader reader = Files.newBufferedReader(
+                        new File(workspace, file).toPath(),
+                        StandardCharsets.UTF_8)) {
+                    String line = reader.readLine();
+                    if (line != null && !line.isEmpty()
+                            && line.charAt(0) == BYTE_ORDER_MARK) {
+                        line = line.substring(1);
+                    }
+                    while (line != null) {
+                        if (!line.trim().startsWith(COMMENT)) {
+                            writer.addAll(line);
+                        }
+                        line = reader.readLine();
+                    }
+                }
+            }
+            return writer.getCount();
+        }
+    }
+}
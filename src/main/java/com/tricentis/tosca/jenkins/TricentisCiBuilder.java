@@ -4,9 +4,18 @@ package com.tricentis.tosca.jenkins;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletException;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -25,6 +34,7 @@ import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import jenkins.tasks.SimpleBuildStep;
 
 /**
@@ -49,8 +59,52 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
     private String endpoint;
     /** The test events. */
     private String testEvents;
+    /** The patterns of the workspace files listing test events. */
+    private String testEventsFile;
+    /** The maximum number of concurrently running client processes. */
+    private int shardCount;
+    /** Whether results are published while the client is running. */
+    private boolean streamResults;
+    /** Whether the results files of several processes are merged. */
+    private boolean mergeResults;
+    /** Whether only the test events failed in the previous build rerun. */
+    private boolean rerunFailed;
+    /** Whether results of unchanged test events are taken from a cache. */
+    private boolean resultCache;
+    /** The version of the system under test, part of the cache key. */
+    private String sutVersion;
+    /** The number of failed test cases which aborts the client. */
+    private int failFastMaxFailures;
+    /** The percentage of failed test cases which aborts the client. */
+    private int failFastMaxRatio;
+    /** The time in minutes after which the client is aborted. */
+    private int clientTimeout;
+    /** The time in minutes without output after which the client is aborted. */
+    private int noOutputTimeout;
+    /** How results are published. */
+    private ResultsMode resultsMode;
+    /** Whether client jars are executed in a warm daemon JVM. */
+    private boolean clientDaemon;
+    /** The idle timeout of the client daemon in minutes. */
+    private int daemonIdleTimeout;
+    /** The number of runs after which the client daemon is recycled. */
+    private int daemonMaxRuns;
+    /** The options of the JVM of a client jar. */
+    private String clientJvmOptions;
+    /** Whether a class data sharing archive is used for a client jar. */
+    private boolean classDataSharing;
+    /** Whether test events are executed on the DEX server without client. */
+    private boolean nativeDexClient;
+    /** The priority of the build when waiting for its endpoint. */
+    private int priority;
     /** The Constant EMPTY_STRING. */
     private static final String EMPTY_STRING = "";
+    /** The Constant DEFAULT_DAEMON_IDLE_TIMEOUT. */
+    private static final int DEFAULT_DAEMON_IDLE_TIMEOUT = 30;
+    /** The Constant DEFAULT_DAEMON_MAX_RUNS. */
+    private static final int DEFAULT_DAEMON_MAX_RUNS = 100;
+    /** The initial interval in milliseconds for polling DEX executions. */
+    private static final long DEX_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(5);
     /** The Constant DEFAULT_ENDPOINT. */
     private static final String DEFAULT_ENDPOINT
             = "http://servername/DistributionServerService/ManagerService.svc";
@@ -84,17 +138,696 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
         final PrintStream logger = listener.getLogger();
         logParameters(logger);
         assertParameters();
-        final ProcStarter starter = getProcStarterFactory().create(this, run,
-                workspace, launcher, listener);
-        final int exitCode = getProcessExecutor().execute(starter);
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        timings.setEndpoint(getEndpoint());
+        final TestEventDurationIndex history;
+        final RerunPlan plan;
+        final CachedResults cached;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PREPARE)) {
+            history = loadHistory(run);
+            plan = createRerunPlan(run, logger);
+            cached = lookupCache(plan, run, workspace, listener);
+        }
+        if (cached != null && cached.isComplete()) {
+            performCached(plan, cached, run, workspace, launcher, listener);
+            return;
+        }
+        final List<TestEventShard> shards;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PREPARE)) {
+            shards = createShards(plan, cached, history);
+        }
+        final List<String> endpoints;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.ENVIRONMENT)) {
+            endpoints = EndpointPool.parse(
+                    run.getEnvironment(listener).expand(getEndpoint()));
+        }
+        if (shards.size() > 1 || isStreamResults() || endpoints.size() > 1
+                || plan != null || cached != null || isFailFast()
+                || isWatchdog()) {
+            performConcurrently(shards, endpoints, plan, cached, history, run,
+                    workspace, launcher, listener);
+            return;
+        }
+        final ProcStarter starter;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PROCESS_SETUP)) {
+            starter = getProcStarterFactory().create(this, run, workspace,
+                    launcher, listener);
+        }
+        final ClientProgressAction progress = trackProgress(
+                Collections.singletonList(starter), createSingleShard(),
+                history, run);
+        final long start;
+        final int exitCode;
+        try (EndpointConcurrencyGovernor.Permit permit = acquireEndpoints(
+                Collections.singletonList(getFirst(endpoints)), timings,
+                listener);
+                PhaseTimingsAction.Split split
+                        = timings.start(ExecutionPhase.CLIENT_RUN)) {
+            start = System.currentTimeMillis();
+            exitCode = getProcessExecutor().execute(starter);
+        } finally {
+            progress.finish();
+            deleteConfigFiles(Collections.singletonList(starter), workspace,
+                    listener);
+        }
+        final long duration = System.currentTimeMillis() - start;
         logger.println(Messages.publishJUnit());
-        getResultsPublisher().publish(getResultsFile(), run, workspace,
-                launcher, listener);
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PUBLISH)) {
+            getResultsPublisher().publish(getResultsFile(), run, workspace,
+                    launcher, listener);
+        }
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.RECORD)) {
+            recordDurations(run, history, createSingleShard(),
+                    Collections.singletonList(
+                            new ProcessResult(exitCode, duration)),
+                    logger);
+        }
         if (exitCode != 0) {
             throw new AbortException(Messages.exitCodeNotZero(exitCode));
         }
         logger.println(Messages.done());
     }
+    /**
+     * Publishes the cached results without starting a client process, if
+     * the results of all test events were cached.
+     *
+     * @param plan      the rerun plan, null if all test events are executed
+     * @param cached    the cached results
+     * @param run       the run
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private void performCached(final RerunPlan plan,
+            final CachedResults cached, final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        logger.println(Messages.publishJUnit());
+        try {
+            final String published;
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.PUBLISH)) {
+                published = publishResults(plan, cached,
+                        Collections.<String>emptyList(), run, workspace,
+                        launcher, listener);
+            }
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.RECORD)) {
+                recordOutcomes(plan, cached,
+                        Collections.<TestEventShard>emptyList(),
+                        Collections.<ProcessResult>emptyList(), published,
+                        run, workspace, logger);
+            }
+        } finally {
+            cached.delete(workspace, listener);
+        }
+        logger.println(Messages.done());
+    }
+    /**
+     * Runs one client process per shard concurrently, or a single client
+     * process if sharding does not apply, and publishes the results files of
+     * all processes as one report. If results are streamed, the test cases
+     * completed while the processes are running are published on the fly and
+     * only the rest is published at the end. If several endpoints are
+     * configured, each process is routed to the least loaded healthy one by
+     * the {@link EndpointPool}. If only the test events which failed in the
+     * previous build are rerun, their results are merged into the results of
+     * the previous build. Cached results are published with the results of
+     * the processes. If fail-fast is enabled, all processes are aborted once
+     * too many test cases have failed, and only the test cases completed so
+     * far are published. If a timeout is set, a {@link ProcessWatchdog}
+     * aborts all processes once it expires for one of them.
+     *
+     * @param shards    the shards, empty if sharding does not apply
+     * @param endpoints the configured endpoints
+     * @param plan      the rerun plan, null if all test events are executed
+     * @param cached    the cached results, null if the cache does not apply
+     * @param history   the duration history, may be null
+     * @param run       the run
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private void performConcurrently(final List<TestEventShard> shards,
+            final List<String> endpoints, final RerunPlan plan,
+            final CachedResults cached, final TestEventDurationIndex history,
+            final Run<?, ?> run, final FilePath workspace,
+            final Launcher launcher, final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        final boolean sharded = !shards.isEmpty();
+        final boolean routed = endpoints.size() > 1;
+        final List<TestEventShard> executed
+                = sharded ? shards : createSingleShard();
+        final List<ProcStarter> starters = new ArrayList<>(executed.size());
+        final List<String> resultsFiles = new ArrayList<>(executed.size());
+        final List<String> processEndpoints
+                = new ArrayList<>(executed.size());
+        final List<EndpointPool.Lease> leases = new ArrayList<>();
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        try {
+            for (final TestEventShard unrouted : executed) {
+                final TestEventShard shard;
+                if (routed) {
+                    final EndpointPool.Lease lease
+                            = EndpointPool.getInstance().route(endpoints);
+                    leases.add(lease);
+                    final String chosen = lease.getEndpoint();
+                    shard = unrouted.withEndpoint(chosen);
+                    logger.println(lease.isHealthy()
+                            ? Messages.endpointRouted(shard, chosen)
+                            : Messages.endpointRoutedUnhealthy(shard, chosen));
+                    processEndpoints.add(chosen);
+                } else {
+                    shard = unrouted;
+                    processEndpoints.add(getFirst(endpoints));
+                }
+                if (sharded) {
+                    logger.println(Messages.shardLog(shard,
+                            StringUtils.join(shard.getTestEvents(),
+                                    TestEventSharder.EVENT_SEPARATOR)));
+                }
+                try (PhaseTimingsAction.Split split
+                        = timings.start(ExecutionPhase.PROCESS_SETUP)) {
+                    if (sharded || routed) {
+                        starters.add(getProcStarterFactory().create(this,
+                                shard, run, workspace, launcher, listener));
+                    } else {
+                        starters.add(getProcStarterFactory().create(this, run,
+                                workspace, launcher, listener));
+                    }
+                }
+                resultsFiles.add(shard.getResultsFile());
+            }
+            executeConcurrently(sharded, starters, resultsFiles,
+                    processEndpoints, executed, plan, cached, history, run,
+                    workspace, launcher, listener);
+        } finally {
+            for (final EndpointPool.Lease lease : leases) {
+                lease.close();
+            }
+            deleteConfigFiles(starters, workspace, listener);
+            if (cached != null) {
+                cached.delete(workspace, listener);
+            }
+        }
+    }
+    /**
+     * Deletes the configuration files generated for client processes which
+     * have finished.
+     *
+     * @param starters  the starters of the processes
+     * @param workspace the workspace
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     */
+    private static void deleteConfigFiles(final List<ProcStarter> starters,
+            final FilePath workspace, final TaskListener listener)
+            throws InterruptedException {
+        final List<String> files = new ArrayList<>();
+        for (final ProcStarter starter : starters) {
+            files.addAll(ClientConfigFile.getFiles(starter));
+        }
+        ClientConfigFile.delete(workspace, files, listener);
+    }
+    /**
+     * Executes the client processes prepared by performConcurrently and
+     * publishes their results. The delta reports of streamed results and of
+     * fail-fast are deleted from the workspace at the end.
+     *
+     * @param sharded          whether sharding applies
+     * @param starters         the starters of the processes
+     * @param resultsFiles     the results files of the processes
+     * @param processEndpoints the endpoints of the processes
+     * @param executed         the shards of the processes
+     * @param plan             the rerun plan, null if all test events are
+     *                         executed
+     * @param cached           the cached results, null if the cache does not
+     *                         apply
+     * @param history          the duration history, may be null
+     * @param run              the run
+     * @param workspace        the workspace
+     * @param launcher         the launcher
+     * @param listener         the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private void executeConcurrently(final boolean sharded,
+            final List<ProcStarter> starters,
+            final List<String> resultsFiles,
+            final List<String> processEndpoints,
+            final List<TestEventShard> executed, final RerunPlan plan,
+            final CachedResults cached, final TestEventDurationIndex history,
+            final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        final StreamingResultsMonitor monitor;
+        if (isStreamResults() && (plan == null || !plan.isReduced())
+                && (cached == null || !cached.hasHits())) {
+            monitor = new StreamingResultsMonitor(resultsFiles,
+                    getResultsPublisher(), run, workspace, launcher, listener);
+        } else {
+            monitor = null;
+        }
+        final FailFastMonitor failFast = isFailFast()
+                ? new FailFastMonitor(monitor, resultsFiles,
+                        getFailFastMaxFailures(), getFailFastMaxRatio(), run,
+                        workspace, listener)
+                : null;
+        try {
+            final ClientProgressAction progress
+                    = trackProgress(starters, executed, history, run);
+            final ProcessMonitor unwatched
+                    = failFast == null ? monitor : failFast;
+            final ProcessWatchdog watchdog = isWatchdog()
+                    ? new ProcessWatchdog(unwatched, starters,
+                            getClientTimeout(), getNoOutputTimeout(), listener)
+                    : null;
+            final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+            final List<ProcessResult> results;
+            try (EndpointConcurrencyGovernor.Permit permit
+                    = acquireEndpoints(processEndpoints, timings, listener);
+                    PhaseTimingsAction.Split split
+                            = timings.start(ExecutionPhase.CLIENT_RUN)) {
+                results = getProcessExecutor().executeAll(starters,
+                        processEndpoints, permit.getSlots(),
+                        watchdog == null ? unwatched : watchdog);
+            } catch (final AbortException e) {
+                if (failFast != null && failFast.isAborted()) {
+                    try (PhaseTimingsAction.Split split
+                            = timings.start(ExecutionPhase.PUBLISH)) {
+                        publishFailFast(monitor, failFast, run, workspace,
+                                launcher, listener);
+                    }
+                }
+                throw e;
+            } finally {
+                progress.finish();
+            }
+            logger.println(Messages.publishJUnit());
+            final String published;
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.PUBLISH)) {
+                if (monitor == null) {
+                    published = publishResults(plan, cached, resultsFiles, run,
+                            workspace, launcher, listener);
+                } else {
+                    published = StringUtils.join(resultsFiles, ",");
+                    if (monitor.finish() == 0) {
+                        getResultsPublisher().publish(published, run, workspace,
+                                launcher, listener);
+                    }
+                }
+            }
+            try (PhaseTimingsAction.Split split
+                    = timings.start(ExecutionPhase.RECORD)) {
+                recordDurations(run, history, executed, results, logger);
+                if (cached != null) {
+                    cached.store(executed, results, workspace, logger);
+                }
+                recordOutcomes(plan, cached, executed, results, published, run,
+                        workspace, logger);
+            }
+            for (int i = 0; i < results.size(); i++) {
+                final int exitCode = results.get(i).getExitCode();
+                if (exitCode != 0) {
+                    throw new AbortException(sharded
+                            ? Messages.shardExitCodeNotZero(executed.get(i),
+                                    exitCode)
+                            : Messages.exitCodeNotZero(exitCode));
+                }
+            }
+        } finally {
+            if (monitor != null) {
+                monitor.delete();
+            }
+            if (failFast != null) {
+                failFast.delete();
+            }
+        }
+        logger.println(Messages.done());
+    }
+    /**
+     * Tracks the progress of the client processes in a
+     * {@link ClientProgressAction} of the run. The output of each process is
+     * decoded by a {@link ClientOutputDecoder} on its way to the log, so
+     * this has to be done before the processes are started.
+     *
+     * @param starters the starters of the processes
+     * @param shards   the shards of the processes
+     * @param history  the duration history, may be null
+     * @param run      the run
+     * @return the progress
+     */
+    private static ClientProgressAction trackProgress(
+            final List<ProcStarter> starters,
+            final List<TestEventShard> shards,
+            final TestEventDurationIndex history, final Run<?, ?> run) {
+        final ClientProgressAction progress
+                = createProgress(shards, starters.size(), history);
+        run.addAction(progress);
+        for (int i = 0; i < starters.size(); i++) {
+            final OutputStream stdout = starters.get(i).stdout();
+            if (stdout != null) {
+                starters.get(i).stdout(
+                        new ClientOutputDecoder(stdout, progress, i));
+            }
+        }
+        return progress;
+    }
+    /**
+     * Creates the progress of the client processes of the given shards.
+     *
+     * @param shards    the shards of the processes
+     * @param processes the number of processes
+     * @param history   the duration history, may be null
+     * @return the progress
+     */
+    static ClientProgressAction createProgress(
+            final List<TestEventShard> shards, final int processes,
+            final TestEventDurationIndex history) {
+        int total = 0;
+        long expected = TestEventDurationIndex.UNKNOWN;
+        for (final TestEventShard shard : shards) {
+            total += shard.getTestEvents().size();
+            if (history != null) {
+                expected = Math.max(expected,
+                        history.getExpected(shard.getTestEvents()));
+            }
+        }
+        return new ClientProgressAction(total, processes, expected);
+    }
+    /**
+     * Publishes the test cases completed before the client processes were
+     * aborted by fail-fast. The results files are incomplete, so the delta
+     * reports of the streaming monitor or of the fail-fast monitor are
+     * published instead.
+     *
+     * @param monitor   the streaming monitor, null if results are not
+     *                  streamed
+     * @param failFast  the fail-fast monitor
+     * @param run       the run
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    void publishFailFast(final StreamingResultsMonitor monitor,
+            final FailFastMonitor failFast, final Run<?, ?> run,
+            final FilePath workspace, final Launcher launcher,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        if (monitor != null) {
+            monitor.finish();
+        } else if (failFast.getDeltas() != null) {
+            logger.println(Messages.failFastPublish(failFast.getTestCases()));
+            getResultsPublisher().publish(failFast.getDeltas(), run,
+                    workspace, launcher, listener);
+        }
+    }
+    /**
+     * Publishes the results files of the client processes together with the
+     * cached results, merged as configured.
+     *
+     * @param plan         the rerun plan, null if all test events are
+     *                     executed
+     * @param cached       the cached results, null if the cache does not
+     *                     apply
+     * @param resultsFiles the results files of the processes
+     * @param run          the run
+     * @param workspace    the workspace
+     * @param launcher     the launcher
+     * @param listener     the listener
+     * @return the comma separated results files which were published
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private String publishResults(final RerunPlan plan,
+            final CachedResults cached, final List<String> resultsFiles,
+            final Run<?, ?> run, final FilePath workspace,
+            final Launcher launcher, final TaskListener listener)
+            throws InterruptedException, IOException {
+        final PrintStream logger = listener.getLogger();
+        final List<String> files = new ArrayList<>(resultsFiles);
+        if (cached != null) {
+            files.addAll(cached.getResultsFiles());
+        }
+        final String published = plan == null
+                ? mergeResults(isMergeResults(), files, getResultsFile(),
+                        workspace, logger)
+                : plan.mergeResults(files, getResultsFile(), workspace,
+                        logger);
+        getResultsPublisher().publish(published, run, workspace, launcher,
+                listener);
+        return published;
+    }
+    /**
+     * Records the outcomes of the test events for the next build, if only
+     * failed test events are rerun. Cached test events count as passed.
+     *
+     * @param plan      the rerun plan, nothing is recorded if null
+     * @param cached    the cached results, null if the cache does not apply
+     * @param executed  the shards of the processes
+     * @param results   the results of the processes
+     * @param published the comma separated results files which were
+     *                  published
+     * @param run       the run
+     * @param workspace the workspace
+     * @param logger    the logger
+     * @throws InterruptedException the interrupted exception
+     */
+    private static void recordOutcomes(final RerunPlan plan,
+            final CachedResults cached, final List<TestEventShard> executed,
+            final List<ProcessResult> results, final String published,
+            final Run<?, ?> run, final FilePath workspace,
+            final PrintStream logger) throws InterruptedException {
+        if (plan == null) {
+            return;
+        }
+        final List<TestEventShard> shards = new ArrayList<>(executed);
+        final List<ProcessResult> outcomes = new ArrayList<>(results);
+        if (cached != null) {
+            for (final TestEventShard shard : cached.getShards()) {
+                shards.add(shard);
+                outcomes.add(new ProcessResult(0, 0));
+            }
+        }
+        plan.record(run, workspace, shards, outcomes, published, logger);
+    }
+    /**
+     * Merges the results files of several client processes into the results
+     * file of the build with a {@link ResultsMerger} on the agent, if merging
+     * is enabled.
+     *
+     * @param merge        whether merging is enabled
+     * @param resultsFiles the results files
+     * @param resultsFile  the results file of the build
+     * @param workspace    the workspace
+     * @param logger       the logger
+     * @return the comma separated results files to publish
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    static String mergeResults(final boolean merge,
+            final List<String> resultsFiles, final String resultsFile,
+            final FilePath workspace, final PrintStream logger)
+            throws InterruptedException, IOException {
+        if (!merge || resultsFiles.size() < 2) {
+            return StringUtils.join(resultsFiles, ",");
+        }
+        final long start = System.currentTimeMillis();
+        final Integer testCases = workspace
+                .act(new ResultsMerger(resultsFiles, resultsFile));
+        if (testCases == null) {
+            return StringUtils.join(resultsFiles, ",");
+        }
+        logger.println(Messages.mergeResultsLog(resultsFiles.size(),
+                testCases, resultsFile,
+                (System.currentTimeMillis() - start) / 1000.0));
+        return resultsFile;
+    }
+    /**
+     * Gets the file of the test event duration history of the job.
+     *
+     * @param run the run
+     * @return the history file, or null if the run has no job
+     */
+    private static File getHistoryFile(final Run<?, ?> run) {
+        final Job<?, ?> job = run.getParent();
+        if (job == null) {
+            return null;
+        }
+        return TestEventDurationIndex.getFile(job.getRootDir());
+    }
+    /**
+     * Loads the test event duration history of the job.
+     *
+     * @param run the run
+     * @return the history, or null if the run has no job
+     */
+    static TestEventDurationIndex loadHistory(final Run<?, ?> run) {
+        final File historyFile = getHistoryFile(run);
+        if (historyFile == null) {
+            return null;
+        }
+        return TestEventDurationIndex.load(historyFile);
+    }
+    /**
+     * Records the durations of the test events of the given shards in the
+     * history. Failures are logged, they do not fail the build.
+     *
+     * @param run     the run
+     * @param history the history, nothing is recorded if null
+     * @param shards  the shards
+     * @param results the results of the client processes of the shards
+     * @param logger  the logger
+     */
+    static void recordDurations(final Run<?, ?> run,
+            final TestEventDurationIndex history,
+            final List<TestEventShard> shards,
+            final List<ProcessResult> results, final PrintStream logger) {
+        if (history == null) {
+            return;
+        }
+        final Map<String, Long> durations = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            final List<String> events = shards.get(i).getTestEvents();
+            if (!events.isEmpty()) {
+                durations.putAll(history.apportion(events,
+                        results.get(i).getDuration()));
+            }
+        }
+        if (durations.isEmpty()) {
+            return;
+        }
+        try {
+            TestEventDurationIndex.update(getHistoryFile(run), durations);
+        } catch (final IOException e) {
+            logger.println(Messages.durationHistoryFailed(e.getMessage()));
+        }
+    }
+    /**
+     * Creates the rerun plan of the build, if only the test events which
+     * failed in the previous build are rerun.
+     *
+     * @param run    the run
+     * @param logger the logger
+     * @return the plan, or null if all test events are executed
+     */
+    RerunPlan createRerunPlan(final Run<?, ?> run, final PrintStream logger) {
+        if (!isRerunFailed()) {
+            return null;
+        }
+        return RerunPlan.create(run, TestEventSharder.parse(getTestEvents()),
+                logger);
+    }
+    /**
+     * Looks up the results of the test events to execute in the result
+     * cache, if it is enabled.
+     *
+     * @param plan      the rerun plan, null if all test events are executed
+     * @param run       the run
+     * @param workspace the workspace
+     * @param listener  the listener
+     * @return the cached results, or null if the cache does not apply
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    private CachedResults lookupCache(final RerunPlan plan,
+            final Run<?, ?> run, final FilePath workspace,
+            final TaskListener listener)
+            throws InterruptedException, IOException {
+        if (!isResultCache()) {
+            return null;
+        }
+        return CachedResults.lookup(this,
+                plan != null && plan.isReduced() ? plan.getTestEvents()
+                        : TestEventSharder.parse(getTestEvents()),
+                run, workspace, listener);
+    }
+    /**
+     * Creates the shards of the test events selected by a rerun plan and not
+     * taken from the result cache.
+     *
+     * @param plan    the rerun plan, null if all test events are executed
+     * @param cached  the cached results, null if the cache does not apply
+     * @param history the duration history, may be null
+     * @return the shards, empty if sharding does not apply
+     */
+    List<TestEventShard> createShards(final RerunPlan plan,
+            final CachedResults cached,
+            final TestEventDurationIndex history) {
+        if (cached != null && cached.hasHits()) {
+            return createShards(cached.getMissed(), history);
+        }
+        if (plan != null && plan.isReduced()) {
+            return createShards(plan.getTestEvents(), history);
+        }
+        return createShards(history);
+    }
+    /**
+     * Creates the shards of some of the test events. Each shard is executed
+     * with a generated configuration of its test events, even if there is
+     * only one.
+     *
+     * @param events  the test events
+     * @param history the duration history, may be null
+     * @return the shards
+     */
+    List<TestEventShard> createShards(final List<String> events,
+            final TestEventDurationIndex history) {
+        if (events.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (getShardCount() < 2 || events.size() < 2) {
+            return Collections.singletonList(
+                    new TestEventShard(0, 1, events, getResultsFile()));
+        }
+        return new TestEventSharder().shard(
+                StringUtils.join(events, TestEventSharder.EVENT_SEPARATOR),
+                getShardCount(), getResultsFile(), history);
+    }
+    /**
+     * Creates the shards. Sharding only applies to test events, a
+     * configuration file is always executed by a single client process.
+     *
+     * @param history the duration history, may be null
+     * @return the shards, empty if sharding does not apply
+     */
+    List<TestEventShard> createShards(final TestEventDurationIndex history) {
+        if (getShardCount() < 2 || getTestEvents().trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return new TestEventSharder().shard(getTestEvents(), getShardCount(),
+                getResultsFile(), history);
+    }
+    /**
+     * Gets all test events as a single shard, which is how they are executed
+     * if sharding does not apply.
+     *
+     * @return the single shard in a list
+     */
+    List<TestEventShard> createSingleShard() {
+        return Collections.singletonList(new TestEventShard(0, 1,
+                TestEventSharder.parse(getTestEvents()), getResultsFile()));
+    }
     /**
      * Gets the tricentis client path.
      *
@@ -170,6 +903,395 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
             this.testEvents = newTestEvents;
         }
     }
+    /**
+     * Gets the comma separated patterns of the workspace files listing test
+     * events.
+     *
+     * @return the patterns
+     */
+    public String getTestEventsFile() {
+        if (testEventsFile == null) {
+            return EMPTY_STRING;
+        }
+        return testEventsFile;
+    }
+    /**
+     * Sets the comma separated patterns of the workspace files listing test
+     * events.
+     *
+     * @param newTestEventsFile the new patterns
+     */
+    @DataBoundSetter
+    public void setTestEventsFile(final String newTestEventsFile) {
+        if (newTestEventsFile == null || newTestEventsFile.trim().isEmpty()) {
+            this.testEventsFile = EMPTY_STRING;
+        } else {
+            this.testEventsFile = newTestEventsFile.trim();
+        }
+    }
+    /**
+     * Gets the shard count.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return Math.max(1, shardCount);
+    }
+    /**
+     * Sets the shard count.
+     *
+     * @param newShardCount the new shard count
+     */
+    @DataBoundSetter
+    public void setShardCount(final int newShardCount) {
+        this.shardCount = Math.max(1, newShardCount);
+    }
+    /**
+     * Checks whether results are published while the client is running.
+     *
+     * @return true, if results are streamed
+     */
+    public boolean isStreamResults() {
+        return streamResults;
+    }
+    /**
+     * Sets whether results are published while the client is running.
+     *
+     * @param newStreamResults the new stream results
+     */
+    @DataBoundSetter
+    public void setStreamResults(final boolean newStreamResults) {
+        this.streamResults = newStreamResults;
+    }
+    /**
+     * Checks whether the results files of several client processes are
+     * merged into one before they are published.
+     *
+     * @return true, if results are merged
+     */
+    public boolean isMergeResults() {
+        return mergeResults;
+    }
+    /**
+     * Sets whether the results files of several client processes are merged
+     * into one before they are published.
+     *
+     * @param newMergeResults the new merge results
+     */
+    @DataBoundSetter
+    public void setMergeResults(final boolean newMergeResults) {
+        this.mergeResults = newMergeResults;
+    }
+    /**
+     * Checks whether only the test events which failed in the previous build
+     * are rerun.
+     *
+     * @return true, if only failed test events are rerun
+     */
+    public boolean isRerunFailed() {
+        return rerunFailed;
+    }
+    /**
+     * Sets whether only the test events which failed in the previous build
+     * are rerun.
+     *
+     * @param newRerunFailed the new rerun failed
+     */
+    @DataBoundSetter
+    public void setRerunFailed(final boolean newRerunFailed) {
+        this.rerunFailed = newRerunFailed;
+    }
+    /**
+     * Checks whether the results of test events whose inputs have not
+     * changed are taken from the result cache.
+     *
+     * @return true, if the result cache is used
+     */
+    public boolean isResultCache() {
+        return resultCache;
+    }
+    /**
+     * Sets whether the results of test events whose inputs have not changed
+     * are taken from the result cache.
+     *
+     * @param newResultCache the new result cache
+     */
+    @DataBoundSetter
+    public void setResultCache(final boolean newResultCache) {
+        this.resultCache = newResultCache;
+    }
+    /**
+     * Gets the version of the system under test, which is part of the key of
+     * cached results.
+     *
+     * @return the SUT version
+     */
+    public String getSutVersion() {
+        if (sutVersion == null) {
+            return EMPTY_STRING;
+        }
+        return sutVersion;
+    }
+    /**
+     * Sets the version of the system under test.
+     *
+     * @param newSutVersion the new SUT version
+     */
+    @DataBoundSetter
+    public void setSutVersion(final String newSutVersion) {
+        if (newSutVersion == null || newSutVersion.trim().isEmpty()) {
+            this.sutVersion = EMPTY_STRING;
+        } else {
+            this.sutVersion = newSutVersion.trim();
+        }
+    }
+    /**
+     * Gets the number of failed test cases after which the client is
+     * aborted.
+     *
+     * @return the maximum failures, 0 if the client is never aborted
+     */
+    public int getFailFastMaxFailures() {
+        return failFastMaxFailures;
+    }
+    /**
+     * Sets the number of failed test cases after which the client is
+     * aborted.
+     *
+     * @param newFailFastMaxFailures the new maximum failures, 0 to disable
+     */
+    @DataBoundSetter
+    public void setFailFastMaxFailures(final int newFailFastMaxFailures) {
+        this.failFastMaxFailures = Math.max(0, newFailFastMaxFailures);
+    }
+    /**
+     * Gets the percentage of failed test cases at which the client is
+     * aborted.
+     *
+     * @return the maximum failure ratio in percent, 0 if the client is never
+     *         aborted
+     */
+    public int getFailFastMaxRatio() {
+        return failFastMaxRatio;
+    }
+    /**
+     * Sets the percentage of failed test cases at which the client is
+     * aborted.
+     *
+     * @param newFailFastMaxRatio the new maximum failure ratio in percent, 0
+     *                            to disable
+     */
+    @DataBoundSetter
+    public void setFailFastMaxRatio(final int newFailFastMaxRatio) {
+        this.failFastMaxRatio = Math.min(100, Math.max(0, newFailFastMaxRatio));
+    }
+    /**
+     * Checks whether the client is aborted once too many test cases have
+     * failed.
+     *
+     * @return true, if a fail-fast threshold is set
+     */
+    public boolean isFailFast() {
+        return getFailFastMaxFailures() > 0 || getFailFastMaxRatio() > 0;
+    }
+    /**
+     * Gets the time after which the client is aborted.
+     *
+     * @return the timeout in minutes, 0 if the client is never aborted
+     */
+    public int getClientTimeout() {
+        return clientTimeout;
+    }
+    /**
+     * Sets the time after which the client is aborted.
+     *
+     * @param newClientTimeout the new timeout in minutes, 0 to disable
+     */
+    @DataBoundSetter
+    public void setClientTimeout(final int newClientTimeout) {
+        this.clientTimeout = Math.max(0, newClientTimeout);
+    }
+    /**
+     * Gets the time without output after which the client is aborted.
+     *
+     * @return the timeout in minutes, 0 if the client is never aborted
+     */
+    public int getNoOutputTimeout() {
+        return noOutputTimeout;
+    }
+    /**
+     * Sets the time without output after which the client is aborted.
+     *
+     * @param newNoOutputTimeout the new timeout in minutes, 0 to disable
+     */
+    @DataBoundSetter
+    public void setNoOutputTimeout(final int newNoOutputTimeout) {
+        this.noOutputTimeout = Math.max(0, newNoOutputTimeout);
+    }
+    /**
+     * Checks whether the client is watched by a {@link ProcessWatchdog}.
+     *
+     * @return true, if a timeout is set
+     */
+    public boolean isWatchdog() {
+        return getClientTimeout() > 0 || getNoOutputTimeout() > 0;
+    }
+    /**
+     * Gets how results are published.
+     *
+     * @return the results mode
+     */
+    public ResultsMode getResultsMode() {
+        if (resultsMode == null) {
+            return ResultsMode.JUNIT;
+        }
+        return resultsMode;
+    }
+    /**
+     * Sets how results are published.
+     *
+     * @param newResultsMode the new results mode
+     */
+    @DataBoundSetter
+    public void setResultsMode(final ResultsMode newResultsMode) {
+        this.resultsMode = newResultsMode;
+    }
+    /**
+     * Checks whether client jars are executed in a warm daemon JVM.
+     *
+     * @return true, if the client daemon is used
+     */
+    public boolean isClientDaemon() {
+        return clientDaemon;
+    }
+    /**
+     * Sets whether client jars are executed in a warm daemon JVM.
+     *
+     * @param newClientDaemon the new client daemon
+     */
+    @DataBoundSetter
+    public void setClientDaemon(final boolean newClientDaemon) {
+        this.clientDaemon = newClientDaemon;
+    }
+    /**
+     * Gets the idle timeout of the client daemon in minutes.
+     *
+     * @return the daemon idle timeout
+     */
+    public int getDaemonIdleTimeout() {
+        if (daemonIdleTimeout < 1) {
+            return DEFAULT_DAEMON_IDLE_TIMEOUT;
+        }
+        return daemonIdleTimeout;
+    }
+    /**
+     * Sets the idle timeout of the client daemon in minutes.
+     *
+     * @param newDaemonIdleTimeout the new daemon idle timeout
+     */
+    @DataBoundSetter
+    public void setDaemonIdleTimeout(final int newDaemonIdleTimeout) {
+        this.daemonIdleTimeout = newDaemonIdleTimeout;
+    }
+    /**
+     * Gets the number of runs after which the client daemon is recycled.
+     *
+     * @return the daemon max runs
+     */
+    public int getDaemonMaxRuns() {
+        if (daemonMaxRuns < 1) {
+            return DEFAULT_DAEMON_MAX_RUNS;
+        }
+        return daemonMaxRuns;
+    }
+    /**
+     * Sets the number of runs after which the client daemon is recycled.
+     *
+     * @param newDaemonMaxRuns the new daemon max runs
+     */
+    @DataBoundSetter
+    public void setDaemonMaxRuns(final int newDaemonMaxRuns) {
+        this.daemonMaxRuns = newDaemonMaxRuns;
+    }
+    /**
+     * Gets the options of the JVM of a client jar.
+     *
+     * @return the client JVM options
+     */
+    public String getClientJvmOptions() {
+        if (clientJvmOptions == null) {
+            return EMPTY_STRING;
+        }
+        return clientJvmOptions;
+    }
+    /**
+     * Sets the options of the JVM of a client jar.
+     *
+     * @param newClientJvmOptions the new client JVM options
+     */
+    @DataBoundSetter
+    public void setClientJvmOptions(final String newClientJvmOptions) {
+        if (newClientJvmOptions == null
+                || newClientJvmOptions.trim().isEmpty()) {
+            this.clientJvmOptions = EMPTY_STRING;
+        } else {
+            this.clientJvmOptions = newClientJvmOptions.trim();
+        }
+    }
+    /**
+     * Checks whether a class data sharing archive is used for a client jar.
+     *
+     * @return true, if class data sharing is used
+     */
+    public boolean isClassDataSharing() {
+        return classDataSharing;
+    }
+    /**
+     * Sets whether a class data sharing archive is used for a client jar.
+     *
+     * @param newClassDataSharing the new class data sharing
+     */
+    @DataBoundSetter
+    public void setClassDataSharing(final boolean newClassDataSharing) {
+        this.classDataSharing = newClassDataSharing;
+    }
+    /**
+     * Checks whether the test events of a DEX endpoint are executed from the
+     * agent JVM instead of the client.
+     *
+     * @return true, if the native DEX client is used
+     */
+    public boolean isNativeDexClient() {
+        return nativeDexClient;
+    }
+    /**
+     * Sets whether the test events of a DEX endpoint are executed from the
+     * agent JVM instead of the client.
+     *
+     * @param newNativeDexClient the new native dex client
+     */
+    @DataBoundSetter
+    public void setNativeDexClient(final boolean newNativeDexClient) {
+        this.nativeDexClient = newNativeDexClient;
+    }
+    /**
+     * Gets the priority of the build when waiting for its endpoint. Builds
+     * with higher priorities are served first.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+    /**
+     * Sets the priority of the build when waiting for its endpoint.
+     *
+     * @param newPriority the new priority
+     */
+    @DataBoundSetter
+    public void setPriority(final int newPriority) {
+        this.priority = newPriority;
+    }
     /**
      * Gets the endpoint.
      *
@@ -236,7 +1358,7 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
      */
     JUnitResultsPublisher getResultsPublisher() {
         if (resultsPublisher == null) {
-            resultsPublisher = new DefaultJUnitResultsPublisher();
+            resultsPublisher = getResultsMode().createPublisher();
         }
         return resultsPublisher;
     }
@@ -255,16 +1377,86 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
      */
     ProcessExecutor getProcessExecutor() {
         if (executor == null) {
-            executor = new DefaultProcessExecutor();
+            final DefaultProcessExecutor processes;
+            if (isClientDaemon()) {
+                processes = new DaemonProcessExecutor(
+                        (int) TimeUnit.MINUTES.toMillis(getDaemonIdleTimeout()),
+                        getDaemonMaxRuns());
+            } else {
+                processes = new DefaultProcessExecutor();
+            }
+            if (isNativeDexClient()) {
+                executor = new DexProcessExecutor(processes, DEX_POLL_INTERVAL);
+            } else {
+                executor = processes;
+            }
         }
         return executor;
     }
+    /**
+     * Acquires slots for client processes from the
+     * {@link EndpointConcurrencyGovernor}, waiting while an endpoint is at its
+     * limit. Endpoints are acquired in a fixed order, so builds acquiring
+     * the same endpoints cannot deadlock. If an endpoint has more processes
+     * than its limit, only as many as the granted slots run at a time.
+     *
+     * @param processEndpoints the endpoints of the processes
+     * @param timings          the phase timings of the run
+     * @param listener         the listener
+     * @return the permit
+     * @throws InterruptedException the interrupted exception
+     */
+    private EndpointConcurrencyGovernor.Permit acquireEndpoints(
+            final List<String> processEndpoints,
+            final PhaseTimingsAction timings, final TaskListener listener)
+            throws InterruptedException {
+        final Map<String, Integer> processes = new TreeMap<>();
+        for (final String endpoint : processEndpoints) {
+            final Integer count = processes.get(endpoint);
+            processes.put(endpoint, count == null ? 1 : count + 1);
+        }
+        final List<EndpointConcurrencyGovernor.Permit> permits
+                = new ArrayList<>();
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.ENDPOINT_WAIT)) {
+            for (final Map.Entry<String, Integer> endpoint
+                    : processes.entrySet()) {
+                final EndpointConcurrencyGovernor.Permit permit
+                        = EndpointConcurrencyGovernor.getInstance().acquire(
+                                endpoint.getKey(), endpoint.getValue(),
+                                TricentisCiConfiguration.getEndpointLimit(
+                                        endpoint.getKey()),
+                                getPriority(), listener.getLogger());
+                permits.add(permit);
+                final int slots = permit.getSlots().get(endpoint.getKey());
+                if (slots < endpoint.getValue()) {
+                    listener.getLogger().println(Messages.endpointThrottled(
+                            endpoint.getKey(), endpoint.getValue(), slots));
+                }
+            }
+        } catch (final InterruptedException | RuntimeException e) {
+            for (final EndpointConcurrencyGovernor.Permit permit : permits) {
+                permit.close();
+            }
+            throw e;
+        }
+        return EndpointConcurrencyGovernor.Permit.combine(permits);
+    }
+    /**
+     * Gets the first endpoint.
+     *
+     * @param endpoints the endpoints
+     * @return the first endpoint, or the empty string if there is none
+     */
+    private static String getFirst(final List<String> endpoints) {
+        return endpoints.isEmpty() ? EMPTY_STRING : endpoints.get(0);
+    }
     /**
      * Log parameters.
      *
      * @param logger the logger
      */
-    private void logParameters(final PrintStream logger) {
+    void logParameters(final PrintStream logger) {
         logger.println(Messages.runJobLog(Messages.pluginTitle()));
         logger.println(Messages.tricentisClientPath() + ": "
                 + getTricentisClientPath());
@@ -273,13 +1465,80 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
                 + getConfigurationFilePath());
         logger.println(Messages.resultsFile() + ": " + getResultsFile());
         logger.println(Messages.testEvents() + ": " + getTestEvents());
+        if (!getTestEventsFile().isEmpty()) {
+            logger.println(Messages.testEventsFile() + ": "
+                    + getTestEventsFile());
+        }
+        logger.println(Messages.shardCount() + ": " + getShardCount());
+        logger.println(Messages.streamResults() + ": " + isStreamResults());
+        logger.println(Messages.mergeResults() + ": " + isMergeResults());
+        logger.println(Messages.rerunFailed() + ": " + isRerunFailed());
+        logger.println(Messages.resultCache() + ": " + isResultCache());
+        if (isResultCache()) {
+            logger.println(Messages.sutVersion() + ": " + getSutVersion());
+        }
+        logger.println(Messages.failFastMaxFailures() + ": "
+                + getFailFastMaxFailures());
+        logger.println(
+                Messages.failFastMaxRatio() + ": " + getFailFastMaxRatio());
+        logger.println(Messages.clientTimeout() + ": " + getClientTimeout());
+        logger.println(
+                Messages.noOutputTimeout() + ": " + getNoOutputTimeout());
+        logger.println(Messages.resultsMode() + ": "
+                + getResultsMode().getDisplayName());
+        logger.println(Messages.clientJvmOptions() + ": "
+                + getClientJvmOptions());
+        logger.println(
+                Messages.classDataSharing() + ": " + isClassDataSharing());
+        logger.println(Messages.clientDaemon() + ": " + isClientDaemon());
+        if (isClientDaemon()) {
+            logger.println(Messages.daemonIdleTimeout() + ": "
+                    + getDaemonIdleTimeout());
+            logger.println(
+                    Messages.daemonMaxRuns() + ": " + getDaemonMaxRuns());
+        }
+        logger.println(
+                Messages.nativeDexClient() + ": " + isNativeDexClient());
+        logger.println(Messages.priority() + ": " + getPriority());
     }
     /**
      * Assert parameters.
      */
-    private void assertParameters() {
+    void assertParameters() {
         assertParameter(Messages.tricentisClientPath(), tricentisClientPath);
         assertParameter(Messages.endpoint(), endpoint);
+        if (!getTestEventsFile().isEmpty()) {
+            final String unsupported = getUnsupportedWithTestEventsFile(
+                    getShardCount(), isRerunFailed(), isResultCache());
+            if (unsupported != null) {
+                throw new IllegalArgumentException(
+                        Messages.testEventsFileUnsupported(unsupported));
+            }
+        }
+    }
+    /**
+     * Gets the options which have no effect if the test events are read
+     * from files, because they are executed by a single client process
+     * like a configuration file of the user.
+     *
+     * @param shardCount  the shard count
+     * @param rerunFailed whether only failed test events are rerun
+     * @param resultCache whether the result cache is used
+     * @return the names of the options which are set, or null if none is
+     */
+    static String getUnsupportedWithTestEventsFile(final int shardCount,
+            final boolean rerunFailed, final boolean resultCache) {
+        final List<String> names = new ArrayList<>();
+        if (shardCount > 1) {
+            names.add(Messages.shardCount());
+        }
+        if (rerunFailed) {
+            names.add(Messages.rerunFailed());
+        }
+        if (resultCache) {
+            names.add(Messages.resultCache());
+        }
+        return names.isEmpty() ? null : StringUtils.join(names, ", ");
     }
     /**
      * Assert parameter.
@@ -374,6 +1633,113 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
             }
             return FormValidation.ok();
         }
+        /**
+         * Do check shard count.
+         *
+         * @param project    the project
+         * @param shardCount the shard count
+         * @return the form validation
+         */
+        public FormValidation doCheckShardCount(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String shardCount) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation.validatePositiveInteger(shardCount);
+        }
+        /**
+         * Do check fail fast max failures.
+         *
+         * @param project             the project
+         * @param failFastMaxFailures the fail fast max failures
+         * @return the form validation
+         */
+        public FormValidation doCheckFailFastMaxFailures(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String failFastMaxFailures) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation
+                    .validateNonNegativeInteger(failFastMaxFailures);
+        }
+        /**
+         * Do check fail fast max ratio.
+         *
+         * @param project          the project
+         * @param failFastMaxRatio the fail fast max ratio
+         * @return the form validation
+         */
+        public FormValidation doCheckFailFastMaxRatio(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String failFastMaxRatio) {
+            project.checkPermission(Job.CONFIGURE);
+            final FormValidation validation = FormValidation
+                    .validateNonNegativeInteger(failFastMaxRatio);
+            if (validation.kind == FormValidation.Kind.OK
+                    && Integer.parseInt(failFastMaxRatio.trim()) > 100) {
+                return FormValidation.error(
+                        Messages.failFastMaxRatioInvalid());
+            }
+            return validation;
+        }
+        /**
+         * Do check client timeout.
+         *
+         * @param project       the project
+         * @param clientTimeout the client timeout
+         * @return the form validation
+         */
+        public FormValidation doCheckClientTimeout(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String clientTimeout) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation.validateNonNegativeInteger(clientTimeout);
+        }
+        /**
+         * Do check no output timeout.
+         *
+         * @param project         the project
+         * @param noOutputTimeout the no output timeout
+         * @return the form validation
+         */
+        public FormValidation doCheckNoOutputTimeout(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String noOutputTimeout) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation.validateNonNegativeInteger(noOutputTimeout);
+        }
+        /**
+         * Do check daemon idle timeout.
+         *
+         * @param project           the project
+         * @param daemonIdleTimeout the daemon idle timeout
+         * @return the form validation
+         */
+        public FormValidation doCheckDaemonIdleTimeout(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String daemonIdleTimeout) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation.validatePositiveInteger(daemonIdleTimeout);
+        }
+        /**
+         * Do check daemon max runs.
+         *
+         * @param project       the project
+         * @param daemonMaxRuns the daemon max runs
+         * @return the form validation
+         */
+        public FormValidation doCheckDaemonMaxRuns(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String daemonMaxRuns) {
+            project.checkPermission(Job.CONFIGURE);
+            return FormValidation.validatePositiveInteger(daemonMaxRuns);
+        }
+        /**
+         * Do fill results mode items.
+         *
+         * @return the list box model
+         */
+        public ListBoxModel doFillResultsModeItems() {
+            return fillResultsModeItems();
+        }
         /**
          * Do check test events.
          *
@@ -381,6 +1747,7 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
          * @param testEvents            the test events
          * @param endpoint              the endpoint
          * @param configurationFilePath the configuration file path
+         * @param testEventsFile        the test events files
          * @return the form validation
          * @throws IOException      Signals that an I/O exception has occurred.
          * @throws ServletException the servlet exception
@@ -389,11 +1756,12 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
                 @AncestorInPath final AbstractProject<?, ?> project,
                 @QueryParameter final String testEvents,
                 @QueryParameter final String endpoint,
-                @QueryParameter final String configurationFilePath)
+                @QueryParameter final String configurationFilePath,
+                @QueryParameter final String testEventsFile)
                 throws IOException, ServletException {
             project.checkPermission(Job.CONFIGURE);
             String oneFieldString = validateOnlyOneField(testEvents,
-                    configurationFilePath, endpoint);
+                    configurationFilePath, testEventsFile, endpoint);
             if (oneFieldString != null) {
                 return FormValidation.error(oneFieldString);
             }
@@ -409,6 +1777,7 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
          * @param configurationFilePath the configuration file path
          * @param testEvents            the test events
          * @param endpoint              the endpoint
+         * @param testEventsFile        the test events files
          * @return the form validation
          * @throws IOException      Signals that an I/O exception has occurred.
          * @throws ServletException the servlet exception
@@ -417,11 +1786,12 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
                 @AncestorInPath final AbstractProject<?, ?> project,
                 @QueryParameter final String configurationFilePath,
                 @QueryParameter final String testEvents,
-                @QueryParameter final String endpoint)
+                @QueryParameter final String endpoint,
+                @QueryParameter final String testEventsFile)
                 throws IOException, ServletException {
             project.checkPermission(Job.CONFIGURE);
             String oneFieldString = validateOnlyOneField(testEvents,
-                    configurationFilePath, endpoint);
+                    configurationFilePath, testEventsFile, endpoint);
             if (oneFieldString != null) {
                 return FormValidation.error(oneFieldString);
             }
@@ -431,17 +1801,70 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
             }
             return FormValidation.ok();
         }
+        /**
+         * Do check test events file.
+         *
+         * @param project               the project
+         * @param testEventsFile        the test events files
+         * @param testEvents            the test events
+         * @param configurationFilePath the configuration file path
+         * @param endpoint              the endpoint
+         * @param shardCount            the shard count
+         * @param rerunFailed           whether only failed test events are
+         *                              rerun
+         * @param resultCache           whether the result cache is used
+         * @return the form validation
+         * @throws IOException      Signals that an I/O exception has occurred.
+         * @throws ServletException the servlet exception
+         */
+        public FormValidation doCheckTestEventsFile(
+                @AncestorInPath final AbstractProject<?, ?> project,
+                @QueryParameter final String testEventsFile,
+                @QueryParameter final String testEvents,
+                @QueryParameter final String configurationFilePath,
+                @QueryParameter final String endpoint,
+                @QueryParameter final String shardCount,
+                @QueryParameter final boolean rerunFailed,
+                @QueryParameter final boolean resultCache)
+                throws IOException, ServletException {
+            project.checkPermission(Job.CONFIGURE);
+            if (!isStringValid(testEventsFile)) {
+                return FormValidation.ok();
+            }
+            if (isStringValid(testEvents)
+                    || isStringValid(configurationFilePath)) {
+                return FormValidation.error(Messages.testEventsFileExclusive());
+            }
+            if (!isDex(endpoint)) {
+                return FormValidation.error(Messages.dexOnly());
+            }
+            final String unsupported = getUnsupportedWithTestEventsFile(
+                    NumberUtils.toInt(StringUtils.trim(shardCount)),
+                    rerunFailed, resultCache);
+            if (unsupported != null) {
+                return FormValidation.error(
+                        Messages.testEventsFileUnsupported(unsupported));
+            }
+            return FormValidation.ok();
+        }
         /**
          * Validate only one field.
          *
          * @param val1     the val 1
          * @param val2     the val 2
+         * @param val3     the val 3
          * @param endpoint the endpoint
          * @return the string
          */
         private String validateOnlyOneField(final String val1,
-                final String val2, final String endpoint) {
-            if (isDex(endpoint) && (val1.isEmpty() == val2.isEmpty())) {
+                final String val2, final String val3, final String endpoint) {
+            int filled = 0;
+            for (final String value : new String[] {val1, val2, val3}) {
+                if (value != null && !value.isEmpty()) {
+                    filled++;
+                }
+            }
+            if (isDex(endpoint) && filled != 1) {
                 return Messages.onlyOne();
             }
             return null;
@@ -479,6 +1902,18 @@ public class TricentisCiBuilder extends Builder implements SimpleBuildStep {
         private boolean isStringValid(final String value) {
             return value != null && !value.trim().isEmpty();
         }
+        /**
+         * Creates the items of the results mode selection.
+         *
+         * @return the list box model
+         */
+        static ListBoxModel fillResultsModeItems() {
+            final ListBoxModel items = new ListBoxModel();
+            for (final ResultsMode mode : ResultsMode.values()) {
+                items.add(mode.getDisplayName(), mode.name());
+            }
+            return items;
+        }
         /**
          * Checks if is dex.
          *
@@ -0,0 +1,206 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import hudson.Extension;
+import hudson.util.FormValidation;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * The global configuration of the plugin: the maximum number of client
+ * processes running concurrently against an endpoint, see
+ * {@link EndpointConcurrencyGovernor}, and the size of the
+ * {@link ResultCache}.
+ */
+@Extension
+public class TricentisCiConfiguration extends GlobalConfiguration {
+    /** The Constant LIMIT_SEPARATOR. */
+    private static final char LIMIT_SEPARATOR = '=';
+    /** The Constant DEFAULT_RESULT_CACHE_SIZE. */
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 256;
+    /** The Constant MEGABYTE. */
+    private static final long MEGABYTE = 1024 * 1024;
+    /** The limit of endpoints without their own limit, 0 for none. */
+    private int maxConcurrentRuns;
+    /** The limits of individual endpoints, one endpoint=limit per line. */
+    private String endpointLimits;
+    /** The maximum size of the result cache in megabytes. */
+    private int resultCacheSize;
+
+    /**
+     * Instantiates a new tricentis ci configuration.
+     */
+    public TricentisCiConfiguration() {
+        load();
+    }
+    /**
+     * Gets the limit of an endpoint from the configuration of the
+     * controller.
+     *
+     * @param endpoint the endpoint
+     * @return the limit, 0 for none
+     */
+    static int getEndpointLimit(final String endpoint) {
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return 0;
+        }
+        final TricentisCiConfiguration configuration
+                = jenkins.getDescriptorByType(TricentisCiConfiguration.class);
+        return configuration == null ? 0 : configuration.getLimit(endpoint);
+    }
+    /**
+     * Gets the maximum size of the result cache from the configuration of
+     * the controller.
+     *
+     * @return the limit in bytes
+     */
+    static long getResultCacheLimit() {
+        final Jenkins jenkins = Jenkins.getInstance();
+        final TricentisCiConfiguration configuration = jenkins == null ? null
+                : jenkins.getDescriptorByType(TricentisCiConfiguration.class);
+        final int size = configuration == null ? DEFAULT_RESULT_CACHE_SIZE
+                : configuration.getResultCacheSize();
+        return size * MEGABYTE;
+    }
+    /**
+     * Gets the limit of an endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return the limit, 0 for none
+     */
+    int getLimit(final String endpoint) {
+        for (final String line : getEndpointLimits().split("\\r?\\n")) {
+            final int separator = line.lastIndexOf(LIMIT_SEPARATOR);
+            if (separator > 0 && line.substring(0, separator).trim()
+                    .equalsIgnoreCase(endpoint.trim())) {
+                try {
+                    return Math.max(0, Integer
+                            .parseInt(line.substring(separator + 1).trim()));
+                } catch (final NumberFormatException e) {
+                    break;
+                }
+            }
+        }
+        return getMaxConcurrentRuns();
+    }
+    /**
+     * Configure.
+     *
+     * @param req  the req
+     * @param json the json
+     * @return true, if successful
+     * @throws FormException the form exception
+     */
+    @Override
+    public boolean configure(final StaplerRequest req, final JSONObject json)
+            throws FormException {
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+    /**
+     * Gets the limit of endpoints without their own limit.
+     *
+     * @return the max concurrent runs, 0 for none
+     */
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+    /**
+     * Sets the limit of endpoints without their own limit.
+     *
+     * @param newMaxConcurrentRuns the new max concurrent runs, 0 for none
+     */
+    public void setMaxConcurrentRuns(final int newMaxConcurrentRuns) {
+        this.maxConcurrentRuns = Math.max(0, newMaxConcurrentRuns);
+    }
+    /**
+     * Gets the limits of individual endpoints.
+     *
+     * @return the endpoint limits, one endpoint=limit per line
+     */
+    public String getEndpointLimits() {
+        if (endpointLimits == null) {
+            return "";
+        }
+        return endpointLimits;
+    }
+    /**
+     * Sets the limits of individual endpoints.
+     *
+     * @param newEndpointLimits the new endpoint limits
+     */
+    public void setEndpointLimits(final String newEndpointLimits) {
+        this.endpointLimits = newEndpointLimits;
+    }
+    /**
+     * Gets the maximum size of the result cache in megabytes.
+     *
+     * @return the result cache size
+     */
+    public int getResultCacheSize() {
+        if (resultCacheSize < 1) {
+            return DEFAULT_RESULT_CACHE_SIZE;
+        }
+        return resultCacheSize;
+    }
+    /**
+     * Sets the maximum size of the result cache in megabytes.
+     *
+     * @param newResultCacheSize the new result cache size
+     */
+    public void setResultCacheSize(final int newResultCacheSize) {
+        this.resultCacheSize = newResultCacheSize;
+    }
+    /**
+     * Do check max concurrent runs.
+     *
+     * @param maxConcurrentRuns the max concurrent runs
+     * @return the form validation
+     */
+    public FormValidation doCheckMaxConcurrentRuns(
+            @QueryParameter final String maxConcurrentRuns) {
+        return FormValidation.validateNonNegativeInteger(maxConcurrentRuns);
+    }
+    /**
+     * Do check result cache size.
+     *
+     * @param resultCacheSize the result cache size
+     * @return the form validation
+     */
+    public FormValidation doCheckResultCacheSize(
+            @QueryParameter final String resultCacheSize) {
+        return FormValidation.validatePositiveInteger(resultCacheSize);
+    }
+    /**
+     * Do check endpoint limits.
+     *
+     * @param endpointLimits the endpoint limits
+     * @return the form validation
+     */
+    public FormValidation doCheckEndpointLimits(
+            @QueryParameter final String endpointLimits) {
+        if (endpointLimits == null) {
+            return FormValidation.ok();
+        }
+        for (final String line : endpointLimits.split("\\r?\\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            final int separator = line.lastIndexOf(LIMIT_SEPARATOR);
+            if (separator < 1 || FormValidation.validateNonNegativeInteger(
+                    line.substring(separator + 1).trim())
+                    .kind != FormValidation.Kind.OK) {
+                return FormValidation
+                        .error(Messages.endpointLimitInvalid(line));
+            }
+        }
+        return FormValidation.ok();
+    }
+}
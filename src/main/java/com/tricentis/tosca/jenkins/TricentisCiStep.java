@@ -0,0 +1,563 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import com.google.common.collect.ImmutableSet;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+
+/**
+ * Pipeline step <code>tricentisCI</code>, which runs Tricentis CI Client and
+ * publishes results. It takes all parameters of {@link TricentisCiBuilder}
+ * and can fan the test events out to several agents with an
+ * {@link AgentFanOut}. Unlike the builder used as a build step, it does not
+ * block a thread while the client is running: the client is launched as a
+ * durable task which is watched asynchronously and survives a restart of
+ * Jenkins. Options which need a thread watching the client, like streaming,
+ * fail-fast or the watchdog, are executed by the builder on a thread of the
+ * step instead, see
+ * {@link TricentisCiStepExecution#getBlockingOptions(TricentisCiBuilder,
+ * java.util.List)}. The step takes precedence over the symbol of the
+ * builder in pipelines.
+ */
+public class TricentisCiStep extends Step {
+    /** The builder holding the parameters. */
+    private final TricentisCiBuilder builder;
+    /** The label of the agents to fan out to, empty for none. */
+    private String agentLabel;
+    /** The maximum number of agents to fan out to, 0 for all. */
+    private int agentCount;
+
+    /**
+     * Constructor.
+     *
+     * @param newTricentisClientPath client executable or jar file path.
+     * @param newEndpoint            endpoint.
+     */
+    @DataBoundConstructor
+    public TricentisCiStep(final String newTricentisClientPath,
+            final String newEndpoint) {
+        this.builder = new TricentisCiBuilder(newTricentisClientPath,
+                newEndpoint);
+    }
+    /**
+     * Start.
+     *
+     * @param context the context
+     * @return the step execution
+     * @throws Exception the exception
+     */
+    @Override
+    public StepExecution start(final StepContext context) throws Exception {
+        return new TricentisCiStepExecution(builder, getAgentLabel(),
+                getAgentCount(), context);
+    }
+    /**
+     * Gets the builder.
+     *
+     * @return the builder
+     */
+    TricentisCiBuilder getBuilder() {
+        return builder;
+    }
+    /**
+     * Gets the tricentis client path.
+     *
+     * @return the tricentis client path
+     */
+    public String getTricentisClientPath() {
+        return builder.getTricentisClientPath();
+    }
+    /**
+     * Sets the tricentis client path.
+     *
+     * @param newTricentisClientPath the new tricentis client path
+     */
+    @DataBoundSetter
+    public void setTricentisClientPath(final String newTricentisClientPath) {
+        builder.setTricentisClientPath(newTricentisClientPath);
+    }
+    /**
+     * Gets the endpoint.
+     *
+     * @return the endpoint
+     */
+    public String getEndpoint() {
+        return builder.getEndpoint();
+    }
+    /**
+     * Sets the endpoint.
+     *
+     * @param newEndpoint the new endpoint
+     */
+    @DataBoundSetter
+    public void setEndpoint(final String newEndpoint) {
+        builder.setEndpoint(newEndpoint);
+    }
+    /**
+     * Gets the configuration file path.
+     *
+     * @return the configuration file path
+     */
+    public String getConfigurationFilePath() {
+        return builder.getConfigurationFilePath();
+    }
+    /**
+     * Sets the configuration file path.
+     *
+     * @param newConfigurationFilePath the new configuration file path
+     */
+    @DataBoundSetter
+    public void
+            setConfigurationFilePath(final String newConfigurationFilePath) {
+        builder.setConfigurationFilePath(newConfigurationFilePath);
+    }
+    /**
+     * Gets the test events.
+     *
+     * @return the test events
+     */
+    public String getTestEvents() {
+        return builder.getTestEvents();
+    }
+    /**
+     * Sets the test events.
+     *
+     * @param newTestEvents the new test events
+     */
+    @DataBoundSetter
+    public void setTestEvents(final String newTestEvents) {
+        builder.setTestEvents(newTestEvents);
+    }
+    /**
+     * Gets the comma separated patterns of the workspace files listing test
+     * events.
+     *
+     * @return the patterns
+     */
+    public String getTestEventsFile() {
+        return builder.getTestEventsFile();
+    }
+    /**
+     * Sets the comma separated patterns of the workspace files listing test
+     * events.
+     *
+     * @param newTestEventsFile the new patterns
+     */
+    @DataBoundSetter
+    public void setTestEventsFile(final String newTestEventsFile) {
+        builder.setTestEventsFile(newTestEventsFile);
+    }
+    /**
+     * Gets the shard count.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return builder.getShardCount();
+    }
+    /**
+     * Sets the shard count.
+     *
+     * @param newShardCount the new shard count
+     */
+    @DataBoundSetter
+    public void setShardCount(final int newShardCount) {
+        builder.setShardCount(newShardCount);
+    }
+    /**
+     * Checks whether results are published while the client is running.
+     *
+     * @return true, if results are streamed
+     */
+    public boolean isStreamResults() {
+        return builder.isStreamResults();
+    }
+    /**
+     * Sets whether results are published while the client is running.
+     *
+     * @param newStreamResults the new stream results
+     */
+    @DataBoundSetter
+    public void setStreamResults(final boolean newStreamResults) {
+        builder.setStreamResults(newStreamResults);
+    }
+    /**
+     * Checks whether the results files of several client processes are
+     * merged into one before they are published.
+     *
+     * @return true, if results are merged
+     */
+    public boolean isMergeResults() {
+        return builder.isMergeResults();
+    }
+    /**
+     * Sets whether the results files of several client processes are merged
+     * into one before they are published.
+     *
+     * @param newMergeResults the new merge results
+     */
+    @DataBoundSetter
+    public void setMergeResults(final boolean newMergeResults) {
+        builder.setMergeResults(newMergeResults);
+    }
+    /**
+     * Checks whether only the test events which failed in the previous build
+     * are rerun.
+     *
+     * @return true, if only failed test events are rerun
+     */
+    public boolean isRerunFailed() {
+        return builder.isRerunFailed();
+    }
+    /**
+     * Sets whether only the test events which failed in the previous build
+     * are rerun.
+     *
+     * @param newRerunFailed the new rerun failed
+     */
+    @DataBoundSetter
+    public void setRerunFailed(final boolean newRerunFailed) {
+        builder.setRerunFailed(newRerunFailed);
+    }
+    /**
+     * Checks whether the results of test events whose inputs have not
+     * changed are taken from the result cache.
+     *
+     * @return true, if the result cache is used
+     */
+    public boolean isResultCache() {
+        return builder.isResultCache();
+    }
+    /**
+     * Sets whether the results of test events whose inputs have not changed
+     * are taken from the result cache.
+     *
+     * @param newResultCache the new result cache
+     */
+    @DataBoundSetter
+    public void setResultCache(final boolean newResultCache) {
+        builder.setResultCache(newResultCache);
+    }
+    /**
+     * Gets the version of the system under test, which is part of the key of
+     * cached results.
+     *
+     * @return the SUT version
+     */
+    public String getSutVersion() {
+        return builder.getSutVersion();
+    }
+    /**
+     * Sets the version of the system under test.
+     *
+     * @param newSutVersion the new SUT version
+     */
+    @DataBoundSetter
+    public void setSutVersion(final String newSutVersion) {
+        builder.setSutVersion(newSutVersion);
+    }
+    /**
+     * Gets the number of failed test cases after which the client is
+     * aborted.
+     *
+     * @return the maximum failures, 0 if the client is never aborted
+     */
+    public int getFailFastMaxFailures() {
+        return builder.getFailFastMaxFailures();
+    }
+    /**
+     * Sets the number of failed test cases after which the client is
+     * aborted.
+     *
+     * @param newFailFastMaxFailures the new maximum failures, 0 to disable
+     */
+    @DataBoundSetter
+    public void setFailFastMaxFailures(final int newFailFastMaxFailures) {
+        builder.setFailFastMaxFailures(newFailFastMaxFailures);
+    }
+    /**
+     * Gets the percentage of failed test cases at which the client is
+     * aborted.
+     *
+     * @return the maximum failure ratio in percent, 0 if the client is never
+     *         aborted
+     */
+    public int getFailFastMaxRatio() {
+        return builder.getFailFastMaxRatio();
+    }
+    /**
+     * Sets the percentage of failed test cases at which the client is
+     * aborted.
+     *
+     * @param newFailFastMaxRatio the new maximum failure ratio in percent, 0
+     *                            to disable
+     */
+    @DataBoundSetter
+    public void setFailFastMaxRatio(final int newFailFastMaxRatio) {
+        builder.setFailFastMaxRatio(newFailFastMaxRatio);
+    }
+    /**
+     * Gets the time after which the client is aborted.
+     *
+     * @return the timeout in minutes, 0 if the client is never aborted
+     */
+    public int getClientTimeout() {
+        return builder.getClientTimeout();
+    }
+    /**
+     * Sets the time after which the client is aborted.
+     *
+     * @param newClientTimeout the new timeout in minutes, 0 to disable
+     */
+    @DataBoundSetter
+    public void setClientTimeout(final int newClientTimeout) {
+        builder.setClientTimeout(newClientTimeout);
+    }
+    /**
+     * Gets the time without output after which the client is aborted.
+     *
+     * @return the timeout in minutes, 0 if the client is never aborted
+     */
+    public int getNoOutputTimeout() {
+        return builder.getNoOutputTimeout();
+    }
+    /**
+     * Sets the time without output after which the client is aborted.
+     *
+     * @param newNoOutputTimeout the new timeout in minutes, 0 to disable
+     */
+    @DataBoundSetter
+    public void setNoOutputTimeout(final int newNoOutputTimeout) {
+        builder.setNoOutputTimeout(newNoOutputTimeout);
+    }
+    /**
+     * Gets how results are published.
+     *
+     * @return the results mode
+     */
+    public ResultsMode getResultsMode() {
+        return builder.getResultsMode();
+    }
+    /**
+     * Sets how results are published.
+     *
+     * @param newResultsMode the new results mode
+     */
+    @DataBoundSetter
+    public void setResultsMode(final ResultsMode newResultsMode) {
+        builder.setResultsMode(newResultsMode);
+    }
+    /**
+     * Checks whether client jars are executed in a warm daemon JVM.
+     *
+     * @return true, if the client daemon is used
+     */
+    public boolean isClientDaemon() {
+        return builder.isClientDaemon();
+    }
+    /**
+     * Sets whether client jars are executed in a warm daemon JVM.
+     *
+     * @param newClientDaemon the new client daemon
+     */
+    @DataBoundSetter
+    public void setClientDaemon(final boolean newClientDaemon) {
+        builder.setClientDaemon(newClientDaemon);
+    }
+    /**
+     * Gets the idle timeout of the client daemon in minutes.
+     *
+     * @return the daemon idle timeout
+     */
+    public int getDaemonIdleTimeout() {
+        return builder.getDaemonIdleTimeout();
+    }
+    /**
+     * Sets the idle timeout of the client daemon in minutes.
+     *
+     * @param newDaemonIdleTimeout the new daemon idle timeout
+     */
+    @DataBoundSetter
+    public void setDaemonIdleTimeout(final int newDaemonIdleTimeout) {
+        builder.setDaemonIdleTimeout(newDaemonIdleTimeout);
+    }
+    /**
+     * Gets the number of runs after which the client daemon is recycled.
+     *
+     * @return the daemon max runs
+     */
+    public int getDaemonMaxRuns() {
+        return builder.getDaemonMaxRuns();
+    }
+    /**
+     * Sets the number of runs after which the client daemon is recycled.
+     *
+     * @param newDaemonMaxRuns the new daemon max runs
+     */
+    @DataBoundSetter
+    public void setDaemonMaxRuns(final int newDaemonMaxRuns) {
+        builder.setDaemonMaxRuns(newDaemonMaxRuns);
+    }
+    /**
+     * Gets the options of the JVM of a client jar.
+     *
+     * @return the client JVM options
+     */
+    public String getClientJvmOptions() {
+        return builder.getClientJvmOptions();
+    }
+    /**
+     * Sets the options of the JVM of a client jar.
+     *
+     * @param newClientJvmOptions the new client JVM options
+     */
+    @DataBoundSetter
+    public void setClientJvmOptions(final String newClientJvmOptions) {
+        builder.setClientJvmOptions(newClientJvmOptions);
+    }
+    /**
+     * Checks whether a class data sharing archive is used for a client jar.
+     *
+     * @return true, if class data sharing is used
+     */
+    public boolean isClassDataSharing() {
+        return builder.isClassDataSharing();
+    }
+    /**
+     * Sets whether a class data sharing archive is used for a client jar.
+     *
+     * @param newClassDataSharing the new class data sharing
+     */
+    @DataBoundSetter
+    public void setClassDataSharing(final boolean newClassDataSharing) {
+        builder.setClassDataSharing(newClassDataSharing);
+    }
+    /**
+     * Checks whether the test events of a DEX endpoint are executed from the
+     * agent JVM instead of the client.
+     *
+     * @return true, if the native DEX client is used
+     */
+    public boolean isNativeDexClient() {
+        return builder.isNativeDexClient();
+    }
+    /**
+     * Sets whether the test events of a DEX endpoint are executed from the
+     * agent JVM instead of the client.
+     *
+     * @param newNativeDexClient the new native dex client
+     */
+    @DataBoundSetter
+    public void setNativeDexClient(final boolean newNativeDexClient) {
+        builder.setNativeDexClient(newNativeDexClient);
+    }
+    /**
+     * Gets the priority of the build when waiting for its endpoint. Builds
+     * with higher priorities are served first.
+     *
+     * @return the priority
+     */
+    public int getPriority() {
+        return builder.getPriority();
+    }
+    /**
+     * Sets the priority of the build when waiting for its endpoint.
+     *
+     * @param newPriority the new priority
+     */
+    @DataBoundSetter
+    public void setPriority(final int newPriority) {
+        builder.setPriority(newPriority);
+    }
+    /**
+     * Gets the label of the agents the test events are fanned out to.
+     *
+     * @return the agent label, empty for none
+     */
+    public String getAgentLabel() {
+        return agentLabel == null ? "" : agentLabel.trim();
+    }
+    /**
+     * Sets the label of the agents the test events are fanned out to.
+     *
+     * @param newAgentLabel the new agent label
+     */
+    @DataBoundSetter
+    public void setAgentLabel(final String newAgentLabel) {
+        this.agentLabel = newAgentLabel;
+    }
+    /**
+     * Gets the maximum number of agents the test events are fanned out to.
+     *
+     * @return the agent count, 0 for all
+     */
+    public int getAgentCount() {
+        return agentCount;
+    }
+    /**
+     * Sets the maximum number of agents the test events are fanned out to.
+     *
+     * @param newAgentCount the new agent count
+     */
+    @DataBoundSetter
+    public void setAgentCount(final int newAgentCount) {
+        this.agentCount = Math.max(0, newAgentCount);
+    }
+
+    /**
+     * Descriptor for {@link TricentisCiStep}.
+     */
+    @Extension
+    public static class Descriptor extends StepDescriptor {
+        /**
+         * Gets the function name.
+         *
+         * @return the function name
+         */
+        @Override
+        public String getFunctionName() {
+            return "tricentisCI";
+        }
+        /**
+         * Gets the display name.
+         *
+         * @return the display name
+         */
+        @Override
+        public String getDisplayName() {
+            return Messages.stepTitle();
+        }
+        /**
+         * Gets the required context.
+         *
+         * @return the required context
+         */
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Run.class, FilePath.class, Launcher.class,
+                    TaskListener.class, EnvVars.class);
+        }
+        /**
+         * Do fill results mode items.
+         *
+         * @return the list box model
+         */
+        public ListBoxModel doFillResultsModeItems() {
+            return TricentisCiBuilder.Descriptor.fillResultsModeItems();
+        }
+    }
+}
@@ -0,0 +1,786 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.Controller;
+import org.jenkinsci.plugins.durabletask.DurableTask;
+import org.jenkinsci.plugins.durabletask.WindowsBatchScript;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Launcher.ProcStarter;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import jenkins.security.ImpersonatingExecutorService;
+import jenkins.util.Timer;
+
+/**
+ * Execution of {@link TricentisCiStep}. Client processes are launched as
+ * {@link DurableTask}s, so they keep running while Jenkins restarts. Only
+ * their exit status is polled on a {@link Timer} thread, with an interval
+ * which grows while the processes are running. Launching the processes,
+ * publishing their results and stopping them is remote work of unbounded
+ * length, which runs on a thread pool of its own instead of the CPS VM
+ * thread or the shared timer. No thread is blocked while waiting for the
+ * processes to finish. If an agent label is set, the shards are fanned out
+ * to the agents by an {@link AgentFanOut} instead, which is checked on that
+ * thread pool as well. Options which need a thread watching the processes,
+ * listed by {@link #getBlockingOptions(TricentisCiBuilder, List)}, cannot be
+ * applied to durable tasks. If one of them is set, the builder runs on the
+ * thread pool instead and the step cannot survive a restart.
+ */
+public class TricentisCiStepExecution extends AbstractStepExecutionImpl {
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER
+            = Logger.getLogger(TricentisCiStepExecution.class.getName());
+    /** The initial interval in milliseconds between two checks. */
+    private static final long MIN_RECURRENCE_PERIOD = 250;
+    /** The maximum interval in milliseconds between two checks. */
+    private static final long MAX_RECURRENCE_PERIOD = 15000;
+    /** The factor the interval between two checks grows with. */
+    private static final float RECURRENCE_PERIOD_BACKOFF = 1.2f;
+    /** The first line of a batch file, which makes ! a plain character. */
+    static final String WINDOWS_PROLOGUE
+            = "@setlocal DisableDelayedExpansion\r\n";
+    /** Runs the remote work of the executions. */
+    private static final ExecutorService EXECUTOR
+            = new ImpersonatingExecutorService(
+                    Executors.newCachedThreadPool(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    "Tricentis CI step");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }), ACL.SYSTEM);
+    /** The builder, only available until the processes are launched. */
+    private transient TricentisCiBuilder builder;
+    /** The label of the agents to fan out to, empty for none. */
+    private final String agentLabel;
+    /** The maximum number of agents to fan out to, 0 for all. */
+    private final int agentCount;
+    /** The fan-out to agents, null if the processes run on this agent. */
+    private AgentFanOut fanOut;
+    /** The shards, one per client process. */
+    private final List<TestEventShard> shards = new ArrayList<>();
+    /** The controllers of the client processes. */
+    private final List<Controller> controllers = new ArrayList<>();
+    /** The configuration files generated for the client processes. */
+    private final List<String> configFiles = new ArrayList<>();
+    /** The results publisher. */
+    private JUnitResultsPublisher publisher;
+    /** Whether the results files are merged before they are published. */
+    private boolean mergeResults;
+    /** The results file of the build, the target of merged results. */
+    private String resultsFile;
+    /** The rerun plan, null if all test events are executed. */
+    private RerunPlan plan;
+    /** The exit codes, null while a process is running. */
+    private Integer[] exitCodes;
+    /** The durations of the processes in milliseconds. */
+    private long[] durations;
+    /** The time the processes were launched. */
+    private long started;
+    /** Whether the processes run in shards. */
+    private boolean sharded;
+    /** Whether the builder runs instead of durable tasks. */
+    private boolean blocking;
+    /** Whether the client processes have been launched. */
+    private boolean launched;
+    /** Whether the results are being published. */
+    private boolean completing;
+    /** Whether the execution has completed. */
+    private boolean completed;
+    /** The next scheduled check. */
+    private transient ScheduledFuture<?> task;
+    /** The index of the progress of the processes among those of the run. */
+    private int progressIndex = -1;
+    /** The progress of the processes, looked up again after a restart. */
+    private transient ClientProgressAction progress;
+    /** The decoders of the output of the processes, by process. */
+    private transient ClientOutputDecoder[] decoders;
+    /** The remote work in progress. */
+    private transient Future<?> work;
+    /** The current interval between two checks. */
+    private transient long recurrencePeriod;
+
+    /**
+     * Instantiates a new step execution.
+     *
+     * @param newBuilder    the builder holding the parameters
+     * @param newAgentLabel the label of the agents to fan out to, empty for
+     *                      none
+     * @param newAgentCount the maximum number of agents, 0 for all
+     * @param context       the context
+     */
+    TricentisCiStepExecution(final TricentisCiBuilder newBuilder,
+            final String newAgentLabel, final int newAgentCount,
+            final StepContext context) {
+        super(context);
+        this.builder = newBuilder;
+        this.agentLabel = newAgentLabel;
+        this.agentCount = newAgentCount;
+    }
+    /**
+     * Start. Launches the client processes in the background and returns
+     * without waiting for them.
+     *
+     * @return false, the step completes asynchronously
+     * @throws Exception the exception
+     */
+    @Override
+    public boolean start() throws Exception {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    launch();
+                } catch (final Exception e) {
+                    if (!controllers.isEmpty()) {
+                        stopProcesses();
+                    }
+                    finish(e);
+                }
+            }
+        });
+        return false;
+    }
+    /**
+     * Launches the client processes, or the fan-out to the agents.
+     *
+     * @throws Exception the exception
+     */
+    private void launch() throws Exception {
+        final StepContext context = getContext();
+        final Run<?, ?> run = context.get(Run.class);
+        final FilePath workspace = context.get(FilePath.class);
+        final Launcher launcher = context.get(Launcher.class);
+        final TaskListener listener = context.get(TaskListener.class);
+        final EnvVars envVars = context.get(EnvVars.class);
+        final PrintStream logger = listener.getLogger();
+        final String blockingOptions = getBlockingOptions(builder,
+                EndpointPool.parse(envVars.expand(builder.getEndpoint())));
+        if (blockingOptions != null) {
+            if (!agentLabel.isEmpty()) {
+                throw new IllegalArgumentException(Messages
+                        .stepOptionsUnsupported(Messages.agentLabel(),
+                                blockingOptions));
+            }
+            synchronized (this) {
+                blocking = true;
+            }
+            logger.println(Messages.stepBlocking(blockingOptions));
+            builder.perform(run, workspace, launcher, listener);
+            finish(null);
+            return;
+        }
+        builder.logParameters(logger);
+        builder.assertParameters();
+        if (!agentLabel.isEmpty() && !builder.getTestEventsFile().isEmpty()) {
+            throw new IllegalArgumentException(
+                    Messages.testEventsFileUnsupported(Messages.agentLabel()));
+        }
+        publisher = builder.getResultsPublisher();
+        mergeResults = builder.isMergeResults();
+        resultsFile = builder.getResultsFile();
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        timings.setEndpoint(builder.getEndpoint());
+        final TestEventDurationIndex history;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PREPARE)) {
+            history = TricentisCiBuilder.loadHistory(run);
+            plan = builder.createRerunPlan(run, logger);
+        }
+        if (!agentLabel.isEmpty()) {
+            logger.println(Messages.agentLabel() + ": " + agentLabel);
+            logger.println(Messages.agentCount() + ": " + agentCount);
+            final String testEvents = plan != null && plan.isReduced()
+                    ? StringUtils.join(plan.getTestEvents(),
+                            TestEventSharder.EVENT_SEPARATOR)
+                    : builder.getTestEvents();
+            fanOut = AgentFanOut.create(builder, testEvents, agentLabel,
+                    agentCount, history);
+            sharded = true;
+            shards.addAll(fanOut.getShards());
+            exitCodes = fanOut.getExitCodes();
+            durations = fanOut.getDurations();
+            started = System.currentTimeMillis();
+            for (final TestEventShard shard : shards) {
+                logger.println(Messages.shardLog(shard,
+                        StringUtils.join(shard.getTestEvents(),
+                                TestEventSharder.EVENT_SEPARATOR)));
+            }
+            launched();
+            return;
+        }
+        final List<TestEventShard> planned
+                = builder.createShards(plan, null, history);
+        sharded = !planned.isEmpty();
+        shards.addAll(sharded ? planned : builder.createSingleShard());
+        exitCodes = new Integer[shards.size()];
+        durations = new long[shards.size()];
+        synchronized (run) {
+            progressIndex = run.getActions(ClientProgressAction.class).size();
+            progress = TricentisCiBuilder.createProgress(shards,
+                    shards.size(), history);
+            run.addAction(progress);
+        }
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PROCESS_SETUP)) {
+            started = System.currentTimeMillis();
+            for (final TestEventShard shard : shards) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                final ProcStarter starter;
+                if (sharded) {
+                    logger.println(Messages.shardLog(shard,
+                            StringUtils.join(shard.getTestEvents(),
+                                    TestEventSharder.EVENT_SEPARATOR)));
+                    starter = builder.getProcStarterFactory().create(builder,
+                            shard, run, workspace, launcher, listener);
+                } else {
+                    starter = builder.getProcStarterFactory().create(builder,
+                            run, workspace, launcher, listener);
+                }
+                configFiles.addAll(ClientConfigFile.getFiles(starter));
+                controllers.add(createTask(starter.cmds(), launcher.isUnix())
+                        .launch(envVars, workspace, launcher, listener));
+            }
+        }
+        launched();
+    }
+    /**
+     * Records that the client processes have been launched and starts
+     * watching them. If the step has been stopped in the meantime, the
+     * processes are stopped right away.
+     */
+    private void launched() {
+        final boolean stopped;
+        synchronized (this) {
+            builder = null;
+            launched = true;
+            stopped = completed;
+        }
+        if (stopped) {
+            stopProcesses();
+        } else {
+            schedule(MIN_RECURRENCE_PERIOD);
+        }
+    }
+    /**
+     * Resumes watching the client processes or publishing their results
+     * after a restart of Jenkins. Launching them cannot be resumed, since it
+     * is not known which of them have been launched, and neither can the
+     * builder.
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        final boolean publishing;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            publishing = completing;
+        }
+        if (blocking) {
+            finish(new AbortException(Messages.stepBlockingResumeFailed()));
+        } else if (!launched) {
+            finish(new AbortException(Messages.stepResumeFailed()));
+        } else if (publishing) {
+            completeLater();
+        } else {
+            schedule(MIN_RECURRENCE_PERIOD);
+        }
+    }
+    /**
+     * Completes the step with the given cause and stops all client processes
+     * which are still running in the background.
+     *
+     * @param cause the cause
+     * @throws Exception the exception
+     */
+    @Override
+    public void stop(final Throwable cause) throws Exception {
+        final Future<?> running;
+        final boolean processes;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            if (task != null) {
+                task.cancel(false);
+            }
+            running = work;
+            processes = launched;
+        }
+        if (running != null) {
+            running.cancel(true);
+        }
+        getContext().onFailure(cause);
+        if (processes) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    stopProcesses();
+                }
+            });
+        }
+    }
+    /**
+     * Stops all client processes which are still running and deletes the
+     * generated configuration files. Failures are logged.
+     */
+    private void stopProcesses() {
+        try {
+            final TaskListener listener = getContext().get(TaskListener.class);
+            if (fanOut != null) {
+                fanOut.stop(listener);
+            }
+            final FilePath workspace = getContext().get(FilePath.class);
+            final Launcher launcher = getContext().get(Launcher.class);
+            if (workspace != null) {
+                for (int i = 0; i < controllers.size(); i++) {
+                    if (exitCodes[i] == null) {
+                        controllers.get(i).stop(workspace, launcher);
+                    }
+                }
+                ClientConfigFile.delete(workspace, configFiles, listener);
+            }
+        } catch (final Exception e) {
+            LOGGER.log(Level.WARNING, "Could not stop Tricentis CI client", e);
+        }
+    }
+    /**
+     * Completes the step, unless it has completed already.
+     *
+     * @param failure the failure, null if the step succeeded
+     */
+    private void finish(final Throwable failure) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+        if (failure == null) {
+            getContext().onSuccess(null);
+        } else {
+            getContext().onFailure(failure);
+        }
+    }
+    /**
+     * Submits remote work to the thread pool of the executions.
+     *
+     * @param runnable the work
+     */
+    private synchronized void submit(final Runnable runnable) {
+        work = EXECUTOR.submit(runnable);
+    }
+    /**
+     * Gets the status.
+     *
+     * @return the status
+     */
+    @Override
+    public String getStatus() {
+        if (exitCodes == null) {
+            return null;
+        }
+        int running = 0;
+        for (final Integer exitCode : exitCodes) {
+            if (exitCode == null) {
+                running++;
+            }
+        }
+        return Messages.stepStatus(running, exitCodes.length);
+    }
+    /**
+     * Schedules the next check.
+     *
+     * @param delay the delay in milliseconds
+     */
+    private synchronized void schedule(final long delay) {
+        if (completed) {
+            return;
+        }
+        recurrencePeriod = delay;
+        task = Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    /**
+     * Schedules the next check with a longer interval.
+     */
+    private void scheduleNext() {
+        schedule(Math.min(MAX_RECURRENCE_PERIOD,
+                (long) (recurrencePeriod * RECURRENCE_PERIOD_BACKOFF)));
+    }
+    /**
+     * Copies new output of the processes to the log and checks whether they
+     * have finished. If the agent is not reachable, for example while it
+     * reconnects, the check is retried later. Once the processes have
+     * finished, their results are published on the thread pool of the
+     * executions. A fan-out is checked on that thread pool as well, since it
+     * launches processes and copies results files.
+     */
+    private void check() {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+        }
+        if (fanOut != null) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    checkFanOut();
+                }
+            });
+            return;
+        }
+        try {
+            final FilePath workspace = getContext().get(FilePath.class);
+            final Launcher launcher = getContext().get(Launcher.class);
+            final TaskListener listener = getContext().get(TaskListener.class);
+            if (workspace == null || workspace.toComputer() == null) {
+                schedule(MAX_RECURRENCE_PERIOD);
+                return;
+            }
+            if (!checkControllers(workspace, launcher, listener)) {
+                completeLater();
+                return;
+            }
+        } catch (final IOException | InterruptedException e) {
+            LOGGER.log(Level.FINE, "Could not check Tricentis CI client", e);
+        } catch (final Exception e) {
+            finish(e);
+            return;
+        }
+        scheduleNext();
+    }
+    /**
+     * Checks the fan-out, which copies new output of the processes to the
+     * log, collects finished shards and launches waiting ones.
+     */
+    private void checkFanOut() {
+        try {
+            final FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null || workspace.toComputer() == null) {
+                schedule(MAX_RECURRENCE_PERIOD);
+                return;
+            }
+            if (fanOut.check(getContext().get(Run.class), workspace,
+                    getContext().get(TaskListener.class))) {
+                synchronized (this) {
+                    completing = true;
+                }
+                complete();
+                return;
+            }
+        } catch (final AbortException e) {
+            finish(e);
+            return;
+        } catch (final IOException e) {
+            LOGGER.log(Level.FINE, "Could not check Tricentis CI client", e);
+        } catch (final InterruptedException e) {
+            return;
+        } catch (final Exception e) {
+            stopProcesses();
+            finish(e);
+            return;
+        }
+        scheduleNext();
+    }
+    /**
+     * Publishes the results on the thread pool of the executions.
+     */
+    private void completeLater() {
+        synchronized (this) {
+            completing = true;
+        }
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                complete();
+            }
+        });
+    }
+    /**
+     * Copies new output of the processes on this agent to the log and checks
+     * whether they have finished.
+     *
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @return true, if a process is still running
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private boolean checkControllers(final FilePath workspace,
+            final Launcher launcher, final TaskListener listener)
+            throws IOException, InterruptedException {
+        boolean running = false;
+        for (int i = 0; i < controllers.size(); i++) {
+            if (exitCodes[i] == null) {
+                final Controller controller = controllers.get(i);
+                final OutputStream log = getLog(i, listener.getLogger());
+                controller.writeLog(workspace, log);
+                exitCodes[i] = controller.exitStatus(workspace, launcher);
+                if (exitCodes[i] == null) {
+                    running = true;
+                } else {
+                    durations[i] = System.currentTimeMillis() - started;
+                    controller.writeLog(workspace, log);
+                    log.flush();
+                    controller.cleanup(workspace);
+                }
+            }
+        }
+        return running;
+    }
+    /**
+     * Gets the stream the output of a process is copied to. The output is
+     * decoded on its way to the log to track the progress of the process.
+     * The decoders are not kept across a restart, so a line which was cut
+     * off by the restart is copied without being decoded.
+     *
+     * @param process the index of the process
+     * @param logger  the logger
+     * @return the stream
+     */
+    private OutputStream getLog(final int process, final PrintStream logger) {
+        final ClientProgressAction tracked = getProgress();
+        if (tracked == null) {
+            return logger;
+        }
+        if (decoders == null) {
+            decoders = new ClientOutputDecoder[controllers.size()];
+        }
+        if (decoders[process] == null) {
+            decoders[process]
+                    = new ClientOutputDecoder(logger, tracked, process);
+        }
+        return decoders[process];
+    }
+    /**
+     * Gets the progress of the processes, which is looked up among the
+     * actions of the run again after a restart.
+     *
+     * @return the progress, null if it is not tracked
+     */
+    private ClientProgressAction getProgress() {
+        if (progress == null && progressIndex >= 0) {
+            try {
+                final List<ClientProgressAction> actions = getContext()
+                        .get(Run.class).getActions(ClientProgressAction.class);
+                if (progressIndex < actions.size()) {
+                    progress = actions.get(progressIndex);
+                }
+            } catch (final IOException | InterruptedException e) {
+                LOGGER.log(Level.FINE, "Could not get the run", e);
+            }
+        }
+        return progress;
+    }
+    /**
+     * Publishes the results once all processes have finished and completes
+     * the step. The step fails if publishing fails.
+     */
+    private void complete() {
+        try {
+            final FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null) {
+                throw new AbortException(Messages.stepWorkspaceOffline());
+            }
+            final TaskListener listener = getContext().get(TaskListener.class);
+            if (fanOut != null) {
+                fanOut.cleanup();
+            }
+            ClientConfigFile.delete(workspace, configFiles, listener);
+            finish(publish(workspace, getContext().get(Launcher.class),
+                    listener));
+        } catch (final Exception e) {
+            finish(e);
+        }
+    }
+    /**
+     * Publishes the results once all processes have finished.
+     *
+     * @param workspace the workspace
+     * @param launcher  the launcher
+     * @param listener  the listener
+     * @return the failure of the step, or null if it succeeded
+     * @throws Exception the exception
+     */
+    private Throwable publish(final FilePath workspace,
+            final Launcher launcher, final TaskListener listener)
+            throws Exception {
+        final Run<?, ?> run = getContext().get(Run.class);
+        final PrintStream logger = listener.getLogger();
+        final List<String> resultsFiles = new ArrayList<>(shards.size());
+        final List<ProcessResult> results = new ArrayList<>(shards.size());
+        long elapsed = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            resultsFiles.add(shards.get(i).getResultsFile());
+            results.add(new ProcessResult(exitCodes[i], durations[i]));
+            elapsed = Math.max(elapsed, durations[i]);
+        }
+        final ClientProgressAction tracked = getProgress();
+        if (tracked != null) {
+            tracked.finish();
+        }
+        final PhaseTimingsAction timings = PhaseTimingsAction.attach(run);
+        timings.record(ExecutionPhase.CLIENT_RUN,
+                TimeUnit.MILLISECONDS.toNanos(elapsed));
+        logger.println(Messages.publishJUnit());
+        final String published;
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.PUBLISH)) {
+            published = plan == null
+                    ? TricentisCiBuilder.mergeResults(mergeResults,
+                            resultsFiles, resultsFile, workspace, logger)
+                    : plan.mergeResults(resultsFiles, resultsFile, workspace,
+                            logger);
+            publisher.publish(published, run, workspace, launcher, listener);
+        }
+        try (PhaseTimingsAction.Split split
+                = timings.start(ExecutionPhase.RECORD)) {
+            TricentisCiBuilder.recordDurations(run,
+                    TricentisCiBuilder.loadHistory(run), shards, results,
+                    logger);
+            if (plan != null) {
+                plan.record(run, workspace, shards, results, published,
+                        logger);
+            }
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            if (exitCodes[i] != 0) {
+                return new AbortException(sharded
+                        ? Messages.shardExitCodeNotZero(shards.get(i),
+                                exitCodes[i])
+                        : Messages.exitCodeNotZero(exitCodes[i]));
+            }
+        }
+        logger.println(Messages.done());
+        return null;
+    }
+    /**
+     * Gets the options of the builder which need a thread watching the
+     * client processes: streaming and caching results, fail-fast, the
+     * timeouts, the client daemon, the native DEX client, a pool of
+     * endpoints and endpoints with a concurrency limit.
+     *
+     * @param builder   the builder
+     * @param endpoints the endpoints, expanded and parsed
+     * @return the comma separated names of the options which are set, or
+     *         null if none is set
+     */
+    static String getBlockingOptions(final TricentisCiBuilder builder,
+            final List<String> endpoints) {
+        final List<String> names = new ArrayList<>();
+        if (builder.isStreamResults()) {
+            names.add(Messages.streamResults());
+        }
+        if (builder.isResultCache()) {
+            names.add(Messages.resultCache());
+        }
+        if (builder.getFailFastMaxFailures() > 0) {
+            names.add(Messages.failFastMaxFailures());
+        }
+        if (builder.getFailFastMaxRatio() > 0) {
+            names.add(Messages.failFastMaxRatio());
+        }
+        if (builder.getClientTimeout() > 0) {
+            names.add(Messages.clientTimeout());
+        }
+        if (builder.getNoOutputTimeout() > 0) {
+            names.add(Messages.noOutputTimeout());
+        }
+        if (builder.isClientDaemon()) {
+            names.add(Messages.clientDaemon());
+        }
+        if (builder.isNativeDexClient()) {
+            names.add(Messages.nativeDexClient());
+        }
+        if (endpoints.size() > 1) {
+            names.add(Messages.stepEndpointPool());
+        }
+        for (final String endpoint : endpoints) {
+            if (TricentisCiConfiguration.getEndpointLimit(endpoint) > 0) {
+                names.add(Messages.stepEndpointLimit(endpoint));
+            }
+        }
+        return names.isEmpty() ? null : StringUtils.join(names, ", ");
+    }
+    /**
+     * Creates a durable task running the given command line. On Unix, every
+     * argument is single quoted. On Windows, every argument is double quoted
+     * with embedded quotes doubled, so cmd.exe sees metacharacters like
+     * <code>&amp;</code> or <code>|</code> inside a quoted region, and
+     * percent signs are doubled for the batch file. Delayed expansion is
+     * disabled, so <code>!</code> is taken literally. Line breaks cannot be
+     * passed in a batch file and are rejected.
+     *
+     * @param cmds the command line
+     * @param unix whether the agent is a Unix machine
+     * @return the durable task
+     */
+    static DurableTask createTask(final List<String> cmds,
+            final boolean unix) {
+        final StringBuilder script = new StringBuilder();
+        for (final String cmd : cmds) {
+            if (script.length() > 0) {
+                script.append(' ');
+            }
+            if (unix) {
+                script.append('\'').append(cmd.replace("'", "'\\''"))
+                        .append('\'');
+            } else {
+                if (cmd.indexOf('\n') >= 0 || cmd.indexOf('\r') >= 0) {
+                    throw new IllegalArgumentException(
+                            Messages.stepLineBreakUnsupported(cmd));
+                }
+                script.append('"').append(
+                        cmd.replace("%", "%%").replace("\"", "\"\""))
+                        .append('"');
+            }
+        }
+        if (unix) {
+            return new BourneShellScript(script.toString());
+        }
+        return new WindowsBatchScript(
+                WINDOWS_PROLOGUE + script.toString());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AgentFanOut}.
+ */
+public class AgentFanOutTest {
+    /** The Constant FIRST. */
+    private static final String FIRST = "agent1";
+    /** The Constant SECOND. */
+    private static final String SECOND = "agent2";
+
+    /**
+     * Test that the waiting shards are queued in order and an agent runs one
+     * shard at a time.
+     */
+    @Test
+    public void testAssign() {
+        final AgentFanOut fanOut = createFanOut(3, 0, null);
+        assertEquals(Integer.valueOf(0), fanOut.next());
+        assertEquals(Integer.valueOf(1), fanOut.next());
+        assertEquals(Integer.valueOf(2), fanOut.next());
+        assertNull(fanOut.next());
+        assertTrue(fanOut.assign(0, FIRST, 0));
+        assertFalse(fanOut.assign(1, FIRST, 0));
+        assertTrue(fanOut.assign(1, SECOND, 0));
+        fanOut.finished(0, 0, 100);
+        assertTrue(fanOut.assign(2, FIRST, 100));
+        fanOut.finished(1, 1, 150);
+        assertFalse(fanOut.isDone());
+        fanOut.finished(2, 0, 300);
+        assertTrue(fanOut.isDone());
+        assertArrayEquals(new Integer[] {0, 1, 0}, fanOut.getExitCodes());
+        assertEquals(200, fanOut.getDurations()[2]);
+    }
+    /**
+     * Test that no more shards are queued than agents may be used.
+     */
+    @Test
+    public void testAgentCount() {
+        final AgentFanOut fanOut = createFanOut(3, 2, null);
+        assertEquals(Integer.valueOf(0), fanOut.next());
+        assertEquals(Integer.valueOf(1), fanOut.next());
+        assertNull(fanOut.next());
+        fanOut.assign(0, FIRST, 0);
+        fanOut.finished(0, 0, 10);
+        assertEquals(Integer.valueOf(2), fanOut.next());
+    }
+    /**
+     * Test that a requeued shard is the next one to be queued and is kept
+     * off the agent it was assigned to while another agent is left.
+     */
+    @Test
+    public void testRequeue() {
+        final AgentFanOut fanOut = createFanOut(3, 1, null);
+        fanOut.next();
+        fanOut.assign(0, FIRST, 0);
+        fanOut.requeue(0);
+        assertEquals(Integer.valueOf(0), fanOut.next());
+        final List<String> agents = Arrays.asList(FIRST, SECOND);
+        assertEquals(Messages.fanOutAgentExcluded(
+                fanOut.getShards().get(0), FIRST),
+                fanOut.getBlockage(0, FIRST, agents));
+        assertNull(fanOut.getBlockage(0, SECOND, agents));
+        assertNull(fanOut.getBlockage(0, FIRST, Arrays.asList(FIRST)));
+        fanOut.giveUp(SECOND);
+        assertEquals(Messages.fanOutAgentLost(SECOND),
+                fanOut.getBlockage(0, SECOND, agents));
+        assertNull(fanOut.getBlockage(0, FIRST, agents));
+    }
+    /**
+     * Test that an agent running a shard is blocked for the other shards.
+     */
+    @Test
+    public void testBusy() {
+        final AgentFanOut fanOut = createFanOut(2, 0, null);
+        fanOut.next();
+        fanOut.next();
+        fanOut.assign(0, FIRST, 0);
+        final List<String> agents = Arrays.asList(FIRST, SECOND);
+        assertEquals(Messages.fanOutAgentBusy(FIRST),
+                fanOut.getBlockage(1, FIRST, agents));
+        assertNull(fanOut.getBlockage(0, FIRST, agents));
+        assertNull(fanOut.getBlockage(1, SECOND, agents));
+    }
+    /**
+     * Test that shards running more than twice as long as expected are
+     * stragglers, which are reassigned once.
+     */
+    @Test
+    public void testStraggler() {
+        final TestEventDurationIndex history = new TestEventDurationIndex();
+        history.record("e0", 100);
+        history.record("e1", 100);
+        final AgentFanOut fanOut = createFanOut(2, 0, history);
+        fanOut.next();
+        assertFalse(fanOut.isStraggler(0, 1000));
+        fanOut.assign(0, FIRST, 0);
+        assertFalse(fanOut.isStraggler(0, 200));
+        assertTrue(fanOut.isStraggler(0, 201));
+        assertFalse(fanOut.isStraggler(1, 1000));
+        assertTrue(fanOut.retry(0));
+        assertFalse(fanOut.retry(0));
+    }
+    /**
+     * Test that without history, shards are compared with the median
+     * duration of the finished shards.
+     */
+    @Test
+    public void testStragglerWithoutHistory() {
+        final AgentFanOut fanOut = createFanOut(2, 0, null);
+        fanOut.next();
+        fanOut.next();
+        fanOut.assign(0, FIRST, 0);
+        fanOut.assign(1, SECOND, 0);
+        assertFalse(fanOut.isStraggler(1, 1000));
+        fanOut.finished(0, 0, 100);
+        assertFalse(fanOut.isStraggler(1, 200));
+        assertTrue(fanOut.isStraggler(1, 201));
+    }
+    /**
+     * Creates a fan-out of one test event per shard.
+     *
+     * @param count      the number of shards
+     * @param agentCount the maximum number of agents, 0 for all
+     * @param history    the history, may be null
+     * @return the fan-out
+     */
+    private AgentFanOut createFanOut(final int count, final int agentCount,
+            final TestEventDurationIndex history) {
+        final StringBuilder events = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            events.append("e").append(i).append(';');
+        }
+        final List<TestEventShard> shards = new TestEventSharder()
+                .shard(events.toString(), count, "results.xml");
+        return new AgentFanOut("tosca", agentCount, null, shards, history);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ClassDataSharing} and {@link JavaRelease}.
+ */
+public class ClassDataSharingTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the first run creates the archive and later runs use it.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCreateAndUseArchive() throws Exception {
+        final File javaHome = createJavaHome("\"17.0.2\"");
+        final File jar = createJar("client.jar", "v1");
+        final File archive = ClassDataSharing.getArchive(jar, "17.0.2");
+        assertTrue(archive.getName().startsWith("client-"));
+        assertTrue(archive.getName().endsWith("-17.0.2.jsa"));
+        assertEquals(jar.getParentFile(), archive.getParentFile());
+        assertEquals(Collections.singletonList(ClassDataSharing.CREATE_OPTION
+                + archive.getAbsolutePath()), invoke(javaHome, jar));
+        assertTrue(invoke(javaHome, jar).isEmpty());
+        write(archive, "archive");
+        assertEquals(Collections.singletonList(ClassDataSharing.USE_OPTION
+                + archive.getAbsolutePath()), invoke(javaHome, jar));
+        assertFalse(new File(archive.getPath() + ".lock").exists());
+    }
+    /**
+     * Test that a changed jar gets a new archive.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testArchiveKeyedByJarHash() throws Exception {
+        final File jar = createJar("client.jar", "v1");
+        final File archive = ClassDataSharing.getArchive(jar, "17.0.2");
+        write(jar, "v2");
+        assertFalse(archive.equals(ClassDataSharing.getArchive(jar, "17.0.2")));
+        assertFalse(archive.equals(ClassDataSharing.getArchive(jar, "17.0.3")));
+    }
+    /**
+     * Test that the hash of a cached launch descriptor is only used while
+     * the jar is unchanged, so an upgraded jar gets its own archive.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testStaleDescriptor() throws Exception {
+        final File javaHome = createJavaHome("\"17.0.2\"");
+        final File jar = createJar("client.jar", "v1");
+        final ClientLaunchCache.Descriptor descriptor
+                = new ClientLaunchCache.Probe(javaHome.getPath(), null)
+                        .invoke(jar, null);
+        final File archive = ClassDataSharing.getArchive(jar, "17.0.2");
+        assertEquals(Collections.singletonList(ClassDataSharing.CREATE_OPTION
+                + archive.getAbsolutePath()),
+                new ClassDataSharing(javaHome.getPath(), descriptor)
+                        .invoke(jar, null));
+        write(jar, "v1.1");
+        final File upgraded = ClassDataSharing.getArchive(jar, "17.0.2");
+        assertFalse(archive.equals(upgraded));
+        assertEquals(Collections.singletonList(ClassDataSharing.CREATE_OPTION
+                + upgraded.getAbsolutePath()),
+                new ClassDataSharing(javaHome.getPath(), descriptor)
+                        .invoke(jar, null));
+    }
+    /**
+     * Test that no options are returned for Java versions without dynamic
+     * archives and unknown versions.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testUnsupportedJava() throws Exception {
+        final File jar = createJar("client.jar", "v1");
+        assertTrue(invoke(createJavaHome("\"1.8.0_292\""), jar).isEmpty());
+        assertTrue(invoke(folder.newFolder(), jar).isEmpty());
+    }
+    /**
+     * Test parsing the major version of Java.
+     */
+    @Test
+    public void testGetMajorVersion() {
+        assertEquals(7, JavaRelease.getMajorVersion("\"1.7.0\""));
+        assertEquals(8, JavaRelease.getMajorVersion("\"1.8.0_292\""));
+        assertEquals(17, JavaRelease.getMajorVersion("\"17.0.2\""));
+        assertEquals(21, JavaRelease.getMajorVersion("21"));
+        assertEquals(0, JavaRelease.getMajorVersion(""));
+        assertEquals(0, JavaRelease.getMajorVersion(null));
+    }
+    /**
+     * Invokes {@link ClassDataSharing} on the jar.
+     *
+     * @param javaHome the java home
+     * @param jar      the jar
+     * @return the options
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static List<String> invoke(final File javaHome, final File jar)
+            throws IOException {
+        return new ClassDataSharing(javaHome.getPath()).invoke(jar, null);
+    }
+    /**
+     * Creates a java home with a release file.
+     *
+     * @param version the quoted version
+     * @return the java home
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private File createJavaHome(final String version) throws IOException {
+        final File javaHome = folder.newFolder();
+        write(new File(javaHome, JavaRelease.FILE_NAME),
+                "IMPLEMENTOR=\"Test\"\nJAVA_VERSION=" + version + "\n");
+        return javaHome;
+    }
+    /**
+     * Creates a jar in its own directory.
+     *
+     * @param name    the name
+     * @param content the content
+     * @return the jar
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private File createJar(final String name, final String content)
+            throws IOException {
+        final File jar = new File(folder.newFolder(), name);
+        write(jar, content);
+        return jar;
+    }
+    /**
+     * Writes a file.
+     *
+     * @param file    the file
+     * @param content the content
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void write(final File file, final String content)
+            throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
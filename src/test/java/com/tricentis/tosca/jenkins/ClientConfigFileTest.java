@@ -0,0 +1,100 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import hudson.FilePath;
+import hudson.Launcher.DummyLauncher;
+import hudson.Launcher.ProcStarter;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+
+/**
+ * Tests for {@link ClientConfigFile}.
+ */
+public class ClientConfigFileTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the file is written in the workspace and its absolute path
+     * is returned.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testInvoke() throws Exception {
+        final String path = new ClientConfigFile(
+                "temp-jenkins-tricentis-1-a.xml", "e1;e2;e1")
+                        .invoke(folder.getRoot(), null);
+        final File file = new File(folder.getRoot(),
+                "temp-jenkins-tricentis-1-a.xml");
+        assertEquals(file.getAbsolutePath().replace('\\', '/'), path);
+        final String config = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(config, config.contains("<TestEvent>e1</TestEvent>\n"
+                + "        <TestEvent>e2</TestEvent>\n    </TestEvents>"));
+    }
+    /**
+     * Test that every execution gets its own file name.
+     */
+    @Test
+    public void testCreateFileName() {
+        final Run<?, ?> run = mock(Run.class);
+        when(run.getNumber()).thenReturn(7);
+        final String first = ClientConfigFile.createFileName(run, null);
+        final String second = ClientConfigFile.createFileName(run, null);
+        assertNotEquals(first, second);
+        assertTrue(first, first.startsWith("temp-jenkins-tricentis-7-"));
+        assertTrue(first, first.endsWith(".xml"));
+        final TestEventShard shard = new TestEventSharder()
+                .shard("a;b", 2, "results.xml").get(1);
+        final String sharded = ClientConfigFile.createFileName(run, shard);
+        assertTrue(sharded, sharded.startsWith("temp-jenkins-tricentis-7-"));
+        assertTrue(sharded, sharded.endsWith("-shard2.xml"));
+    }
+    /**
+     * Test that only generated files are deleted.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testDelete() throws Exception {
+        final TaskListener listener
+                = new StreamBuildListener(new ByteArrayOutputStream());
+        final String path = new ClientConfigFile(
+                ClientConfigFile.createFileName(mock(Run.class), null), "e1")
+                        .invoke(folder.getRoot(), null);
+        final File own = folder.newFile("config.xml");
+        final ProcStarter generated = new DummyLauncher(listener).launch()
+                .cmds("client.exe", "-c", path, "-e", "endpoint");
+        final ProcStarter configured = new DummyLauncher(listener).launch()
+                .cmds("client.exe", "-c",
+                        own.getAbsolutePath().replace('\\', '/'));
+        assertEquals(Collections.emptyList(),
+                ClientConfigFile.getFiles(configured));
+        final List<String> files = ClientConfigFile.getFiles(generated);
+        assertEquals(Collections.singletonList(path), files);
+        ClientConfigFile.delete(new FilePath(folder.getRoot()), files,
+                listener);
+        assertFalse(new File(path).exists());
+        assertTrue(own.exists());
+    }
+}
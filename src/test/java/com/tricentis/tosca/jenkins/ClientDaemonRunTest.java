@@ -0,0 +1,158 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ClientDaemonRun} and {@link ClientDaemon}.
+ */
+public class ClientDaemonRunTest {
+    /** The idle timeout of the daemons of the tests. */
+    private static final int IDLE_TIMEOUT = 10000;
+    /** The Constant NO_ENVS. */
+    private static final String[] NO_ENVS = new String[0];
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that runs are executed in the same warm JVM and that exit calls of
+     * the client become exit codes.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRunsInWarmDaemon() throws Exception {
+        final File jar = createClientJar();
+        assertEquals("run 1: a b\n", run(jar, NO_ENVS, 2, "a", "b"));
+        assertEquals("run 2: c\n", run(jar, NO_ENVS, 1, "c"));
+    }
+    /**
+     * Test that a run with another environment replaces the idle daemon.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRecycledForOtherEnvironment() throws Exception {
+        final File jar = createClientJar();
+        final String[] envs = {"ECHO=1"};
+        assertEquals("run 1: a\n", run(jar, NO_ENVS, 1, "a"));
+        assertEquals("run 1: b\n", run(jar, envs, 1, "b"));
+        assertEquals("run 2: c\n", run(jar, envs, 1, "c"));
+    }
+    /**
+     * Test that relative paths of the configuration and results files are
+     * resolved against the workspace.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testResolvesPaths() throws Exception {
+        final File jar = createClientJar();
+        final File results = new File(folder.getRoot(), "results.xml");
+        assertEquals("run 1: -r " + results.getAbsolutePath() + " -e e\n",
+                run(jar, NO_ENVS, 4, "-r", "results.xml", "-e", "e"));
+    }
+    /**
+     * Executes a run of the client jar in its daemon.
+     *
+     * @param jar              the client jar
+     * @param envs             the environment, as name=value pairs
+     * @param expectedExitCode the expected exit code
+     * @param args             the arguments
+     * @return the output of the client
+     * @throws Exception the exception
+     */
+    private String run(final File jar, final String[] envs,
+            final int expectedExitCode, final String... args)
+            throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final String java = new File(System.getProperty("java.home"),
+                "bin" + File.separator + "java").getPath();
+        final Integer exitCode = new ClientDaemonRun(java,
+                Collections.singletonList("-Xmx64m"), jar.getPath(),
+                Arrays.asList(args), envs, IDLE_TIMEOUT, 2, out)
+                        .invoke(folder.getRoot(), null);
+        final String output = new String(out.toByteArray(),
+                StandardCharsets.UTF_8).replace("\r", "");
+        assertEquals(output, Integer.valueOf(expectedExitCode), exitCode);
+        final int start = output.indexOf("run ");
+        assertTrue(output, start >= 0);
+        return output.substring(start);
+    }
+    /**
+     * Creates a client jar with {@link EchoClient} as its main class.
+     *
+     * @return the jar
+     * @throws Exception the exception
+     */
+    private File createClientJar() throws Exception {
+        final File jar = folder.newFile("client.jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS,
+                EchoClient.class.getName());
+        final String name
+                = EchoClient.class.getName().replace('.', '/') + ".class";
+        try (JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(jar), manifest);
+                InputStream in = EchoClient.class
+                        .getResourceAsStream("/" + name)) {
+            out.putNextEntry(new JarEntry(name));
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    /**
+     * A client which prints the number of its runs in the JVM and its
+     * arguments, and exits with the number of arguments.
+     */
+    public static final class EchoClient {
+        /** The number of runs. */
+        private static int runs;
+
+        /**
+         * Instantiates a new echo client.
+         */
+        private EchoClient() {
+        }
+        /**
+         * The main method.
+         *
+         * @param args the arguments
+         */
+        public static void main(final String[] args) {
+            runs++;
+            final StringBuilder line = new StringBuilder("run " + runs + ":");
+            for (final String arg : args) {
+                line.append(' ').append(arg);
+            }
+            System.out.println(line);
+            System.exit(args.length);
+        }
+    }
+}
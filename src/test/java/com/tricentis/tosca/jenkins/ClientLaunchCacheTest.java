@@ -0,0 +1,175 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import hudson.FilePath;
+
+/**
+ * Tests for {@link ClientLaunchCache}.
+ */
+public class ClientLaunchCacheTest {
+    /** The Constant JAVA_HOME. */
+    private static final String JAVA_HOME = "/opt/java";
+    /** The Constant NODE. */
+    private static final String NODE = "agent";
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /** The descriptors passed to the resolver as previous ones. */
+    private final List<ClientLaunchCache.Descriptor> resolved
+            = new ArrayList<>();
+    /** The resolver, which counts its calls. */
+    private final ClientLaunchCache.Resolver resolver
+            = new ClientLaunchCache.Resolver() {
+                @Override
+                public ClientLaunchCache.Descriptor resolve(
+                        final FilePath jar, final String javaHome,
+                        final ClientLaunchCache.Descriptor previous) {
+                    resolved.add(previous);
+                    return new ClientLaunchCache.Descriptor(
+                            javaHome + "/bin/java", "17",
+                            String.valueOf(resolved.size()), null, 0, 0, 0);
+                }
+            };
+    /** The executor, which runs refreshes right away. */
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Test that a descriptor is resolved once per node and jar.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCached() throws Exception {
+        final ClientLaunchCache cache = new ClientLaunchCache(resolver,
+                ClientLaunchCache.REFRESH_INTERVAL, direct);
+        final FilePath jar = new FilePath(folder.newFile("client.jar"));
+        final ClientLaunchCache.Descriptor first
+                = cache.get(NODE, jar, JAVA_HOME);
+        assertEquals(JAVA_HOME + "/bin/java", first.getJava());
+        assertSame(first, cache.get(NODE, jar, JAVA_HOME));
+        assertEquals(1, resolved.size());
+        cache.get("other", jar, JAVA_HOME);
+        cache.get(NODE, jar, "/opt/java17");
+        assertEquals(3, resolved.size());
+        cache.get(null, jar, JAVA_HOME);
+        cache.get(null, jar, JAVA_HOME);
+        assertEquals(5, resolved.size());
+    }
+    /**
+     * Test that a stale descriptor is returned while it is validated in the
+     * background.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRefresh() throws Exception {
+        final ClientLaunchCache cache
+                = new ClientLaunchCache(resolver, 0, direct);
+        final FilePath jar = new FilePath(folder.newFile("client.jar"));
+        final ClientLaunchCache.Descriptor first
+                = cache.get(NODE, jar, JAVA_HOME);
+        assertSame(first, cache.get(NODE, jar, JAVA_HOME));
+        assertEquals(2, resolved.size());
+        assertNull(resolved.get(0));
+        assertSame(first, resolved.get(1));
+        assertEquals("2", cache.get(NODE, jar, JAVA_HOME).getClientDigest());
+    }
+    /**
+     * Test that the descriptors of a node are resolved again after it
+     * reconnected.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        final ClientLaunchCache cache = new ClientLaunchCache(resolver,
+                ClientLaunchCache.REFRESH_INTERVAL, direct);
+        final FilePath jar = new FilePath(folder.newFile("client.jar"));
+        final ClientLaunchCache.Descriptor first
+                = cache.get(NODE, jar, JAVA_HOME);
+        cache.invalidate(NODE);
+        assertNotSame(first, cache.get(NODE, jar, JAVA_HOME));
+        assertEquals(2, resolved.size());
+    }
+    /**
+     * Test that the probe reads the versions and the hash, and keeps a
+     * descriptor while the jar and Java are unchanged.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testProbe() throws Exception {
+        final File javaHome = folder.newFolder("java");
+        write(new File(javaHome, JavaRelease.FILE_NAME),
+                "JAVA_VERSION=\"17.0.2\"\n");
+        final File jar = folder.newFile("client.jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes()
+                .put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes()
+                .put(Attributes.Name.IMPLEMENTATION_VERSION, "16.1.0");
+        try (OutputStream out = new JarOutputStream(
+                new FileOutputStream(jar), manifest)) {
+            out.flush();
+        }
+        final ClientLaunchCache.Descriptor descriptor
+                = new ClientLaunchCache.Probe(javaHome.getPath(), null)
+                        .invoke(jar, null);
+        assertEquals(new File(new File(javaHome, "bin"), "java").getPath(),
+                descriptor.getJava());
+        assertEquals("17.0.2", descriptor.getJavaVersion());
+        assertEquals("16.1.0", descriptor.getClientVersion());
+        assertEquals(32, descriptor.getClientDigest().length());
+        assertSame(descriptor,
+                new ClientLaunchCache.Probe(javaHome.getPath(), descriptor)
+                        .invoke(jar, null));
+        jar.setLastModified(jar.lastModified() - 10000);
+        assertNotSame(descriptor,
+                new ClientLaunchCache.Probe(javaHome.getPath(), descriptor)
+                        .invoke(jar, null));
+        final ClientLaunchCache.Descriptor missing
+                = new ClientLaunchCache.Probe(javaHome.getPath(), null)
+                        .invoke(new File(folder.getRoot(), "missing.jar"),
+                                null);
+        assertNull(missing.getClientDigest());
+        assertNull(missing.getClientVersion());
+    }
+    /**
+     * Writes a file.
+     *
+     * @param file    the file
+     * @param content the content
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void write(final File file, final String content)
+            throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
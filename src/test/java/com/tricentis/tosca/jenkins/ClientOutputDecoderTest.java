@@ -0,0 +1,77 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ClientOutputDecoder}.
+ */
+public class ClientOutputDecoderTest {
+    /** The Constant OUTPUT. */
+    private static final String OUTPUT = "Connecting to endpoint\r\n"
+            + "TestEvent 'Login' started\n"
+            + "  Test case 'valid user' PASSED\n"
+            + "  TestCase invalid user failed\n"
+            + "  test case 'locked user' error: timeout\n"
+            + "State:   Running\n"
+            + "Test event Order STARTED\n"
+            + "  Testcase checkout finished";
+
+    /**
+     * Test that the output is passed on unchanged and the progress lines
+     * are recognized, also when they arrive in pieces.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testDecode() throws Exception {
+        final byte[] bytes = OUTPUT.getBytes(StandardCharsets.UTF_8);
+        for (final int chunk : new int[] {1, 7, bytes.length}) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ClientProgressAction progress
+                    = new ClientProgressAction(3, 1, -1);
+            try (ClientOutputDecoder decoder
+                    = new ClientOutputDecoder(out, progress, 0)) {
+                for (int i = 0; i < bytes.length; i += chunk) {
+                    final int len = Math.min(chunk, bytes.length - i);
+                    if (len == 1) {
+                        decoder.write(bytes[i]);
+                    } else {
+                        decoder.write(bytes, i, len);
+                    }
+                }
+            }
+            assertEquals(OUTPUT, out.toString("UTF-8"));
+            assertEquals(4, progress.getTestCases());
+            assertEquals(2, progress.getFailures());
+            assertEquals(1, progress.getCompleted());
+            assertEquals("Running", progress.getState());
+        }
+    }
+    /**
+     * Test that only the beginning of a very long line is matched.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLongLine() throws Exception {
+        final char[] padding = new char[ClientOutputDecoder.MAX_LINE];
+        Arrays.fill(padding, 'x');
+        final ClientProgressAction progress
+                = new ClientProgressAction(1, 1, -1);
+        try (ClientOutputDecoder decoder = new ClientOutputDecoder(
+                new ByteArrayOutputStream(), progress, 0)) {
+            decoder.write((new String(padding) + " test case passed\n"
+                    + "test case passed\n").getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(1, progress.getTestCases());
+        assertNull(progress.getState());
+    }
+}
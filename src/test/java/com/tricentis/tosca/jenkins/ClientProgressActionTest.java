@@ -0,0 +1,45 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ClientProgressAction}.
+ */
+public class ClientProgressActionTest {
+    /**
+     * Test that the time left is estimated from the history at the start,
+     * from the throughput at the end and from both in between.
+     */
+    @Test
+    public void testEta() {
+        assertEquals(-1, ClientProgressAction.eta(1000, 0, 10, -1));
+        assertEquals(9000, ClientProgressAction.eta(1000, 0, 10, 10000));
+        assertEquals(0, ClientProgressAction.eta(20000, 0, 10, 10000));
+        assertEquals(3000, ClientProgressAction.eta(1000, 1, 4, -1));
+        assertEquals(6000, ClientProgressAction.eta(2000, 2, 4, 12000));
+        assertEquals(-1, ClientProgressAction.eta(2000, 2, 0, -1));
+    }
+    /**
+     * Test that a test event counts as completed once its process started
+     * the next one, and all of them once the processes have finished.
+     */
+    @Test
+    public void testCompleted() {
+        final ClientProgressAction progress
+                = new ClientProgressAction(5, 2, -1);
+        progress.testEventStarted(0);
+        progress.testEventStarted(1);
+        assertEquals(0, progress.getCompleted());
+        progress.testEventStarted(0);
+        progress.testEventStarted(0);
+        progress.testEventStarted(1);
+        assertEquals(3, progress.getCompleted());
+        progress.finish();
+        assertEquals(5, progress.getCompleted());
+        assertEquals(0, progress.getEta());
+    }
+}
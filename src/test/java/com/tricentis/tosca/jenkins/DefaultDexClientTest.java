@@ -0,0 +1,259 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.tricentis.tosca.jenkins.DexClient.State;
+
+/**
+ * Tests for {@link DefaultDexClient} and {@link DexRun} against a stub of the
+ * ManagerService.
+ */
+public class DefaultDexClientTest {
+    /** The Constant REPORT. */
+    private static final String REPORT
+            = "<testsuites><testsuite name=\"s\" tests=\"1\">"
+                    + "<testcase name=\"\u00e4\"/></testsuite></testsuites>";
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /** The stub server. */
+    private HttpServer server;
+    /** The stub service. */
+    private StubService service;
+    /** The endpoint. */
+    private URL endpoint;
+
+    /**
+     * Starts the stub server.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Before
+    public void setUp() throws IOException {
+        service = new StubService();
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", service);
+        server.start();
+        endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/DistributionServerService/ManagerService.svc");
+    }
+    /**
+     * Stops the stub server.
+     */
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    /**
+     * Test enqueue, state and report.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testOperations() throws IOException {
+        final DexClient client = new DefaultDexClient(endpoint);
+        assertEquals("42", client.enqueue(Arrays.asList("e1", "e<2>")));
+        assertTrue(service.requests.get(0).contains(
+                DefaultDexClient.ACTION_PREFIX + DefaultDexClient.ENQUEUE));
+        assertTrue(service.requests.get(0).contains(">e1</a:string>"));
+        assertTrue(service.requests.get(0).contains(">e&lt;2&gt;</a:string>"));
+        assertEquals(State.RUNNING, client.getState("42"));
+        assertEquals(State.COMPLETED, client.getState("42"));
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        client.downloadReport("42", report);
+        assertEquals(REPORT,
+                new String(report.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(service.clientPorts.toString(), 1,
+                service.clientPorts.size());
+    }
+    /**
+     * Test that SOAP faults become exceptions.
+     */
+    @Test
+    public void testFault() {
+        try {
+            new DefaultDexClient(endpoint).getState("unknown");
+            fail("Should have been failed");
+        } catch (final IOException ex) {
+            assertTrue(ex.getMessage(),
+                    ex.getMessage().contains("Unknown execution"));
+        }
+    }
+    /**
+     * Test parsing of states.
+     */
+    @Test
+    public void testParseState() {
+        assertEquals(State.QUEUED, State.parse(" Queued "));
+        assertEquals(State.COMPLETED, State.parse("Completed"));
+        assertEquals(State.ERROR, State.parse("Failed"));
+        assertEquals(State.CANCELLED, State.parse("Canceled"));
+        assertEquals(State.RUNNING, State.parse("Whatever"));
+    }
+    /**
+     * Test a run of a configuration file written by the builder.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRun() throws Exception {
+        final File config = folder.newFile("testConfiguration.xml");
+        Files.write(config.toPath(),
+                ("<?xml version=\"1.0\" encoding=\"utf-16\" ?>\n"
+                        + "<testConfiguration>\n   <TestEvents>\n"
+                        + "        <TestEvent>e1</TestEvent>\n"
+                        + "        <TestEvent>\u00e42</TestEvent>\n"
+                        + "    </TestEvents>\n</testConfiguration>")
+                                .getBytes(StandardCharsets.UTF_8));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Integer exitCode = new DexRun(endpoint.toString(),
+                config.getName(), "results/result.xml", 1, out)
+                        .invoke(folder.getRoot(), null);
+        assertEquals(Integer.valueOf(0), exitCode);
+        assertTrue(service.requests.get(0).contains(">\u00e42</a:string>"));
+        assertEquals(REPORT, new String(
+                Files.readAllBytes(new File(folder.getRoot(),
+                        "results/result.xml").toPath()),
+                StandardCharsets.UTF_8));
+    }
+    /**
+     * Test that configurations with more than test events are left to the
+     * client.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRunWithOtherConfiguration() throws Exception {
+        final File config = folder.newFile("testConfiguration.xml");
+        Files.write(config.toPath(), ("<testConfiguration><TestEvents>"
+                + "<TestEvent>e1</TestEvent></TestEvents>"
+                + "<Timeout>5</Timeout></testConfiguration>")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertNull(DexRun.readTestEvents(config));
+        assertNull(new DexRun(endpoint.toString(), config.getPath(),
+                "result.xml", 1, new ByteArrayOutputStream())
+                        .invoke(folder.getRoot(), null));
+        assertEquals(Collections.emptyList(), service.requests);
+    }
+
+    /**
+     * A stub of the ManagerService which completes every execution at the
+     * second poll.
+     */
+    private static final class StubService implements HttpHandler {
+        /** The bodies of the requests. */
+        private final List<String> requests
+                = Collections.synchronizedList(new ArrayList<String>());
+        /** The ports of the connections of the client. */
+        private final Set<Integer> clientPorts
+                = Collections.synchronizedSet(new HashSet<Integer>());
+        /** The number of state requests. */
+        private int polls;
+
+        /**
+         * Handle.
+         *
+         * @param exchange the exchange
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final String action
+                    = exchange.getRequestHeaders().getFirst("SOAPAction");
+            final String request = read(exchange.getRequestBody());
+            requests.add(action + " " + request);
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            final String operation = action.substring(
+                    action.lastIndexOf('/') + 1, action.length() - 1);
+            if (request.contains(">unknown<")) {
+                respond(exchange, 500, "<s:Fault><faultcode>s:Client"
+                        + "</faultcode><faultstring>Unknown execution"
+                        + "</faultstring></s:Fault>");
+                return;
+            }
+            final String result;
+            if (DefaultDexClient.ENQUEUE.equals(operation)) {
+                result = "42";
+            } else if (DefaultDexClient.GET_STATE.equals(operation)) {
+                polls++;
+                result = polls < 2 ? "Running" : "Completed";
+            } else if (DefaultDexClient.GET_REPORT.equals(operation)) {
+                result = REPORT.replace("&", "&amp;").replace("<", "&lt;")
+                        .replace(">", "&gt;");
+            } else {
+                result = "";
+            }
+            respond(exchange, 200, "<" + operation + "Response xmlns=\""
+                    + DefaultDexClient.NAMESPACE + "\"><" + operation
+                    + "Result>" + result + "</" + operation + "Result></"
+                    + operation + "Response>");
+        }
+        /**
+         * Writes a SOAP response.
+         *
+         * @param exchange the exchange
+         * @param status   the status
+         * @param body     the content of the SOAP body
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private static void respond(final HttpExchange exchange,
+                final int status, final String body) throws IOException {
+            final byte[] response = ("<s:Envelope xmlns:s=\""
+                    + DefaultDexClient.SOAP_NAMESPACE + "\"><s:Body>" + body
+                    + "</s:Body></s:Envelope>")
+                            .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                    "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+        /**
+         * Reads a request body.
+         *
+         * @param in the in
+         * @return the body
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private static String read(final InputStream in) throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
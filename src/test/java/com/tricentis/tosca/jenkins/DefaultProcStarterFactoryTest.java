@@ -80,6 +80,35 @@ public class DefaultProcStarterFactoryTest {
         assertArrayEquals(toArray(envVars), starter.envs());
         assertEquals(workspace, starter.pwd());
     }
+    /**
+     * Test create with jar runner and client JVM options. Class data sharing
+     * is skipped for a JDK of unknown version.
+     *
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testCreateWithJvmOptions()
+            throws InterruptedException, IOException {
+        final String jarName = "/tosca.jar";
+        final String endpoint = "endpoint";
+        final TricentisCiBuilder runner = new TricentisCiBuilder(
+                "$" + TRICENTIS_HOME + jarName, endpoint);
+        runner.setConfigurationFilePath(null);
+        runner.setClientJvmOptions(" -Xmx2g  -XX:+UseG1GC -D$VAR=1 ");
+        runner.setClassDataSharing(true);
+        final EnvVars envVars = createEnvVars();
+        envVars.put("JAVA_HOME", "javahome");
+        final FilePath workspace = new FilePath(new File(""));
+        final ProcStarter starter = createStarter(runner, envVars, workspace);
+        final List<String> expectedCmd = createExpectedCmd(
+                "javahome" + File.separator + "bin" + File.separator + "java",
+                TRICENTIS_HOME_VALUE + jarName, null, null, endpoint,
+                workspace);
+        expectedCmd.addAll(1, Arrays.asList("-Xmx2g", "-XX:+UseG1GC",
+                "-D" + VAR_VALUE + "=1"));
+        assertEquals(expectedCmd, starter.cmds());
+    }
     /**
      * Test create with jar runner with no java home.
      *
@@ -0,0 +1,145 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import com.tricentis.tosca.jenkins.DexClient.State;
+
+/**
+ * Tests for {@link DexPollScheduler}.
+ */
+public class DexPollSchedulerTest {
+    /**
+     * Test that intervals grow while the state does not change, are capped
+     * and jittered.
+     */
+    @Test
+    public void testGetDelay() {
+        assertEquals(1000, DexPollScheduler.getDelay(1000, 0, 0.5));
+        assertEquals(1500, DexPollScheduler.getDelay(1000, 1, 0.5));
+        assertEquals(2250, DexPollScheduler.getDelay(1000, 2, 0.5));
+        assertEquals(DexPollScheduler.MAX_INTERVAL,
+                DexPollScheduler.getDelay(1000, 100, 0.5));
+        assertEquals(800, DexPollScheduler.getDelay(1000, 0, 0));
+        assertEquals(1200, DexPollScheduler.getDelay(1000, 0, 1));
+    }
+    /**
+     * Test that runs polling the same execution share the queries of a
+     * sweep, and that state changes are reported to every run.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSharedPolls() throws Exception {
+        final FakeClient client = new FakeClient(State.QUEUED, State.RUNNING,
+                State.RUNNING, State.COMPLETED);
+        final DexPollScheduler scheduler = new DexPollScheduler();
+        final List<State> changes
+                = Collections.synchronizedList(new ArrayList<State>());
+        final DexPollScheduler.Listener listener
+                = new DexPollScheduler.Listener() {
+                    @Override
+                    public void stateChanged(final State state) {
+                        changes.add(state);
+                    }
+                };
+        final DexPollScheduler.Poll first
+                = scheduler.poll("e", client, "1", 100, listener);
+        final DexPollScheduler.Poll second
+                = scheduler.poll("e", client, "1", 100, listener);
+        assertEquals(State.COMPLETED, first.await());
+        assertEquals(State.COMPLETED, second.await());
+        assertEquals(4, client.queries.get());
+        assertEquals(2, Collections.frequency(changes, State.RUNNING));
+        assertEquals(2, Collections.frequency(changes, State.COMPLETED));
+    }
+    /**
+     * Test that a poll fails after repeated errors.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFailures() throws Exception {
+        final FakeClient client = new FakeClient();
+        final DexPollScheduler.Poll poll = new DexPollScheduler().poll("e",
+                client, "1", 1, new DexPollScheduler.Listener() {
+                    @Override
+                    public void stateChanged(final State state) {
+                        fail(state.toString());
+                    }
+                });
+        try {
+            poll.await();
+            fail("Should have been failed");
+        } catch (final IOException ex) {
+            assertEquals("unavailable", ex.getMessage());
+        }
+        assertEquals(3, client.queries.get());
+    }
+    /**
+     * Test that a cancelled poll ends without a state.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCancel() throws Exception {
+        final DexPollScheduler.Poll poll = new DexPollScheduler().poll("e",
+                new FakeClient(State.RUNNING), "1", 60000,
+                new DexPollScheduler.Listener() {
+                    @Override
+                    public void stateChanged(final State state) {
+                    }
+                });
+        poll.cancel();
+        assertNull(poll.await());
+    }
+
+    /**
+     * A client which reports the given states, repeating the last one, or
+     * fails if there are none.
+     */
+    private static final class FakeClient implements DexClient {
+        /** The states. */
+        private final State[] states;
+        /** The number of state queries. */
+        private final AtomicInteger queries = new AtomicInteger();
+
+        /**
+         * Instantiates a new fake client.
+         *
+         * @param newStates the states
+         */
+        private FakeClient(final State... newStates) {
+            this.states = newStates;
+        }
+        @Override
+        public String enqueue(final List<String> testEvents) {
+            return "1";
+        }
+        @Override
+        public State getState(final String executionId) throws IOException {
+            final int query = queries.getAndIncrement();
+            if (states.length == 0) {
+                throw new IOException("unavailable");
+            }
+            return states[Math.min(query, states.length - 1)];
+        }
+        @Override
+        public void downloadReport(final String executionId,
+                final OutputStream out) {
+        }
+        @Override
+        public void cancel(final String executionId) {
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import hudson.Launcher.DummyLauncher;
+import hudson.Launcher.ProcStarter;
+import hudson.Proc;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+
+/**
+ * Tests for {@link EndpointConcurrencyGovernor}.
+ */
+public class EndpointConcurrencyGovernorTest {
+    /** The Constant ENDPOINT. */
+    private static final String ENDPOINT = "http://dex/ManagerService.svc";
+    /** The governor. */
+    private final EndpointConcurrencyGovernor governor
+            = new EndpointConcurrencyGovernor();
+    /** The logger. */
+    private final PrintStream logger
+            = new PrintStream(new ByteArrayOutputStream());
+
+    /**
+     * Test that waiting builds start by priority, then by arrival, once slots
+     * are released.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFairQueue() throws Exception {
+        final EndpointConcurrencyGovernor.Permit running
+                = governor.acquire(ENDPOINT, 5, 1, 0, logger);
+        final List<String> started
+                = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> builds = new ArrayList<>();
+        builds.add(startBuild("low 1", 0, started));
+        builds.add(startBuild("low 2", 0, started));
+        builds.add(startBuild("high", 1, started));
+        assertEquals(3, getStatistics().getWaiting());
+        assertEquals(1, getStatistics().getRunning());
+        running.close();
+        running.close();
+        for (final Thread build : builds) {
+            build.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        assertEquals("[high, low 1, low 2]", started.toString());
+        final EndpointConcurrencyGovernor.Statistics statistics
+                = getStatistics();
+        assertEquals(0, statistics.getWaiting());
+        assertEquals(0, statistics.getRunning());
+        assertEquals(4, statistics.getAcquired());
+        assertTrue(statistics.getMaxWait() >= statistics.getAverageWait());
+    }
+    /**
+     * Test that endpoints without limit do not wait.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testNoLimit() throws Exception {
+        final EndpointConcurrencyGovernor.Permit first
+                = governor.acquire(ENDPOINT, 3, 0, 0, logger);
+        final EndpointConcurrencyGovernor.Permit second
+                = governor.acquire(ENDPOINT, 3, 0, 0, logger);
+        assertEquals(6, getStatistics().getRunning());
+        first.close();
+        second.close();
+        assertEquals(0, getStatistics().getRunning());
+    }
+    /**
+     * Test that an interrupted build leaves the queue.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testInterrupted() throws Exception {
+        final EndpointConcurrencyGovernor.Permit running
+                = governor.acquire(ENDPOINT, 1, 1, 0, logger);
+        final List<String> started
+                = Collections.synchronizedList(new ArrayList<String>());
+        final Thread build = startBuild("interrupted", 0, started);
+        build.interrupt();
+        build.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(0, getStatistics().getWaiting());
+        running.close();
+        governor.acquire(ENDPOINT, 1, 1, 0, logger).close();
+        assertEquals(Collections.emptyList(), started);
+    }
+    /**
+     * Test that a build with more processes than the limit of an endpoint
+     * never runs more processes against it at a time than the limit, while
+     * the processes of an endpoint without limit are not held back.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testProcessesLimited() throws Exception {
+        final String other = "http://other/ManagerService.svc";
+        final List<ProcStarter> starters = new ArrayList<>();
+        final List<String> endpoints = new ArrayList<>();
+        final TaskListener listener = new StreamBuildListener(logger);
+        for (int i = 0; i < 12; i++) {
+            final String endpoint = i < 10 ? ENDPOINT : other;
+            starters.add(new DummyLauncher(listener).launch()
+                    .cmds("client", endpoint));
+            endpoints.add(endpoint);
+        }
+        final Map<String, AtomicInteger> live = new HashMap<>();
+        final Map<String, AtomicInteger> peak = new HashMap<>();
+        for (final String endpoint : Arrays.asList(ENDPOINT, other)) {
+            live.put(endpoint, new AtomicInteger());
+            peak.put(endpoint, new AtomicInteger());
+        }
+        final DefaultProcessExecutor executor = new DefaultProcessExecutor() {
+            @Override
+            protected Proc start(final ProcStarter starter) {
+                final String endpoint = starter.cmds().get(1);
+                final AtomicInteger running = live.get(endpoint);
+                final int count = running.incrementAndGet();
+                if (count > peak.get(endpoint).get()) {
+                    peak.get(endpoint).set(count);
+                }
+                return new FinishedProc(running);
+            }
+        };
+        try (EndpointConcurrencyGovernor.Permit permit
+                = EndpointConcurrencyGovernor.Permit.combine(Arrays.asList(
+                        governor.acquire(ENDPOINT, 10, 4, 0, logger),
+                        governor.acquire(other, 2, 0, 0, logger)))) {
+            assertEquals(4, permit.getSlots().get(ENDPOINT).intValue());
+            final List<ProcessResult> results = executor.executeAll(
+                    starters, endpoints, permit.getSlots(), null);
+            assertEquals(12, results.size());
+        }
+        assertEquals(4, peak.get(ENDPOINT).get());
+        assertEquals(2, peak.get(other).get());
+        assertEquals(0, live.get(ENDPOINT).get());
+    }
+    /**
+     * Starts a build which waits for the only slot, records its start and
+     * releases the slot. Returns when the build is waiting.
+     *
+     * @param name     the name
+     * @param priority the priority
+     * @param started  the names of the started builds
+     * @return the thread of the build
+     * @throws InterruptedException the interrupted exception
+     */
+    private Thread startBuild(final String name, final int priority,
+            final List<String> started) throws InterruptedException {
+        final int waiting = getStatistics().getWaiting();
+        final Thread build = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (EndpointConcurrencyGovernor.Permit permit = governor
+                        .acquire(ENDPOINT, 1, 1, priority, logger)) {
+                    started.add(name);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        build.start();
+        while (getStatistics().getWaiting() == waiting) {
+            Thread.sleep(1);
+        }
+        return build;
+    }
+    /**
+     * Gets the statistics of the endpoint.
+     *
+     * @return the statistics
+     */
+    private EndpointConcurrencyGovernor.Statistics getStatistics() {
+        return governor.getStatistics().get(0);
+    }
+
+    /**
+     * Process which has terminated when it is checked the first time.
+     */
+    private static final class FinishedProc extends Proc {
+        /** The number of live processes of the endpoint. */
+        private final AtomicInteger live;
+        /** Whether the process has terminated. */
+        private boolean finished;
+
+        /**
+         * Instantiates a new finished proc.
+         *
+         * @param newLive the number of live processes of the endpoint
+         */
+        FinishedProc(final AtomicInteger newLive) {
+            this.live = newLive;
+        }
+        /**
+         * Checks if is alive.
+         *
+         * @return false
+         */
+        @Override
+        public boolean isAlive() {
+            if (!finished) {
+                finished = true;
+                live.decrementAndGet();
+            }
+            return false;
+        }
+        /**
+         * Kill.
+         */
+        @Override
+        public void kill() {
+            isAlive();
+        }
+        /**
+         * Join.
+         *
+         * @return 0
+         */
+        @Override
+        public int join() {
+            return 0;
+        }
+        /**
+         * Gets the stdin.
+         *
+         * @return null
+         */
+        @Override
+        public OutputStream getStdin() {
+            return null;
+        }
+        /**
+         * Gets the stdout.
+         *
+         * @return null
+         */
+        @Override
+        public InputStream getStdout() {
+            return null;
+        }
+        /**
+         * Gets the stderr.
+         *
+         * @return null
+         */
+        @Override
+        public InputStream getStderr() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EndpointPool}.
+ */
+public class EndpointPoolTest {
+    /** The Constant FIRST. */
+    private static final String FIRST = "http://dex1/ManagerService.svc";
+    /** The Constant SECOND. */
+    private static final String SECOND = "http://dex2/ManagerService.svc";
+    /** The Constant ENDPOINTS. */
+    private static final List<String> ENDPOINTS = Arrays.asList(FIRST, SECOND);
+    /** Executor which runs the health checks in the routing thread. */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+    /** The endpoints failing their health checks. */
+    private final Set<String> down
+            = Collections.synchronizedSet(new HashSet<String>());
+    /** The checked endpoints, in the order of their checks. */
+    private final List<String> checked
+            = Collections.synchronizedList(new ArrayList<String>());
+    /** The health check. */
+    private final EndpointPool.HealthCheck healthCheck
+            = new EndpointPool.HealthCheck() {
+                @Override
+                public void check(final String endpoint) throws IOException {
+                    checked.add(endpoint);
+                    if (down.contains(endpoint)) {
+                        throw new IOException(endpoint);
+                    }
+                }
+            };
+
+    /**
+     * Test parsing endpoint fields.
+     */
+    @Test
+    public void testParse() {
+        assertEquals(Arrays.asList(FIRST, SECOND),
+                EndpointPool.parse(
+                        " " + FIRST + ",\n" + SECOND + "; " + FIRST));
+        assertEquals(Collections.singletonList(FIRST),
+                EndpointPool.parse(FIRST));
+        assertTrue(EndpointPool.parse(" ").isEmpty());
+        assertTrue(EndpointPool.parse(null).isEmpty());
+    }
+    /**
+     * Test that processes are routed to the endpoint with the fewest running
+     * processes and that closed leases are released.
+     */
+    @Test
+    public void testLeastLoaded() {
+        final EndpointPool pool = new EndpointPool(healthCheck,
+                EndpointPool.CHECK_INTERVAL, DIRECT);
+        final EndpointPool.Lease first = pool.route(ENDPOINTS);
+        final EndpointPool.Lease second = pool.route(ENDPOINTS);
+        assertTrue(first.isHealthy());
+        assertEquals(new HashSet<>(ENDPOINTS), new HashSet<>(
+                Arrays.asList(first.getEndpoint(), second.getEndpoint())));
+        first.close();
+        first.close();
+        final EndpointPool.Lease third = pool.route(ENDPOINTS);
+        assertEquals(first.getEndpoint(), third.getEndpoint());
+        second.close();
+        third.close();
+    }
+    /**
+     * Test that endpoints failing their health checks are not routed to until
+     * they pass again, unless no endpoint is healthy.
+     */
+    @Test
+    public void testUnhealthy() {
+        final EndpointPool pool = new EndpointPool(healthCheck, 0, DIRECT);
+        down.add(FIRST);
+        for (int i = 0; i < EndpointPool.MAX_FAILURES; i++) {
+            pool.route(ENDPOINTS).close();
+        }
+        for (int i = 0; i < 2; i++) {
+            try (EndpointPool.Lease lease = pool.route(ENDPOINTS)) {
+                assertEquals(SECOND, lease.getEndpoint());
+                assertTrue(lease.isHealthy());
+            }
+        }
+        down.add(SECOND);
+        for (int i = 0; i < EndpointPool.MAX_FAILURES; i++) {
+            pool.route(ENDPOINTS).close();
+        }
+        try (EndpointPool.Lease lease = pool.route(ENDPOINTS)) {
+            assertFalse(lease.isHealthy());
+        }
+        down.clear();
+        try (EndpointPool.Lease lease = pool.route(ENDPOINTS)) {
+            assertTrue(lease.isHealthy());
+        }
+    }
+    /**
+     * Test that the first failed check raises the load of an endpoint, so it
+     * is no longer the least loaded one, and that a failed endpoint is
+     * checked again on the next route without waiting for the interval.
+     */
+    @Test
+    public void testFailedCheck() {
+        final EndpointPool pool = new EndpointPool(healthCheck,
+                EndpointPool.CHECK_INTERVAL, DIRECT);
+        down.add(FIRST);
+        try (EndpointPool.Lease first = pool.route(ENDPOINTS);
+                EndpointPool.Lease second = pool.route(ENDPOINTS)) {
+            assertEquals(SECOND, first.getEndpoint());
+            assertEquals(SECOND, second.getEndpoint());
+            assertEquals(Arrays.asList(FIRST, SECOND, FIRST), checked);
+        }
+        down.clear();
+        checked.clear();
+        pool.route(ENDPOINTS).close();
+        assertEquals(Collections.singletonList(FIRST), checked);
+        pool.route(ENDPOINTS).close();
+        assertEquals(Collections.singletonList(FIRST), checked);
+    }
+    /**
+     * Test that routing does not wait for the health checks, and that an
+     * endpoint is not checked again while its check is running.
+     */
+    @Test
+    public void testBackgroundCheck() {
+        final List<Runnable> queued = new ArrayList<>();
+        final EndpointPool pool = new EndpointPool(healthCheck,
+                EndpointPool.CHECK_INTERVAL, new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        queued.add(command);
+                    }
+                });
+        down.add(FIRST);
+        pool.route(ENDPOINTS).close();
+        pool.route(ENDPOINTS).close();
+        assertTrue(checked.isEmpty());
+        assertEquals(2, queued.size());
+        for (final Runnable check : queued) {
+            check.run();
+        }
+        queued.clear();
+        assertEquals(ENDPOINTS, checked);
+        try (EndpointPool.Lease lease = pool.route(ENDPOINTS)) {
+            assertEquals(SECOND, lease.getEndpoint());
+            assertTrue(lease.isHealthy());
+        }
+        assertEquals(1, queued.size());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+
+/**
+ * Tests for {@link FailFastMonitor}.
+ */
+public class FailFastMonitorTest {
+    /** The Constant RESULTS_FILE. */
+    private static final String RESULTS_FILE = "results.xml";
+    /** The Constant HEAD. */
+    private static final String HEAD = "<?xml version=\"1.0\"?>\n"
+            + "<testsuites>\n"
+            + " <testsuite name=\"s\">\n";
+    /** The Constant PASSED. */
+    private static final String PASSED
+            = "  <testcase name=\"a\" classname=\"c\"/>\n";
+    /** The Constant FAILED. */
+    private static final String FAILED
+            = "  <testcase name=\"%s\" classname=\"c\">"
+                    + "<failure message=\"x\">boom</failure></testcase>\n";
+    /** The Constant INCOMPLETE. */
+    private static final String INCOMPLETE
+            = "  <testcase name=\"d\" classname=\"c\"><fail";
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the maximum number of failures is reached at the given
+     * number of failed test cases.
+     */
+    @Test
+    public void testMaxFailures() {
+        assertFalse(FailFastMonitor.isExceeded(4, 5, 5, 0));
+        assertTrue(FailFastMonitor.isExceeded(5, 5, 5, 0));
+        assertFalse(FailFastMonitor.isExceeded(100, 100, 0, 0));
+    }
+    /**
+     * Test that the failure ratio is only checked once enough test cases
+     * have completed.
+     */
+    @Test
+    public void testMaxRatio() {
+        assertFalse(FailFastMonitor.isExceeded(3, 3, 0, 50));
+        assertFalse(FailFastMonitor.isExceeded(4, 10, 0, 50));
+        assertTrue(FailFastMonitor.isExceeded(5, 10, 0, 50));
+        assertTrue(FailFastMonitor.isExceeded(5, 10, 100, 50));
+        assertFalse(FailFastMonitor.isExceeded(Integer.MAX_VALUE / 2,
+                Integer.MAX_VALUE, 0, 60));
+    }
+    /**
+     * Test that the monitor aborts once a growing results file has too many
+     * failed test cases, and that only the test cases completed before the
+     * abort are published from the delta reports of the build.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAbort() throws Exception {
+        final File results = folder.newFile(RESULTS_FILE);
+        final FilePath workspace = new FilePath(folder.getRoot());
+        final Run<?, ?> run = mock(Run.class);
+        when(run.getNumber()).thenReturn(7);
+        final TaskListener listener
+                = new StreamBuildListener(new ByteArrayOutputStream());
+        final FailFastMonitor monitor = new FailFastMonitor(null,
+                Collections.singletonList(RESULTS_FILE), 2, 0, run,
+                workspace, listener);
+        monitor.check();
+        assertNull(monitor.getDeltas());
+        append(results, HEAD + PASSED + String.format(FAILED, "b"));
+        monitor.check();
+        assertFalse(monitor.isAborted());
+        final String deltas = monitor.getDeltas();
+        assertTrue(deltas,
+                deltas.matches("tricentis-fail-fast-7-[0-9a-f]+/\\*\\.xml"));
+        append(results, String.format(FAILED, "c") + INCOMPLETE);
+        try {
+            monitor.check();
+            fail();
+        } catch (final AbortException e) {
+            assertEquals(Messages.failFastAbort(2, 3), e.getMessage());
+        }
+        assertTrue(monitor.isAborted());
+        assertEquals(deltas, monitor.getDeltas());
+        final JUnitResultsPublisher publisher
+                = mock(JUnitResultsPublisher.class);
+        final Launcher launcher = mock(Launcher.class);
+        final TricentisCiBuilder builder = new TricentisCiBuilder("aa", "a");
+        builder.setResultsPublisher(publisher);
+        builder.publishFailFast(null, monitor, run, workspace, launcher,
+                listener);
+        verify(publisher).publish(deltas, run, workspace, launcher,
+                listener);
+        assertEquals(Arrays.asList("a", "b", "c"),
+                getTestCases(workspace.list(deltas)));
+        monitor.delete();
+        assertEquals(Collections.singletonList(RESULTS_FILE),
+                Arrays.asList(folder.getRoot().list()));
+    }
+    /**
+     * Appends to a results file, like a running client.
+     *
+     * @param file    the file
+     * @param content the content
+     * @throws Exception the exception
+     */
+    private static void append(final File file, final String content)
+            throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+    }
+    /**
+     * Gets the sorted names of the test cases of reports.
+     *
+     * @param reports the reports
+     * @return the names
+     * @throws Exception the exception
+     */
+    private static List<String> getTestCases(final FilePath[] reports)
+            throws Exception {
+        final List<String> names = new ArrayList<>();
+        for (final FilePath report : reports) {
+            final NodeList testCases = DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder().parse(new File(report.getRemote()))
+                    .getElementsByTagName("testcase");
+            for (int i = 0; i < testCases.getLength(); i++) {
+                names.add(((Element) testCases.item(i)).getAttribute("name"));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the ManagerService of the DEX in throughput and soak tests.
+ * It answers the operations {@link DefaultDexClient} calls: every execution
+ * runs for the duration of its {@link FakeToscaClient.Profile} and then
+ * reports the test cases of the profile. Executions are only kept in
+ * memory, and reports are generated when they are downloaded.
+ */
+final class FakeManagerService implements HttpHandler {
+    /** The Constant TEST_EVENT. */
+    private static final Pattern TEST_EVENT
+            = Pattern.compile(">([^<]*)</a:string>");
+    /** The Constant EXECUTION_ID. */
+    private static final Pattern EXECUTION_ID
+            = Pattern.compile("executionId>([^<]*)<");
+    /** The profile of the executions. */
+    private final FakeToscaClient.Profile profile;
+    /** The executions by id. */
+    private final Map<String, Execution> executions
+            = new ConcurrentHashMap<>();
+    /** The last execution id. */
+    private final AtomicLong ids = new AtomicLong();
+    /** The number of requests. */
+    private final AtomicLong requests = new AtomicLong();
+    /** The server. */
+    private HttpServer server;
+    /** The threads of the server. */
+    private ExecutorService threads;
+
+    /**
+     * Instantiates a new fake manager service.
+     *
+     * @param newProfile the profile of the executions
+     */
+    FakeManagerService(final FakeToscaClient.Profile newProfile) {
+        this.profile = newProfile;
+    }
+    /**
+     * Starts the service on a free port of the loopback address.
+     *
+     * @return the URL of the service
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    URL start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this);
+        threads = Executors.newCachedThreadPool();
+        server.setExecutor(threads);
+        server.start();
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/DistributionServerService/ManagerService.svc");
+    }
+    /**
+     * Stops the service.
+     */
+    void stop() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+    /**
+     * Gets the number of executions enqueued so far.
+     *
+     * @return the number of executions
+     */
+    long getExecutions() {
+        return ids.get();
+    }
+    /**
+     * Gets the number of requests answered so far.
+     *
+     * @return the number of requests
+     */
+    long getRequests() {
+        return requests.get();
+    }
+    /**
+     * Handle.
+     *
+     * @param exchange the exchange
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        final String action
+                = exchange.getRequestHeaders().getFirst("SOAPAction");
+        final String request = read(exchange.getRequestBody());
+        final String operation = action.substring(
+                action.lastIndexOf('/') + 1, action.length() - 1);
+        if (DefaultDexClient.ENQUEUE.equals(operation)) {
+            final List<String> events = new ArrayList<>();
+            final Matcher matcher = TEST_EVENT.matcher(request);
+            while (matcher.find()) {
+                events.add(unescape(matcher.group(1)));
+            }
+            final String id = String.valueOf(ids.incrementAndGet());
+            executions.put(id, new Execution(events));
+            respond(exchange, operation, id);
+            return;
+        }
+        final Matcher matcher = EXECUTION_ID.matcher(request);
+        final Execution execution
+                = matcher.find() ? executions.get(matcher.group(1)) : null;
+        if (execution == null) {
+            fault(exchange, "Unknown execution");
+        } else if (DefaultDexClient.GET_STATE.equals(operation)) {
+            respond(exchange, operation, execution.getState());
+        } else if (DefaultDexClient.GET_REPORT.equals(operation)) {
+            final ByteArrayOutputStream report = new ByteArrayOutputStream();
+            profile.writeReport(execution.events, report);
+            executions.remove(matcher.group(1));
+            respond(exchange, operation, escape(
+                    new String(report.toByteArray(), StandardCharsets.UTF_8)));
+        } else if (DefaultDexClient.CANCEL.equals(operation)) {
+            execution.cancelled = true;
+            respond(exchange, operation, "");
+        } else {
+            fault(exchange, "Unknown operation " + operation);
+        }
+    }
+    /**
+     * Writes the response of an operation.
+     *
+     * @param exchange  the exchange
+     * @param operation the operation
+     * @param result    the escaped result
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void respond(final HttpExchange exchange,
+            final String operation, final String result) throws IOException {
+        send(exchange, 200, "<" + operation + "Response xmlns=\""
+                + DefaultDexClient.NAMESPACE + "\"><" + operation + "Result>"
+                + result + "</" + operation + "Result></" + operation
+                + "Response>");
+    }
+    /**
+     * Writes a SOAP fault.
+     *
+     * @param exchange the exchange
+     * @param message  the message
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void fault(final HttpExchange exchange,
+            final String message) throws IOException {
+        send(exchange, 500, "<s:Fault><faultcode>s:Client</faultcode>"
+                + "<faultstring>" + escape(message)
+                + "</faultstring></s:Fault>");
+    }
+    /**
+     * Writes a SOAP envelope.
+     *
+     * @param exchange the exchange
+     * @param status   the status
+     * @param body     the content of the SOAP body
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void send(final HttpExchange exchange, final int status,
+            final String body) throws IOException {
+        final byte[] response = ("<s:Envelope xmlns:s=\""
+                + DefaultDexClient.SOAP_NAMESPACE + "\"><s:Body>" + body
+                + "</s:Body></s:Envelope>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type",
+                "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+    /**
+     * Reads a request body.
+     *
+     * @param in the in
+     * @return the body
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    /**
+     * Escapes a text for XML.
+     *
+     * @param text the text
+     * @return the escaped text
+     */
+    private static String escape(final String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;")
+                .replace(">", "&gt;");
+    }
+    /**
+     * Unescapes a text of XML.
+     *
+     * @param text the text
+     * @return the unescaped text
+     */
+    private static String unescape(final String text) {
+        return text.replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+
+    /**
+     * An execution of test events.
+     */
+    private final class Execution {
+        /** The test events. */
+        private final List<String> events;
+        /** The time the execution was enqueued. */
+        private final long enqueued = System.currentTimeMillis();
+        /** Whether the execution was cancelled. */
+        private volatile boolean cancelled;
+
+        /**
+         * Instantiates a new execution.
+         *
+         * @param newEvents the test events
+         */
+        Execution(final List<String> newEvents) {
+            this.events = newEvents;
+        }
+        /**
+         * Gets the state in the format of the ManagerService.
+         *
+         * @return the state
+         */
+        String getState() {
+            if (cancelled) {
+                return "Canceled";
+            }
+            return System.currentTimeMillis() - enqueued < profile
+                    .getDuration() ? "Running" : "Completed";
+        }
+    }
+}
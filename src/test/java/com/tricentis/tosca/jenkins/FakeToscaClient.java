@@ -0,0 +1,303 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for <code>ToscaCIJavaClient.jar</code> in throughput and soak
+ * tests. It takes the switches {@link DefaultProcStarterFactory} emits, runs
+ * the test events of the configuration file, printing progress lines like
+ * the client, and writes a JUnit report to the results file. Its behaviour
+ * is set by a {@link Profile} in system properties, so it can be passed
+ * through the JVM options of the builder.
+ */
+public final class FakeToscaClient {
+    /** The Constant CONFIG_SWITCH. */
+    private static final String CONFIG_SWITCH = "-c";
+    /** The Constant RESULTS_SWITCH. */
+    private static final String RESULTS_SWITCH = "-r";
+    /** The Constant TEST_EVENT. */
+    private static final Pattern TEST_EVENT
+            = Pattern.compile("<TestEvent>([^<]*)</TestEvent>");
+
+    /**
+     * Instantiates a new fake tosca client.
+     */
+    private FakeToscaClient() {
+    }
+    /**
+     * The main method.
+     *
+     * @param args the switches of the client
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(final String[] args)
+            throws IOException, InterruptedException {
+        String config = null;
+        String results = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (CONFIG_SWITCH.equals(args[i])) {
+                config = args[++i];
+            } else if (RESULTS_SWITCH.equals(args[i])) {
+                results = args[++i];
+            }
+        }
+        if (results == null) {
+            System.err.println("Missing " + RESULTS_SWITCH);
+            System.exit(2);
+        }
+        final Profile profile = Profile.fromSystemProperties();
+        final List<String> events = config == null
+                ? Collections.singletonList("default")
+                : readTestEvents(new File(config));
+        profile.run(events, System.out);
+        final File report = new File(results);
+        report.getAbsoluteFile().getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(report))) {
+            profile.writeReport(events, out);
+        }
+        System.out.println("State: Completed");
+        System.out.flush();
+    }
+    /**
+     * Reads the test events of a configuration file.
+     *
+     * @param config the configuration file
+     * @return the test events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static List<String> readTestEvents(final File config) throws IOException {
+        final Matcher matcher = TEST_EVENT.matcher(new String(
+                Files.readAllBytes(config.toPath()), StandardCharsets.UTF_8));
+        final List<String> events = new ArrayList<>();
+        while (matcher.find()) {
+            events.add(matcher.group(1).trim());
+        }
+        return events;
+    }
+    /**
+     * Creates a jar with the client as its main class.
+     *
+     * @param jar the jar
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void createJar(final File jar) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS,
+                FakeToscaClient.class.getName());
+        try (JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(jar), manifest)) {
+            for (final Class<?> type : new Class<?>[] {FakeToscaClient.class,
+                Profile.class}) {
+                final String name
+                        = type.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in
+                        = type.getResourceAsStream("/" + name)) {
+                    final byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * How a fake execution behaves: how long it takes, how much it prints,
+     * how many of its test cases fail and how large its report is. Whether
+     * a test case fails depends only on its name, so reruns are
+     * reproducible.
+     */
+    static final class Profile {
+        /** The prefix of the system properties. */
+        static final String PREFIX = "fake.";
+        /** The duration of an execution in milliseconds. */
+        private final long duration;
+        /** The number of test cases of each test event. */
+        private final int testCases;
+        /** The number of lines printed for each test case. */
+        private final int outputLines;
+        /** The share of failed test cases, between 0 and 1. */
+        private final double failureRate;
+        /** The approximate size of the report in bytes, 0 for minimal. */
+        private final long reportSize;
+
+        /**
+         * Instantiates a new profile.
+         *
+         * @param newDuration    the duration of an execution in milliseconds
+         * @param newTestCases   the number of test cases of each test event
+         * @param newOutputLines the number of lines printed per test case
+         * @param newFailureRate the share of failed test cases
+         * @param newReportSize  the approximate size of the report in bytes
+         */
+        Profile(final long newDuration, final int newTestCases,
+                final int newOutputLines, final double newFailureRate,
+                final long newReportSize) {
+            this.duration = newDuration;
+            this.testCases = Math.max(1, newTestCases);
+            this.outputLines = newOutputLines;
+            this.failureRate = newFailureRate;
+            this.reportSize = newReportSize;
+        }
+        /**
+         * Reads a profile from the system properties, using defaults for
+         * the missing ones.
+         *
+         * @return the profile
+         */
+        static Profile fromSystemProperties() {
+            return new Profile(Long.getLong(PREFIX + "duration", 1000),
+                    Integer.getInteger(PREFIX + "testCases", 10),
+                    Integer.getInteger(PREFIX + "outputLines", 5),
+                    Double.parseDouble(System.getProperty(
+                            PREFIX + "failureRate", "0.1")),
+                    Long.getLong(PREFIX + "reportSize", 0));
+        }
+        /**
+         * Gets the profile as JVM options of the fake client.
+         *
+         * @return the JVM options
+         */
+        String toJvmOptions() {
+            return "-D" + PREFIX + "duration=" + duration + " -D" + PREFIX
+                    + "testCases=" + testCases + " -D" + PREFIX
+                    + "outputLines=" + outputLines + " -D" + PREFIX
+                    + "failureRate=" + failureRate + " -D" + PREFIX
+                    + "reportSize=" + reportSize;
+        }
+        /**
+         * Gets the duration of an execution.
+         *
+         * @return the duration in milliseconds
+         */
+        long getDuration() {
+            return duration;
+        }
+        /**
+         * Checks whether a test case fails.
+         *
+         * @param event    the test event
+         * @param testCase the index of the test case in the test event
+         * @return true, if the test case fails
+         */
+        boolean isFailed(final String event, final int testCase) {
+            long hash = (event + "#" + testCase).hashCode()
+                    * 0x9E3779B97F4A7C15L;
+            hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+            hash ^= hash >>> 31;
+            return (hash >>> 11) * 0x1.0p-53 < failureRate;
+        }
+        /**
+         * Runs test events, printing the progress lines of the client and
+         * spreading the duration evenly over the test cases.
+         *
+         * @param events the test events
+         * @param out    the out
+         * @throws InterruptedException the interrupted exception
+         */
+        void run(final List<String> events, final PrintStream out)
+                throws InterruptedException {
+            final long pause
+                    = duration / Math.max(1, events.size() * testCases);
+            for (final String event : events) {
+                out.println("Test event " + event + " started");
+                for (int i = 0; i < testCases; i++) {
+                    Thread.sleep(pause);
+                    for (int line = 0; line < outputLines; line++) {
+                        out.println("  Step " + line + " of " + event + " "
+                                + i + ": verifying values of the module"
+                                + " against the expected ones");
+                    }
+                    out.println("Test case " + event + " " + i
+                            + (isFailed(event, i) ? " failed" : " passed"));
+                }
+            }
+        }
+        /**
+         * Writes the JUnit report of test events. The output of the test
+         * cases is padded to reach the size of the report.
+         *
+         * @param events the test events
+         * @param out    the out
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void writeReport(final List<String> events, final OutputStream out)
+                throws IOException {
+            final int cases = Math.max(1, events.size() * testCases);
+            final char[] padding = new char[(int) Math.min(
+                    Integer.MAX_VALUE, reportSize / cases)];
+            Arrays.fill(padding, 'x');
+            final String time = String.format(Locale.ROOT, "%.3f",
+                    duration / 1000.0 / cases);
+            final Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                    + "<testsuites>\n");
+            for (final String event : events) {
+                final String name = escape(event);
+                writer.write("<testsuite name=\"" + name + "\">\n");
+                for (int i = 0; i < testCases; i++) {
+                    writer.write("<testcase classname=\"" + name
+                            + "\" name=\"" + name + " " + i + "\" time=\""
+                            + time + "\">");
+                    if (isFailed(event, i)) {
+                        writer.write("<failure message=\"Verification "
+                                + "failed\">at step 1</failure>");
+                    }
+                    if (padding.length > 0) {
+                        writer.write("<system-out>");
+                        writer.write(padding);
+                        writer.write("</system-out>");
+                    }
+                    writer.write("</testcase>\n");
+                }
+                writer.write("</testsuite>\n");
+            }
+            writer.write("</testsuites>\n");
+            writer.flush();
+        }
+        /**
+         * Escapes a text for XML.
+         *
+         * @param text the text
+         * @return the escaped text
+         */
+        private static String escape(final String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;")
+                    .replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.tricentis.tosca.jenkins.DexClient.State;
+
+/**
+ * Tests for {@link FakeToscaClient} and {@link FakeManagerService}, so the
+ * soak test measures the plugin and not a broken stand-in.
+ */
+public class FakeToscaClientTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the report has the test cases and failures of the profile
+     * and roughly its size.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReport() throws Exception {
+        final FakeToscaClient.Profile profile
+                = new FakeToscaClient.Profile(0, 50, 0, 0.2, 100000);
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profile.writeReport(Arrays.asList("e1", "e<2>"), report);
+        assertTrue(String.valueOf(report.size()), report.size() >= 100000
+                && report.size() < 120000);
+        final ResultsSummary summary = new ResultsSummary();
+        new ResultsSummaryParser().parse(
+                new ByteArrayInputStream(report.toByteArray()), summary);
+        assertEquals(100, summary.getTests());
+        int failed = 0;
+        for (int i = 0; i < 50; i++) {
+            failed += profile.isFailed("e1", i) ? 1 : 0;
+            failed += profile.isFailed("e<2>", i) ? 1 : 0;
+        }
+        assertEquals(failed, summary.getFailures());
+        assertTrue(String.valueOf(failed), failed > 5 && failed < 40);
+    }
+    /**
+     * Test that the output has the progress lines of the client.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testOutput() throws Exception {
+        final FakeToscaClient.Profile profile
+                = new FakeToscaClient.Profile(0, 2, 3, 0, 0);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.run(Arrays.asList("e1"), new PrintStream(out, true, "UTF-8"));
+        final String[] lines = new String(out.toByteArray(),
+                StandardCharsets.UTF_8).split("\r?\n");
+        assertEquals(9, lines.length);
+        assertEquals("Test event e1 started", lines[0]);
+        assertEquals("Test case e1 1 passed", lines[8]);
+    }
+    /**
+     * Test that the test events are read from the configuration file the
+     * builder writes.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReadTestEvents() throws Exception {
+        final File config = folder.newFile("config.xml");
+        Files.write(config.toPath(), ("<testConfiguration><TestEvents>\n"
+                + "        <TestEvent>e1</TestEvent>\n"
+                + "        <TestEvent>e2</TestEvent>\n"
+                + "</TestEvents></testConfiguration>")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("e1", "e2"),
+                FakeToscaClient.readTestEvents(config));
+    }
+    /**
+     * Test an execution of the fake ManagerService with the DEX client.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testManagerService() throws Exception {
+        final FakeToscaClient.Profile profile
+                = new FakeToscaClient.Profile(200, 3, 0, 0, 0);
+        final FakeManagerService service = new FakeManagerService(profile);
+        final URL endpoint = service.start();
+        try {
+            final DexClient client = new DefaultDexClient(endpoint);
+            final String id = client.enqueue(Arrays.asList("e1", "e&2"));
+            assertEquals(State.RUNNING, client.getState(id));
+            Thread.sleep(300);
+            assertEquals(State.COMPLETED, client.getState(id));
+            final ByteArrayOutputStream report = new ByteArrayOutputStream();
+            client.downloadReport(id, report);
+            final ResultsSummary summary = new ResultsSummary();
+            new ResultsSummaryParser().parse(
+                    new ByteArrayInputStream(report.toByteArray()), summary);
+            assertEquals(6, summary.getTests());
+            assertEquals(1, service.getExecutions());
+            final String second = client.enqueue(Arrays.asList("e3"));
+            client.cancel(second);
+            assertEquals(State.CANCELLED, client.getState(second));
+        } finally {
+            service.stop();
+        }
+    }
+    /**
+     * Test a run of the client jar.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testJar() throws Exception {
+        final File jar = folder.newFile("client.jar");
+        FakeToscaClient.createJar(jar);
+        final File config = folder.newFile("config.xml");
+        Files.write(config.toPath(), "<TestEvent>e1</TestEvent>"
+                .getBytes(StandardCharsets.UTF_8));
+        final File results = new File(folder.getRoot(), "out/results.xml");
+        final List<String> command = Arrays.asList(
+                new File(System.getProperty("java.home"),
+                        "bin" + File.separator + "java").getPath(),
+                "-Dfake.duration=0", "-Dfake.testCases=4", "-jar",
+                jar.getPath(), "-m", "distributed", "-t", "junit", "-x",
+                "True", "-r", results.getPath(), "-c", config.getPath(), "-e",
+                "endpoint");
+        final Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true).start();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = process.getInputStream().read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        assertEquals(out.toString("UTF-8"), 0, process.waitFor());
+        final ResultsSummary summary = new ResultsSummary();
+        try (InputStream in = new FileInputStream(results)) {
+            new ResultsSummaryParser().parse(in, summary);
+        }
+        assertEquals(4, summary.getTests());
+    }
+}
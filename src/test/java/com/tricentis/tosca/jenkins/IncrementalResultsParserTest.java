@@ -0,0 +1,144 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests for {@link IncrementalResultsParser}.
+ */
+public class IncrementalResultsParserTest {
+    /** The Constant RESULTS. */
+    private static final String RESULTS = "<?xml version=\"1.0\"?>\n"
+            + "<testsuites>\n"
+            + " <testsuite name=\"s1\" tests=\"2\">\n"
+            + "  <testcase name=\"a\" classname=\"c\"/>\n"
+            + "  <testcase name=\"b&gt;\" classname=\"c\">"
+            + "<failure message=\"x\">boom \u00fc</failure></testcase>\n"
+            + " </testsuite>\n"
+            + " <!-- <testcase name=\"x\"/> -->\n"
+            + " <testsuite name=\"s2\">\n"
+            + "  <properties><property name=\"p\" value=\"v\"/></properties>\n"
+            + "  <testcase name=\"c\" classname=\"c\">"
+            + "<system-out><![CDATA[<b>]]>\u20ac\ud83d\ude00</system-out>"
+            + "</testcase>\n"
+            + " </testsuite>\n"
+            + "</testsuites>\n";
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test parsing the whole file at once.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCompleteFile() throws Exception {
+        final byte[] bytes = RESULTS.getBytes(StandardCharsets.UTF_8);
+        final IncrementalResultsParser parser = new IncrementalResultsParser();
+        final File delta = folder.newFile();
+        assertEquals(3, parser.parse(new ByteArrayInputStream(bytes), delta));
+        final Document document = parse(delta);
+        assertEquals(2, document.getElementsByTagName("testsuite")
+                .getLength());
+        assertEquals(3, document.getElementsByTagName("testcase").getLength());
+        assertEquals("boom \u00fc", document.getElementsByTagName("failure")
+                .item(0).getTextContent());
+        assertEquals(bytes.length - 1, parser.getOffset());
+        assertEquals(1, parser.getFailures());
+    }
+    /**
+     * Test parsing a file which grows byte by byte.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testGrowingFile() throws Exception {
+        final byte[] bytes = RESULTS.getBytes(StandardCharsets.UTF_8);
+        final IncrementalResultsParser parser = new IncrementalResultsParser();
+        int cases = 0;
+        for (int length = 0; length <= bytes.length; length++) {
+            final int from = (int) parser.getOffset();
+            final File delta = new File(folder.getRoot(), "d" + length);
+            final int count = parser.parse(new ByteArrayInputStream(
+                    Arrays.copyOfRange(bytes, from, length)), delta);
+            assertEquals(count > 0, delta.exists());
+            if (count > 0) {
+                assertEquals(count, parse(delta)
+                        .getElementsByTagName("testcase").getLength());
+            }
+            cases += count;
+        }
+        assertEquals(3, cases);
+        assertEquals(3, parser.getTestCases());
+        assertEquals(1, parser.getFailures());
+    }
+    /**
+     * Test that nothing is written before a test case is complete.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testIncompleteTestCase() throws IOException {
+        final String partial = RESULTS.substring(0,
+                RESULTS.indexOf("<testcase name=\"b"));
+        final IncrementalResultsParser parser = new IncrementalResultsParser();
+        final File delta = folder.newFile();
+        assertTrue(delta.delete());
+        assertEquals(1, parser.parse(new ByteArrayInputStream(
+                partial.getBytes(StandardCharsets.UTF_8)), delta));
+        final File next = new File(folder.getRoot(), "next");
+        assertEquals(0, parser.parse(new ByteArrayInputStream(
+                "  <testcase name=\"b\"><fail".getBytes(
+                        StandardCharsets.UTF_8)), next));
+        assertFalse(next.exists());
+    }
+    /**
+     * Test that a byte order mark is skipped.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testByteOrderMark() throws IOException {
+        final byte[] bytes = ("\ufeff" + RESULTS)
+                .getBytes(StandardCharsets.UTF_8);
+        final IncrementalResultsParser parser = new IncrementalResultsParser();
+        assertEquals(3, parser.parse(new ByteArrayInputStream(bytes),
+                folder.newFile()));
+    }
+    /**
+     * Test utf 8 length.
+     */
+    @Test
+    public void testUtf8Length() {
+        assertEquals(RESULTS.getBytes(StandardCharsets.UTF_8).length,
+                IncrementalResultsParser.utf8Length(RESULTS));
+    }
+    /**
+     * Parses a delta file.
+     *
+     * @param file the file
+     * @return the document
+     * @throws Exception the exception
+     */
+    private static Document parse(final File file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(
+                        Files.readAllBytes(file.toPath())));
+    }
+}
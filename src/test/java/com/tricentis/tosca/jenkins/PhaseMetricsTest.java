@@ -0,0 +1,109 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PhaseMetrics} and {@link PhaseTimingsAction}.
+ */
+public class PhaseMetricsTest {
+    /**
+     * Test that a percentile is the upper bound of its bucket, but not more
+     * than the longest duration.
+     */
+    @Test
+    public void testPercentile() {
+        final PhaseMetrics.Histogram histogram = new PhaseMetrics.Histogram(
+                ExecutionPhase.CLIENT_RUN, "http://localhost");
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(PhaseMetrics.bound(2), histogram.percentile(0.5));
+        assertEquals(PhaseMetrics.bound(2), histogram.percentile(0.9));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100),
+                histogram.percentile(0.95));
+        assertEquals(100, histogram.getPercentileMillis(99));
+    }
+    /**
+     * Test that durations beyond the last bound are counted in the
+     * unbounded bucket.
+     */
+    @Test
+    public void testOverflow() {
+        final PhaseMetrics.Histogram histogram = new PhaseMetrics.Histogram(
+                ExecutionPhase.CLIENT_RUN, "");
+        final long nanos = PhaseMetrics.bound(PhaseMetrics.BUCKETS) * 2;
+        histogram.record(nanos);
+        assertEquals(nanos, histogram.percentile(0.5));
+    }
+    /**
+     * Test that the histograms are written in the Prometheus text format
+     * with cumulative buckets and escaped labels.
+     */
+    @Test
+    public void testWrite() {
+        final PhaseMetrics metrics = new PhaseMetrics();
+        metrics.record(ExecutionPhase.PUBLISH, "a\"b",
+                TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.record(ExecutionPhase.PUBLISH, "a\"b",
+                TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.record(ExecutionPhase.PREPARE, "a\"b", 1);
+        final StringWriter out = new StringWriter();
+        metrics.write(new PrintWriter(out));
+        final String text = out.toString();
+        final String labels = "phase=\"publish\",endpoint=\"a\\\"b\"";
+        assertTrue(text, text.contains("# TYPE "
+                + "tricentis_phase_duration_seconds histogram\n"));
+        assertTrue(text, text.contains("tricentis_phase_duration_seconds_"
+                + "bucket{" + labels + ",le=\"0.001000\"} 1\n"));
+        assertTrue(text, text.contains("tricentis_phase_duration_seconds_"
+                + "bucket{" + labels + ",le=\"0.002000\"} 2\n"));
+        assertTrue(text, text.contains("tricentis_phase_duration_seconds_"
+                + "bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(text, text.contains("tricentis_phase_duration_seconds_"
+                + "sum{" + labels + "} 0.003000\n"));
+        assertTrue(text, text.contains("tricentis_phase_duration_seconds_"
+                + "quantile{" + labels + ",quantile=\"0.5\"} 0.001000\n"));
+        final List<PhaseMetrics.Histogram> histograms
+                = metrics.getHistograms();
+        assertEquals(2, histograms.size());
+        assertEquals(ExecutionPhase.PREPARE, histograms.get(0).getPhase());
+    }
+    /**
+     * Test that a nested phase pauses the outer one, so the phases only
+     * count their own time.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    public void testNestedPhases() throws InterruptedException {
+        final PhaseTimingsAction timings = new PhaseTimingsAction();
+        try (PhaseTimingsAction.Split outer
+                = timings.start(ExecutionPhase.PROCESS_SETUP)) {
+            try (PhaseTimingsAction.Split inner
+                    = timings.start(ExecutionPhase.CONFIG_FILE)) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(timings.getMillis(ExecutionPhase.CONFIG_FILE) >= 50);
+        assertTrue(timings.getMillis(ExecutionPhase.PROCESS_SETUP) < 50);
+        assertEquals(0, timings.getMillis(ExecutionPhase.PUBLISH), 0);
+        assertEquals(2, timings.getPhases().length);
+        assertEquals(timings.getMillis(ExecutionPhase.PROCESS_SETUP)
+                + timings.getMillis(ExecutionPhase.CONFIG_FILE),
+                timings.getTotalMillis(), 0.001);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import hudson.Launcher.DummyLauncher;
+import hudson.Launcher.ProcStarter;
+import hudson.model.StreamBuildListener;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ProcessWatchdog}.
+ */
+public class ProcessWatchdogTest {
+    /**
+     * Test that the overall timeout of a process expires after the given
+     * minutes.
+     */
+    @Test
+    public void testTimeout() {
+        final ProcessWatchdog watchdog = new ProcessWatchdog(null,
+                createStarters(1), 2, 0, null);
+        final long start = System.currentTimeMillis();
+        watchdog.started(0, start);
+        assertNull(watchdog.check(start + TimeUnit.MINUTES.toMillis(2) - 1));
+        assertEquals(Messages.watchdogTimeout(2),
+                watchdog.check(start + TimeUnit.MINUTES.toMillis(2)));
+    }
+    /**
+     * Test that the no-output timeout of a process expires after the given
+     * minutes without output.
+     */
+    @Test
+    public void testNoOutputTimeout() {
+        final ProcessWatchdog watchdog = new ProcessWatchdog(null,
+                createStarters(1), 0, 1, null);
+        final long start = System.currentTimeMillis();
+        watchdog.started(0, start);
+        assertEquals(start, watchdog.getLastOutput(0));
+        assertNull(watchdog.check(start + TimeUnit.SECONDS.toMillis(59)));
+        assertEquals(Messages.watchdogNoOutput(1),
+                watchdog.check(start + TimeUnit.MINUTES.toMillis(1)));
+    }
+    /**
+     * Test that the timeouts are measured per process from the time it is
+     * started, so a process waiting for a slot is not timed, and that a
+     * process which has terminated is no longer timed.
+     */
+    @Test
+    public void testStarted() {
+        final ProcessWatchdog watchdog = new ProcessWatchdog(null,
+                createStarters(2), 2, 1, null);
+        final long start = System.currentTimeMillis();
+        assertNull(watchdog.check(start + TimeUnit.MINUTES.toMillis(5)));
+        watchdog.started(0, start);
+        final long later = start + TimeUnit.MINUTES.toMillis(5);
+        watchdog.terminated(0);
+        watchdog.started(1, later);
+        assertNull(watchdog.check(later + TimeUnit.SECONDS.toMillis(59)));
+        assertEquals(Messages.watchdogNoOutput(1),
+                watchdog.check(later + TimeUnit.MINUTES.toMillis(1)));
+        watchdog.terminated(1);
+        assertNull(watchdog.check(later + TimeUnit.MINUTES.toMillis(2)));
+    }
+    /**
+     * Test that output is passed on and its time recorded.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testActivity() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ProcessWatchdog.ActivityOutputStream activity
+                = new ProcessWatchdog.ActivityOutputStream(out, 0);
+        final long before = System.currentTimeMillis();
+        activity.write(new byte[] {'a', 'b', 'c'}, 1, 2);
+        activity.write('d');
+        assertEquals("bcd", out.toString("US-ASCII"));
+        assertTrue(activity.getLastWrite() >= before);
+    }
+    /**
+     * Creates starters writing to a buffer.
+     *
+     * @param count the number of starters
+     * @return the starters
+     */
+    private static List<ProcStarter> createStarters(final int count) {
+        final List<ProcStarter> starters = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            starters.add(new DummyLauncher(new StreamBuildListener(
+                    new ByteArrayOutputStream())).launch()
+                            .stdout(new ByteArrayOutputStream()));
+        }
+        return starters;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Tests for {@link RerunPlan}.
+ */
+public class RerunPlanTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    /** The expected. */
+    @Rule
+    public ExpectedException expected = ExpectedException.none();
+
+    /**
+     * Test that failed test events and test events without outcome are
+     * selected, in configured order.
+     */
+    @Test
+    public void testSelectFailed() {
+        final Map<String, Boolean> outcomes = new LinkedHashMap<>();
+        outcomes.put("e3", true);
+        outcomes.put("e1", false);
+        outcomes.put("e2", true);
+        assertEquals(Arrays.asList("e2", "e3", "e4"),
+                RerunPlan.selectFailed(
+                        Arrays.asList("e1", "e2", "e3", "e4"), outcomes));
+    }
+    /**
+     * Test that failed test cases are attributed to the test events they
+     * name, and that a shard is failed as a whole if they cannot be.
+     */
+    @Test
+    public void testOutcomes() {
+        final List<TestEventShard> shards = Arrays.asList(
+                new TestEventShard(0, 4, Arrays.asList("Login", "Order"),
+                        "results-1.xml"),
+                new TestEventShard(1, 4, Arrays.asList("Search", "Cart"),
+                        "results-2.xml"),
+                new TestEventShard(2, 4, Arrays.asList("Pay"),
+                        "results-3.xml"),
+                new TestEventShard(3, 4, Arrays.asList("Ship"),
+                        "results-4.xml"));
+        final List<String> none = Collections.emptyList();
+        final Map<String, Boolean> outcomes = RerunPlan.getOutcomes(shards,
+                Arrays.asList(1, 1, 0, 1),
+                Arrays.asList(Arrays.asList("order suite checkout"),
+                        Arrays.asList("unknown test"), none, null));
+        assertEquals(Boolean.FALSE, outcomes.get("Login"));
+        assertEquals(Boolean.TRUE, outcomes.get("Order"));
+        assertEquals(Boolean.TRUE, outcomes.get("Search"));
+        assertEquals(Boolean.TRUE, outcomes.get("Cart"));
+        assertEquals(Boolean.FALSE, outcomes.get("Pay"));
+        assertEquals(Boolean.TRUE, outcomes.get("Ship"));
+    }
+    /**
+     * Test that stored outcomes are loaded again, and that a missing file
+     * has no outcomes.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        final File file = new File(folder.getRoot(),
+                RerunPlan.OUTCOMES_FILE_NAME);
+        assertTrue(RerunPlan.load(file).isEmpty());
+        final Map<String, Boolean> outcomes = new LinkedHashMap<>();
+        outcomes.put("Login = \u00e4", true);
+        outcomes.put("Order", false);
+        RerunPlan.store(file, outcomes);
+        assertEquals(outcomes, RerunPlan.load(file));
+    }
+    /**
+     * Test that all test events are executed if the previous build kept no
+     * results, and that a reduced build is aborted if the results are gone
+     * by the time they are merged.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testMissingResults() throws Exception {
+        final File jobDir = folder.newFolder("job");
+        final File buildDir = folder.newFolder("build");
+        final Map<String, Boolean> outcomes = new LinkedHashMap<>();
+        outcomes.put("Login", true);
+        outcomes.put("Order", false);
+        RerunPlan.store(new File(buildDir, RerunPlan.OUTCOMES_FILE_NAME),
+                outcomes);
+        final Job<?, ?> job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(jobDir);
+        final Run<?, ?> previous = mock(Run.class);
+        when(previous.getNumber()).thenReturn(1);
+        when(previous.getRootDir()).thenReturn(buildDir);
+        final Run<?, ?> run = mock(Run.class);
+        doReturn(job).when(run).getParent();
+        doReturn(previous).when(run).getPreviousCompletedBuild();
+        final PrintStream logger
+                = new PrintStream(new ByteArrayOutputStream());
+        final List<String> configured = Arrays.asList("Login", "Order");
+        assertFalse(RerunPlan.create(run, configured, logger).isReduced());
+        final File results = RerunPlan.getResultsFile(jobDir, 1);
+        assertTrue(results.createNewFile());
+        final RerunPlan plan = RerunPlan.create(run, configured, logger);
+        assertEquals(Collections.singletonList("Login"),
+                plan.getTestEvents());
+        assertTrue(results.delete());
+        expected.expect(AbortException.class);
+        expected.expectMessage(Messages.rerunResultsMissing(1));
+        plan.mergeResults(Collections.singletonList("results-shard1.xml"),
+                "results.xml", new FilePath(folder.getRoot()), logger);
+    }
+    /**
+     * Test that only the archived results of builds before the given build
+     * are deleted.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPrune() throws Exception {
+        final File jobDir = folder.getRoot();
+        for (final int build : new int[] {3, 9, 10, 11}) {
+            assertTrue(RerunPlan.getResultsFile(jobDir, build)
+                    .createNewFile());
+        }
+        final File other = folder.newFile(RerunPlan.RESULTS_FILE_PREFIX
+                + "x.xml");
+        assertEquals(2, RerunPlan.prune(jobDir, 10));
+        assertFalse(RerunPlan.getResultsFile(jobDir, 9).exists());
+        assertTrue(RerunPlan.getResultsFile(jobDir, 10).exists());
+        assertTrue(RerunPlan.getResultsFile(jobDir, 11).exists());
+        assertTrue(other.exists());
+    }
+}
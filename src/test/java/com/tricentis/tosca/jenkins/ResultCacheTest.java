@@ -0,0 +1,103 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ResultCache} and {@link CachedResults}.
+ */
+public class ResultCacheTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the key depends on every input and not only on their
+     * concatenation.
+     */
+    @Test
+    public void testKey() {
+        final String key = ResultCache.key("e", "Login", "", "1.0");
+        assertEquals(64, key.length());
+        assertEquals(key, ResultCache.key("e", "Login", "", "1.0"));
+        assertFalse(key.equals(ResultCache.key("e", "Login", "", "1.1")));
+        assertFalse(key.equals(ResultCache.key("e", "Logi", "n", "1.0")));
+        assertFalse(key.equals(ResultCache.key("f", "Login", "", "1.0")));
+    }
+    /**
+     * Test that the least recently used entries are evicted when the cache
+     * exceeds its size.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        final ResultCache cache = new ResultCache(folder.getRoot(), 25);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        new File(folder.getRoot(), "a.xml").setLastModified(1000);
+        new File(folder.getRoot(), "b.xml").setLastModified(2000);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[10]);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+    /**
+     * Test that a results file is split into the reports of the test events
+     * which passed, and is not split if a test case cannot be attributed.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSplit() throws Exception {
+        Files.write(new File(folder.getRoot(), "results.xml").toPath(),
+                ("<testsuite>"
+                        + "<testcase classname=\"Login\" name=\"t1\"/>"
+                        + "<testcase classname=\"x\" name=\"Login t2\"/>"
+                        + "<testcase classname=\"Order\" name=\"t3\">"
+                        + "<failure/></testcase></testsuite>")
+                                .getBytes(StandardCharsets.UTF_8));
+        final Map<String, byte[]> reports = new CachedResults.Split(
+                "results.xml", Arrays.asList("Login", "Order", "Pay"))
+                        .invoke(folder.getRoot(), null);
+        assertEquals(1, reports.size());
+        final ResultsMerger.Suites suites = new ResultsMerger.Suites(false);
+        new ResultsSummaryParser().parse(
+                new ByteArrayInputStream(reports.get("Login")), suites);
+        assertEquals(2, suites.size());
+        assertEquals(0, new CachedResults.Split("results.xml",
+                Arrays.asList("Order", "Pay")).invoke(folder.getRoot(), null)
+                .size());
+    }
+    /**
+     * Test that the copies of cached results are deleted from the workspace,
+     * and missing ones are ignored.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCleanup() throws Exception {
+        final File copy = folder.newFile("results-cached-1.xml");
+        final File other = folder.newFile("results.xml");
+        new CachedResults.Cleanup(Arrays.asList("results-cached-1.xml",
+                "results-cached-2.xml")).invoke(folder.getRoot(), null);
+        assertFalse(copy.exists());
+        assertTrue(other.exists());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ResultsIndex} and {@link ResultsDetails}.
+ */
+public class ResultsIndexTest {
+    /** The Constant REPORT. */
+    private static final String REPORT = "<testsuite>"
+            + "<testcase classname=\"c1\" name=\"a\" time=\"1\"/>"
+            + "<testcase classname=\"c1\" name=\"b\u00e4\" time=\"2\">"
+            + "<failure message=\"boom\">trace</failure></testcase>"
+            + "<testcase classname=\"c2\" name=\"c\"><skipped/></testcase>"
+            + "</testsuite>";
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test index and details.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testIndexAndDetails() throws Exception {
+        final File detailsFile = new File(folder.getRoot(), "details");
+        final ResultsIndex index = index(detailsFile, 0);
+        final File indexFile = new File(folder.getRoot(), "index");
+        index.save(indexFile);
+        final ResultsIndex loaded = ResultsIndex.load(indexFile);
+        assertEquals(3, loaded.size());
+        assertEquals("c1", loaded.getClassName(1));
+        assertEquals("b\u00e4", loaded.getName(1));
+        assertEquals("c", loaded.getName(2));
+        assertEquals(ResultsSummaryParser.Status.FAILED, loaded.getStatus(1));
+        assertEquals(1, loaded.count(ResultsSummaryParser.Status.SKIPPED));
+        assertEquals(2.0, loaded.getDuration(1), 0.001);
+        assertEquals(ResultsIndex.NO_DETAILS, loaded.getDetailOffset(0));
+        final ResultsDetails details
+                = ResultsDetails.read(detailsFile, loaded.getDetailOffset(1));
+        assertEquals("boom", details.getMessage());
+        assertEquals("trace", details.getDetails());
+    }
+    /**
+     * Test appending an index whose details follow existing details.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAppend() throws Exception {
+        final File detailsFile = new File(folder.getRoot(), "details");
+        final ResultsIndex index = index(detailsFile, 0);
+        final ResultsIndex added = index(detailsFile, detailsFile.length());
+        index.append(serialize(added), 0);
+        assertEquals(6, index.size());
+        assertEquals("b\u00e4", index.getName(4));
+        assertEquals("c2", index.getClassName(5));
+        assertEquals("boom", ResultsDetails.read(detailsFile,
+                index.getDetailOffset(4)).getMessage());
+    }
+    /**
+     * Parses the report into a new index, appending details to the file.
+     *
+     * @param detailsFile the details file
+     * @param base        the current length of the details file
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static ResultsIndex index(final File detailsFile, final long base)
+            throws IOException {
+        final ResultsIndex index = new ResultsIndex();
+        try (ResultsDetails.Writer writer = new ResultsDetails.Writer(
+                new FileOutputStream(detailsFile, true), base)) {
+            new ResultsSummaryParser().parse(new ByteArrayInputStream(
+                    REPORT.getBytes(StandardCharsets.UTF_8)),
+                    index.handler(writer));
+        }
+        return index;
+    }
+    /**
+     * Serializes and deserializes an index, as the channel to the agent does.
+     *
+     * @param index the index
+     * @return the copy
+     * @throws Exception the exception
+     */
+    private static ResultsIndex serialize(final ResultsIndex index)
+            throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(index);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (ResultsIndex) in.readObject();
+        }
+    }
+}
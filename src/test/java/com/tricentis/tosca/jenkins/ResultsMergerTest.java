@@ -0,0 +1,234 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ResultsMerger}.
+ */
+public class ResultsMergerTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that test cases reported by several shards are merged once, with
+     * the most severe status and the longest duration.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testMerge() throws Exception {
+        write("results-shard1.xml", "<testsuites><testsuite name=\"s1\">"
+                + "<testcase classname=\"a\" name=\"t1\" time=\"1\"/>"
+                + "<testcase classname=\"a\" name=\"t2\" time=\"2\"/>"
+                + "<testcase classname=\"b\" name=\"t3\"><skipped/>"
+                + "</testcase></testsuite></testsuites>");
+        write("results-shard2.xml", "<testsuite name=\"s2\">"
+                + "<testcase classname=\"a\" name=\"t2\" time=\"3\">"
+                + "<failure message=\"m &amp; &lt;\">trace</failure>"
+                + "</testcase>"
+                + "<testcase classname=\"b\" name=\"t3\" time=\"1\"/>"
+                + "<testcase classname=\"b\" name=\"t4\"><error/></testcase>"
+                + "</testsuite>");
+        final Integer testCases = new ResultsMerger(
+                Arrays.asList("results-shard1.xml", "results-shard2.xml",
+                        "missing.xml"),
+                "results.xml").invoke(folder.getRoot(), null);
+        assertEquals(Integer.valueOf(4), testCases);
+        final ResultsSummary summary = new ResultsSummary();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(
+                new File(folder.getRoot(), "results.xml")))) {
+            new ResultsSummaryParser().parse(in, summary);
+        }
+        assertEquals(4, summary.getTests());
+        assertEquals(2, summary.getPassed());
+        assertEquals(1, summary.getFailures());
+        assertEquals(1, summary.getErrors());
+        assertEquals(0, summary.getSkipped());
+        assertEquals(5, summary.getDuration(), 0.001);
+        final ResultsSummary.FailedCase failed
+                = summary.getFailedCases().get(0);
+        assertEquals("t2", failed.getName());
+        assertEquals("m & <", failed.getMessage());
+        assertEquals("trace", failed.getDetails());
+    }
+    /**
+     * Test that many reports are merged in parallel into the same result as
+     * merging them one by one.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testMergeMany() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final StringBuilder report = new StringBuilder("<testsuite>");
+            for (int j = 0; j < 20; j++) {
+                final int testCase = i * 10 + j;
+                report.append("<testcase classname=\"c").append(testCase % 3)
+                        .append("\" name=\"t").append(testCase)
+                        .append("\" time=\"1\"/>");
+            }
+            files.add(write("r" + i + ".xml",
+                    report.append("</testsuite>").toString()));
+        }
+        final File merged = new File(folder.getRoot(), "merged.xml");
+        assertEquals(510, ResultsMerger.merge(files, merged, false));
+        final ResultsMerger.Suites suites = new ResultsMerger.Suites(false);
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(merged))) {
+            new ResultsSummaryParser().parse(in, suites);
+        }
+        assertEquals(510, suites.size());
+        assertEquals(1, suites.get("c0", "t0").getDuration(), 0.001);
+        assertNull(suites.get("c1", "t0"));
+    }
+    /**
+     * Test that the content of test cases is kept unchanged, however long,
+     * including the output of passed test cases.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testMergeContent() throws Exception {
+        final StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < ResultsSummaryParser.MAX_DETAILS_LENGTH; i++) {
+            trace.append(i % 10);
+        }
+        write("results-shard1.xml", "<testsuite>"
+                + "<testcase classname=\"a\" name=\"t1\" time=\"1\" "
+                + "file=\"a.tsu\"><system-out>step 1 &amp; 2</system-out>"
+                + "</testcase>"
+                + "<testcase classname=\"a\" name=\"t2\" time=\"1\">"
+                + "<failure message=\"m\"><![CDATA[" + trace + "]]>"
+                + "</failure><system-err>log</system-err></testcase>"
+                + "</testsuite>");
+        write("results-shard2.xml", "<testsuite>"
+                + "<testcase classname=\"a\" name=\"t2\" time=\"2\"/>"
+                + "</testsuite>");
+        new ResultsMerger(Arrays.asList("results-shard1.xml",
+                "results-shard2.xml"), "results.xml")
+                        .invoke(folder.getRoot(), null);
+        final String merged = new String(Files.readAllBytes(
+                new File(folder.getRoot(), "results.xml").toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(merged, merged.contains("<testcase classname=\"a\" "
+                + "name=\"t1\" time=\"1.0\" file=\"a.tsu\">"
+                + "<system-out>step 1 &amp; 2</system-out></testcase>"));
+        assertTrue(merged, merged.contains("<testcase classname=\"a\" "
+                + "name=\"t2\" time=\"2.0\"><failure message=\"m\">"
+                + trace + "</failure><system-err>log</system-err>"
+                + "</testcase>"));
+    }
+    /**
+     * Test that reports spilled in runs of single test cases are merged into
+     * the same result, and no runs are left behind.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSpill() throws Exception {
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final StringBuilder report = new StringBuilder("<testsuite>");
+            for (int j = 20; j > 0; j--) {
+                report.append("<testcase classname=\"c").append(j % 3)
+                        .append("\" name=\"t").append(j).append("\" time=\"")
+                        .append(i).append("\">")
+                        .append(i == 2 && j % 4 == 0 ? "<failure/>" : "")
+                        .append("</testcase>");
+            }
+            files.add(write("r" + i + ".xml",
+                    report.append("</testsuite>").toString()));
+        }
+        final File spilled = new File(folder.getRoot(), "spilled.xml");
+        final File merged = new File(folder.getRoot(), "merged.xml");
+        assertEquals(20, ResultsMerger.merge(files, spilled, false, 1));
+        assertEquals(20, ResultsMerger.merge(files, merged, false));
+        assertArrayEquals(Files.readAllBytes(merged.toPath()),
+                Files.readAllBytes(spilled.toPath()));
+        final ResultsSummary summary = new ResultsSummary();
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(spilled))) {
+            new ResultsSummaryParser().parse(in, summary);
+        }
+        assertEquals(5, summary.getFailures());
+        assertEquals(80, summary.getDuration(), 0.001);
+        assertEquals(7, folder.getRoot().list().length);
+    }
+    /**
+     * Test that a rerun replaces the test cases of the earlier results, so a
+     * test case which passed on rerun is no longer failed.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReplace() throws Exception {
+        final List<File> files = new ArrayList<>();
+        final StringBuilder previous = new StringBuilder("<testsuite>");
+        for (int i = 0; i < 10; i++) {
+            previous.append("<testcase classname=\"a\" name=\"t").append(i)
+                    .append("\" time=\"1\"><failure/></testcase>");
+        }
+        files.add(write("previous.xml",
+                previous.append("</testsuite>").toString()));
+        files.add(write("rerun.xml", "<testsuite>"
+                + "<testcase classname=\"a\" name=\"t3\" time=\"2\"/>"
+                + "</testsuite>"));
+        final File merged = new File(folder.getRoot(), "merged.xml");
+        assertEquals(10, ResultsMerger.merge(files, merged, true));
+        final ResultsMerger.Suites suites = new ResultsMerger.Suites(false);
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(merged))) {
+            new ResultsSummaryParser().parse(in, suites);
+        }
+        assertEquals(ResultsSummaryParser.Status.PASSED,
+                suites.get("a", "t3").getStatus());
+        assertEquals(2, suites.get("a", "t3").getDuration(), 0.001);
+        assertEquals(ResultsSummaryParser.Status.FAILED,
+                suites.get("a", "t4").getStatus());
+    }
+    /**
+     * Test that none of the reports existing is reported.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testNoReports() throws Exception {
+        assertNull(new ResultsMerger(Arrays.asList("missing.xml"),
+                "results.xml").invoke(folder.getRoot(), null));
+    }
+    /**
+     * Writes a report.
+     *
+     * @param name    the name
+     * @param content the content
+     * @return the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private File write(final String name, final String content)
+            throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
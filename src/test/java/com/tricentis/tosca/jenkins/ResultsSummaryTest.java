@@ -0,0 +1,119 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ResultsSummary} and {@link ResultsSummaryParser}.
+ */
+public class ResultsSummaryTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test parse.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testParse() throws IOException {
+        final ResultsSummary summary = parse("<testsuites><testsuite>"
+                + "<testcase classname=\"c\" name=\"passed\" time=\"1.5\">"
+                + "<system-out>" + StringUtils.repeat("log", 100000)
+                + "</system-out></testcase>"
+                + "<testcase classname=\"c\" name=\"skipped\"><skipped/>"
+                + "</testcase>"
+                + "<testcase classname=\"c\" name=\"failed\" time=\"1,000\">"
+                + "<system-out>" + StringUtils.repeat("out", 100000)
+                + "</system-out><failure message=\"boom\">trace</failure>"
+                + "</testcase>"
+                + "<testcase classname=\"c\" name=\"error\">"
+                + "<error message=\"oops\"/></testcase>"
+                + "</testsuite></testsuites>");
+        assertEquals(4, summary.getTests());
+        assertEquals(1, summary.getPassed());
+        assertEquals(1, summary.getSkipped());
+        assertEquals(1, summary.getFailures());
+        assertEquals(1, summary.getErrors());
+        assertEquals(1001.5, summary.getDuration(), 0.001);
+        assertEquals(2, summary.getFailedCases().size());
+        final ResultsSummary.FailedCase failed
+                = summary.getFailedCases().get(0);
+        assertEquals("failed", failed.getName());
+        assertEquals("boom", failed.getMessage());
+        assertTrue(failed.getDetails().startsWith("trace\noutout"));
+        assertEquals(ResultsSummaryParser.MAX_DETAILS_LENGTH
+                + ResultsSummaryParser.TRUNCATED.length(),
+                failed.getDetails().length());
+        assertTrue(summary.getFailedCases().get(1).isError());
+    }
+    /**
+     * Test save and load.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final ResultsSummary summary = parse("<testsuite>"
+                + "<testcase classname=\"c\" name=\"a\" time=\"2\"/>"
+                + "<testcase classname=\"c\" name=\"b\">"
+                + "<failure message=\"m\">t</failure></testcase>"
+                + "</testsuite>");
+        final File file = new File(folder.getRoot(), "summary.bin");
+        summary.save(file);
+        final ResultsSummary loaded = ResultsSummary.load(file);
+        assertEquals(2, loaded.getTests());
+        assertEquals(1, loaded.getFailures());
+        assertEquals(2, loaded.getDuration(), 0.001);
+        assertEquals("b", loaded.getFailedCases().get(0).getName());
+        assertEquals("m", loaded.getFailedCases().get(0).getMessage());
+        assertEquals("t", loaded.getFailedCases().get(0).getDetails());
+    }
+    /**
+     * Test that only a limited number of failed cases is kept.
+     */
+    @Test
+    public void testMergeKeepsLimitedFailedCases() {
+        final ResultsSummary summary = new ResultsSummary();
+        for (int i = 0; i < 2; i++) {
+            final ResultsSummary added = new ResultsSummary();
+            for (int j = 0; j < ResultsSummary.MAX_FAILED_CASES; j++) {
+                added.addFailed(new ResultsSummary.FailedCase("c", "t" + j,
+                        false, 0, "", ""));
+            }
+            summary.merge(added);
+        }
+        assertEquals(2 * ResultsSummary.MAX_FAILED_CASES,
+                summary.getFailures());
+        assertEquals(ResultsSummary.MAX_FAILED_CASES,
+                summary.getFailedCases().size());
+        assertEquals(ResultsSummary.MAX_FAILED_CASES,
+                summary.getOmittedFailedCases());
+    }
+    /**
+     * Parses a report.
+     *
+     * @param report the report
+     * @return the summary
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static ResultsSummary parse(final String report)
+            throws IOException {
+        final ResultsSummary summary = new ResultsSummary();
+        new ResultsSummaryParser().parse(new ByteArrayInputStream(
+                report.getBytes(StandardCharsets.UTF_8)), summary);
+        return summary;
+    }
+}
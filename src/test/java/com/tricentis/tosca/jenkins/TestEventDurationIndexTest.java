@@ -0,0 +1,85 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TestEventDurationIndex}.
+ */
+public class TestEventDurationIndexTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test update and load.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testUpdateAndLoad() throws IOException {
+        final File file = TestEventDurationIndex.getFile(folder.getRoot());
+        assertEquals(TestEventDurationIndex.UNKNOWN,
+                TestEventDurationIndex.load(file).getEstimate("a"));
+        TestEventDurationIndex.update(file,
+                Collections.singletonMap("a", 1000L));
+        assertEquals(1000, TestEventDurationIndex.load(file).getEstimate("a"));
+        TestEventDurationIndex.update(file,
+                Collections.singletonMap("a", 2000L));
+        assertEquals(1300, TestEventDurationIndex.load(file).getEstimate("a"));
+    }
+    /**
+     * Test that test events which are no longer executed are dropped after
+     * {@link TestEventDurationIndex#MAX_AGE} updates.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testPrune() throws IOException {
+        final File file = TestEventDurationIndex.getFile(folder.getRoot());
+        final Map<String, Long> both = new HashMap<>();
+        both.put("kept", 1000L);
+        both.put("removed", 1000L);
+        TestEventDurationIndex.update(file, both);
+        for (int i = 0; i < TestEventDurationIndex.MAX_AGE; i++) {
+            TestEventDurationIndex.update(file,
+                    Collections.singletonMap("kept", 1000L));
+        }
+        assertEquals(1000,
+                TestEventDurationIndex.load(file).getEstimate("removed"));
+        TestEventDurationIndex.update(file,
+                Collections.singletonMap("kept", 1000L));
+        final TestEventDurationIndex index = TestEventDurationIndex.load(file);
+        assertEquals(TestEventDurationIndex.UNKNOWN,
+                index.getEstimate("removed"));
+        assertEquals(1000, index.getEstimate("kept"));
+        assertEquals(1, index.size());
+    }
+    /**
+     * Test apportion.
+     */
+    @Test
+    public void testApportion() {
+        final TestEventDurationIndex index = new TestEventDurationIndex();
+        Map<String, Long> durations
+                = index.apportion(Arrays.asList("a", "b"), 100);
+        assertEquals(Long.valueOf(50), durations.get("a"));
+        assertEquals(Long.valueOf(50), durations.get("b"));
+        index.record("a", 30);
+        index.record("b", 10);
+        durations = index.apportion(Arrays.asList("a", "b"), 100);
+        assertEquals(Long.valueOf(75), durations.get("a"));
+        assertEquals(Long.valueOf(25), durations.get("b"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TestEventSharder}.
+ */
+public class TestEventSharderTest {
+    /** The Constant RESULTS. */
+    private static final String RESULTS = "results.xml";
+
+    /**
+     * Test shard by count.
+     */
+    @Test
+    public void testShardByCount() {
+        final List<TestEventShard> shards
+                = new TestEventSharder().shard("a;b; c;d;e", 2, RESULTS);
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a", "b"), shards.get(0).getTestEvents());
+        assertEquals(Arrays.asList("c", "d", "e"),
+                shards.get(1).getTestEvents());
+        assertEquals("results-shard1.xml", shards.get(0).getResultsFile());
+        assertEquals("results-shard2.xml", shards.get(1).getResultsFile());
+        assertEquals("temp-jenkins-tricentis-shard2.xml",
+                shards.get(1).getConfigFileName("temp-jenkins-tricentis.xml"));
+    }
+    /**
+     * Test more shards than events.
+     */
+    @Test
+    public void testMoreShardsThanEvents() {
+        final List<TestEventShard> shards
+                = new TestEventSharder().shard("a;;b;", 5, RESULTS);
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a"), shards.get(0).getTestEvents());
+        assertEquals(Arrays.asList("b"), shards.get(1).getTestEvents());
+        assertEquals(2, shards.get(1).getCount());
+    }
+    /**
+     * Test shard by duration.
+     */
+    @Test
+    public void testShardByDuration() {
+        final TestEventDurationIndex history = new TestEventDurationIndex();
+        history.record("a", 90);
+        history.record("b", 10);
+        history.record("c", 50);
+        history.record("d", 40);
+        final List<TestEventShard> shards
+                = new TestEventSharder().shard("a;b;c;d", 2, RESULTS, history);
+        assertEquals(Arrays.asList("a", "b"), shards.get(0).getTestEvents());
+        assertEquals(Arrays.asList("c", "d"), shards.get(1).getTestEvents());
+    }
+    /**
+     * Test shard by duration with unknown events. Unknown events are
+     * estimated with the mean of the known ones.
+     */
+    @Test
+    public void testShardByDurationWithUnknownEvents() {
+        final TestEventDurationIndex history = new TestEventDurationIndex();
+        history.record("a", 100);
+        history.record("b", 20);
+        final List<TestEventShard> shards
+                = new TestEventSharder().shard("a;b;x;y", 2, RESULTS, history);
+        assertEquals(Arrays.asList("a", "b"), shards.get(0).getTestEvents());
+        assertEquals(Arrays.asList("x", "y"), shards.get(1).getTestEvents());
+    }
+    /**
+     * Test shard file name.
+     */
+    @Test
+    public void testShardFileName() {
+        assertEquals("results-shard3.xml",
+                TestEventShard.shardFileName(RESULTS, 2));
+        assertEquals("results-shard1",
+                TestEventShard.shardFileName("results", 0));
+        assertEquals("dir.d/results-shard1",
+                TestEventShard.shardFileName("dir.d/results", 0));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link TestEventsConfigWriter}, {@link TestEventSet} and
+ * {@link TestEventsFileSource}.
+ */
+public class TestEventsConfigWriterTest {
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the file has the layout the builder has always written.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLayout() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TestEventsConfigWriter writer = new TestEventsConfigWriter(out)) {
+            writer.addAll("e1; e2 ;;e1");
+            assertTrue(writer.add("a<b>&c"));
+            assertFalse(writer.add(" e2"));
+            assertFalse(writer.add(" "));
+            assertEquals(3, writer.getCount());
+        }
+        assertEquals("<?xml version=\"1.0\" encoding=\"utf-16\" ?>\n\n"
+                + "<testConfiguration>\n\n"
+                + "   <TestEvents>\n"
+                + "        <TestEvent>e1</TestEvent>\n"
+                + "        <TestEvent>e2</TestEvent>\n"
+                + "        <TestEvent>a&lt;b&gt;&amp;c</TestEvent>\n"
+                + "    </TestEvents>\n\n"
+                + "</testConfiguration>",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+    /**
+     * Test that the set keeps distinct test events while it grows.
+     */
+    @Test
+    public void testSet() {
+        final TestEventSet set = new TestEventSet();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.add("Event " + i));
+        }
+        for (int i = 0; i < 10000; i += 7) {
+            assertFalse(set.add("Event " + i));
+        }
+        assertEquals(10000, set.size());
+        assertTrue(TestEventSet.fingerprint("") != 0);
+    }
+    /**
+     * Test that the test events of all matching files are written in the
+     * order of their paths, without byte order mark and comments.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFileSource() throws Exception {
+        final File events = folder.newFolder("events");
+        Files.write(new File(events, "b.txt").toPath(),
+                "\uFEFFe3\n# e4\ne1;e5\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(events, "a.txt").toPath(),
+                "\uFEFFe1\r\n\r\ne2\r\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(events, "c.log").toPath(),
+                "e6\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(4, new TestEventsFileSource("events/*.txt", "config.xml")
+                .invoke(folder.getRoot(), null).intValue());
+        final String config = new String(Files.readAllBytes(
+                new File(folder.getRoot(), "config.xml").toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(config, config.contains("<TestEvent>e1</TestEvent>\n"
+                + "        <TestEvent>e2</TestEvent>\n"
+                + "        <TestEvent>e3</TestEvent>\n"
+                + "        <TestEvent>e5</TestEvent>\n    </TestEvents>"));
+    }
+    /**
+     * Test that no configuration file is written if no file matches.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testNoFiles() throws Exception {
+        assertEquals(0, new TestEventsFileSource("events/*.txt", "config.xml")
+                .invoke(folder.getRoot(), null).intValue());
+        assertFalse(new File(folder.getRoot(), "config.xml").exists());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.recipes.WithTimeout;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+
+/**
+ * Throughput and soak test: runs rounds of concurrent builds of
+ * {@link TricentisCiBuilder} against the {@link FakeToscaClient}, or against
+ * the {@link FakeManagerService} with the native DEX client, and reports
+ * builds per minute, the heap of the controller and the publish latency.
+ * It only runs with <code>-Dtricentis.soak=true</code>. The load is set
+ * with the system properties <code>tricentis.soak.builds</code> (concurrent
+ * builds), <code>tricentis.soak.rounds</code>,
+ * <code>tricentis.soak.events</code> (test events per build) and
+ * <code>tricentis.soak.dex</code>, the executions with the properties of
+ * {@link FakeToscaClient.Profile}.
+ */
+public class ThroughputSoakTest {
+    /** The system property which enables the test. */
+    private static final String ENABLED = "tricentis.soak";
+    /** The interval the heap is sampled at in milliseconds. */
+    private static final long HEAP_INTERVAL = 100;
+    /** The Constant MEGABYTE. */
+    private static final long MEGABYTE = 1024 * 1024;
+    /** The jenkins. */
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+    /** The folder. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Runs the builds and reports the throughput.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    @WithTimeout(0)
+    public void testThroughput() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean(ENABLED));
+        final int concurrent = Integer.getInteger(ENABLED + ".builds", 4);
+        final int rounds = Integer.getInteger(ENABLED + ".rounds", 3);
+        final int events = Integer.getInteger(ENABLED + ".events", 5);
+        final boolean dex = Boolean.getBoolean(ENABLED + ".dex");
+        final FakeToscaClient.Profile profile
+                = FakeToscaClient.Profile.fromSystemProperties();
+        final FakeManagerService service = new FakeManagerService(profile);
+        final URL endpoint = service.start();
+        try {
+            final File jar = folder.newFile("ToscaCIJavaClient.jar");
+            FakeToscaClient.createJar(jar);
+            j.jenkins.setNumExecutors(concurrent);
+            j.jenkins.getGlobalNodeProperties()
+                    .add(new EnvironmentVariablesNodeProperty(
+                            new EnvironmentVariablesNodeProperty.Entry(
+                                    "JAVA_HOME",
+                                    System.getProperty("java.home"))));
+            final List<FreeStyleProject> projects = new ArrayList<>();
+            for (int i = 0; i < concurrent; i++) {
+                final TricentisCiBuilder builder = new TricentisCiBuilder(
+                        jar.getPath(), endpoint.toString());
+                builder.setTestEvents(createTestEvents(i, events));
+                builder.setClientJvmOptions(profile.toJvmOptions());
+                builder.setNativeDexClient(dex);
+                final FreeStyleProject project
+                        = j.createFreeStyleProject("soak-" + i);
+                project.getBuildersList().add(builder);
+                projects.add(project);
+            }
+            final HeapSampler heap = new HeapSampler();
+            heap.start();
+            final List<Double> publish = new ArrayList<>();
+            final long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                final List<QueueTaskFuture<FreeStyleBuild>> builds
+                        = new ArrayList<>();
+                for (final FreeStyleProject project : projects) {
+                    builds.add(project.scheduleBuild2(0));
+                }
+                for (final QueueTaskFuture<FreeStyleBuild> future : builds) {
+                    final FreeStyleBuild build = future.get();
+                    assertTrue(build.getLog(),
+                            build.getResult().isBetterThan(Result.FAILURE));
+                    final PhaseTimingsAction timings
+                            = build.getAction(PhaseTimingsAction.class);
+                    assertNotNull(timings);
+                    publish.add(timings.getMillis(ExecutionPhase.PUBLISH));
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            heap.interrupt();
+            heap.join();
+            System.gc();
+            final long retained = ManagementFactory.getMemoryMXBean()
+                    .getHeapMemoryUsage().getUsed();
+            Collections.sort(publish);
+            final int builds = concurrent * rounds;
+            System.out.println(String.format(Locale.ROOT,
+                    "Soak: %d builds of %d test events (%s) in %.1f s:"
+                            + " %.1f builds/min, heap peak %d MB,"
+                            + " after GC %d MB, publish p50 %.0f ms,"
+                            + " p95 %.0f ms, max %.0f ms, %d DEX requests",
+                    builds, events, dex ? "native DEX" : "client",
+                    elapsed / 1e9,
+                    builds / (elapsed / (double) TimeUnit.MINUTES.toNanos(1)),
+                    heap.peak / MEGABYTE, retained / MEGABYTE,
+                    percentile(publish, 0.5), percentile(publish, 0.95),
+                    publish.get(publish.size() - 1), service.getRequests()));
+        } finally {
+            service.stop();
+        }
+    }
+    /**
+     * Creates the test events of a project.
+     *
+     * @param project the index of the project
+     * @param events  the number of test events
+     * @return the test events, separated by semicolons
+     */
+    private static String createTestEvents(final int project,
+            final int events) {
+        final StringBuilder testEvents = new StringBuilder();
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                testEvents.append(';');
+            }
+            testEvents.append("Soak ").append(project).append('.').append(i);
+        }
+        return testEvents.toString();
+    }
+    /**
+     * Gets a percentile of sorted values.
+     *
+     * @param sorted   the sorted values
+     * @param quantile the quantile, between 0 and 1
+     * @return the percentile
+     */
+    private static double percentile(final List<Double> sorted,
+            final double quantile) {
+        final int rank = (int) Math.ceil(quantile * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    /**
+     * Samples the used heap until it is interrupted.
+     */
+    private static final class HeapSampler extends Thread {
+        /** The highest used heap in bytes. */
+        private volatile long peak;
+
+        /**
+         * Instantiates a new heap sampler.
+         */
+        HeapSampler() {
+            super("Soak heap sampler");
+            setDaemon(true);
+        }
+        /**
+         * Run.
+         */
+        @Override
+        public void run() {
+            final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            while (!isInterrupted()) {
+                peak = Math.max(peak,
+                        memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(HEAP_INTERVAL);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
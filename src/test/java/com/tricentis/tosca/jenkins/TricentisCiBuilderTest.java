@@ -3,9 +3,12 @@
 package com.tricentis.tosca.jenkins;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -13,10 +16,14 @@ import static org.mockito.Mockito.when;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import javax.servlet.ServletException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentMatchers;
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
@@ -40,6 +47,9 @@ public class TricentisCiBuilderTest {
     /** The Constant CONF_DEFAULT. */
     static final String CONF_DEFAULT
             = "$TRICENTIS_HOME\\ToscaCI\\Client\\Testconfig.xml";
+    /** The Constant DEX_ENDPOINT. */
+    private static final String DEX_ENDPOINT
+            = "http://servername/DistributionServerService/ManagerService.svc";
     /** The expected. */
     @Rule
     public ExpectedException expected = ExpectedException.none();
@@ -63,6 +73,153 @@ public class TricentisCiBuilderTest {
         verify(context.publisher).publish("results.xml", context.run,
                 context.workspace, context.launcher, context.listener);
     }
+    /**
+     * Test sharded execution.
+     *
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testShardedExecution()
+            throws InterruptedException, IOException {
+        final TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        builder.setConfigurationFilePath(null);
+        builder.setTestEvents("e1;e2;e3");
+        builder.setShardCount(2);
+        final ExecutionContext context = new ExecutionContext(builder, 0);
+        when(context.starterFactory.create(eq(builder),
+                any(TestEventShard.class), eq(context.run),
+                eq(context.workspace), eq(context.launcher),
+                eq(context.listener))).thenReturn(context.starter);
+        when(context.executor.executeAll(anyStarters(), anyEndpoints(),
+                anySlots(), isNull(ProcessMonitor.class))).thenReturn(Arrays
+                .asList(new ProcessResult(0, 1), new ProcessResult(0, 1)));
+        builder.perform(context.run, context.workspace, context.launcher,
+                context.listener);
+        verify(context.starterFactory, times(2)).create(eq(builder),
+                any(TestEventShard.class), eq(context.run),
+                eq(context.workspace), eq(context.launcher),
+                eq(context.listener));
+        verify(context.executor).executeAll(anyStarters(), anyEndpoints(),
+                anySlots(), isNull(ProcessMonitor.class));
+        verify(context.publisher).publish(
+                "results-shard1.xml,results-shard2.xml", context.run,
+                context.workspace, context.launcher, context.listener);
+    }
+    /**
+     * Test streamed execution which has not published any test case while
+     * running, so the whole results file is published at the end.
+     *
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testStreamedExecution()
+            throws InterruptedException, IOException {
+        final TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        builder.setConfigurationFilePath(null);
+        builder.setTestEvents("e1;e2");
+        builder.setStreamResults(true);
+        final ExecutionContext context = new ExecutionContext(builder, 0);
+        when(context.executor.executeAll(anyStarters(), anyEndpoints(),
+                anySlots(), any(StreamingResultsMonitor.class)))
+                        .thenReturn(Arrays.asList(new ProcessResult(0, 1)));
+        builder.perform(context.run, context.workspace, context.launcher,
+                context.listener);
+        verify(context.starterFactory).create(builder, context.run,
+                context.workspace, context.launcher, context.listener);
+        verify(context.executor).executeAll(anyStarters(), anyEndpoints(),
+                anySlots(), any(StreamingResultsMonitor.class));
+        verify(context.publisher).publish("results.xml", context.run,
+                context.workspace, context.launcher, context.listener);
+    }
+    /**
+     * Test that the results mode selects the publisher.
+     */
+    @Test
+    public void testResultsMode() {
+        TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        assertEquals(ResultsMode.JUNIT, builder.getResultsMode());
+        assertTrue(builder.getResultsPublisher()
+                instanceof DefaultJUnitResultsPublisher);
+        builder = new TricentisCiBuilder("aa", DEX_ENDPOINT);
+        builder.setResultsMode(ResultsMode.SUMMARY);
+        assertTrue(builder.getResultsPublisher()
+                instanceof SummaryResultsPublisher);
+        builder = new TricentisCiBuilder("aa", DEX_ENDPOINT);
+        builder.setResultsMode(ResultsMode.INDEXED);
+        assertTrue(builder.getResultsPublisher()
+                instanceof IndexedResultsPublisher);
+    }
+    /**
+     * Test that the client daemon is used only if enabled.
+     */
+    @Test
+    public void testClientDaemon() {
+        TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        assertFalse(builder.isClientDaemon());
+        assertFalse(builder.getProcessExecutor()
+                instanceof DaemonProcessExecutor);
+        assertEquals(30, builder.getDaemonIdleTimeout());
+        assertEquals(100, builder.getDaemonMaxRuns());
+        builder = new TricentisCiBuilder("aa", DEX_ENDPOINT);
+        builder.setClientDaemon(true);
+        builder.setDaemonMaxRuns(5);
+        assertEquals(5, builder.getDaemonMaxRuns());
+        assertTrue(builder.getProcessExecutor()
+                instanceof DaemonProcessExecutor);
+    }
+    /**
+     * Test that the native DEX client is used only if enabled.
+     */
+    @Test
+    public void testNativeDexClient() {
+        TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        assertFalse(builder.isNativeDexClient());
+        assertFalse(builder.getProcessExecutor()
+                instanceof DexProcessExecutor);
+        builder = new TricentisCiBuilder("aa", DEX_ENDPOINT);
+        builder.setNativeDexClient(true);
+        assertTrue(builder.getProcessExecutor()
+                instanceof DexProcessExecutor);
+    }
+    /**
+     * Test sharded execution with failed shard.
+     *
+     * @throws InterruptedException the interrupted exception
+     * @throws IOException          Signals that an I/O exception has occurred.
+     */
+    @Test
+    public void testShardedExecutionWithFailedShard()
+            throws InterruptedException, IOException {
+        final TricentisCiBuilder builder = new TricentisCiBuilder("aa",
+                DEX_ENDPOINT);
+        builder.setConfigurationFilePath(null);
+        builder.setTestEvents("e1;e2");
+        builder.setShardCount(2);
+        final ExecutionContext context = new ExecutionContext(builder, 0);
+        when(context.executor.executeAll(anyStarters(), anyEndpoints(),
+                anySlots(), isNull(ProcessMonitor.class))).thenReturn(Arrays
+                .asList(new ProcessResult(0, 1), new ProcessResult(3, 1)));
+        try {
+            builder.perform(context.run, context.workspace, context.launcher,
+                    context.listener);
+            fail("Should have been failed");
+        } catch (final AbortException ex) {
+            final List<TestEventShard> shards = new TestEventSharder()
+                    .shard("e1;e2", 2, builder.getResultsFile());
+            assertEquals(Messages.shardExitCodeNotZero(shards.get(1), 3),
+                    ex.getMessage());
+        }
+        verify(context.publisher).publish(
+                "results-shard1.xml,results-shard2.xml", context.run,
+                context.workspace, context.launcher, context.listener);
+    }
     /**
      * Test positive execution code.
      *
@@ -209,6 +366,47 @@ public class TricentisCiBuilderTest {
         assertEquals(FormValidation.Kind.ERROR, validation.kind);
         verify(project, times(2)).checkPermission(Job.CONFIGURE);
     }
+    /**
+     * Test that options which have no effect on test events read from files
+     * are rejected.
+     */
+    @Test
+    public void testAssertParametersTestEventsFile() {
+        final TricentisCiBuilder builder
+                = new TricentisCiBuilder("aa", DEX_ENDPOINT);
+        builder.setTestEventsFile("events/*.txt");
+        builder.assertParameters();
+        builder.setShardCount(2);
+        builder.setRerunFailed(true);
+        expected.expect(IllegalArgumentException.class);
+        expected.expectMessage(Messages.testEventsFileUnsupported(
+                Messages.shardCount() + ", " + Messages.rerunFailed()));
+        builder.assertParameters();
+    }
+    /**
+     * Test descriptor do check test events file.
+     *
+     * @throws IOException      Signals that an I/O exception has occurred.
+     * @throws ServletException the servlet exception
+     */
+    @Test
+    public void testDescriptorDoCheckTestEventsFile()
+            throws IOException, ServletException {
+        final AbstractProject<?, ?> project = mock(AbstractProject.class);
+        final TricentisCiBuilder.Descriptor descriptor
+                = new TricentisCiBuilder.Descriptor();
+        assertEquals(FormValidation.ok(), descriptor.doCheckTestEventsFile(
+                project, "events/*.txt", "", "", DEX_ENDPOINT, "1", false,
+                false));
+        final FormValidation validation = descriptor.doCheckTestEventsFile(
+                project, "events/*.txt", "", "", DEX_ENDPOINT, "", false,
+                true);
+        assertEquals(
+                Messages.testEventsFileUnsupported(Messages.resultCache()),
+                validation.getMessage());
+        assertEquals(FormValidation.Kind.ERROR, validation.kind);
+        verify(project, times(2)).checkPermission(Job.CONFIGURE);
+    }
     /**
      * Test non zero execution code.
      *
@@ -234,6 +432,30 @@ public class TricentisCiBuilderTest {
         verify(context.publisher).publish("results.xml", context.run,
                 context.workspace, context.launcher, context.listener);
     }
+    /**
+     * Matches any list of process starters.
+     *
+     * @return the list
+     */
+    private static List<ProcStarter> anyStarters() {
+        return ArgumentMatchers.<ProcStarter>anyList();
+    }
+    /**
+     * Matches any endpoints of processes.
+     *
+     * @return the list
+     */
+    private static List<String> anyEndpoints() {
+        return ArgumentMatchers.<String>anyList();
+    }
+    /**
+     * Matches any slots by endpoint.
+     *
+     * @return the map
+     */
+    private static Map<String, Integer> anySlots() {
+        return ArgumentMatchers.<String, Integer>anyMap();
+    }
 
     /**
      * The Class ExecutionContext.
@@ -0,0 +1,201 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.RestartableJenkinsRule;
+import hudson.Functions;
+import hudson.model.Result;
+
+/**
+ * Runs {@link TricentisCiStep} in pipelines against a shell script standing
+ * in for the client, which writes the report passed with <code>-r</code>.
+ */
+public class TricentisCiStepPipelineTest {
+    /** The Constant JOB. */
+    private static final String JOB = "pipeline";
+    /** The name of the script standing in for the client. */
+    private static final String CLIENT = "client.sh";
+    /** The Constant REPORT. */
+    private static final String REPORT = "'<testsuite>"
+            + "<testcase classname=\"a\" name=\"t1\" time=\"1\"/>"
+            + "</testsuite>'";
+    /** The story. */
+    @Rule
+    public RestartableJenkinsRule story = new RestartableJenkinsRule();
+
+    /**
+     * Test that the step publishes the results of the client and completes.
+     */
+    @Test
+    public void testComplete() {
+        Assume.assumeFalse(Functions.isWindows());
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final WorkflowRun run = createJob(story.j,
+                        "printf '%s' " + REPORT + " > \"$results\"")
+                                .scheduleBuild2(0).get();
+                story.j.assertBuildStatusSuccess(run);
+                story.j.assertLogContains(Messages.summaryLog(1, 0, 0), run);
+                story.j.assertLogContains(Messages.done(), run);
+            }
+        });
+    }
+    /**
+     * Test that the step fails instead of waiting forever when the results
+     * cannot be published.
+     */
+    @Test
+    public void testPublishFailed() {
+        Assume.assumeFalse(Functions.isWindows());
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final WorkflowRun run = createJob(story.j,
+                        "printf '<testsuite><testcase' > \"$results\"")
+                                .scheduleBuild2(0).get();
+                story.j.assertBuildStatus(Result.FAILURE, run);
+            }
+        });
+    }
+    /**
+     * Test that aborting the build completes the step right away and stops
+     * the client in the background.
+     */
+    @Test
+    public void testStop() {
+        Assume.assumeFalse(Functions.isWindows());
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final File root = story.j.jenkins.getRootDir();
+                final File started = new File(root, "started");
+                final File stopped = new File(root, "stopped");
+                final WorkflowRun run = createJob(story.j,
+                        "trap 'touch \"" + stopped + "\"; exit 1' TERM\n"
+                                + "touch '" + started + "'\n"
+                                + "while true; do sleep 1; done")
+                                        .scheduleBuild2(0).waitForStart();
+                while (!started.exists()) {
+                    Thread.sleep(100);
+                }
+                run.doStop();
+                story.j.assertBuildStatus(Result.ABORTED,
+                        story.j.waitForCompletion(run));
+                while (!stopped.exists()) {
+                    Thread.sleep(100);
+                }
+            }
+        });
+    }
+    /**
+     * Test that the step keeps watching the client after a restart of the
+     * controller and completes once the client has finished.
+     */
+    @Test
+    public void testRestart() {
+        Assume.assumeFalse(Functions.isWindows());
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final File root = story.j.jenkins.getRootDir();
+                final File started = new File(root, "started");
+                final File release = new File(root, "release");
+                createJob(story.j, "touch '" + started + "'\n"
+                        + "while [ ! -f '" + release + "' ]; do sleep 1; done\n"
+                        + "printf '%s' " + REPORT + " > \"$results\"")
+                                .scheduleBuild2(0).waitForStart();
+                while (!started.exists()) {
+                    Thread.sleep(100);
+                }
+            }
+        });
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final WorkflowRun run = story.j.jenkins
+                        .getItemByFullName(JOB, WorkflowJob.class)
+                        .getBuildByNumber(1);
+                assertTrue(run.isBuilding());
+                assertTrue(new File(story.j.jenkins.getRootDir(), "release")
+                        .createNewFile());
+                story.j.assertBuildStatusSuccess(
+                        story.j.waitForCompletion(run));
+                story.j.assertLogContains(Messages.done(), run);
+            }
+        });
+    }
+    /**
+     * Test that an option which cannot be applied to durable tasks makes the
+     * step run the builder, which applies it.
+     */
+    @Test
+    public void testBlockingOption() {
+        Assume.assumeFalse(Functions.isWindows());
+        story.addStep(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                final WorkflowRun run = createJob(story.j,
+                        "printf '%s' " + REPORT + " > \"$results\"",
+                        ", clientTimeout: 5").scheduleBuild2(0).get();
+                story.j.assertBuildStatusSuccess(run);
+                story.j.assertLogContains(
+                        Messages.stepBlocking(Messages.clientTimeout()), run);
+                story.j.assertLogContains(Messages.done(), run);
+            }
+        });
+    }
+    /**
+     * Creates a pipeline which runs the step with a shell script as client.
+     *
+     * @param j    the jenkins
+     * @param body the body of the script, the report is <code>$results</code>
+     * @return the job
+     * @throws Exception the exception
+     */
+    private static WorkflowJob createJob(final JenkinsRule j,
+            final String body) throws Exception {
+        return createJob(j, body, "");
+    }
+    /**
+     * Creates a pipeline which runs the step with a shell script as client
+     * and the given options.
+     *
+     * @param j       the jenkins
+     * @param body    the body of the script, the report is
+     *                <code>$results</code>
+     * @param options further options of the step, each preceded by a comma
+     * @return the job
+     * @throws Exception the exception
+     */
+    private static WorkflowJob createJob(final JenkinsRule j,
+            final String body, final String options) throws Exception {
+        final File client = new File(j.jenkins.getRootDir(), CLIENT);
+        Files.write(client.toPath(), ("#!/bin/sh\n"
+                + "while [ $# -gt 1 ]; do\n"
+                + "  if [ \"$1\" = -r ]; then results=$2; fi\n"
+                + "  shift\n"
+                + "done\n" + body + "\n").getBytes(StandardCharsets.UTF_8));
+        assertTrue(client.setExecutable(true));
+        final WorkflowJob job = j.jenkins.createProject(WorkflowJob.class, JOB);
+        job.setDefinition(new CpsFlowDefinition("node {\n"
+                + "  tricentisCI tricentisClientPath: '"
+                + client.getAbsolutePath() + "', endpoint: 'http://localhost/',"
+                + " resultsMode: 'SUMMARY'" + options + "\n"
+                + "}", true));
+        return job;
+    }
+}
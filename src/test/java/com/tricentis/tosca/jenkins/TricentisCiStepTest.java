@@ -0,0 +1,122 @@
+/*
+ *
+ */
+package com.tricentis.tosca.jenkins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.util.Arrays;
+import java.util.List;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.WindowsBatchScript;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TricentisCiStep} and {@link TricentisCiStepExecution}.
+ */
+public class TricentisCiStepTest {
+    /**
+     * Test parameters are passed to the builder.
+     */
+    @Test
+    public void testParameters() {
+        final TricentisCiStep step
+                = new TricentisCiStep("\"client.jar\"", "endpoint");
+        step.setTestEvents("a;b");
+        step.setConfigurationFilePath(null);
+        step.setShardCount(2);
+        final TricentisCiBuilder builder = step.getBuilder();
+        assertEquals("client.jar", builder.getTricentisClientPath());
+        assertEquals("endpoint", builder.getEndpoint());
+        assertEquals("a;b", builder.getTestEvents());
+        assertEquals("", builder.getConfigurationFilePath());
+        assertEquals(2, builder.getShardCount());
+        assertEquals("", step.getAgentLabel());
+        step.setAgentLabel(" tosca ");
+        step.setAgentCount(-1);
+        assertEquals("tosca", step.getAgentLabel());
+        assertEquals(0, step.getAgentCount());
+    }
+    /**
+     * Test function name.
+     */
+    @Test
+    public void testFunctionName() {
+        assertEquals("tricentisCI",
+                new TricentisCiStep.Descriptor().getFunctionName());
+    }
+    /**
+     * Test that options which need a thread watching the processes are
+     * detected.
+     */
+    @Test
+    public void testBlockingOptions() {
+        final TricentisCiStep step
+                = new TricentisCiStep("client.jar", "endpoint");
+        final List<String> single = Arrays.asList("endpoint");
+        assertNull(TricentisCiStepExecution.getBlockingOptions(
+                step.getBuilder(), single));
+        step.setShardCount(2);
+        step.setRerunFailed(true);
+        step.setClassDataSharing(true);
+        assertNull(TricentisCiStepExecution.getBlockingOptions(
+                step.getBuilder(), single));
+        step.setClientTimeout(5);
+        step.setStreamResults(true);
+        assertEquals(Messages.streamResults() + ", "
+                + Messages.clientTimeout(),
+                TricentisCiStepExecution.getBlockingOptions(
+                        step.getBuilder(), single));
+        assertEquals(Messages.streamResults() + ", "
+                + Messages.clientTimeout() + ", "
+                + Messages.stepEndpointPool(),
+                TricentisCiStepExecution.getBlockingOptions(
+                        step.getBuilder(), Arrays.asList("a", "b")));
+    }
+    /**
+     * Test create unix task.
+     */
+    @Test
+    public void testCreateUnixTask() {
+        final BourneShellScript task
+                = (BourneShellScript) TricentisCiStepExecution.createTask(
+                        Arrays.asList("/usr/bin/java", "-jar", "it's.jar"),
+                        true);
+        assertEquals("'/usr/bin/java' '-jar' 'it'\\''s.jar'",
+                task.getScript());
+    }
+    /**
+     * Test create windows task.
+     */
+    @Test
+    public void testCreateWindowsTask() {
+        final WindowsBatchScript task
+                = (WindowsBatchScript) TricentisCiStepExecution.createTask(
+                        Arrays.asList("C:\\Tosca\\ToscaCIClient.exe", "-e",
+                                "http://host/%20"),
+                        false);
+        assertEquals(TricentisCiStepExecution.WINDOWS_PROLOGUE
+                + "\"C:\\Tosca\\ToscaCIClient.exe\" \"-e\" "
+                + "\"http://host/%%20\"", task.getScript());
+    }
+    /**
+     * Test that quotes in arguments on Windows are doubled, so
+     * metacharacters stay inside the quoted region.
+     */
+    @Test
+    public void testCreateWindowsTaskQuotes() {
+        final WindowsBatchScript task
+                = (WindowsBatchScript) TricentisCiStepExecution.createTask(
+                        Arrays.asList("client.exe", "a\"&b|c>d!e"), false);
+        assertEquals(TricentisCiStepExecution.WINDOWS_PROLOGUE
+                + "\"client.exe\" \"a\"\"&b|c>d!e\"", task.getScript());
+    }
+    /**
+     * Test that line breaks in arguments are rejected on Windows.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreateWindowsTaskLineBreak() {
+        TricentisCiStepExecution.createTask(
+                Arrays.asList("client.exe", "a\r\ndel x"), false);
+    }
+}